@@ -0,0 +1,1020 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.Scanner;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A small benchmark suite for the paths every command goes through:
+ * parsing, command word lookup, processing each kind of command, room
+ * descriptions and item descriptions. The command and room benchmarks
+ * are run on the shipped map and on a large generated world.
+ *
+ * For every benchmark the time per operation (ns/op), the bytes
+ * allocated per operation (B/op) and the allocation rate (MB/s) are
+ * printed. Run it with
+ *     java Benchmark [iterations] [worldSize]
+ * It is a quick smoke run: every case is warmed up and timed once, in
+ * one JVM, so its numbers move with JIT decisions and what ran before.
+ * Results to compare between releases come from the JMH suite in the
+ * benchmarks directory (see pom.xml there), which runs the per-operation
+ * cases in forked JVMs, with proper warmup, and counts allocation with
+ * -prof gc. The figures this runner reports that JMH does not, such as
+ * heap per room, load times and journal throughput, are still only here.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class Benchmark
+{
+    // Sample input lines, cycled through by the parsing benchmarks here
+    // and in the JMH suite.
+    static final String[] LINES = {
+        "go east", "look", "take skewer", "examine inventory",
+        "use jewel", "back", "drop mask", "help", "dance wildly", "quit"
+    };
+
+    // Command words as players might shorten them or shout them.
+    static final String[] ABBREVIATIONS = {
+        "GO", "Look", "ex", "t", "dr", "q", "b", "goto", "LOA", "xyzzy"
+    };
+
+    // Descriptions shared by the rooms of generated worlds.
+    private static final String[] DESCRIPTIONS = {
+        "in a winding corridor", "in a dusty storeroom", "in a quiet courtyard",
+        "on a narrow bridge", "in a crowded market", "in a damp cellar",
+        "in a sunlit garden", "at a crossroads"
+    };
+
+    // How many items the crowded room of the item benchmarks holds.
+    private static final int ITEMS_PER_ROOM = 5000;
+
+    // How many triggers the crowded world of the trigger benchmark has.
+    private static final int TRIGGERS = 50000;
+
+    // An operation being measured. The value returned is consumed so the
+    // JIT cannot throw the work away.
+    private interface Operation
+    {
+        long run(int i);
+    }
+
+    private static volatile long sink;  // consumes benchmark results
+
+    private int iterations;
+    private int worldSize;
+    private PrintStream report;
+    private PrintStream nowhere;        // output of the games being measured
+    private com.sun.management.ThreadMXBean threads;
+    private World generatedWorld;       // built when first needed
+
+    /**
+     * Create a benchmark suite.
+     * @param iterations How many times each operation is measured.
+     * @param worldSize  How many rooms the generated world has.
+     * @param report     Where the results are printed.
+     */
+    public Benchmark(int iterations, int worldSize, PrintStream report)
+    {
+        this.iterations = iterations;
+        this.worldSize = worldSize;
+        this.report = report;
+        nowhere = new PrintStream(OutputStream.nullOutputStream());
+        threads = (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Run every benchmark and print the results.
+     */
+    public void runAll()
+    {
+        report.printf("%-40s %12s %10s %10s%n", "benchmark", "ns/op", "B/op", "MB/s");
+        benchmarkParsing();
+        benchmarkCommands("shipped", newShippedGame());
+        benchmarkItemCommands(newShippedGame());
+        benchmarkCommands("generated", newGeneratedGame());
+        benchmarkCompactGraph();
+        benchmarkRoutes();
+        benchmarkDescriptions("shipped", newShippedGame().getCurrentRoom());
+        benchmarkDescriptions("generated", newGeneratedGame().getCurrentRoom());
+
+        GameItem item = new GameItem("mask", "a beautiful mask, appropriate\n" +
+            "for a masquerade ball.", "You put it on. It makes you feel regal.", false);
+        measure("GameItem.getDescription", i -> item.getDescription().length());
+
+        benchmarkItems(ITEMS_PER_ROOM);
+        benchmarkTriggers();
+        benchmarkSessions();
+        benchmarkSnapshots();
+        benchmarkJournal();
+        benchmarkWorldLoading();
+        benchmarkPagedRooms(worldSize / 10);
+        benchmarkPagedRooms(worldSize);
+        benchmarkTextStore(worldSize / 10);
+        benchmarkTextPool(worldSize / 10);
+        benchmarkMetrics();
+    }
+
+    /**
+     * Measure how long a large world file takes to load and the most heap
+     * used while loading it. The file is a generated world written to a
+     * temporary file first.
+     */
+    private void benchmarkWorldLoading()
+    {
+        try {
+            File file = File.createTempFile("benchmark", ".world");
+            file.deleteOnExit();
+            WorldFile.save(buildGrid(worldSize), file.getPath());
+            generatedWorld = null;  // let the old copy be collected
+            System.gc();
+
+            long heapBefore = usedHeap();
+            for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                pool.resetPeakUsage();
+            }
+            long start = System.nanoTime();
+            World world = WorldFile.load(file.getPath());
+            long nanos = System.nanoTime() - start;
+            long peak = 0;
+            for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if(pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            System.gc();
+            long retained = usedHeap() - heapBefore;
+
+            report.printf("WorldFile.load: %d rooms, %d KB file, %.1f ms, " +
+                "peak heap %d MB, retained %d B/room%n", world.getRoomCount(),
+                file.length() / 1024, nanos / 1e6, peak >> 20,
+                retained / world.getRoomCount());
+            file.delete();
+        }
+        catch(IOException e) {
+            report.println("WorldFile.load: failed, " + e);
+        }
+    }
+
+    /**
+     * Measure a generated world played from a room file through a room
+     * cache: many players wander about at random, then all the heap in
+     * use is measured with them still in it. Run for two sizes of world,
+     * it shows the heap taken by rooms stays the same however large the
+     * world is. Items are all kept in memory, so they still add to it.
+     * @param rooms How many rooms the world has.
+     */
+    private void benchmarkPagedRooms(int rooms)
+    {
+        int players = 1000;
+        int moves = 200;
+        try {
+            File file = File.createTempFile("benchmark", ".rooms");
+            file.deleteOnExit();
+            RoomFile.write(new WorldGenerator(rooms, 42).generate(), file.getPath());
+            generatedWorld = null;
+
+            World world = RoomFile.open(file.getPath(), 10_000, 16L << 20);
+            RoomCache cache = world.getRoomCache();
+            Session[] sessions = new Session[players];
+            for(int i = 0; i < players; i++) {
+                sessions[i] = new Session(world);
+            }
+            java.util.SplittableRandom random = new java.util.SplittableRandom(42);
+            long start = System.nanoTime();
+            for(int move = 0; move < moves; move++) {
+                for(Session session : sessions) {
+                    Room room = session.getCurrentRoom();
+                    Object[] exits = room.getExitDirections().toArray();
+                    if(exits.length == 0 || random.nextInt(8) == 0) {
+                        session.back();
+                    }
+                    else {
+                        session.enter(room.getExit((String) exits[random.nextInt(exits.length)]));
+                    }
+                    sink += session.getCurrentRoom().getLongDescription().length();
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            // twice: the first leaves some of the generated world for the second
+            System.gc();
+            System.gc();
+            long heap = usedHeap();
+
+            report.printf("RoomCache: %d rooms, %d players: %.0f moves/s, hit rate %.1f%%, " +
+                "fault p50 %.1f us p99 %.1f us, %d resident (%d pinned, %d KB), " +
+                "%d items, heap %d MB%n", rooms, players, (double) players * moves * 1e9 / nanos,
+                cache.getHitRate() * 100, cache.getP50FaultNanos() / 1e3,
+                cache.getP99FaultNanos() / 1e3, cache.getResidentRooms(),
+                cache.getPinnedRooms(), cache.getResidentBytes() >> 10,
+                world.getItemCount(), heap >> 20);
+            for(Session session : sessions) {
+                session.leave();
+            }
+            cache.close();
+            file.delete();
+        }
+        catch(IOException e) {
+            report.println("RoomCache: failed, " + e);
+        }
+    }
+
+    /**
+     * Measure a world with a long description for every room, and items
+     * with long descriptions and effects, before and after its text is
+     * moved to a TextStore: the heap it takes, and the cost of printing
+     * a room's long description either way. Printing is also measured
+     * for a generated world in a RoomGraph whose text has been moved.
+     * @param rooms How many rooms the world has.
+     */
+    private void benchmarkTextStore(int rooms)
+    {
+        try {
+            File file = File.createTempFile("benchmark", ".text");
+            file.deleteOnExit();
+            generatedWorld = null;
+            System.gc();
+            System.gc();
+            long before = usedHeap();
+            World world = buildWordyWorld(rooms);
+            System.gc();
+            System.gc();
+            long asStrings = usedHeap() - before;
+
+            GameOutput out = GameOutput.discard();
+            Room room = world.getRoom(rooms / 2);
+            measure("Room.printLongDescription (heap)", i -> {
+                room.printLongDescription(out);
+                out.flush();
+                return 1;
+            });
+
+            TextStore.moveText(world, file.getPath());
+            System.gc();
+            System.gc();
+            long stored = usedHeap() - before;
+            measure("Room.printLongDescription (TextStore)", i -> {
+                room.printLongDescription(out);
+                out.flush();
+                return 1;
+            });
+            report.printf("TextStore: %d rooms, %d MB file, heap %d MB as Strings, " +
+                "%d MB stored (%.1fx less)%n", rooms, file.length() >> 20, asStrings >> 20,
+                stored >> 20, (double) asStrings / Math.max(stored, 1));
+            file.delete();
+
+            World generated = new WorldGenerator(rooms, 42).generate();
+            TextStore.moveText(generated, file.getPath());
+            Room view = generated.getRoom(rooms / 2);
+            measure("Room.printLongDescription (RoomGraph, TextStore)", i -> {
+                view.printLongDescription(out);
+                out.flush();
+                return 1;
+            });
+            file.delete();
+        }
+        catch(IOException e) {
+            report.println("TextStore: failed, " + e);
+        }
+    }
+
+    /**
+     * Load a world with a long description for every room, many of them
+     * beginning the same way, from a world file, and report what pooling
+     * its text saved. Then compare building and reading descriptions of
+     * the pooled world with the same world built directly.
+     * @param rooms How many rooms the world has.
+     */
+    private void benchmarkTextPool(int rooms)
+    {
+        try {
+            File file = File.createTempFile("benchmark", ".world");
+            file.deleteOnExit();
+            generatedWorld = null;
+            World plain = buildWordyWorld(rooms);
+            WorldFile.save(plain, file.getPath());
+            World pooled = WorldFile.load(file.getPath());
+            TextPool pool = pooled.getTextPool();
+            report.printf("TextPool: %d rooms, %d texts, %d different, " +
+                "%d descriptions share %d prefixes, %d KB saved (%.1f%%)%n",
+                rooms, pool.getTextCount(), pool.getPooledCount(), pool.getSplitCount(),
+                pool.getPrefixCount(), pool.getBytesSaved() >> 10,
+                100.0 * pool.getBytesSaved() / Math.max(pool.getBytesBefore(), 1));
+
+            int count = Math.min(rooms, 4096);
+            measure("Room.getLongDescription (plain)", i ->
+                plain.getRoom(i % count).getLongDescription().length());
+            measure("Room.getLongDescription (pooled)", i ->
+                pooled.getRoom(i % count).getLongDescription().length());
+            GameOutput out = GameOutput.discard();
+            measure("Room.printLongDescription (plain)", i -> {
+                plain.getRoom(i % count).printLongDescription(out);
+                out.flush();
+                return 1;
+            });
+            measure("Room.printLongDescription (pooled)", i -> {
+                pooled.getRoom(i % count).printLongDescription(out);
+                out.flush();
+                return 1;
+            });
+            StringBuilder text = new StringBuilder();
+            measure("Room.appendShortDescription (plain)", i -> {
+                text.setLength(0);
+                plain.getRoom(i % count).appendShortDescription(text);
+                return text.length();
+            });
+            measure("Room.appendShortDescription (pooled)", i -> {
+                text.setLength(0);
+                pooled.getRoom(i % count).appendShortDescription(text);
+                return text.length();
+            });
+            file.delete();
+        }
+        catch(IOException e) {
+            report.println("TextPool: failed, " + e);
+        }
+    }
+
+    /**
+     * Build a world of rooms in a line, each with a long description of
+     * its own, and an item with a long description and effect in every
+     * tenth room.
+     * @param size The number of rooms.
+     * @return The world.
+     */
+    public static World buildWordyWorld(int size)
+    {
+        java.util.SplittableRandom random = new java.util.SplittableRandom(42);
+        World world = new World();
+        Room previous = null;
+        for(int i = 0; i < size; i++) {
+            Room room = world.addRoom("room" + i, new Room(wordy(random, 6)));
+            if(previous != null) {
+                room.setExit("west", previous);
+                previous.setExit("east", room);
+            }
+            if(i % 10 == 0) {
+                world.placeItem(room, new GameItem("item" + i, wordy(random, 3),
+                                                   wordy(random, 3), false));
+            }
+            previous = room;
+        }
+        world.setStartRoom(world.getRoom(0));
+        return world;
+    }
+
+    /**
+     * @return A made-up description of some sentences, each starting
+     * with one of the generated world's descriptions.
+     */
+    private static String wordy(java.util.SplittableRandom random, int sentences)
+    {
+        StringBuilder text = new StringBuilder();
+        for(int i = 0; i < sentences; i++) {
+            text.append(i == 0 ? "" : ". You are ")
+                .append(DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)])
+                .append(" number ").append(random.nextInt(1_000_000))
+                .append(", and it is much like the last one");
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return The number of bytes of heap in use.
+     */
+    private static long usedHeap()
+    {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Measure taking, dropping and examining items in a room holding
+     * thousands of them, with an inventory just as full.
+     * @param itemCount How many items the room holds.
+     */
+    private void benchmarkItems(int itemCount)
+    {
+        World world = new World();
+        Room hall = world.addRoom("hall", new Room("in a hall piled high with things"));
+        for(int i = 0; i < itemCount; i++) {
+            world.placeItem(hall, new GameItem("item" + i, "item number " + i + ".",
+                                               "Nothing happens.", false));
+        }
+        Parser parser = new Parser(new StringReader(""), nowhere);
+
+        // take an item and put it back, so the room stays full
+        Game game = new Game(parser, world);
+        String[] lines = new String[64];
+        for(int i = 0; i < lines.length; i += 2) {
+            int item = (int) ((long) i * 7919 % itemCount);
+            lines[i] = "take item" + item;
+            lines[i + 1] = "drop item" + item;
+        }
+        measureCommands(itemCount + " items", game, parser, CommandWord.TAKE, lines);
+
+        // examine items in a full inventory
+        Game collector = new Game(parser, world);
+        for(int i = 0; i < itemCount; i++) {
+            collector.processCommand(parser.parseCommand("take item" + i));
+        }
+        for(int i = 0; i < lines.length; i++) {
+            lines[i] = "examine item" + (int) ((long) i * 7919 % itemCount);
+        }
+        measureCommands(itemCount + " items", collector, parser, CommandWord.EXAMINE,
+                        lines);
+    }
+
+    /**
+     * Measure using an item in a world with no other triggers and in one
+     * with tens of thousands. Triggers are looked up in a table, so the
+     * two should take the same time.
+     */
+    private void benchmarkTriggers()
+    {
+        for(int others : new int[] { 0, TRIGGERS }) {
+            World world = buildGrid(worldSize);
+            Room start = world.getStartRoom();
+            world.placeItem(start, new GameItem("lamp", "a brass lamp.",
+                                                "It flickers.", false));
+            for(int i = 0; i < others; i++) {
+                world.addTrigger(new Trigger("charm" + i, i % world.getRoomCount(), ""));
+            }
+            Trigger lamp = new Trigger("lamp", start.getId(), "Somewhere a door clicks.");
+            lamp.unlock(start.getId(), "east");
+            lamp.lock(start.getId(), "east");
+            world.addTrigger(lamp);
+
+            Parser parser = new Parser(new StringReader(""), nowhere);
+            Game game = new Game(parser, world);
+            game.processCommand(parser.parseCommand("take lamp").copy());
+            measureCommands(others + " other triggers", game, parser,
+                            CommandWord.USE, "use lamp");
+        }
+    }
+
+    /**
+     * Measure the memory each extra player costs. All sessions share one
+     * world, so the bytes allocated per new session are its whole cost
+     * until it picks things up or moves.
+     */
+    private void benchmarkSessions()
+    {
+        World world = World.getShipped();
+        measure("new Session (memory per player)", i -> new Session(world).hashCode());
+
+        Room alley = world.getRoom("alley");
+        Room marketWest = world.getRoom("marketWest");
+        measure("Session moving about", i -> {
+            Session session = new Session(world);
+            session.enter(alley);
+            session.enter(marketWest);
+            session.back();
+            return session.getHistoryDepth();
+        });
+
+        // one session that never stops walking: its history stays the
+        // same size, so nothing is allocated once it is full
+        Session walker = new Session(world);
+        measure("Session walking for hours", i -> {
+            walker.enter(i % 2 == 0 ? alley : marketWest);
+            return walker.getHistoryDepth();
+        });
+    }
+
+    /**
+     * Measure saving and restoring sessions: encoding and decoding a
+     * snapshot, and writing a batch of them to disk and reading it back.
+     */
+    private void benchmarkSnapshots()
+    {
+        World world = World.getShipped();
+        Session session = new Session(world);
+        Room stall = world.getRoom("stall");
+        session.addToInventory(session.takeItem(stall, "skewer"));
+        String[] walk = { "alley", "marketWest", "marketSquare", "marketEast",
+                          "dirtPath", "swamp", "circle", "basement", "inn" };
+        for(int i = 0; i < 32; i++) {
+            session.enter(world.getRoom(walk[i % walk.length]));
+        }
+        session.putItem(session.getCurrentRoom(), session.removeFromInventory("skewer"));
+        byte[] snapshot = SessionSnapshot.encode(session);
+        report.printf("SessionSnapshot: %d bytes for %d rooms of history%n",
+                      snapshot.length, session.getHistoryDepth());
+
+        measure("SessionSnapshot.encode", i -> SessionSnapshot.encode(session).length);
+        measure("SessionSnapshot.decode", i -> {
+            try {
+                return SessionSnapshot.decode(world, snapshot).getHistoryDepth();
+            }
+            catch(IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        try {
+            File file = File.createTempFile("benchmark", ".sav");
+            file.deleteOnExit();
+            long start = System.nanoTime();
+            try(OutputStream out = new BufferedOutputStream(
+                    new FileOutputStream(file), 1 << 16)) {
+                for(int i = 0; i < iterations; i++) {
+                    SessionSnapshot.write(session, out);
+                }
+            }
+            long writeNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            int read = 0;
+            try(InputStream in = new BufferedInputStream(
+                    new FileInputStream(file), 1 << 16)) {
+                while(SessionSnapshot.read(world, in) != null) {
+                    read++;
+                }
+            }
+            long readNanos = System.nanoTime() - start;
+            report.printf("SessionSnapshot to disk: %d sessions, %.0f written/s, " +
+                "%.0f read/s%n", read, iterations * 1e9 / Math.max(writeNanos, 1),
+                read * 1e9 / Math.max(readNanos, 1));
+            file.delete();
+        }
+        catch(IOException e) {
+            report.println("SessionSnapshot to disk: failed, " + e);
+        }
+    }
+
+    /**
+     * Measure the command journal: how many durable commands a second
+     * players on many threads can make with group commit, and how long
+     * rebuilding the sessions from a journal of a million commands takes.
+     */
+    private void benchmarkJournal()
+    {
+        World world = World.getShipped();
+        String[] commands = { "go east", "go east", "go west", "back", "go north",
+                              "go south", "take mask", "drop mask", "goto inn" };
+        try {
+            File file = File.createTempFile("benchmark", ".journal");
+            file.deleteOnExit();
+            file.delete();
+
+            // players each waiting for their own commands to be durable
+            int players = 64;
+            int commandsEach = Math.max(iterations / 1000, 100);
+            CommandJournal journal = new CommandJournal(file.getPath());
+            Thread[] threads = new Thread[players];
+            for(int t = 0; t < players; t++) {
+                long key = t;
+                threads[t] = new Thread(() -> {
+                    try {
+                        Parser parser = new Parser(new StringReader(""), nowhere);
+                        Game game = new Game(parser, world);
+                        game.setJournal(journal, key);
+                        for(int i = 0; i < commandsEach; i++) {
+                            game.processCommand(parser.parseCommand(
+                                commands[(int) ((i + key) % commands.length)]));
+                        }
+                    }
+                    catch(IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            for(Thread thread : threads) {
+                thread.start();
+            }
+            for(Thread thread : threads) {
+                thread.join();
+            }
+            long nanos = System.nanoTime() - start;
+            report.printf("CommandJournal: %d players, %.0f durable commands/s, " +
+                "%.1f records per fsync%n", players,
+                journal.getRecordCount() * 1e9 / Math.max(nanos, 1),
+                (double) journal.getRecordCount() / Math.max(journal.getSyncCount(), 1));
+            journal.close();
+            file.delete();
+
+            // a million commands spread over a thousand sessions
+            int total = 1_000_000;
+            CommandJournal filled = new CommandJournal(file.getPath());
+            Parser parser = new Parser(new StringReader(""), nowhere);
+            for(int i = 0; i < total; i++) {
+                filled.append(i % 1000, parser.parseCommand(
+                    commands[(i / 1000) % commands.length]));
+            }
+            filled.close();
+            start = System.nanoTime();
+            int sessions = CommandJournal.recover(world, file.getPath()).size();
+            nanos = System.nanoTime() - start;
+            report.printf("CommandJournal.recover: %d commands, %d sessions, " +
+                "%d KB, %.1f ms%n", total, sessions, file.length() / 1024, nanos / 1e6);
+            file.delete();
+        }
+        catch(IOException e) {
+            report.println("CommandJournal: failed, " + e);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Measure what metrics add to each command, by running the same
+     * commands in a game made before metrics are turned on and in one made
+     * after. Metrics stay on from then on, so this is run last.
+     */
+    private void benchmarkMetrics()
+    {
+        Parser parser = new Parser(new StringReader(""), nowhere);
+        Game plain = new Game(parser);
+        GameMetrics.enable();
+        Game measured = new Game(parser);
+        measureCommands("metrics off", plain, parser, CommandWord.QUIT, "quit");
+        measureCommands("metrics on", measured, parser, CommandWord.QUIT, "quit");
+        measureCommands("metrics off", plain, parser, CommandWord.GO, "go east", "go west");
+        measureCommands("metrics on", measured, parser, CommandWord.GO, "go east", "go west");
+    }
+
+    /**
+     * Measure reading commands and looking up command words.
+     */
+    private void benchmarkParsing()
+    {
+        CommandWords words = new CommandWords();
+        measure("CommandWords.getCommandWord", i ->
+            words.getCommandWord(LINES[i % LINES.length]).ordinal());
+        measure("CommandWords.getCommandWord (abbreviated)", i ->
+            words.getCommandWord(ABBREVIATIONS[i % ABBREVIATIONS.length]).ordinal());
+
+        Parser lineParser = new Parser(new StringReader(""), nowhere);
+        measure("Parser.parseCommand", i ->
+            lineParser.parseCommand(LINES[i % LINES.length]).getCommandWord().ordinal());
+        measure("Parser.parseCommand + getSecondWord", i ->
+            secondWordLength(lineParser.parseCommand(LINES[i % LINES.length])));
+        measure("Scanner tokenizer (old parser)", i ->
+            secondWordLength(scannerParse(words, LINES[i % LINES.length])));
+
+        // getCommand reads from a stream, so give it one with a line
+        // for every call the warm up and measurement will make.
+        StringBuilder input = new StringBuilder();
+        for(int i = 0; i < 2 * iterations; i++) {
+            input.append(LINES[i % LINES.length]).append('\n');
+        }
+        Parser streamParser = new Parser(new StringReader(input.toString()), nowhere);
+        measure("Parser.getCommand", i ->
+            streamParser.getCommand().getCommandWord().ordinal());
+    }
+
+    /**
+     * Parse a line the way the parser used to: a new Scanner for every
+     * line, and the second word folded to lower case by the game. Kept
+     * as a baseline for the parser benchmarks.
+     */
+    static Command scannerParse(CommandWords words, String inputLine)
+    {
+        String word1 = null;
+        String word2 = null;
+        Scanner tokenizer = new Scanner(inputLine);
+        if(tokenizer.hasNext()) {
+            word1 = tokenizer.next();
+            if(tokenizer.hasNext()) {
+                word2 = tokenizer.next().toLowerCase();
+            }
+        }
+        return new Command(words.getCommandWord(word1), word2);
+    }
+
+    /**
+     * @return The length of a command's second word, or 0 if it has none.
+     */
+    static int secondWordLength(Command command)
+    {
+        return command.hasSecondWord() ? command.getSecondWord().length() : 0;
+    }
+
+    /**
+     * Measure processing each kind of command that does not need an
+     * item. The commands are chosen so that the game ends up where it
+     * started, so every iteration does the same work. The game must
+     * start in a room with an exit east.
+     * @param world The name of the world, used in the results.
+     * @param game  The game to run the commands in.
+     */
+    private void benchmarkCommands(String world, Game game)
+    {
+        Parser parser = new Parser(new StringReader(""), nowhere);
+        measureCommands(world, game, parser, CommandWord.GO, "go east", "go west");
+        measureCommands(world, game, parser, CommandWord.BACK, "go east", "back");
+        measureCommands(world, game, parser, CommandWord.LOOK, "look");
+        measureCommands(world, game, parser, CommandWord.HELP, "help");
+        measureCommands(world, game, parser, CommandWord.UNKNOWN, "dance");
+        measureCommands(world, game, parser, CommandWord.EXAMINE, "examine inventory");
+
+        Room here = game.getCurrentRoom();
+        measureCommands(world, game, parser, CommandWord.GOTO,
+                        "goto " + here.getExit("east").getName(), "goto " + here.getName());
+
+        try {
+            File saves = Files.createTempDirectory("benchmark").toFile();
+            saves.deleteOnExit();
+            game.setSaveDirectory(saves);
+            measureCommands(world, game, parser, CommandWord.SAVE, "save benchmark");
+            measureCommands(world, game, parser, CommandWord.LOAD, "load benchmark");
+            new File(saves, "benchmark.sav").delete();
+            saves.delete();
+        }
+        catch(IOException e) {
+            report.println("Game.processCommand SAVE: failed, " + e);
+        }
+        measureCommands(world, game, parser, CommandWord.QUIT, "quit");
+    }
+
+    /**
+     * Measure processing the commands that take, drop, examine and use
+     * items, in the shipped map's food stall, where there is a skewer to
+     * pick up. Each cycle of commands leaves the game as it found it;
+     * the jewel is used because using it anywhere but the castle gates
+     * does not use it up.
+     * @param game A game on the shipped map, started in the alley.
+     */
+    private void benchmarkItemCommands(Game game)
+    {
+        game.processCommand(new Command(CommandWord.GO, "east"));
+        game.processCommand(new Command(CommandWord.GO, "south"));
+        for(GameItem item : game.getSession().getWorld().getAllItems()) {
+            if(item.getName().equals("jewel")) {
+                game.getSession().addToInventory(item);
+            }
+        }
+        Parser parser = new Parser(new StringReader(""), nowhere);
+        measureCommands("shipped stall", game, parser, CommandWord.TAKE, "take skewer", "drop skewer");
+        game.processCommand(new Command(CommandWord.TAKE, "skewer"));
+        measureCommands("shipped stall", game, parser, CommandWord.DROP, "drop skewer", "take skewer");
+        measureCommands("shipped stall", game, parser, CommandWord.EXAMINE, "examine skewer");
+        measureCommands("shipped stall", game, parser, CommandWord.USE, "use jewel");
+    }
+
+    /**
+     * Measure Game.processCommand on a cycle of commands. The commands
+     * are parsed once up front so only processing is timed.
+     */
+    private void measureCommands(String world, Game game, Parser parser,
+                                 CommandWord word, String... lines)
+    {
+        Command[] commands = new Command[lines.length];
+        for(int i = 0; i < lines.length; i++) {
+            commands[i] = parser.parseCommand(lines[i]).copy();
+        }
+        measure("Game.processCommand " + word + " (" + world + ")", i ->
+            game.processCommand(commands[i % commands.length]) ? 1 : 0);
+    }
+
+    /**
+     * Compare a large world stored as Room objects with the same world
+     * stored in a RoomGraph: heap per room, and the cost of moving.
+     */
+    private void benchmarkCompactGraph()
+    {
+        generatedWorld = null;
+        System.gc();
+        long before = usedHeap();
+        World objects = buildGrid(worldSize);
+        System.gc();
+        long objectBytes = usedHeap() - before;
+
+        before = usedHeap();
+        World compact = buildCompactGrid(worldSize);
+        System.gc();
+        long compactBytes = usedHeap() - before;
+
+        int rooms = compact.getRoomCount();
+        report.printf("Heap per room: Room objects %d B, RoomGraph %d B (%.1fx less)%n",
+            objectBytes / rooms, compactBytes / rooms,
+            (double) objectBytes / Math.max(compactBytes, 1));
+
+        Room objectRoom = objects.getStartRoom();
+        Room compactRoom = compact.getStartRoom();
+        measure("Room.getExit (Room objects)", i ->
+            objectRoom.getExit((i & 1) == 0 ? "east" : "north").hashCode());
+        measure("Room.getExit (RoomGraph)", i ->
+            compactRoom.getExit((i & 1) == 0 ? "east" : "north").hashCode());
+
+        Parser parser = new Parser(new StringReader(""), nowhere);
+        generatedWorld = objects;
+        measureCommands("objects", newGeneratedGame(), parser, CommandWord.GO,
+                        "go east", "go west");
+        measureCommands("compact", new Game(parser, compact), parser,
+                        CommandWord.GO, "go east", "go west");
+    }
+
+    /**
+     * Measure the route finder on a generated world: how long it takes to
+     * set up, how long a route between two random rooms takes to find,
+     * and how long it takes to catch up when an exit is locked and then
+     * unlocked again.
+     */
+    private void benchmarkRoutes()
+    {
+        generatedWorld = null;
+        World world = new WorldGenerator(worldSize, 42).generate();
+        long start = System.nanoTime();
+        RouteFinder finder = world.getRouteFinder();
+        report.printf("RouteFinder: %d rooms, set up in %.1f ms%n",
+            world.getRoomCount(), (System.nanoTime() - start) / 1e6);
+
+        int rooms = world.getRoomCount();
+        int queries = 1024;
+        Room[] from = new Room[queries];
+        Room[] to = new Room[queries];
+        java.util.SplittableRandom random = new java.util.SplittableRandom(42);
+        long searched = 0;
+        for(int i = 0; i < queries; i++) {
+            from[i] = world.getRoom(random.nextInt(rooms));
+            to[i] = world.getRoom(random.nextInt(rooms));
+        }
+        measure("RouteFinder.findRoute (generated)", i -> {
+            java.util.List<String> route = finder.findRoute(from[i % queries],
+                                                            to[i % queries]);
+            return route == null ? 0 : route.size();
+        });
+        for(int i = 0; i < queries; i++) {
+            finder.findRoute(from[i], to[i]);
+            searched += finder.getLastSearchSize();
+        }
+        report.printf("RouteFinder: %.1f rooms searched per route%n",
+                      (double) searched / queries);
+
+        // lock and unlock the first exit of random rooms, timing each
+        int changes = 1000;
+        long redone = 0;
+        long nanos = 0;
+        for(int i = 0; i < changes; i++) {
+            Room room = world.getRoom(random.nextInt(rooms));
+            String direction = room.getExitDirections().iterator().next();
+            boolean locked = room.isLocked(direction);
+            start = System.nanoTime();
+            world.setLocked(room, direction, !locked);
+            redone += finder.getLastUpdateSize();
+            world.setLocked(room, direction, locked);
+            redone += finder.getLastUpdateSize();
+            nanos += System.nanoTime() - start;
+        }
+        report.printf("RouteFinder: lock change %.1f us, %.1f distances redone%n",
+                      nanos / 1e3 / (2 * changes), (double) redone / (2 * changes));
+    }
+
+    /**
+     * Measure building room descriptions.
+     * @param world The name of the world, used in the results.
+     * @param room  A room of that world.
+     */
+    private void benchmarkDescriptions(String world, Room room)
+    {
+        measure("Room.getLongDescription (" + world + ")", i ->
+            room.getLongDescription().length());
+    }
+
+    /**
+     * Warm an operation up, then time it and count what it allocates.
+     * @param name      The name the results are printed under.
+     * @param operation The operation to measure.
+     */
+    private void measure(String name, Operation operation)
+    {
+        long result = 0;
+        for(int i = 0; i < iterations; i++) {
+            result += operation.run(i);
+        }
+
+        long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for(int i = 0; i < iterations; i++) {
+            result += operation.run(i);
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getCurrentThreadAllocatedBytes() - bytesBefore;
+        sink = result;
+
+        report.printf("%-40s %12.1f %10.1f %10.1f%n", name,
+            (double) nanos / iterations, (double) bytes / iterations,
+            bytes * 1e3 / Math.max(nanos, 1));
+    }
+
+    /**
+     * @return A game on the shipped map, standing in the alleyway so
+     * that "go east" and "go west" both lead somewhere.
+     */
+    private Game newShippedGame()
+    {
+        Game game = new Game(new Parser(new StringReader(""), nowhere));
+        game.processCommand(new Command(CommandWord.GO, "east"));
+        return game;
+    }
+
+    /**
+     * @return A game on a generated world, started in the middle of it.
+     */
+    private Game newGeneratedGame()
+    {
+        if(generatedWorld == null) {
+            generatedWorld = buildGrid(worldSize);
+        }
+        return new Game(new Parser(new StringReader(""), nowhere), generatedWorld);
+    }
+
+    /**
+     * Build a world that is a square grid of rooms where every room has
+     * exits to its neighbours in all four directions.
+     * @param size The number of rooms wanted (rounded to a square).
+     * @return The world, starting in the middle of the grid.
+     */
+    public static World buildGrid(int size)
+    {
+        int side = Math.max(2, (int) Math.sqrt(size));
+        World world = new World();
+        Room[] rooms = new Room[side * side];
+        for(int i = 0; i < rooms.length; i++) {
+            rooms[i] = world.addRoom("room" + i,
+                                     new Room(DESCRIPTIONS[i % DESCRIPTIONS.length]));
+        }
+        for(int row = 0; row < side; row++) {
+            for(int col = 0; col < side; col++) {
+                Room room = rooms[row * side + col];
+                if(col > 0) {
+                    room.setExit("west", rooms[row * side + col - 1]);
+                }
+                if(col < side - 1) {
+                    room.setExit("east", rooms[row * side + col + 1]);
+                }
+                if(row > 0) {
+                    room.setExit("north", rooms[(row - 1) * side + col]);
+                }
+                if(row < side - 1) {
+                    room.setExit("south", rooms[(row + 1) * side + col]);
+                }
+            }
+        }
+        world.setStartRoom(rooms[(side / 2) * side + side / 2]);
+        return world;
+    }
+
+    /**
+     * Build the same grid as buildGrid, stored in a RoomGraph. The rooms
+     * are not given names, so they are called "#" and their id.
+     * @param size The number of rooms wanted (rounded to a square).
+     * @return The world, starting in the middle of the grid.
+     */
+    public static World buildCompactGrid(int size)
+    {
+        int side = Math.max(2, (int) Math.sqrt(size));
+        RoomGraph graph = new RoomGraph(side * side);
+        for(int i = 0; i < side * side; i++) {
+            graph.addRoom(null, DESCRIPTIONS[i % DESCRIPTIONS.length], false);
+        }
+        for(int row = 0; row < side; row++) {
+            for(int col = 0; col < side; col++) {
+                int room = row * side + col;
+                if(col > 0) {
+                    graph.addExit(room, "west", room - 1);
+                }
+                if(col < side - 1) {
+                    graph.addExit(room, "east", room + 1);
+                }
+                if(row > 0) {
+                    graph.addExit(room, "north", room - side);
+                }
+                if(row < side - 1) {
+                    graph.addExit(room, "south", room + side);
+                }
+            }
+        }
+        graph.build();
+        World world = new World(graph);
+        world.setStartRoom(graph.room((side / 2) * side + side / 2));
+        return world;
+    }
+
+    /**
+     * Run the benchmark suite.
+     * Usage: java Benchmark [iterations] [worldSize]
+     */
+    public static void main(String[] args)
+    {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int worldSize = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        new Benchmark(iterations, worldSize, System.out).runAll();
+    }
+}
@@ -0,0 +1,463 @@
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A BotLoadGenerator plays many games at once in this process, one bot
+ * for each player, to find out how many players a host can take. Each
+ * bot waits a random think time (exponentially distributed around a
+ * mean, which may be zero), then picks a command from a weighted mix of
+ * go, back, take, drop, use and look. Moves are always through an exit
+ * the bot's room has, found with Room.getExit; take picks an item in
+ * the room, and drop and use one the bot carries. When there is nothing
+ * to take, drop or use, the bot moves instead. A bot whose game ends
+ * (by using the right item in the right place) starts a new one.
+ *
+ * Bots hand their games ready-made Commands, so parsing (which
+ * Benchmark measures) is left out, and their responses are thrown
+ * away. The Commands are made once and shared by all the bots, and items
+ * are picked without copying the lists they are in, so the bytes
+ * allocated per command are the game's own. A few worker threads share
+ * the bots between them, so a hundred thousand players need no more
+ * threads than a handful.
+ *
+ * For each number of bots, from one up to the most asked for by powers
+ * of ten, it reports the commands processed per second, latency
+ * percentiles for each command word (from GameMetrics, which is told to
+ * time every command), the bytes allocated per command, how often and
+ * for how long the garbage collector ran, and the heap used per session,
+ * both when the bots are new and after they have played.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class BotLoadGenerator
+{
+    // what bots can do, in the order weights are given
+    private static final CommandWord[] ACTIONS = {
+        CommandWord.GO, CommandWord.BACK, CommandWord.TAKE,
+        CommandWord.DROP, CommandWord.USE, CommandWord.LOOK
+    };
+    private static final int[] DEFAULT_WEIGHTS = { 50, 10, 10, 10, 5, 15 };
+
+    private World world;
+    private String[] directions;        // every exit direction in the world
+
+    // the commands bots send: a move in each direction (and nowhere),
+    // and for each item command word, one command per item name
+    private Command[] moves;
+    private Command[] plainCommands;    // indexed like ACTIONS
+    private EnumMap<CommandWord, ConcurrentHashMap<String, Command>> itemCommands;
+    private int[] cumulativeWeights;    // indexed like ACTIONS
+    private long thinkNanos;            // the mean think time
+    private int threadCount;
+    private GameMetrics metrics;
+    private com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Create a load generator.
+     * @param world       The world the bots play in.
+     * @param weights     How often bots go, go back, take, drop, use and
+     *                    look, relative to each other.
+     * @param thinkMillis How long a bot waits between commands on
+     *                    average, in milliseconds.
+     * @param threadCount How many threads the bots share.
+     */
+    public BotLoadGenerator(World world, int[] weights, double thinkMillis, int threadCount)
+    {
+        if(weights.length != ACTIONS.length) {
+            throw new IllegalArgumentException("Need " + ACTIONS.length + " weights");
+        }
+        this.world = world;
+        this.thinkNanos = (long) (thinkMillis * 1e6);
+        this.threadCount = Math.max(1, threadCount);
+        cumulativeWeights = new int[weights.length];
+        int total = 0;
+        for(int i = 0; i < weights.length; i++) {
+            if(weights[i] < 0) {
+                throw new IllegalArgumentException("Weights cannot be negative");
+            }
+            total += weights[i];
+            cumulativeWeights[i] = total;
+        }
+        if(total == 0) {
+            throw new IllegalArgumentException("At least one weight must be positive");
+        }
+        directions = findDirections(world);
+        moves = new Command[directions.length + 1];
+        for(int i = 0; i < directions.length; i++) {
+            moves[i] = new Command(CommandWord.GO, directions[i]);
+        }
+        moves[directions.length] = new Command(CommandWord.GO, null);
+        plainCommands = new Command[ACTIONS.length];
+        itemCommands = new EnumMap<>(CommandWord.class);
+        for(int i = 0; i < ACTIONS.length; i++) {
+            plainCommands[i] = new Command(ACTIONS[i], null);
+            itemCommands.put(ACTIONS[i], new ConcurrentHashMap<>());
+        }
+
+        // every command is timed, so the tail percentiles are not guesses
+        if(System.getProperty("game.metrics.sample") == null) {
+            System.setProperty("game.metrics.sample", "1");
+        }
+        metrics = GameMetrics.enable();
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Collect the names of the directions exits go in, looking at enough
+     * rooms to be sure of finding them all in a generated world.
+     */
+    private static String[] findDirections(World world)
+    {
+        Set<String> found = new LinkedHashSet<String>();
+        int step = Math.max(1, world.getRoomCount() / 100_000);
+        for(int id = 0; id < world.getRoomCount(); id += step) {
+            found.addAll(world.getRoom(id).getExitDirections());
+        }
+        return found.toArray(new String[0]);
+    }
+
+    /**
+     * Run ever more bots, ten times as many each time, and print a report
+     * for each number.
+     * @param maxBots        The most bots to run.
+     * @param secondsEach    How long to run each number of bots for.
+     * @param report         Where the report is printed.
+     * @throws InterruptedException If interrupted while bots are running.
+     */
+    public void scale(int maxBots, double secondsEach, PrintStream report)
+        throws InterruptedException
+    {
+        report.printf("%d rooms, think time %.1f ms, %d thread%s, mix %s%n",
+            world.getRoomCount(), thinkNanos / 1e6, threadCount,
+            threadCount == 1 ? "" : "s", describeMix());
+        // let the JIT compile the game before anything is measured
+        run(Math.min(maxBots, 100), Math.min(secondsEach, 2), null);
+
+        for(long bots = 1; bots <= maxBots; bots *= 10) {
+            run((int) bots, secondsEach, report);
+        }
+        if(!isPowerOfTen(maxBots)) {
+            run(maxBots, secondsEach, report);
+        }
+    }
+
+    private static boolean isPowerOfTen(long n)
+    {
+        while(n >= 10 && n % 10 == 0) {
+            n /= 10;
+        }
+        return n == 1;
+    }
+
+    /**
+     * Run some number of bots for a while.
+     * @param botCount How many bots to run.
+     * @param seconds  How long to run them for.
+     * @param report   Where the results are printed, or null to print
+     *                 nothing (for warming up).
+     * @throws InterruptedException If interrupted while bots are running.
+     */
+    public void run(int botCount, double seconds, PrintStream report)
+        throws InterruptedException
+    {
+        System.gc();
+        long heapBefore = usedHeap();
+        Bot[] bots = new Bot[botCount];
+        for(int i = 0; i < botCount; i++) {
+            bots[i] = new Bot(i);
+        }
+        System.gc();
+        long heapNew = usedHeap() - heapBefore;
+
+        metrics.reset();
+        long collections = collectionCount();
+        long collectionMillis = collectionMillis();
+        AtomicLong commands = new AtomicLong();
+        AtomicLong allocated = new AtomicLong();
+        long start = System.nanoTime();
+        long deadline = start + (long) (seconds * 1e9);
+        Thread[] workers = new Thread[threadCount];
+        for(int t = 0; t < threadCount; t++) {
+            int first = t;
+            workers[t] = new Thread(() -> {
+                long bytesBefore = threads.getCurrentThreadAllocatedBytes();
+                commands.addAndGet(work(bots, first, deadline));
+                allocated.addAndGet(threads.getCurrentThreadAllocatedBytes() - bytesBefore);
+            }, "bots-" + t);
+            workers[t].start();
+        }
+        for(Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        collections = collectionCount() - collections;
+        collectionMillis = collectionMillis() - collectionMillis;
+
+        System.gc();
+        long heapPlayed = usedHeap() - heapBefore;
+        for(Bot bot : bots) {
+            bot.game.getSession().leave();
+        }
+        if(report == null) {
+            return;
+        }
+
+        long total = commands.get();
+        report.printf("%,d bots: %,.0f commands/sec, %d B/command allocated, " +
+            "GC %d times for %d ms (%.1f%% of the run)%n",
+            botCount, total * 1e9 / elapsed, total == 0 ? 0 : allocated.get() / total,
+            collections, collectionMillis, collectionMillis * 1e8 / elapsed);
+        if(botCount >= 100) {
+            // with fewer, whatever else the heap holds swamps the sessions
+            report.printf("  heap per session: %,d B new, %,d B after playing%n",
+                heapNew / botCount, heapPlayed / botCount);
+        }
+        report.printf("  %-6s %12s %10s %10s %10s%n", "", "commands", "p50 us", "p99 us", "p99.9 us");
+        for(CommandWord word : ACTIONS) {
+            long count = metrics.getCommandCount(word);
+            if(count > 0) {
+                report.printf("  %-6s %,12d %10.2f %10.2f %10.2f%n", word, count,
+                    metrics.getLatencyPercentile(word, 50) / 1e3,
+                    metrics.getLatencyPercentile(word, 99) / 1e3,
+                    metrics.getLatencyPercentile(word, 99.9) / 1e3);
+            }
+        }
+    }
+
+    /**
+     * Play the bots that are a worker's share (every threadCount'th one,
+     * from the first) until the deadline, each whenever its think time is
+     * up.
+     * @return How many commands were processed.
+     */
+    private long work(Bot[] bots, int first, long deadline)
+    {
+        long count = 0;
+        long now = System.nanoTime();
+        while(now < deadline) {
+            long nextDue = deadline;
+            for(int i = first; i < bots.length; i += threadCount) {
+                Bot bot = bots[i];
+                if(bot.due <= now) {
+                    bot.act();
+                    count++;
+                    now = System.nanoTime();
+                    bot.due = now + think(bot.random);
+                }
+                nextDue = Math.min(nextDue, bot.due);
+            }
+            if(nextDue > now) {
+                LockSupport.parkNanos(nextDue - now);
+            }
+            now = System.nanoTime();
+        }
+        return count;
+    }
+
+    /**
+     * @return A think time, exponentially distributed about the mean.
+     */
+    private long think(SplittableRandom random)
+    {
+        if(thinkNanos == 0) {
+            return 0;
+        }
+        return (long) (-Math.log(1 - random.nextDouble()) * thinkNanos);
+    }
+
+    private String describeMix()
+    {
+        StringBuilder mix = new StringBuilder();
+        int previous = 0;
+        for(int i = 0; i < ACTIONS.length; i++) {
+            if(i > 0) {
+                mix.append(',');
+            }
+            mix.append(ACTIONS[i]).append('=').append(cumulativeWeights[i] - previous);
+            previous = cumulativeWeights[i];
+        }
+        return mix.toString();
+    }
+
+    private static long usedHeap()
+    {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long collectionCount()
+    {
+        long count = 0;
+        for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long collectionMillis()
+    {
+        long millis = 0;
+        for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * One simulated player, with a game of their own.
+     */
+    private class Bot
+    {
+        private Game game;
+        private SplittableRandom random;
+        private long due;               // when the next command is sent
+
+        Bot(long seed)
+        {
+            random = new SplittableRandom(seed);
+            game = newGame();
+        }
+
+        private Game newGame()
+        {
+            return new Game(new Parser(new StringReader(""), GameOutput.discard()), world);
+        }
+
+        /**
+         * Send the game one command from the mix.
+         */
+        void act()
+        {
+            int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int action = 0;
+            while(pick >= cumulativeWeights[action]) {
+                action++;
+            }
+            if(game.processCommand(command(action))) {
+                game.getSession().leave();
+                game = newGame();
+            }
+        }
+
+        /**
+         * @return A command for one of the actions, or a move if there is
+         * nothing to do it with.
+         */
+        private Command command(int action)
+        {
+            CommandWord word = ACTIONS[action];
+            Session session = game.getSession();
+            Room room = session.getCurrentRoom();
+            switch(word) {
+                case BACK: case LOOK:
+                    return plainCommands[action];
+                case TAKE:
+                    ItemContainer items = session.getItems(room);
+                    if(items != null && !items.isEmpty()) {
+                        return itemCommand(word, items.get(random.nextInt(items.size())));
+                    }
+                    break;
+                case DROP: case USE:
+                    int carried = session.getInventorySize();
+                    if(carried > 0) {
+                        return itemCommand(word, session.getInventoryItem(random.nextInt(carried)));
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return moves[pickExit(room)];
+        }
+
+        /**
+         * @return The command doing something with an item, made the
+         * first time any bot wants it.
+         */
+        private Command itemCommand(CommandWord word, GameItem item)
+        {
+            ConcurrentHashMap<String, Command> commands = itemCommands.get(word);
+            Command command = commands.get(item.getName());
+            if(command == null) {
+                command = new Command(word, item.getName());
+                commands.putIfAbsent(item.getName(), command);
+            }
+            return command;
+        }
+
+        /**
+         * @return The index of the direction of one of a room's exits,
+         * starting the search at a random direction, or directions.length
+         * if it has none (and the game asks where to go).
+         */
+        private int pickExit(Room room)
+        {
+            int start = random.nextInt(Math.max(1, directions.length));
+            for(int i = 0; i < directions.length; i++) {
+                int direction = (start + i) % directions.length;
+                if(room.getExit(directions[direction]) != null) {
+                    return direction;
+                }
+            }
+            return directions.length;
+        }
+    }
+
+    /**
+     * @param text Weights like "go=50,back=10,take=10,drop=10,use=5,look=15";
+     *             actions left out get no weight.
+     * @return The weights, indexed like ACTIONS.
+     */
+    private static int[] parseMix(String text)
+    {
+        int[] weights = new int[ACTIONS.length];
+        for(String entry : text.split(",")) {
+            String[] pair = entry.trim().split("=");
+            CommandWord word = CommandWord.valueOf(pair[0].trim().toUpperCase(Locale.ROOT));
+            int i = 0;
+            while(i < ACTIONS.length && ACTIONS[i] != word) {
+                i++;
+            }
+            if(i == ACTIONS.length || pair.length != 2) {
+                throw new IllegalArgumentException("Bots cannot " + entry);
+            }
+            weights[i] = Integer.parseInt(pair[1].trim());
+        }
+        return weights;
+    }
+
+    /**
+     * Run from one bot up to many and report on each.
+     * Usage: java BotLoadGenerator [maxBots] [seconds] [thinkMillis] [mix] [rooms] [threads]
+     * where rooms is how many rooms to generate, or 0 for the shipped map.
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        int maxBots = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 5;
+        double think = args.length > 2 ? Double.parseDouble(args[2]) : 0;
+        int[] weights = args.length > 3 ? parseMix(args[3]) : DEFAULT_WEIGHTS;
+        int rooms = args.length > 4 ? Integer.parseInt(args[4]) : 100_000;
+        int threadCount = args.length > 5 ? Integer.parseInt(args[5])
+                                          : Runtime.getRuntime().availableProcessors();
+
+        // a generated world, with an item every hundred rooms so there
+        // is something to take
+        World world = rooms == 0 ? World.getShipped()
+            : new WorldGenerator(rooms, 3.0, 0.05, 0.05, Math.max(1, rooms / 100), 42).generate();
+        new BotLoadGenerator(world, weights, think, threadCount)
+            .scale(maxBots, seconds, System.out);
+    }
+}
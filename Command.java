@@ -12,6 +12,10 @@
  *
  * If the command had only one word, then the second word is <null>.
  * 
+ * Commands made by the Parser point into the parser's line buffer and
+ * are reused for the next line, so words are only turned into Strings
+ * when they are asked for. Use copy() to keep a command for longer.
+ * 
  *  base code written by Michael Kölling and David J. Barnes 2016.02.29
  *  
  *  @author Artemis MacDuffie
@@ -23,6 +27,13 @@ public class Command
     private CommandWord commandWord;
     private String secondWord;
 
+    // words of the line this command was parsed from, as offsets into a
+    // buffer owned by the parser (null if not made by a parser)
+    private char[] text;
+    private int[] wordStarts;
+    private int[] wordEnds;
+    private int wordCount;
+
     /**
      * Create a command object. First and second words must be supplied, but
      * the second may be null.
@@ -34,6 +45,44 @@ public class Command
     {
         this.commandWord = commandWord;
         this.secondWord = secondWord;
+        wordCount = secondWord == null ? 1 : 2;
+    }
+
+    /**
+     * Create an empty command for a parser to fill in and reuse.
+     */
+    Command()
+    {
+        commandWord = CommandWord.UNKNOWN;
+        wordCount = 0;
+    }
+
+    /**
+     * Point this command at a newly parsed line.
+     * @param commandWord The CommandWord of the first word.
+     * @param text        The buffer holding the line.
+     * @param wordStarts  The offset of each word in the buffer.
+     * @param wordEnds    The offset just past each word in the buffer.
+     * @param wordCount   The number of words on the line.
+     */
+    void set(CommandWord commandWord, char[] text, int[] wordStarts,
+             int[] wordEnds, int wordCount)
+    {
+        this.commandWord = commandWord;
+        this.text = text;
+        this.wordStarts = wordStarts;
+        this.wordEnds = wordEnds;
+        this.wordCount = wordCount;
+        secondWord = null;
+    }
+
+    /**
+     * @return A copy of this command that does not change when the parser
+     * reads another line.
+     */
+    public Command copy()
+    {
+        return new Command(commandWord, getSecondWord());
     }
 
     /**
@@ -51,9 +100,38 @@ public class Command
      */
     public String getSecondWord()
     {
+        if(secondWord == null && text != null && wordCount > 1) {
+            secondWord = getWord(1);
+        }
         return secondWord;
     }
 
+    /**
+     * Return any word of the command, counting the command word as 0.
+     * A new String is made each time, so prefer getSecondWord().
+     * @param index The number of the word wanted.
+     * @return The word, or null if the command has no such word.
+     */
+    public String getWord(int index)
+    {
+        if(index >= wordCount) {
+            return null;
+        }
+        if(text == null) {
+            return index == 0 ? commandWord.toString() : secondWord;
+        }
+        return new String(text, wordStarts[index], wordEnds[index] - wordStarts[index]);
+    }
+
+    /**
+     * @return The number of words in this command, including the
+     * command word.
+     */
+    public int getWordCount()
+    {
+        return wordCount;
+    }
+
     /**
      * @return true if this command was not understood.
      */
@@ -67,7 +145,7 @@ public class Command
      */
     public boolean hasSecondWord()
     {
-        return (secondWord != null);
+        return (wordCount > 1);
     }
 }
 
@@ -0,0 +1,530 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A CommandJournal is an append-only file recording the commands that
+ * change each session, so that the sessions can be rebuilt after a
+ * crash without saving a snapshot after every move. Any number of
+ * sessions (told apart by a number, their key) share one journal.
+ *
+ * Adding a record and making it durable are separate steps. append()
+ * only copies the record into memory and returns its position; commit()
+ * waits until everything up to that position is on disk. The first
+ * thread to commit writes out and syncs every record added so far, and
+ * the threads arriving meanwhile wait for it and are covered by the same
+ * sync, or by the next one. So under load one fsync covers the commands
+ * of many sessions (group commit), and a lone player still only waits
+ * for their own.
+ *
+ * A session can also be checkpointed: a snapshot of it (see
+ * SessionSnapshot) is added to the journal, and only the commands after
+ * it need replaying. A session that is over can be ended, after which
+ * recovery leaves it out. recover() reads a journal in one pass and
+ * replays each session's commands on top of its last snapshot through
+ * Game.processCommand.
+ *
+ * A journal only grows while it is open. compact() recovers a journal
+ * and rewrites it as one snapshot for each session still in it, so a
+ * server that compacts its journal each time it starts keeps no more
+ * than the sessions left over from its last run and the commands played
+ * since.
+ *
+ * The file starts with a header, followed by records of the form
+ *
+ *     length  crc  type  session  body
+ *
+ * where the CRC-32C covers everything after it. A record cut short or
+ * damaged by a crash ends the journal: it and anything after it were
+ * never committed. Commands are recorded by their CommandWord's name, so
+ * the journal still reads if command words are added or reordered.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class CommandJournal implements Closeable
+{
+    private static final int MAGIC = 0x57424a4c;    // "WBJL"
+    private static final int VERSION = 2;           // 2 added END records
+    private static final int HEADER_SIZE = 8;
+
+    // record types
+    private static final byte COMMAND = 1;
+    private static final byte SNAPSHOT = 2;
+    private static final byte END = 3;
+
+    private static final int MAX_RECORD = 1 << 24;
+    private static final int NO_WORD = 0xFFFF;      // length of a missing word
+
+    private FileChannel file;
+    private CRC32C crc;
+
+    // records added but not yet written; guarded by this
+    private ByteBuffer pending;
+    private long appended;          // position after the last record added
+    private long durable;           // position up to which the file is synced
+    private boolean writing;        // whether a thread is writing out a batch
+    private IOException failure;    // set if a write failed, after which all fail
+    private ByteBuffer spare;       // the other buffer, swapped with pending
+
+    private long syncCount;
+    private long recordCount;
+
+    /**
+     * Open a journal for appending, creating it if it does not exist.
+     * @param fileName The name of the journal file.
+     * @throws IOException If the file cannot be opened, or is not a journal.
+     */
+    public CommandJournal(String fileName) throws IOException
+    {
+        file = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        crc = new CRC32C();
+        pending = ByteBuffer.allocate(1 << 16);
+        spare = ByteBuffer.allocate(1 << 16);
+        if(file.size() == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            while(header.hasRemaining()) {
+                file.write(header);
+            }
+            file.force(true);
+        }
+        else {
+            // carry on after the last whole record, dropping a torn one
+            long end;
+            try(InputStream in = Files.newInputStream(Paths.get(fileName))) {
+                end = scan(in, null);
+            }
+            file.truncate(end);
+        }
+        appended = file.size();
+        durable = appended;
+        file.position(appended);
+    }
+
+    /**
+     * Add a command a session has processed to the journal. The command
+     * is not durable until commit() has been called with the position
+     * returned.
+     * @param session The session's key.
+     * @param command The command.
+     * @return The position in the journal after the record.
+     */
+    public long append(long session, Command command)
+    {
+        byte[] word = command.getCommandWord().name().getBytes(StandardCharsets.UTF_8);
+        byte[] secondWord = command.hasSecondWord() ?
+            command.getSecondWord().getBytes(StandardCharsets.UTF_8) : null;
+        if(secondWord != null && secondWord.length >= NO_WORD) {
+            throw new IllegalArgumentException("command too long to journal");
+        }
+        int bodyLength = 2 + word.length + 2 + (secondWord == null ? 0 : secondWord.length);
+        synchronized(this) {
+            int start = startRecord(COMMAND, session, bodyLength);
+            pending.putShort((short) word.length).put(word);
+            if(secondWord == null) {
+                pending.putShort((short) NO_WORD);
+            }
+            else {
+                pending.putShort((short) secondWord.length).put(secondWord);
+            }
+            return endRecord(start);
+        }
+    }
+
+    /**
+     * Add a snapshot of a session to the journal, so that recovery only
+     * needs the commands after it. Like append, it is not durable until
+     * committed.
+     * @param session The session's key.
+     * @param state   The session.
+     * @return The position in the journal after the record.
+     */
+    public long checkpoint(long session, Session state)
+    {
+        byte[] snapshot = SessionSnapshot.encode(state);
+        if(snapshot.length > MAX_RECORD) {
+            throw new IllegalArgumentException("session too large to checkpoint");
+        }
+        synchronized(this) {
+            int start = startRecord(SNAPSHOT, session, snapshot.length);
+            pending.put(snapshot);
+            return endRecord(start);
+        }
+    }
+
+    /**
+     * Note that a session is over, so that recovery leaves it out. Like
+     * append, it is not durable until committed.
+     * @param session The session's key.
+     * @return The position in the journal after the record.
+     */
+    public synchronized long end(long session)
+    {
+        int start = startRecord(END, session, 0);
+        return endRecord(start);
+    }
+
+    /**
+     * Begin a record in the pending buffer, leaving its CRC to be filled
+     * in by endRecord.
+     * @return Where the record starts in the buffer.
+     */
+    private int startRecord(byte type, long session, int bodyLength)
+    {
+        int size = 4 + 4 + 1 + 8 + bodyLength;
+        if(pending.remaining() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(
+                Math.max(pending.capacity() * 2, pending.position() + size));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        int start = pending.position();
+        pending.putInt(size - 8).putInt(0).put(type).putLong(session);
+        return start;
+    }
+
+    /**
+     * Fill in the CRC of the record that starts at the given place in the
+     * pending buffer, and note where it ends.
+     * @return The position in the journal after the record.
+     */
+    private long endRecord(int start)
+    {
+        int end = pending.position();
+        crc.reset();
+        crc.update(pending.array(), start + 8, end - start - 8);
+        pending.putInt(start + 4, (int) crc.getValue());
+        appended += end - start;
+        recordCount++;
+        return appended;
+    }
+
+    /**
+     * Wait until the journal is durable up to a position returned by
+     * append or checkpoint. If no other thread is writing, this thread
+     * writes out and syncs everything added so far; otherwise it waits
+     * for that thread.
+     * @param position The position.
+     * @throws IOException If the journal could not be written.
+     */
+    public void commit(long position) throws IOException
+    {
+        ByteBuffer batch;
+        long batchEnd;
+        synchronized(this) {
+            while(true) {
+                if(failure != null) {
+                    throw failure;
+                }
+                if(durable >= position) {
+                    return;
+                }
+                if(!writing) {
+                    break;
+                }
+                waitForWriter();
+            }
+            // this thread writes: take everything pending
+            writing = true;
+            batch = pending;
+            batchEnd = appended;
+            pending = spare;
+            pending.clear();
+        }
+
+        IOException error = null;
+        try {
+            batch.flip();
+            while(batch.hasRemaining()) {
+                file.write(batch);
+            }
+            file.force(false);
+        }
+        catch(IOException e) {
+            error = e;
+        }
+
+        synchronized(this) {
+            batch.clear();
+            spare = batch;
+            writing = false;
+            if(error != null) {
+                failure = error;
+            }
+            else {
+                durable = batchEnd;
+                syncCount++;
+            }
+            notifyAll();
+            if(failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Wait for the thread writing a batch to finish.
+     */
+    private void waitForWriter() throws IOException
+    {
+        try {
+            wait();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted waiting for the journal");
+        }
+    }
+
+    /**
+     * @return The number of records added since the journal was opened.
+     */
+    public synchronized long getRecordCount()
+    {
+        return recordCount;
+    }
+
+    /**
+     * @return The number of times the journal has been synced to disk
+     * since it was opened. Records per sync shows how well commits are
+     * being grouped.
+     */
+    public synchronized long getSyncCount()
+    {
+        return syncCount;
+    }
+
+    /**
+     * Commit everything added and close the journal.
+     * @throws IOException If the journal could not be written.
+     */
+    public void close() throws IOException
+    {
+        long end;
+        synchronized(this) {
+            end = appended;
+        }
+        try {
+            commit(end);
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Rebuild every session in a journal: each starts from its last
+     * snapshot (or the world's start, if it has none) and has the
+     * commands recorded after it replayed.
+     * @param world    The world the sessions are played in.
+     * @param fileName The name of the journal file.
+     * @return The sessions, by key.
+     * @throws IOException If the journal cannot be read, or a snapshot in
+     * it is damaged.
+     */
+    public static Map<Long, Session> recover(World world, String fileName)
+        throws IOException
+    {
+        Replay replay = new Replay(world);
+        try(InputStream in = Files.newInputStream(Paths.get(fileName))) {
+            scan(in, replay);
+        }
+        Map<Long, Session> sessions = new HashMap<Long, Session>();
+        for(Map.Entry<Long, Game> entry : replay.games.entrySet()) {
+            sessions.put(entry.getKey(), entry.getValue().getSession());
+        }
+        return sessions;
+    }
+
+    /**
+     * Recover every session in a journal, then rewrite the journal as a
+     * snapshot of each of them, so it no longer holds the commands that
+     * led there or the sessions that have ended. The new journal is
+     * written beside the old one and then put in its place, so a crash
+     * part way through leaves one or the other. A journal that does not
+     * exist yet is created empty.
+     * @param world    The world the sessions are played in.
+     * @param fileName The name of the journal file.
+     * @return The sessions, by key.
+     * @throws IOException If the journal cannot be read or rewritten.
+     */
+    public static Map<Long, Session> compact(World world, String fileName)
+        throws IOException
+    {
+        Path path = Paths.get(fileName);
+        Map<Long, Session> sessions = Files.exists(path) ? recover(world, fileName)
+                                                         : new HashMap<Long, Session>();
+        Path compacted = Paths.get(fileName + ".compact");
+        Files.deleteIfExists(compacted);
+        try(CommandJournal journal = new CommandJournal(compacted.toString())) {
+            for(Map.Entry<Long, Session> entry : sessions.entrySet()) {
+                journal.checkpoint(entry.getKey(), entry.getValue());
+            }
+        }
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        return sessions;
+    }
+
+    /**
+     * Replays records into games, one per session.
+     */
+    private static class Replay
+    {
+        private World world;
+        private Parser parser;
+        private HashMap<Long, Game> games;
+
+        Replay(World world)
+        {
+            this.world = world;
+            // nobody is listening to a replay
+            parser = new Parser(new StringReader(""), GameOutput.discard());
+            games = new HashMap<Long, Game>();
+        }
+
+        void command(long session, Command command)
+        {
+            Game game = games.get(session);
+            if(game == null) {
+                game = new Game(parser, world);
+                games.put(session, game);
+            }
+            game.replayCommand(command);
+        }
+
+        void snapshot(long session, byte[] snapshot) throws IOException
+        {
+            Game game = new Game(parser, SessionSnapshot.decode(world, snapshot));
+            Game replaced = games.put(session, game);
+            if(replaced != null) {
+                replaced.getSession().leave();
+            }
+        }
+
+        void end(long session)
+        {
+            Game ended = games.remove(session);
+            if(ended != null) {
+                ended.getSession().leave();
+            }
+        }
+    }
+
+    /**
+     * Read a journal's records, passing each to a replay, until the end
+     * or the first record that is incomplete or damaged.
+     * @param in     The journal's contents.
+     * @param replay Where the records go, or null to only check them.
+     * @return The position after the last whole record.
+     */
+    private static long scan(InputStream in, Replay replay) throws IOException
+    {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        if(data.readInt() != MAGIC) {
+            throw new IOException("not a command journal");
+        }
+        int version = data.readInt();
+        if(version < 1 || version > VERSION) {
+            throw new IOException("journal written by an unknown version (" +
+                                  version + ")");
+        }
+        long position = HEADER_SIZE;
+        CRC32C crc = new CRC32C();
+        byte[] record = new byte[256];
+        while(true) {
+            int length;
+            int expected;
+            try {
+                length = data.readInt();
+                expected = data.readInt();
+                if(length < 9 || length > MAX_RECORD + 9) {
+                    return position;
+                }
+                if(record.length < length) {
+                    record = new byte[Math.max(length, record.length * 2)];
+                }
+                data.readFully(record, 0, length);
+            }
+            catch(EOFException e) {
+                return position;
+            }
+            crc.reset();
+            crc.update(record, 0, length);
+            if((int) crc.getValue() != expected) {
+                return position;
+            }
+            if(replay != null) {
+                ByteBuffer body = ByteBuffer.wrap(record, 0, length);
+                byte type = body.get();
+                long session = body.getLong();
+                if(type == COMMAND) {
+                    replay.command(session, readCommand(body));
+                }
+                else if(type == SNAPSHOT) {
+                    byte[] snapshot = new byte[body.remaining()];
+                    body.get(snapshot);
+                    replay.snapshot(session, snapshot);
+                }
+                else if(type == END) {
+                    replay.end(session);
+                }
+            }
+            position += 8 + length;
+        }
+    }
+
+    /**
+     * Turn the body of a command record back into a command.
+     */
+    private static Command readCommand(ByteBuffer body)
+    {
+        String name = readWord(body);
+        String secondWord = readWord(body);
+        CommandWord word;
+        try {
+            word = CommandWord.valueOf(name);
+        }
+        catch(IllegalArgumentException e) {
+            // a command word that has since been taken out
+            word = CommandWord.UNKNOWN;
+        }
+        return new Command(word, secondWord);
+    }
+
+    /**
+     * @return A word written as its length and UTF-8 bytes, or null if
+     * the length is NO_WORD.
+     */
+    private static String readWord(ByteBuffer body)
+    {
+        int length = body.getShort() & 0xFFFF;
+        if(length == NO_WORD) {
+            return null;
+        }
+        String word = new String(body.array(), body.arrayOffset() + body.position(),
+                                 length, StandardCharsets.UTF_8);
+        body.position(body.position() + length);
+        return word;
+    }
+}
@@ -12,7 +12,8 @@ public enum CommandWord
     // A value for each command word along with its
     // corresponding user interface string.
     GO("go"), QUIT("quit"), HELP("help"), UNKNOWN("?"), LOOK("look"), TAKE("take"),
-        EXAMINE("examine"), USE("use"), BACK("back"), DROP("drop");
+        EXAMINE("examine"), USE("use"), BACK("back"), DROP("drop"), GOTO("goto"),
+        SAVE("save"), LOAD("load");
     
     // The command string.
     private String commandString;
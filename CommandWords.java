@@ -1,4 +1,5 @@
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * This class is part of the "The World Beside Us" application.
@@ -6,6 +7,25 @@ import java.util.HashMap;
  * This class holds an enumeration of all command words known to the game.
  * It is used to recognise commands as they are typed in.
  *
+ * Words are matched without regard to case, and may be shortened to any
+ * prefix that only one command word starts with, so "ex" means "examine".
+ * A word that is a command word in full always means that command, even
+ * if it starts another ("go" is not taken as a short "goto").
+ *
+ * The command words are kept in a small trie, built once, that is walked
+ * one character at a time, so looking a word up makes no new objects.
+ * Each node of the trie knows the command word ending there, and the one
+ * command word below it if there is only one, which is what an
+ * abbreviation stands for.
+ *
+ * Words that are not recognised can be given suggestions: the command
+ * words a prefix is ambiguous between, or else those a typing slip or two
+ * away from it.
+ *
+ * The words are those of a Messages catalog, so players can type commands
+ * in their own language. Whatever the language, a command is known to
+ * the rest of the game by its CommandWord.
+ *
  *  base code written by Michael Kölling and David J. Barnes 2016.02.29
  *  
  *  @author Artemis MacDuffie
@@ -14,38 +34,146 @@ import java.util.HashMap;
 
 public class CommandWords
 {
-    // A mapping between a command word and the CommandWord
-    // associated with it.
-    private HashMap<String, CommandWord> validCommands;
+    // the furthest a word can be from a command word to be suggested
+    private static final int MAX_SUGGESTION_DISTANCE = 2;
+
+    // The command words, in the order they are listed.
+    private CommandWord[] commandList;
+    private Messages messages;      // what each command word is typed as
+
+    // The trie. Node 0 is the root; each other node is one character.
+    private char[] nodeChar;
+    private int[] firstChild;       // -1 for none
+    private int[] nextSibling;      // -1 for none
+    private CommandWord[] wordAt;   // the command word ending at each node
+    private CommandWord[] onlyWord; // the only command word at or below it
 
     /**
-     * Constructor - initialise the command words.
+     * Constructor - initialise the command words, in the language of the
+     * default catalog.
      */
     public CommandWords()
     {
-        validCommands = new HashMap<>();
+        this(Messages.getDefault());
+    }
+
+    /**
+     * Initialise the command words in the language of a catalog.
+     * @param messages The catalog.
+     */
+    public CommandWords(Messages messages)
+    {
+        this.messages = messages;
+        List<CommandWord> commands = new ArrayList<>();
+        int characters = 0;
         for(CommandWord command : CommandWord.values()) {
             if(command != CommandWord.UNKNOWN) {
-                validCommands.put(command.toString(), command);
+                commands.add(command);
+                characters += messages.getWord(command).length();
+            }
+        }
+        commandList = commands.toArray(new CommandWord[0]);
+
+        nodeChar = new char[characters + 1];
+        firstChild = new int[characters + 1];
+        nextSibling = new int[characters + 1];
+        wordAt = new CommandWord[characters + 1];
+        onlyWord = new CommandWord[characters + 1];
+        firstChild[0] = -1;
+        nextSibling[0] = -1;
+        int nodeCount = 1;
+        int[] passes = new int[characters + 1];
+        for(CommandWord command : commandList) {
+            String word = messages.getWord(command);
+            int node = 0;
+            mark(node, command, passes);
+            for(int i = 0; i < word.length(); i++) {
+                char c = Character.toLowerCase(word.charAt(i));
+                int next = child(node, c);
+                if(next < 0) {
+                    next = nodeCount++;
+                    nodeChar[next] = c;
+                    firstChild[next] = -1;
+                    nextSibling[next] = firstChild[node];
+                    firstChild[node] = next;
+                }
+                node = next;
+                mark(node, command, passes);
             }
+            wordAt[node] = command;
         }
     }
 
+    /**
+     * Note that a command word passes through a node of the trie.
+     * @param passes How many command words pass through each node.
+     */
+    private void mark(int node, CommandWord command, int[] passes)
+    {
+        passes[node]++;
+        onlyWord[node] = passes[node] == 1 ? command : null;
+    }
+
+    /**
+     * @return The child of a node for a character, or -1 if it has none.
+     */
+    private int child(int node, char c)
+    {
+        int child = firstChild[node];
+        while(child >= 0 && nodeChar[child] != c) {
+            child = nextSibling[child];
+        }
+        return child;
+    }
+
     /**
      * Find the CommandWord associated with a command word.
      * @param commandWord The word to look up.
      * @return The CommandWord correspondng to commandWord, or UNKNOWN
-     *         if it is not a valid command word.
+     *         if it is not a valid command word or abbreviation.
      */
     public CommandWord getCommandWord(String commandWord)
     {
-        CommandWord command = validCommands.get(commandWord);
-        if(command != null) {
-            return command;
+        int node = 0;
+        for(int i = 0; i < commandWord.length() && node >= 0; i++) {
+            node = child(node, Character.toLowerCase(commandWord.charAt(i)));
         }
-        else {
+        return commandAt(node);
+    }
+
+    /**
+     * Find the CommandWord associated with a word held in part of a char
+     * array, without making a String of it.
+     * @param text   The array holding the word.
+     * @param start  Where the word starts in the array.
+     * @param length The length of the word.
+     * @return The CommandWord corresponding to the word, or UNKNOWN
+     *         if it is not a valid command word or abbreviation.
+     */
+    public CommandWord getCommandWord(char[] text, int start, int length)
+    {
+        int node = 0;
+        for(int i = 0; i < length && node >= 0; i++) {
+            node = child(node, Character.toLowerCase(text[start + i]));
+        }
+        return commandAt(node);
+    }
+
+    /**
+     * @return The command word a node of the trie stands for, if any.
+     */
+    private CommandWord commandAt(int node)
+    {
+        if(node <= 0) {
             return CommandWord.UNKNOWN;
         }
+        if(wordAt[node] != null) {
+            return wordAt[node];
+        }
+        if(onlyWord[node] != null) {
+            return onlyWord[node];
+        }
+        return CommandWord.UNKNOWN;
     }
     
     /**
@@ -54,7 +182,72 @@ public class CommandWords
      */
     public boolean isCommand(String aString)
     {
-        return validCommands.containsKey(aString);
+        return getCommandWord(aString) != CommandWord.UNKNOWN;
+    }
+
+    /**
+     * Suggest what a word that is not a command word might have meant.
+     * @param word The word typed.
+     * @return The command words it is a prefix of, if it is one, or else
+     * the closest command words no more than two typing slips away (a
+     * wrong, missing, extra or swapped letter). Empty if nothing is close.
+     */
+    public List<CommandWord> getSuggestions(String word)
+    {
+        List<CommandWord> suggestions = new ArrayList<>();
+        String typed = word.toLowerCase(messages.getLocale());
+        if(typed.isEmpty()) {
+            return suggestions;
+        }
+        for(CommandWord command : commandList) {
+            if(messages.getWord(command).startsWith(typed)) {
+                suggestions.add(command);
+            }
+        }
+        if(!suggestions.isEmpty()) {
+            return suggestions;
+        }
+
+        int best = Math.min(MAX_SUGGESTION_DISTANCE, typed.length() - 1);
+        for(CommandWord command : commandList) {
+            int distance = distance(typed, messages.getWord(command));
+            if(distance < best) {
+                suggestions.clear();
+                best = distance;
+            }
+            if(distance <= best) {
+                suggestions.add(command);
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * @return The number of letters that have to be changed, added,
+     * removed or swapped with their neighbour to turn one word into the
+     * other.
+     */
+    private static int distance(String a, String b)
+    {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for(int i = 0; i <= a.length(); i++) {
+            d[i][0] = i;
+        }
+        for(int j = 0; j <= b.length(); j++) {
+            d[0][j] = j;
+        }
+        for(int i = 1; i <= a.length(); i++) {
+            for(int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1),
+                                   d[i - 1][j - 1] + cost);
+                if(i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2)
+                        && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
     }
 
     /**
@@ -62,9 +255,21 @@ public class CommandWords
      */
     public void showAll() 
     {
-        for(String command : validCommands.keySet()) {
-            System.out.print(command + "  ");
+        GameOutput console = GameOutput.console();
+        showAll(console);
+        console.flush();
+    }
+
+    /**
+     * Print all valid commands to the given output.
+     * @param out The output to print to.
+     */
+    public void showAll(GameOutput out)
+    {
+        for(CommandWord command : commandList) {
+            out.print(messages.getWord(command));
+            out.print("  ");
         }
-        System.out.println();
+        out.println();
     }
 }
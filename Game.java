@@ -1,6 +1,7 @@
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Stack;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
 
 /**
  *  This class is the main class of the "The World Beside Us" application. 
@@ -10,9 +11,9 @@ import java.util.Stack;
  *  To play this game, create an instance of this class and call the "play"
  *  method.
  * 
- *  This main class creates and initialises all the others: it creates all
- *  rooms, creates the parser and starts the game.  It also evaluates and
- *  executes the commands that the parser returns.
+ *  This main class creates and initialises all the others: it sets up the
+ *  world and the player's session, creates the parser and starts the game.
+ *  It also evaluates and executes the commands that the parser returns.
  * 
  *  base code written by Michael Kölling and David J. Barnes 2016.02.29
  *  
@@ -23,120 +24,73 @@ import java.util.Stack;
 public class Game 
 {
     private Parser parser;
-    private Room currentRoom;
-    private ArrayList<GameItem> inventory;
-    private HashMap<Room, GameItem> itemLocations;
-    private Stack<Room> priorRooms;
+    private Session session;    // this player's position, inventory and history
+    private GameOutput out;     // where all responses are printed
+    private Messages messages;  // what the responses say, in the player's language
+    private CommandJournal journal;     // records the commands, if not null
+    private long journalKey;            // this game's key in the journal
+    private GameMetrics metrics;        // null if metrics are off
+    private File saveDirectory;         // where games are saved, or null if they cannot be
         
     /**
      * Create the game and initialise its internal map.
      */
     public Game() 
     {
-        parser = new Parser();
-        inventory = new ArrayList<GameItem>();
-        itemLocations = new HashMap<Room, GameItem>();
-        priorRooms = new Stack<Room>();
-        createRooms();
+        this(new Parser());
     }
 
     /**
-     * Create all the rooms and link their exits together.
-     * Also set "keys" (exits that can be blocked) and items.
+     * Create a game on the shipped map that takes its commands from the
+     * given parser. Responses are printed to the parser's output, so
+     * they can go somewhere other than the terminal.
+     * @param parser The parser commands are read with.
      */
-    private void createRooms()
+    public Game(Parser parser)
     {
-        Room busStop, alley, marketWest, marketSquare, marketEast;
-        Room inn, stall, maskShop, trinket, dirtPath;
-        Room swamp, village, bridge, gates, circle, basement;
+        this(parser, World.getShipped());
+    }
       
-        // create the rooms
-        busStop = new Room("standing at a bus stop");
-        alley = new Room("wandering through an unusually dark alleyway");
-        marketWest = new Room("in a strange marketplace.\nIt seems to be dominated" +
-            " by food services");
-        marketSquare = new Room("in a strange marketplace.\nIt seems to be dominated" +
-            " by artisans");
-        marketEast = new Room("in a strange marketplace.\nThis corner of it is more" +
-            " unoccupied for some reason");
-        inn = new Room("in a lively inn");
-        stall = new Room("at a food stall serving something you don't recognize");
-        maskShop = new Room("in a store that seems to specialize\nin quality" +
-            " masquerade masks");
-        dirtPath = new Room("on a dirt path winding through the city outskirts");
-        trinket = new Room("in a small store selling knick-knacks");
-        swamp = new Room("in a wooded wetland");
-        village = new Room("in a humble village populated by large, gangly creatures");
-        bridge = new Room("at one end of a long and foreboding bridge");
-        gates = new Room("at the mighty gates of a towering castle,\n" +
-            "where armored guards with spears eye you with suspicion", true);
-        circle = new Room("in a forest clearing filled with mushrooms,\nsome of" +
-            " which form a ring.");
-        basement = new Room("in a musty basement with a strange\nchalk" +
-            " circle on the floor");
-        
-        // initialise room exits
-        busStop.setExit("east", alley);
-        alley.setExit("west", busStop);
-        alley.setExit("east", marketWest);
-        marketWest.setExit("west", alley);
-        marketWest.setExit("north", inn);
-        marketWest.setExit("east", marketSquare);
-        marketWest.setExit("south", stall);
-        marketSquare.setExit("west", marketWest);
-        marketSquare.setExit("south", maskShop);
-        marketSquare.setExit("east", marketEast);
-        marketEast.setExit("west", marketSquare);
-        marketEast.setExit("north", trinket);
-        marketEast.setExit("east", bridge);
-        marketEast.setExit("south", dirtPath);
-        inn.setExit("south", marketWest);
-        inn.setExit("down", basement);
-        stall.setExit("north", marketWest);
-        maskShop.setExit("north", marketSquare);
-        trinket.setExit("south", marketEast);
-        dirtPath.setExit("north", marketEast);
-        dirtPath.setExit("south", swamp);
-        swamp.setExit("north", dirtPath);
-        swamp.setExit("east", circle);
-        swamp.setExit("west", village);
-        village.setExit("east", swamp);
-        bridge.setExit("west", marketEast);
-        bridge.setExit("east", gates);
-        gates.setExit("west", bridge);
-        circle.setExit("west", swamp);
-        circle.setExit("ring", basement);
-        basement.setExit("circle", circle);
-        basement.setExit("up", inn);
+    /**
+     * Create a new game in a world that has already been built, for
+     * example a generated one, instead of the shipped map.
+     * @param parser The parser commands are read with.
+     * @param world  The world to play in.
+     */
+    public Game(Parser parser, World world)
+    {
+        this(parser, new Session(world));
+    }
         
-        // set keys
-        inn.setKey("down"); // you cannot go down to the basement
-        //swamp.setKey("west"); // you cannot enter the village
-        // The intent was that you needed to be wearing the mask to
-        // enter the village, but I'm unsure how to implement that.
+    /**
+     * Create a game that carries on an existing session.
+     * @param parser  The parser commands are read with.
+     * @param session The player's session.
+     */
+    public Game(Parser parser, Session session)
+    {
+        this.parser = parser;
+        this.out = parser.getOutput();
+        this.messages = parser.getMessages();
+        this.session = session;
+        metrics = GameMetrics.current();
+        saveDirectory = new File(".");
+    }
         
-        // place items
-        GameItem skewer = new GameItem("skewer", "a savory looking veggie " +
-            "skewer,\nthough you cannot identify what plants it's made from.",
-            "It's delicious, but for some reason\n" +
-            "you immediately feel a sense of dread.", false);
-        itemLocations.put(stall, skewer);
-        GameItem mask = new GameItem("mask", "a beautiful mask, appropriate\n" +
-            "for a masquerade ball.", "You put it on. It makes you feel regal.", false);
-        itemLocations.put(maskShop, mask);
-        GameItem jewel = new GameItem("jewel", "a splendid blue faceted strone.",
-            "You show off the sparkling gem.", false);
-        itemLocations.put(village, jewel);
-        GameItem necklace = new GameItem("necklace", "a simply but charming " +
-            "wooden bead necklace.", "You put it around your neck. It looks nice.", false);
-        itemLocations.put(trinket, necklace);
-        GameItem armoire = new GameItem("armoire", "an expertly made walnut armoire.",
-            "You step into it and chill before getting bored.\nIt's really heavy so " +
-            "you decide to leave it behind.", true);
-        itemLocations.put(inn, armoire);
+    /**
+     * @return The room the player is currently in.
+     */
+    public Room getCurrentRoom()
+    {
+        return session.getCurrentRoom();
+    }
         
-        // start game at bus stop
-        currentRoom = busStop;
+    /**
+     * @return The session this game is playing.
+     */
+    public Session getSession()
+    {
+        return session;
     }
 
     /**
@@ -149,33 +103,145 @@ public class Game
         // Enter the main command loop.  Here we repeatedly read commands and
         // execute them until the game is over.
                 
-        boolean finished = false;
-        while (! finished) {
-            Command command = parser.getCommand();
-            finished = processCommand(command);
+        // Each response is sent when the parser prompts for the next
+        // command, so that response and prompt go out in one write.
+        if (metrics != null) {
+            metrics.gameStarted(this);
+        }
+        try {
+            boolean finished = false;
+            while (! finished) {
+                Command command = parser.getCommand();
+                finished = execute(command);
+            }
+        }
+        finally {
+            if (metrics != null) {
+                metrics.gameEnded(this);
+            }
+            session.leave();
         }
-        System.out.println("Thank you for playing.  Good bye.");
+        messages.println(out, Message.GOODBYE);
+        out.flush();
     }
 
     /**
      * Print out the opening message for the player.
      */
-    private void printWelcome()
+    public void printWelcome()
     {
-        System.out.println();
-        System.out.println("    ~~ Welcome to <The World Beside Us!> ~~");
-        System.out.println("Be curious, be cautious, be wise, and be brave.");
-        System.out.println("Type '" + CommandWord.HELP + "' if you need help.");
-        System.out.println();
-        System.out.println(currentRoom.getLongDescription());
+        messages.println(out, Message.WELCOME, messages.getWord(CommandWord.HELP));
+        if (session.getWorld().holds(session.getCurrentRoom())) {
+            session.getCurrentRoom().printLongDescription(out);
+        }
     }
 
     /**
-     * Given a command, process (that is: execute) the command.
+     * Given a command, process (that is: execute) the command, and send
+     * the response.
      * @param command The command to be processed.
      * @return true If the command ends the game, false otherwise.
      */
-    private boolean processCommand(Command command) 
+    public boolean processCommand(Command command) 
+    {
+        boolean wantToQuit = execute(command);
+        out.flush();
+        return wantToQuit;
+    }
+
+    /**
+     * Set where this game's saved games are kept. Games start out saving
+     * to the working directory, which suits one player at a terminal;
+     * games played over the network either share a directory set aside
+     * for them or cannot save at all (see GameServer).
+     * @param directory The directory, or null if games cannot be saved.
+     */
+    public void setSaveDirectory(File directory)
+    {
+        saveDirectory = directory;
+    }
+
+    /**
+     * Record the commands of this game in a journal from now on, so that
+     * it can be rebuilt after a crash. The session as it is now is
+     * checkpointed first.
+     * @param journal The journal.
+     * @param key     The key this game's session is recorded under.
+     * @throws IOException If the journal cannot be written.
+     */
+    public void setJournal(CommandJournal journal, long key) throws IOException
+    {
+        journal.commit(journal.checkpoint(key, session));
+        this.journal = journal;
+        this.journalKey = key;
+    }
+
+    /**
+     * Execute a command again while rebuilding a session from a journal:
+     * it is not recorded again, and its response is thrown away.
+     * @param command The command.
+     */
+    void replayCommand(Command command)
+    {
+        perform(command);
+        out.flush();
+    }
+
+    /**
+     * Execute a command, leaving its response in the output unsent, and
+     * record it in the journal if there is one.
+     * @param command The command to be executed.
+     * @return true If the command ends the game, false otherwise.
+     */
+    private boolean execute(Command command)
+    {
+        long start = metrics == null ? 0 : metrics.commandStarted();
+        boolean wantToQuit = perform(command);
+        if (journal != null) {
+            record(command);
+        }
+        if (metrics != null) {
+            metrics.commandDone(command, start);
+        }
+        return wantToQuit;
+    }
+
+    /**
+     * Record a command that has just been executed in the journal, and
+     * wait until it is durable, so no player is told the result of a
+     * command that could be lost. Commands that change nothing are not
+     * recorded, and loading a game records the loaded session.
+     * @param command The command.
+     */
+    private void record(Command command)
+    {
+        long position;
+        switch (command.getCommandWord()) {
+            case GO: case BACK: case GOTO: case TAKE: case DROP: case USE:
+                position = journal.append(journalKey, command);
+                break;
+                
+            case LOAD:
+                position = journal.checkpoint(journalKey, session);
+                break;
+                
+            default:
+                return;
+        }
+        try {
+            journal.commit(position);
+        }
+        catch (IOException e) {
+            messages.println(out, Message.NOT_RECORDED);
+        }
+    }
+
+    /**
+     * Carry out a command.
+     * @param command The command to be carried out.
+     * @return true If the command ends the game, false otherwise.
+     */
+    private boolean perform(Command command)
     {
         boolean wantToQuit = false;
 
@@ -183,9 +249,7 @@ public class Game
 
         switch (commandWord) {
             case UNKNOWN:
-                System.out.println("Sorry, that's not a command.");
-                System.out.println("Your command words are:");
-                parser.showCommands();
+                unknown(command);
                 break;
 
             case HELP:
@@ -209,7 +273,7 @@ public class Game
                 break;
                 
             case USE:
-                use(command);
+                wantToQuit = use(command);
                 break;
                 
             case BACK:
@@ -220,6 +284,18 @@ public class Game
                 drop(command);
                 break;
                 
+            case GOTO:
+                goTo(command);
+                break;
+                
+            case SAVE:
+                save(command);
+                break;
+                
+            case LOAD:
+                load(command);
+                break;
+                
             case QUIT:
                 wantToQuit = quit(command);
                 break;
@@ -229,6 +305,32 @@ public class Game
 
     // implementations of user commands:
 
+    /**
+     * Say that a command was not understood, and suggest what might have
+     * been meant. If nothing comes close, list the command words.
+     * @param command The command that was not understood.
+     */
+    private void unknown(Command command)
+    {
+        messages.println(out, Message.NOT_A_COMMAND);
+        List<CommandWord> suggestions = parser.getSuggestions(command);
+        if (suggestions.isEmpty()) {
+            messages.println(out, Message.COMMAND_WORDS);
+            parser.showCommands();
+            return;
+        }
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < suggestions.size(); i++) {
+            if (i > 0) {
+                list.append(messages.get(i == suggestions.size() - 1 ?
+                    Message.LIST_LAST_SEPARATOR : Message.LIST_SEPARATOR));
+            }
+            list.append(messages.format(Message.SUGGESTION,
+                messages.getWord(suggestions.get(i)), null));
+        }
+        messages.println(out, Message.DID_YOU_MEAN, list.toString());
+    }
+
     /**
      * Print out some help information.
      * Here we print some stupid, cryptic message and a list of the 
@@ -236,12 +338,8 @@ public class Game
      */
     private void printHelp() 
     {
-        System.out.println("There's this dark alleyway you pass by on a");
-        System.out.println("regular basis. For some reason you've always");
-        System.out.println("felt drawn to it. Perhaps today is the day you");
-        System.out.println("finally explore it. Perhaps it will change you.");
-        System.out.println();
-        System.out.println("Your command words are:");
+        messages.println(out, Message.HELP);
+        messages.println(out, Message.COMMAND_WORDS);
         parser.showCommands();
     }
 
@@ -254,28 +352,69 @@ public class Game
     {
         if(!command.hasSecondWord()) {
             // if there is no second word, we don't know where to go...
-            System.out.println("Go where?");
+            messages.println(out, Message.GO_WHERE);
             return;
         }
 
-        String direction = command.getSecondWord().toLowerCase();
+        String direction = command.getSecondWord();
 
         // Try to leave current room.
+        Room currentRoom = session.getCurrentRoom();
         Room nextRoom = currentRoom.getExit(direction);
 
         if (nextRoom == null) {
-            System.out.println("There is nothing that way.");
+            messages.println(out, Message.NO_EXIT);
         }
         else {
-            if (currentRoom.isLocked(direction)){
-                System.out.println("Your way is blocked.");
+            if (session.isLocked(currentRoom, direction)){
+                messages.println(out, Message.BLOCKED);
             }
             else{
-                priorRooms.add(currentRoom);
-                currentRoom = nextRoom;
-                System.out.println(currentRoom.getLongDescription());
-                roomItemDescription();
+                session.enter(nextRoom);
+                describeArrival();
+            }
+        }
+    }
+    
+    /**
+     * Walk to a room by name along the shortest unlocked route, passing
+     * through each room on the way (so "back" retraces the steps).
+     * @param command The command naming the room to go to.
+     */
+    private void goTo(Command command)
+    {
+        if(!command.hasSecondWord()) {
+            messages.println(out, Message.GOTO_WHERE);
+            return;
+        }
+
+        World world = session.getWorld();
+        Room target = world.findRoom(command.getSecondWord());
+        if (target == null) {
+            messages.println(out, Message.NO_SUCH_PLACE);
+            return;
+        }
+
+        RouteFinder finder = world.getRouteFinder();
+        if (finder == null) {
+            // the world keeps no map: it is on disk, or one shard of many
+            messages.println(out, Message.NO_MAP);
+            return;
+        }
+        List<String> route = finder.findRoute(session.getCurrentRoom(), target, session);
+        if (route == null) {
+            messages.println(out, Message.NO_ROUTE);
+        }
+        else if (route.isEmpty()) {
+            messages.println(out, Message.ALREADY_THERE);
+        }
+        else {
+            for (String direction : route) {
+                session.enter(session.getCurrentRoom().getExit(direction));
             }
+            messages.println(out, Message.ROUTE,
+                String.join(messages.get(Message.ROUTE_SEPARATOR), route));
+            describeArrival();
         }
     }
     
@@ -283,17 +422,39 @@ public class Game
      * Prints the longer version of the room description.
      */
     private void look() {
-        System.out.println(currentRoom.getLongDescription());
+        session.getCurrentRoom().printLongDescription(out);
         roomItemDescription();
     }
     
     /**
-     * Prints the description of the item in a room.
+     * Describe the room the player has just arrived in, and what is in
+     * it. A room held by another shard of the world is not described
+     * here: the player is handed over to that shard, which describes it.
+     */
+    private void describeArrival() {
+        if (session.getWorld().holds(session.getCurrentRoom())) {
+            look();
+        }
+    }
+    
+    /**
+     * Prints the description of the items in a room.
      */
     private void roomItemDescription() {
-        if (itemLocations.get(currentRoom) != null) {
-            System.out.print("There's something here: ");
-            System.out.println(itemLocations.get(currentRoom).getDescription());
+        ItemContainer items = session.getItems(session.getCurrentRoom());
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+        GameItem placeItem = items.getOnly();
+        if (placeItem != null) {
+            messages.println(out, Message.ONE_ITEM_HERE,
+                             placeItem.getDescription(messages));
+        }
+        else {
+            messages.println(out, Message.ITEMS_HERE);
+            for (GameItem item : items.getItems()) {
+                messages.println(out, Message.LIST_ITEM, item.getDescription(messages));
+            }
         }
     }
     
@@ -305,26 +466,25 @@ public class Game
      */
     private void take(Command command) {
         if(!command.hasSecondWord()) {
-            System.out.println("Take what?");
+            messages.println(out, Message.TAKE_WHAT);
             return;
         }
         
-        String itemName = command.getSecondWord().toLowerCase();
+        String itemName = command.getSecondWord();
         
-        if (itemLocations.get(currentRoom) != null) {
-            GameItem placeItem = itemLocations.get(currentRoom);
-            
-            if (placeItem.getName().equals(itemName)) {
-                inventory.add(placeItem);
-                itemLocations.remove(currentRoom);
-                System.out.println("You took the " + itemName + ".");
+        ItemContainer items = session.getItems(session.getCurrentRoom());
+        if (items != null && !items.isEmpty()) {
+            GameItem placeItem = session.takeItem(session.getCurrentRoom(), itemName);
+            if (placeItem != null) {
+                session.addToInventory(placeItem);
+                messages.println(out, Message.TOOK, itemName);
             }
             else {
-                System.out.println("That item isn't here.");
+                messages.println(out, Message.ITEM_NOT_HERE);
             }
         }
         else {
-            System.out.println("There is nothing here to take.");
+            messages.println(out, Message.NOTHING_TO_TAKE);
         }
     }
     
@@ -336,128 +496,212 @@ public class Game
      */
     private void examine(Command command) {
         if(!command.hasSecondWord()) {
-            System.out.println("Examine what?");
+            messages.println(out, Message.EXAMINE_WHAT);
             return;
         }
         
-        String itemName = command.getSecondWord().toLowerCase();
+        String itemName = command.getSecondWord();
         
-        if (itemName.equals("inventory")) {
+        if (itemName.equals(messages.get(Message.INVENTORY_WORD))) {
+            List<GameItem> inventory = session.getInventory();
             if (inventory.size() > 0) {
-                System.out.println("You currently have:");
+                messages.println(out, Message.INVENTORY);
                 for (GameItem inventoryItem : inventory) {
-                    System.out.println("   > " + inventoryItem.getName());
+                    messages.println(out, Message.LIST_ITEM, inventoryItem.getName());
                 }
                 return;
             }
             else {
-                System.out.println("Your inventory is empty.");
+                messages.println(out, Message.INVENTORY_EMPTY);
                 return;
             }
         }
         
-        for (GameItem inventoryItem : inventory) {
-            if (inventoryItem.getName().equals(itemName)) {
-                System.out.println("It is " + inventoryItem.getDescription());
-                return;
-            }
+        GameItem inventoryItem = session.getInventoryItem(itemName);
+        if (inventoryItem != null) {
+            messages.println(out, Message.IT_IS, inventoryItem.getDescription(messages));
+            return;
         }
         
-        System.out.println("That doesn't seem to be here.");
+        messages.println(out, Message.NOT_HERE);
     }
     
     /**
-     * Remove and discard an inventory item.
+     * Put an inventory item down in the current room.
      * 
      * @param command The command to drop the item.
      */
     private void drop(Command command) {
         if(!command.hasSecondWord()) {
-            System.out.println("Drop what?");
+            messages.println(out, Message.DROP_WHAT);
             return;
         }
         
-        String itemName = command.getSecondWord().toLowerCase();
+        String itemName = command.getSecondWord();
         
-        for (GameItem inventoryItem : inventory) {
-            if (inventoryItem.getName().equals(itemName)) {
-                inventory.remove(inventoryItem);
-                System.out.println("You drop the " + itemName + ".");
-                return;
-            }
+        GameItem inventoryItem = session.removeFromInventory(itemName);
+        if (inventoryItem != null) {
+            session.putItem(session.getCurrentRoom(), inventoryItem);
+            messages.println(out, Message.DROPPED, itemName);
+            return;
         }
         
-        System.out.println("You don't have any " + itemName + ".");
+        messages.println(out, Message.DONT_HAVE, itemName);
     }
     
     /**
-     * Use an inventory item.
+     * Use an inventory item. Its effect is described, and then the
+     * world's trigger for it in this room, if there is one, decides what
+     * else happens.
      * 
      * @param command The command to use the item.
+     * @return true if using the item ends the game, false otherwise.
      */
-    private void use(Command command) {
+    private boolean use(Command command) {
         if(!command.hasSecondWord()) {
-            System.out.println("Use what?");
-            return;
+            messages.println(out, Message.USE_WHAT);
+            return false;
         }
         
-        String itemName = command.getSecondWord().toLowerCase();
+        String itemName = command.getSecondWord();
         
-        for (GameItem inventoryItem : inventory) {
-            if (inventoryItem.getName().equals(itemName)) {
-                /*
-                *  I won't lie, I'm not sure how to implement this past this point.
-                *  I know that as it is it's not good because it operates off the
-                *  method's knowledge of the item name, and the entire premise of
-                *  isFinalRoom feels very flawed.
-                *  
-                *  Because the rooms are not in a collection, I can't iterate
-                *  through them. If I could, I could probably change the lock
-                *  states that way, which is the point of the other two items.
+        GameItem inventoryItem = session.getInventoryItem(itemName);
+        if (inventoryItem == null) {
+            messages.println(out, Message.DONT_HAVE, itemName);
+            return false;
+        }
+        inventoryItem.printEffect(out);
                 
-                *  I could rewrite the rooms as a set so they can be iterated, and
-                *  then make a hash map linking items to the places where they can
-                *  be used, or places where they produce an effect.
-                *  
-                *  That's a lot of reworking though, and sadly, I'm out of
-                *  time for this assignment, so I think this is it for now.
-                */
-                System.out.println(inventoryItem.getEffect());
-                if (itemName.equals("jewel")) {
-                    if (currentRoom.isFinalRoom()) {
-                        System.out.println("The guards are in awe of the clarity " +
-                            "of the stone.\nThey tell you that the lord of the castle" +
-                            " will reward you\nhandsomely for it. They can tell " +
-                            "you're not from here,\nand they say it's the only way " +
-                            "you can return home\nat this point. After a moment to " +
-                            "think on it,\nyou decide that it is indeed time to leave.");
+        // what else happens is up to the world's trigger for this item here
+        World world = session.getWorld();
+        Trigger trigger = world.findTrigger(inventoryItem.getName(),
+                                            session.getCurrentRoom());
+        if (trigger == null) {
+            return false;
+        }
+        if (!trigger.getMessage().isEmpty()) {
+            out.println(trigger.getMessage());
+        }
+        boolean gameOver = false;
+        for (Trigger.Effect effect : trigger.getEffects()) {
+            switch (effect.getKind()) {
+                case UNLOCK:
+                    session.setLocked(world.getRoom(effect.getRoomId()),
+                                      effect.getDirection(), false);
+                    break;
                         
-                        System.out.println("Thank you for playing.  Good bye.");
-                        System.exit(0);
-                    }
-                    return;
-                }
-                inventory.remove(inventoryItem);
-                return;
+                case LOCK:
+                    session.setLocked(world.getRoom(effect.getRoomId()),
+                                      effect.getDirection(), true);
+                    break;
+                    
+                case CONSUME:
+                    session.removeFromInventory(itemName);
+                    break;
+                    
+                case TRANSFORM:
+                    session.removeFromInventory(itemName);
+                    session.addToInventory(effect.getItem());
+                    break;
+                    
+                case END:
+                    gameOver = true;
+                    break;
             }
         }
-        System.out.println("You don't have any " + itemName + ".");
+        return gameOver;
     }
     
     /**
      * Go to the previous room.
      */
     private void back() {
-        if (!priorRooms.isEmpty()){
-            currentRoom = priorRooms.pop();
-            System.out.println(currentRoom.getLongDescription());
-            roomItemDescription();
+        Room previousRoom = session.back();
+        if (previousRoom != null){
+            describeArrival();
         }
         else {
-            System.out.println("You are where you started.");
+            messages.println(out, Message.BACK_AT_START);
         }
     }
     
+    /**
+     * Save the game under the name given (or "game"), so that it can be
+     * loaded again later.
+     * 
+     * @param command The command to save the game.
+     */
+    private void save(Command command) {
+        if (saveDirectory == null) {
+            messages.println(out, Message.NO_SAVING);
+            return;
+        }
+        String fileName = saveFileName(command);
+        if (fileName == null) {
+            messages.println(out, Message.BAD_SAVE_NAME);
+            return;
+        }
+        try {
+            SessionSnapshot.save(session, fileName);
+            messages.println(out, Message.SAVED);
+        }
+        catch (IOException | IllegalArgumentException e) {
+            // an item handed over from another shard cannot be saved here
+            messages.println(out, Message.SAVE_FAILED);
+        }
+    }
+    
+    /**
+     * Load a game saved under the name given (or "game"), carrying on
+     * from where it was saved.
+     * 
+     * @param command The command to load a game.
+     */
+    private void load(Command command) {
+        if (saveDirectory == null) {
+            messages.println(out, Message.NO_SAVING);
+            return;
+        }
+        String fileName = saveFileName(command);
+        if (fileName == null) {
+            messages.println(out, Message.BAD_SAVE_NAME);
+            return;
+        }
+        Session loaded;
+        try {
+            loaded = SessionSnapshot.load(session.getWorld(), fileName);
+        }
+        catch (NoSuchFileException e) {
+            messages.println(out, Message.NO_SAVE);
+            return;
+        }
+        catch (IOException e) {
+            messages.println(out, Message.LOAD_FAILED);
+            return;
+        }
+        session.leave();
+        session = loaded;
+        messages.println(out, Message.LOADED);
+        describeArrival();
+    }
+    
+    /**
+     * @return The file a save or load command refers to, or null if the
+     * name given is not allowed (it could name a file elsewhere).
+     */
+    private String saveFileName(Command command) {
+        String name = command.hasSecondWord() ? command.getSecondWord() : "game";
+        if (name.isEmpty() || name.length() > 32) {
+            return null;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (!Character.isLetterOrDigit(name.charAt(i))) {
+                return null;
+            }
+        }
+        return new File(saveDirectory, name + ".sav").getPath();
+    }
+    
     /** 
      * "Quit" was entered. Check the rest of the command to see
      * whether we really quit the game.
@@ -466,7 +710,7 @@ public class Game
     private boolean quit(Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("Quit what?");
+            messages.println(out, Message.QUIT_WHAT);
             return false;
         }
         else {
@@ -476,9 +720,33 @@ public class Game
     
     /**
      * The main method; it creates an instance of a game and initiates it.
+     * If a world file is named, the game is played in that world instead
+     * of the shipped map, once any problems WorldValidator finds in it
+     * have been reported. A room file (see RoomFile), named with the
+     * ending ".rooms", is played from disk and not checked. If the
+     * system property game.text names a file, the world's text is moved
+     * to it (see TextStore) before play starts.
      */
-    public static void main(String[] args) {
-        Game newGame = new Game();
-        newGame.play();
+    public static void main(String[] args) throws IOException {
+        World world;
+        if (args.length > 0 && args[0].endsWith(".rooms")) {
+            world = RoomFile.open(args[0], 10_000, 64L << 20);
+        }
+        else if (args.length > 0) {
+            world = WorldFile.load(args[0]);
+            WorldValidator.Report report = new WorldValidator(world).validate();
+            if (!report.isClean()) {
+                System.err.println(args[0] + " has " + report.getProblemCount() + " problem(s):");
+                report.print(System.err);
+            }
+        }
+        else {
+            world = World.getShipped();
+        }
+        String textFile = System.getProperty("game.text");
+        if (textFile != null) {
+            TextStore.moveText(world, textFile);
+        }
+        new Game(new Parser(), world).play();
     }
 }
@@ -2,6 +2,9 @@
 /**
  * Write a description of class GameItem here.
  *
+ * An item's description and effect can be moved to a TextStore (see
+ * TextStore.moveText), and are then read from the store each time.
+ *
  * @author Artemis MacDuffie
  * @version 2023.03.27
  */
@@ -10,7 +13,12 @@ public class GameItem
     private String name;
     private String description; //How the item's described when examined (full sentences)
     private String effect;      //How the item's described when used
+    private TextStore texts;    // where description and effect are, if not null
+    private int descriptionText;
+    private int effectText;
     private boolean weight;     // false for light, true for heavy
+    private int id = -1;        // set when the item is placed in a world
+    private Rendered rendered;  // the full description, for one catalog
     
     /**
      * Constructor for objects of class GameItem
@@ -32,13 +40,94 @@ public class GameItem
         return name;
     }
     
+    /**
+     * Id getter
+     * 
+     * @return The id of this item in its world, or -1 if it has not been
+     * placed in one
+     */
+    public int getId() {
+        return id;
+    }
+    
+    /**
+     * Give this item the id it is known by in its world. Only World
+     * calls this, when the item is placed.
+     * 
+     * @param id The item's id
+     */
+    void setId(int id) {
+        this.id = id;
+    }
+    
+    /**
+     * Replace this item's description and effect with texts in a store.
+     * Only TextStore calls this.
+     * 
+     * @param texts       The store
+     * @param description The number of the description in the store
+     * @param effect      The number of the effect in the store
+     */
+    void storeText(TextStore texts, int description, int effect) {
+        descriptionText = description;
+        effectText = effect;
+        this.texts = texts;
+        this.description = null;
+        this.effect = null;
+        rendered = null;
+    }
+    
     /**
      * Description getter
      * 
-     * @return The location field
+     * @return The description, with the weight added on, in English
      */
     public String getDescription() {
-        return (description + " It looks " + getWeight() + ".");
+        return getDescription(Messages.getRoot());
+    }
+    
+    /**
+     * Description getter, in the language of a catalog. The description
+     * is made once and kept until a different catalog asks for it, unless
+     * it is in a text store.
+     * 
+     * @param messages The catalog
+     * @return The description, with the weight added on
+     */
+    public String getDescription(Messages messages) {
+        Rendered last = rendered;
+        if (last == null || last.messages != messages) {
+            String weightWord = messages.get(weight ? Message.HEAVY : Message.LIGHT);
+            String text = messages.format(Message.ITEM_DESCRIPTION,
+                                          getRawDescription(), weightWord);
+            if (texts != null) {
+                return text;
+            }
+            last = new Rendered(messages, text);
+            rendered = last;
+        }
+        return last.text;
+    }
+    
+    /**
+     * Description getter, without the weight added on.
+     * 
+     * @return The description field
+     */
+    public String getRawDescription() {
+        if (texts != null) {
+            return texts.get(descriptionText);
+        }
+        return description;
+    }
+    
+    /**
+     * Weight getter
+     * 
+     * @return true if the item is heavy, false if it is light
+     */
+    public boolean isHeavy() {
+        return weight;
     }
     
     /**
@@ -47,20 +136,41 @@ public class GameItem
      * @return The effect field
      */
     public String getEffect() {
+        if (texts != null) {
+            return texts.get(effectText);
+        }
         return effect;
     }
     
     /**
-     * Returns a string describing the weight of the item.
+     * Print the effect as a line of output, straight from the text store
+     * if it is in one.
      * 
-     * @return "heavy" or "light"
+     * @param out Where it is printed
      */
-    private String getWeight() {
-        if (weight) {
-            return "heavy";
+    public void printEffect(GameOutput out) {
+        if (texts != null) {
+            texts.print(effectText, out);
+            out.println();
         }
         else {
-            return "light";
+            out.println(effect);
+        }
+    }
+    
+    /**
+     * A full description, and the catalog it was made for. They are kept
+     * together so that games on other threads never see one without the
+     * other.
+     */
+    private static class Rendered
+    {
+        private final Messages messages;
+        private final String text;
+        
+        Rendered(Messages messages, String text) {
+            this.messages = messages;
+            this.text = text;
         }
     }
 }
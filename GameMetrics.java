@@ -0,0 +1,386 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * GameMetrics shows what the games in a process are doing. It counts
+ * the commands processed and keeps a latency histogram for each command
+ * word, and it can report how many games are being played and how much
+ * their players carry and can go back through. All of this is available
+ * through JMX (see GameMetricsMXBean). Each command is also sent to Java
+ * Flight Recorder as a "wbus.Command" event while a recording is running.
+ *
+ * Metrics are off unless enable() is called, or the JVM is started with
+ * -Dgame.metrics=true. A game checks once, when it is created; if
+ * metrics are off, its commands pass a single null check and nothing
+ * else.
+ *
+ * Every command is counted, but reading the clock costs more than the
+ * rest of the bookkeeping put together (tens of nanoseconds on some
+ * machines), so only a random sample of commands is timed: one in 64 by
+ * default, or one in N with -Dgame.metrics.sample=N (a power of two; 1
+ * times them all). That keeps the cost to a few nanoseconds a command.
+ * While a Flight Recorder recording has the event enabled, every command
+ * is timed and recorded.
+ *
+ * The histograms split each power of two into four buckets, so the
+ * percentiles reported are accurate to within a quarter. Counters are
+ * LongAdders, so players on many threads do not contend for them.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class GameMetrics implements GameMetricsMXBean
+{
+    private static final String OBJECT_NAME = "WorldBesideUs:type=GameMetrics";
+    private static volatile GameMetrics current;
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private int sampleMask;             // a command is timed if random & mask is 0
+
+    private Histogram[] histograms;     // indexed by CommandWord ordinal
+    private Set<Game> games;            // the games being played
+
+    static {
+        if(Boolean.getBoolean("game.metrics")) {
+            enable();
+        }
+    }
+
+    /**
+     * Create a set of metrics. Use enable() to get the one games report to.
+     */
+    private GameMetrics()
+    {
+        CommandWord[] words = CommandWord.values();
+        histograms = new Histogram[words.length];
+        for(int i = 0; i < words.length; i++) {
+            histograms[i] = new Histogram();
+        }
+        games = ConcurrentHashMap.newKeySet();
+        int sample = Math.max(Integer.getInteger("game.metrics.sample", 64), 1);
+        sampleMask = Integer.highestOneBit(sample) - 1;
+    }
+
+    /**
+     * Turn metrics on for games created from now on, and make them
+     * available through JMX.
+     * @return The metrics.
+     */
+    public static synchronized GameMetrics enable()
+    {
+        if(current == null) {
+            GameMetrics metrics = new GameMetrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    metrics, new ObjectName(OBJECT_NAME));
+            }
+            catch(JMException e) {
+                // still worth keeping, even if nobody can see it over JMX
+            }
+            current = metrics;
+        }
+        return current;
+    }
+
+    /**
+     * @return The metrics games report to, or null if metrics are off.
+     */
+    public static GameMetrics current()
+    {
+        return current;
+    }
+
+    /**
+     * Note that a game has started being played.
+     * @param game The game.
+     */
+    public void gameStarted(Game game)
+    {
+        games.add(game);
+    }
+
+    /**
+     * Note that a game has ended.
+     * @param game The game.
+     */
+    public void gameEnded(Game game)
+    {
+        games.remove(game);
+    }
+
+    /**
+     * Note that a command is about to be processed.
+     * @return What to pass to commandDone once it has been.
+     */
+    public long commandStarted()
+    {
+        if((ThreadLocalRandom.current().nextInt() & sampleMask) == 0 ||
+           new CommandEvent().isEnabled()) {
+            return System.nanoTime();
+        }
+        return NOT_TIMED;
+    }
+
+    /**
+     * Record a command that has been processed.
+     * @param command The command.
+     * @param start   What commandStarted returned for it.
+     */
+    public void commandDone(Command command, long start)
+    {
+        CommandWord word = command.getCommandWord();
+        Histogram histogram = histograms[word.ordinal()];
+        histogram.count.increment();
+        if(start == NOT_TIMED) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        histogram.record(nanos);
+
+        CommandEvent event = new CommandEvent();
+        if(event.shouldCommit()) {
+            event.command = word.name();
+            event.secondWord = command.getSecondWord();
+            event.latency = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public long getCommandCount()
+    {
+        long count = 0;
+        for(Histogram histogram : histograms) {
+            count += histogram.count.sum();
+        }
+        return count;
+    }
+
+    @Override
+    public List<CommandStats> getCommandStats()
+    {
+        List<CommandStats> stats = new ArrayList<CommandStats>();
+        CommandWord[] words = CommandWord.values();
+        for(int i = 0; i < words.length; i++) {
+            Histogram histogram = histograms[i];
+            long count = histogram.count.sum();
+            if(count > 0) {
+                stats.add(new CommandStats(words[i].toString(), count,
+                    histogram.mean(), histogram.percentile(50),
+                    histogram.percentile(99), histogram.percentile(99.9),
+                    histogram.max.get()));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Estimate a latency percentile for one command word.
+     * @param word       The command word.
+     * @param percentile The percentile wanted, between 0 and 100.
+     * @return The estimated latency in nanoseconds, or 0 if the word has
+     * not been used.
+     */
+    public long getLatencyPercentile(CommandWord word, double percentile)
+    {
+        return histograms[word.ordinal()].percentile(percentile);
+    }
+
+    /**
+     * @param word A command word.
+     * @return The number of times it has been processed.
+     */
+    public long getCommandCount(CommandWord word)
+    {
+        return histograms[word.ordinal()].count.sum();
+    }
+
+    @Override
+    public int getActiveSessions()
+    {
+        return games.size();
+    }
+
+    @Override
+    public long getInventoryItems()
+    {
+        long items = 0;
+        for(Game game : games) {
+            items += game.getSession().getInventorySize();
+        }
+        return items;
+    }
+
+    @Override
+    public int getLargestInventory()
+    {
+        int largest = 0;
+        for(Game game : games) {
+            largest = Math.max(largest, game.getSession().getInventorySize());
+        }
+        return largest;
+    }
+
+    @Override
+    public long getHistoryRooms()
+    {
+        long rooms = 0;
+        for(Game game : games) {
+            rooms += game.getSession().getHistoryDepth();
+        }
+        return rooms;
+    }
+
+    @Override
+    public int getDeepestHistory()
+    {
+        int deepest = 0;
+        for(Game game : games) {
+            deepest = Math.max(deepest, game.getSession().getHistoryDepth());
+        }
+        return deepest;
+    }
+
+    @Override
+    public void reset()
+    {
+        for(Histogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * A count of commands, and a histogram of the latencies of those
+     * timed, that many threads can add to at once.
+     */
+    static class Histogram
+    {
+        // 4 buckets for each power of two from 4 ns up, after 4 exact ones
+        private static final int BUCKETS = 248;
+
+        private LongAdder count;        // every command, timed or not
+        private LongAdder[] buckets;
+        private LongAdder total;
+        private LongAccumulator max;
+
+        Histogram()
+        {
+            count = new LongAdder();
+            buckets = new LongAdder[BUCKETS];
+            for(int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+            total = new LongAdder();
+            max = new LongAccumulator(Math::max, 0);
+        }
+
+        void record(long nanos)
+        {
+            buckets[bucket(nanos)].increment();
+            total.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        /**
+         * @return The bucket a latency goes in: the power of two below
+         * it, and which quarter of the way to the next it is.
+         */
+        static int bucket(long nanos)
+        {
+            if(nanos < 4) {
+                return (int) Math.max(nanos, 0);
+            }
+            int power = 63 - Long.numberOfLeadingZeros(nanos);
+            int quarter = (int) (nanos >>> (power - 2)) & 3;
+            return (power - 1) * 4 + quarter;
+        }
+
+        /**
+         * @return The largest latency that goes in a bucket.
+         */
+        static long upperBound(int bucket)
+        {
+            if(bucket < 4) {
+                return bucket;
+            }
+            int power = bucket / 4 + 1;
+            long lower = (long) (4 + bucket % 4) << (power - 2);
+            return lower + (1L << (power - 2)) - 1;
+        }
+
+        long mean()
+        {
+            long timed = 0;
+            for(LongAdder bucket : buckets) {
+                timed += bucket.sum();
+            }
+            return timed == 0 ? 0 : total.sum() / timed;
+        }
+
+        long percentile(double percentile)
+        {
+            long[] counts = new long[BUCKETS];
+            long count = 0;
+            for(int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                count += counts[i];
+            }
+            long wanted = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for(int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if(seen >= wanted && seen > 0) {
+                    return Math.min(max.get(), upperBound(i));
+                }
+            }
+            return 0;
+        }
+
+        void reset()
+        {
+            count.reset();
+            for(LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+            total.reset();
+            max.reset();
+        }
+    }
+
+    /**
+     * The Flight Recorder event for one command.
+     */
+    @Name("wbus.Command")
+    @Label("Game Command")
+    @Category("World Beside Us")
+    @Description("A command processed by a game")
+    static class CommandEvent extends Event
+    {
+        @Label("Command")
+        String command;
+
+        @Label("Second Word")
+        String secondWord;
+
+        @Label("Latency")
+        @Timespan(Timespan.NANOSECONDS)
+        long latency;
+    }
+}
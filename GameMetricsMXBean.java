@@ -0,0 +1,119 @@
+import java.util.List;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * The management interface of GameMetrics, as seen through JMX (for
+ * example in JConsole or VisualVM, under WorldBesideUs:type=GameMetrics).
+ * Latencies are in nanoseconds, and the percentiles are accurate to
+ * within a quarter.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public interface GameMetricsMXBean
+{
+    /**
+     * @return The number of commands processed since the metrics were
+     * enabled or last reset.
+     */
+    long getCommandCount();
+
+    /**
+     * @return The count and latencies of each command word that has been
+     * used.
+     */
+    List<CommandStats> getCommandStats();
+
+    /**
+     * @return The number of games being played.
+     */
+    int getActiveSessions();
+
+    /**
+     * @return The number of items carried, over all games being played.
+     */
+    long getInventoryItems();
+
+    /**
+     * @return The most items carried by any one player.
+     */
+    int getLargestInventory();
+
+    /**
+     * @return The number of rooms players can go back through, over all
+     * games being played.
+     */
+    long getHistoryRooms();
+
+    /**
+     * @return The most rooms any one player can go back through.
+     */
+    int getDeepestHistory();
+
+    /**
+     * Set every count and latency back to zero.
+     */
+    void reset();
+
+    /**
+     * The figures for one command word.
+     */
+    class CommandStats
+    {
+        private String command;
+        private long count;
+        private long meanNanos;
+        private long p50Nanos;
+        private long p99Nanos;
+        private long p999Nanos;
+        private long maxNanos;
+
+        public CommandStats(String command, long count, long meanNanos, long p50Nanos,
+                            long p99Nanos, long p999Nanos, long maxNanos)
+        {
+            this.command = command;
+            this.count = count;
+            this.meanNanos = meanNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.p999Nanos = p999Nanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public String getCommand()
+        {
+            return command;
+        }
+
+        public long getCount()
+        {
+            return count;
+        }
+
+        public long getMeanNanos()
+        {
+            return meanNanos;
+        }
+
+        public long getP50Nanos()
+        {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos()
+        {
+            return p99Nanos;
+        }
+
+        public long getP999Nanos()
+        {
+            return p999Nanos;
+        }
+
+        public long getMaxNanos()
+        {
+            return maxNanos;
+        }
+    }
+}
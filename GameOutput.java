@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A GameOutput is where the game writes everything it says. Text is
+ * collected in a buffer that is kept from one response to the next, and
+ * only sent on when flush() is called, once per command, as a single
+ * write. That way a response of many lines takes the target's lock (and
+ * for a socket, makes a packet) once rather than once per line.
+ *
+ * The target can be any OutputStream, such as the console or a socket,
+ * which is sent the text as UTF-8. A collector instead keeps each flushed
+ * response as a String, for tests and tools that check what was said,
+ * and a discarding output throws each response away unencoded.
+ *
+ * Text already in UTF-8, such as that of a TextStore, can be printed
+ * from a ByteBuffer, and is decoded straight into the buffer without
+ * making a String. It is copied out a piece at a time into a scratch
+ * buffer on the heap, which is also kept, because the decoder is much
+ * faster reading an array than reading a mapping byte by byte.
+ *
+ * Like PrintStream, a GameOutput does not throw when the target fails;
+ * checkError() says whether it has.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class GameOutput
+{
+    private static final String NEWLINE = System.lineSeparator();
+
+    private OutputStream target;        // null for a collector or discarder
+    private List<String> responses;     // only for a collector
+    private boolean error;
+
+    // the response being built, and the buffers used to encode it
+    private char[] text;
+    private int length;
+    private CharBuffer chars;
+    private ByteBuffer bytes;
+    private CharsetEncoder encoder;
+    private CharsetDecoder decoder;     // made when first needed
+    private ByteBuffer scratch;         // made when first needed
+
+    /**
+     * Create an output that sends its text to a stream.
+     * @param target The stream, for example System.out or a socket's
+     *               output stream.
+     */
+    public GameOutput(OutputStream target)
+    {
+        this.target = target;
+        text = new char[1024];
+        chars = CharBuffer.wrap(text);
+        bytes = ByteBuffer.allocate(4096);
+        encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * @return An output for the terminal.
+     */
+    public static GameOutput console()
+    {
+        return new GameOutput(System.out);
+    }
+
+    /**
+     * @return An output that keeps every response it is given, in order,
+     * instead of sending it anywhere.
+     */
+    public static GameOutput collector()
+    {
+        GameOutput output = new GameOutput(null);
+        output.responses = new ArrayList<String>();
+        return output;
+    }
+
+    /**
+     * @return An output that throws every response away, for games
+     * nobody is watching.
+     */
+    public static GameOutput discard()
+    {
+        return new GameOutput(null);
+    }
+
+    /**
+     * Add text to the response.
+     * @param s The text.
+     */
+    public void print(String s)
+    {
+        int n = s.length();
+        ensureCapacity(length + n);
+        s.getChars(0, n, text, length);
+        length += n;
+    }
+
+    /**
+     * Add text in UTF-8 to the response.
+     * @param utf8   A buffer holding the text. Its position is not used
+     *               or changed.
+     * @param offset Where in the buffer the text starts.
+     * @param count  How many bytes long the text is.
+     */
+    public void print(ByteBuffer utf8, int offset, int count)
+    {
+        // UTF-8 never takes fewer bytes than chars
+        ensureCapacity(length + count);
+        if(decoder == null) {
+            decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            scratch = ByteBuffer.allocate(4096);
+        }
+        chars.clear();
+        chars.position(length);
+        decoder.reset();
+        scratch.clear();
+        int end = offset + count;
+        int i = offset;
+        do {
+            // copy the next piece in after any bytes of a char cut off
+            // at the end of the last one, and decode what is complete
+            int n = Math.min(end - i, scratch.remaining());
+            utf8.get(i, scratch.array(), scratch.position(), n);
+            scratch.position(scratch.position() + n);
+            i += n;
+            scratch.flip();
+            decoder.decode(scratch, chars, i == end);
+            scratch.compact();
+        } while(i < end);
+        decoder.flush(chars);
+        length = chars.position();
+    }
+
+    /**
+     * Add one character to the response.
+     * @param c The character.
+     */
+    public void print(char c)
+    {
+        ensureCapacity(length + 1);
+        text[length++] = c;
+    }
+
+    /**
+     * Add a line of text to the response.
+     * @param s The text.
+     */
+    public void println(String s)
+    {
+        print(s);
+        print(NEWLINE);
+    }
+
+    /**
+     * End the current line of the response.
+     */
+    public void println()
+    {
+        print(NEWLINE);
+    }
+
+    /**
+     * Make sure the buffer can hold the given number of characters.
+     */
+    private void ensureCapacity(int capacity)
+    {
+        if(capacity > text.length) {
+            char[] bigger = new char[Math.max(capacity, text.length * 2)];
+            System.arraycopy(text, 0, bigger, 0, length);
+            text = bigger;
+            chars = CharBuffer.wrap(text);
+        }
+    }
+
+    /**
+     * Send the response built up so far in one write, and start a new
+     * one. Does nothing if nothing has been said.
+     */
+    public void flush()
+    {
+        if(length == 0) {
+            return;
+        }
+        if(target == null) {
+            if(responses != null) {
+                responses.add(new String(text, 0, length));
+            }
+            length = 0;
+            return;
+        }
+        chars.clear();
+        chars.limit(length);
+        bytes.clear();
+        encoder.reset();
+        while(true) {
+            CoderResult result = encoder.encode(chars, bytes, true);
+            if(!result.isOverflow()) {
+                result = encoder.flush(bytes);
+            }
+            if(!result.isOverflow()) {
+                break;
+            }
+            // make room and carry on from where the encoder stopped
+            ByteBuffer bigger = ByteBuffer.allocate(bytes.capacity() * 2);
+            bytes.flip();
+            bigger.put(bytes);
+            bytes = bigger;
+        }
+        length = 0;
+        try {
+            target.write(bytes.array(), 0, bytes.position());
+            target.flush();
+        }
+        catch(IOException e) {
+            error = true;
+        }
+    }
+
+    /**
+     * @return Whether sending text to the target has ever failed.
+     */
+    public boolean checkError()
+    {
+        return error;
+    }
+
+    /**
+     * @return The responses a collector has been given so far, one per
+     * flush. For an output with a stream target the list is empty.
+     */
+    public List<String> getResponses()
+    {
+        return responses == null ? List.of() : responses;
+    }
+}
@@ -0,0 +1,373 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A GameServer lets many players play at once over the network. It uses
+ * a plain line protocol, so any telnet-like client will do: each line
+ * sent is a command, and the game answers with its response followed by
+ * the "> " prompt, exactly as it would in a terminal.
+ *
+ * Every connection gets its own Game and Session, all sharing the
+ * server's World, and is driven by its own thread. Where the JVM has
+ * virtual threads (Java 21 and later) one is used per connection;
+ * otherwise an ordinary thread is.
+ *
+ * A player who sends nothing for IDLE_TIMEOUT is disconnected, and a
+ * line longer than Parser.MAX_LINE_LENGTH is answered with an error
+ * rather than kept, so no connection can hold a thread or fill memory
+ * for ever.
+ *
+ * Players cannot save or load games unless the server has been given a
+ * directory for saved games (see setSaveDirectory). Everyone connected
+ * shares that directory, so a player can load, or save over, a game
+ * saved by another under the same name; it should only be given to a
+ * server whose players trust each other.
+ *
+ * A server can also record every player's commands in a CommandJournal
+ * (see setJournal), so their games survive the server going down. Each
+ * player is then asked for a reconnect token before their game starts,
+ * and given one if they have none: a random number only they are told,
+ * which is their game's key in the journal. When the server starts, the
+ * games that were still being played when it last went down are read
+ * back from the journal and wait for their players to connect again
+ * with their tokens. A game a player leaves while the server is running
+ * is over, and is not kept.
+ *
+ * When run from the command line, the server turns on GameMetrics, so
+ * it can be watched over JMX, saves games in the directory named by the
+ * game.saves system property, if it is set, and keeps a journal in the
+ * file named by the game.journal property, if that is set.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class GameServer
+{
+    // how long a player may send nothing before being disconnected, in ms
+    public static final int IDLE_TIMEOUT = 10 * 60 * 1000;
+
+    private World world;
+    private ServerSocket serverSocket;
+    private ExecutorService connections;
+    private Thread acceptor;
+    private AtomicInteger activeSessions;
+    private Set<Socket> clients;        // every player connected right now
+    private File saveDirectory;         // null if players cannot save
+    private CommandJournal journal;     // null if commands are not recorded
+    private ConcurrentHashMap<Long, Session> waiting;   // recovered, by token
+    private SecureRandom tokens;
+
+    /**
+     * Create a server for the given world. It does not listen until
+     * start is called.
+     * @param world The world every player is put in.
+     */
+    public GameServer(World world)
+    {
+        this.world = world;
+        activeSessions = new AtomicInteger();
+        clients = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Let players save and load games, keeping them in a directory that
+     * all of them share. Only connections made afterwards can save.
+     * @param directory The directory, or null if players cannot save.
+     */
+    public void setSaveDirectory(File directory)
+    {
+        saveDirectory = directory;
+    }
+
+    /**
+     * Record every player's commands in a journal, so their games can be
+     * carried on after the server goes down. The games left in the
+     * journal from last time are recovered, to wait for their players,
+     * and the journal is compacted (see CommandJournal.compact), so it
+     * only grows with the games played since. Call this before start.
+     * @param fileName The name of the journal file.
+     * @throws IOException If the journal cannot be read or written.
+     */
+    public void setJournal(String fileName) throws IOException
+    {
+        waiting = new ConcurrentHashMap<>(CommandJournal.compact(world, fileName));
+        journal = new CommandJournal(fileName);
+        tokens = new SecureRandom();
+    }
+
+    /**
+     * @return The number of recovered games whose players have not yet
+     * come back for them.
+     */
+    public int getWaitingSessions()
+    {
+        return waiting == null ? 0 : waiting.size();
+    }
+
+    /**
+     * Start accepting connections on the loopback interface.
+     * @param port The port to listen on, or 0 for any free port.
+     * @throws IOException If the port could not be opened.
+     */
+    public void start(int port) throws IOException
+    {
+        start(port, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Start accepting connections.
+     * @param port    The port to listen on, or 0 for any free port.
+     * @param address The address to listen on.
+     * @throws IOException If the port could not be opened.
+     */
+    public void start(int port, InetAddress address) throws IOException
+    {
+        serverSocket = new ServerSocket(port, 4096, address);
+        connections = newThreadPerTaskExecutor();
+        acceptor = new Thread(this::acceptConnections, "GameServer acceptor");
+        acceptor.start();
+    }
+
+    /**
+     * @return The port the server is listening on.
+     */
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return The number of players connected right now.
+     */
+    public int getActiveSessions()
+    {
+        return activeSessions.get();
+    }
+
+    /**
+     * Stop accepting connections and end the games being played, by
+     * closing every player's connection. If there is a journal, the games
+     * are kept in it, to be carried on when the server starts again.
+     * @throws IOException If the server socket or the journal could not
+     * be closed.
+     */
+    public void stop() throws IOException
+    {
+        serverSocket.close();
+        closeAll(clients);
+        connections.shutdownNow();
+        try {
+            connections.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Close every socket in a set, so that the threads reading from them
+     * give up, whether or not they can be interrupted.
+     * @param sockets The sockets.
+     */
+    static void closeAll(Set<Socket> sockets)
+    {
+        for(Socket socket : sockets) {
+            try {
+                socket.close();
+            }
+            catch(IOException e) {
+                // it is as closed as it is going to get
+            }
+        }
+    }
+
+    /**
+     * Accept connections until the server socket is closed, handing each
+     * one to its own thread.
+     */
+    private void acceptConnections()
+    {
+        long pause = 0;
+        while(!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                pause = 0;
+                connections.execute(() -> serve(socket));
+            }
+            catch(IOException e) {
+                // unless the socket was closed by stop(), wait before
+                // trying again
+                if(!serverSocket.isClosed()) {
+                    pause = pauseAfterFailedAccept("GameServer", e, pause);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wait after accepting a connection has failed, so that a server out
+     * of file descriptors, say, does not spin trying again and again.
+     * The wait doubles with each failure in a row, up to a second, and
+     * the first failure of a run is reported on System.err.
+     * @param server The name of the server, for the report.
+     * @param e      Why accepting failed.
+     * @param pause  How long the last wait was in milliseconds, or 0 if
+     *               the last accept succeeded.
+     * @return How long this wait was, to be passed in next time.
+     */
+    static long pauseAfterFailedAccept(String server, IOException e, long pause)
+    {
+        if(pause == 0) {
+            System.err.println(server + ": accepting a connection failed, " + e);
+        }
+        pause = Math.min(Math.max(2 * pause, 10), 1000);
+        try {
+            Thread.sleep(pause);
+        }
+        catch(InterruptedException interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return pause;
+    }
+
+    /**
+     * Play a game with one connected player until they quit, win or
+     * disconnect.
+     * @param socket The player's connection.
+     */
+    private void serve(Socket socket)
+    {
+        activeSessions.incrementAndGet();
+        clients.add(socket);
+        try(socket) {
+            if(serverSocket.isClosed()) {
+                return;         // stop() may have missed this one
+            }
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(IDLE_TIMEOUT);
+            // the game sends each response in a single write, so the
+            // socket's stream needs no buffer of its own
+            Parser parser = new Parser(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8),
+                socket.getOutputStream());
+            if(journal == null) {
+                Game game = new Game(parser, world);
+                game.setSaveDirectory(saveDirectory);
+                game.play();
+            }
+            else {
+                playJournaled(parser);
+            }
+        }
+        catch(IOException e) {
+            // the player went away; there is nobody left to tell
+        }
+        finally {
+            clients.remove(socket);
+            activeSessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Play a game whose commands are recorded in the journal: ask for the
+     * player's token, carry on the game waiting under it or start a new
+     * one, and once the player has left, end the game in the journal.
+     * A game cut off by the server stopping is not ended, so it can be
+     * carried on.
+     * @param parser The parser for the player's connection.
+     * @throws IOException If the journal cannot be written.
+     */
+    private void playJournaled(Parser parser) throws IOException
+    {
+        Messages messages = parser.getMessages();
+        GameOutput out = parser.getOutput();
+        out.print(messages.get(Message.TOKEN_PROMPT));
+        String line = parser.nextLine();
+        if(line == null) {
+            return;
+        }
+        line = line.trim();
+        long key = 0;
+        Session session = null;
+        if(!line.isEmpty()) {
+            try {
+                key = Long.parseUnsignedLong(line, 16);
+                session = waiting.remove(key);
+            }
+            catch(NumberFormatException e) {
+                // not a token, so no game waits under it
+            }
+            messages.println(out, session == null ? Message.NO_SUCH_TOKEN : Message.RESUMED);
+        }
+        if(session == null) {
+            do {
+                key = tokens.nextLong();
+            } while(key == 0 || waiting.containsKey(key));
+            session = new Session(world);
+        }
+
+        Game game = new Game(parser, session);
+        game.setSaveDirectory(saveDirectory);
+        game.setJournal(journal, key);
+        messages.println(out, Message.TOKEN, String.format("%016x", key));
+        game.play();
+        if(!serverSocket.isClosed()) {
+            journal.commit(journal.end(key));
+        }
+    }
+
+    /**
+     * Create an executor that runs every task on a new thread: a virtual
+     * thread where the JVM supports them, a platform thread otherwise.
+     * @return The executor.
+     */
+    public static ExecutorService newThreadPerTaskExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Run a server for the shipped map until the process is stopped.
+     * Usage: java [-Dgame.saves=directory] [-Dgame.journal=file] GameServer [port]
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4242;
+        GameMetrics.enable();
+        GameServer server = new GameServer(World.getShipped());
+        String saves = System.getProperty("game.saves");
+        if(saves != null) {
+            server.setSaveDirectory(new File(saves));
+        }
+        String journal = System.getProperty("game.journal");
+        if(journal != null) {
+            server.setJournal(journal);
+            System.out.println(server.getWaitingSessions() + " games recovered from " + journal);
+        }
+        server.start(port, InetAddress.getByName("0.0.0.0"));
+        System.out.println("Serving The World Beside Us on port " + server.getPort());
+    }
+}
@@ -0,0 +1,193 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * An ItemContainer holds any number of items, such as the things lying
+ * in a room or the things a player carries. Items are found by name in
+ * constant time, however many there are, and are listed in the order
+ * they were put in.
+ *
+ * Names are normalized (trimmed and put in lower case) before they are
+ * compared, so "Mask", "mask " and "mask" are the same item. Several
+ * items can share a name; asking for that name gives the one that was
+ * put in first.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class ItemContainer
+{
+    // the first item of each name, in the order the names were first seen
+    private LinkedHashMap<String, GameItem> items;
+    // any further items with a name already in use, oldest first
+    private HashMap<String, ArrayDeque<GameItem>> duplicates;  // null until needed
+    private int size;
+
+    /**
+     * Create an empty container.
+     */
+    public ItemContainer()
+    {
+        items = new LinkedHashMap<String, GameItem>();
+    }
+
+    /**
+     * Create a container holding the same items as another, in the same
+     * order.
+     * @param other The container to copy.
+     */
+    public ItemContainer(ItemContainer other)
+    {
+        items = new LinkedHashMap<String, GameItem>(other.items);
+        if(other.duplicates != null) {
+            duplicates = new HashMap<String, ArrayDeque<GameItem>>();
+            for(String name : other.duplicates.keySet()) {
+                duplicates.put(name, new ArrayDeque<GameItem>(other.duplicates.get(name)));
+            }
+        }
+        size = other.size;
+    }
+
+    /**
+     * @param name An item name, as typed or as stored.
+     * @return The name in the form used to look items up.
+     */
+    public static String normalize(String name)
+    {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Put an item in the container.
+     * @param item The item.
+     */
+    public void add(GameItem item)
+    {
+        String key = normalize(item.getName());
+        if(items.putIfAbsent(key, item) != null) {
+            if(duplicates == null) {
+                duplicates = new HashMap<String, ArrayDeque<GameItem>>();
+            }
+            duplicates.computeIfAbsent(key, k -> new ArrayDeque<GameItem>()).add(item);
+        }
+        size++;
+    }
+
+    /**
+     * @param name The name of an item.
+     * @return The item with that name, or null if there is none.
+     */
+    public GameItem get(String name)
+    {
+        return items.get(normalize(name));
+    }
+
+    /**
+     * Get an item by its place in the listing order, without making a
+     * list. The container is walked to find it, so this is for picking
+     * out one item, not for going through them all.
+     * @param index The place of the item in the order getItems lists
+     *              them, from 0.
+     * @return The item.
+     * @throws IndexOutOfBoundsException If there is no such place.
+     */
+    public GameItem get(int index)
+    {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No item " + index);
+        }
+        for(String key : items.keySet()) {
+            if(index == 0) {
+                return items.get(key);
+            }
+            index--;
+            ArrayDeque<GameItem> others = duplicates == null ? null : duplicates.get(key);
+            if(others != null) {
+                if(index < others.size()) {
+                    for(GameItem item : others) {
+                        if(index-- == 0) {
+                            return item;
+                        }
+                    }
+                }
+                index -= others.size();
+            }
+        }
+        throw new IllegalStateException("The container's size is wrong");
+    }
+
+    /**
+     * Take an item out of the container.
+     * @param name The name of the item.
+     * @return The item taken, or null if there is none with that name.
+     */
+    public GameItem remove(String name)
+    {
+        String key = normalize(name);
+        GameItem item = items.get(key);
+        if(item == null) {
+            return null;
+        }
+        ArrayDeque<GameItem> others = duplicates == null ? null : duplicates.get(key);
+        if(others != null) {
+            // the next item of the same name takes this one's place in
+            // the listing order
+            items.put(key, others.poll());
+            if(others.isEmpty()) {
+                duplicates.remove(key);
+            }
+        }
+        else {
+            items.remove(key);
+        }
+        size--;
+        return item;
+    }
+
+    /**
+     * @return The number of items in the container.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return Whether the container is empty.
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @return The only item in the container, or null if it does not hold
+     * exactly one.
+     */
+    public GameItem getOnly()
+    {
+        return size == 1 ? items.values().iterator().next() : null;
+    }
+
+    /**
+     * @return All the items, in the order they were put in (items sharing
+     * a name are listed together). The list is a copy.
+     */
+    public List<GameItem> getItems()
+    {
+        ArrayList<GameItem> list = new ArrayList<GameItem>(size);
+        for(String key : items.keySet()) {
+            list.add(items.get(key));
+            if(duplicates != null && duplicates.containsKey(key)) {
+                list.addAll(duplicates.get(key));
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A LoadClient opens many connections to a GameServer at once and has
+ * each of them play a fixed cycle of commands, timing how long every
+ * response takes to come back. At the end it reports the overall
+ * throughput and the latency distribution (including the tail).
+ *
+ * A response is complete when the server sends the "> " prompt at the
+ * start of a line.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class LoadClient
+{
+    // The commands every connection cycles through. They bring the player
+    // back to where they started, so the cycle can be repeated forever.
+    private static final String[] COMMANDS = {
+        "go east", "look", "go east", "examine inventory", "back", "back", "help"
+    };
+
+    private InetAddress host;
+    private int port;
+    private AtomicInteger failures;
+
+    /**
+     * Create a load client for a server.
+     * @param host The host the server runs on.
+     * @param port The port the server listens on.
+     */
+    public LoadClient(InetAddress host, int port)
+    {
+        this.host = host;
+        this.port = port;
+        failures = new AtomicInteger();
+    }
+
+    /**
+     * Run a load test and print a report.
+     * @param connectionCount        How many players connect at once.
+     * @param commandsPerConnection  How many commands each player sends.
+     * @param report                 Where the report is printed.
+     * @throws InterruptedException If interrupted while waiting for players.
+     */
+    public void run(int connectionCount, int commandsPerConnection, PrintStream report)
+        throws InterruptedException
+    {
+        long[][] latencies = new long[connectionCount][];
+        CountDownLatch done = new CountDownLatch(connectionCount);
+        ExecutorService players = GameServer.newThreadPerTaskExecutor();
+
+        long start = System.nanoTime();
+        for(int i = 0; i < connectionCount; i++) {
+            int player = i;
+            players.execute(() -> {
+                latencies[player] = play(commandsPerConnection);
+                done.countDown();
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        players.shutdown();
+
+        printReport(latencies, elapsed, report);
+    }
+
+    /**
+     * Connect as one player and send commands, timing each response.
+     * @param commandCount How many commands to send.
+     * @return The latency of every command in nanoseconds, or an empty
+     * array if the connection failed.
+     */
+    private long[] play(int commandCount)
+    {
+        long[] latencies = new long[commandCount];
+        try(Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer out = new BufferedWriter(new OutputStreamWriter(
+                socket.getOutputStream(), StandardCharsets.UTF_8));
+
+            readResponse(in);   // the welcome message
+            for(int i = 0; i < commandCount; i++) {
+                long sent = System.nanoTime();
+                out.write(COMMANDS[i % COMMANDS.length]);
+                out.write('\n');
+                out.flush();
+                readResponse(in);
+                latencies[i] = System.nanoTime() - sent;
+            }
+            out.write("quit\n");
+            out.flush();
+            return latencies;
+        }
+        catch(IOException e) {
+            failures.incrementAndGet();
+            return new long[0];
+        }
+    }
+
+    /**
+     * Read a response up to and including the prompt that ends it.
+     * @param in The connection to read from.
+     * @throws IOException If the connection closes before the prompt.
+     */
+    private static void readResponse(BufferedReader in) throws IOException
+    {
+        boolean lineStart = true;
+        boolean promptStarted = false;
+        while(true) {
+            int c = in.read();
+            if(c < 0) {
+                throw new IOException("Connection closed mid-response");
+            }
+            if(promptStarted && c == ' ') {
+                return;
+            }
+            promptStarted = lineStart && c == '>';
+            lineStart = c == '\n';
+        }
+    }
+
+    /**
+     * Print throughput and latency percentiles for all players.
+     */
+    private void printReport(long[][] latencies, long elapsedNanos, PrintStream report)
+    {
+        int total = 0;
+        for(long[] player : latencies) {
+            total += player.length;
+        }
+        long[] all = new long[total];
+        int next = 0;
+        for(long[] player : latencies) {
+            System.arraycopy(player, 0, all, next, player.length);
+            next += player.length;
+        }
+        Arrays.sort(all);
+
+        report.println("Connections:  " + latencies.length +
+                       " (" + failures.get() + " failed)");
+        report.println("Commands:     " + total);
+        report.printf("Commands/sec: %.0f%n", total * 1e9 / elapsedNanos);
+        if(total > 0) {
+            report.printf("Latency (us): p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                percentile(all, 50) / 1e3, percentile(all, 99) / 1e3,
+                percentile(all, 99.9) / 1e3, all[total - 1] / 1e3);
+        }
+    }
+
+    /**
+     * @return The given percentile of a sorted array of values.
+     */
+    private static long percentile(long[] sorted, double percentile)
+    {
+        int index = (int) Math.ceil(sorted.length * percentile / 100) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Run a load test. With no host given, a server for the shipped map
+     * is started in this process on a free loopback port first.
+     * Usage: java LoadClient [connections] [commands] [host port]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int commands = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+
+        GameServer server = null;
+        LoadClient client;
+        if(args.length > 3) {
+            client = new LoadClient(InetAddress.getByName(args[2]),
+                                    Integer.parseInt(args[3]));
+        }
+        else {
+            server = new GameServer(World.getShipped());
+            server.start(0);
+            client = new LoadClient(InetAddress.getLoopbackAddress(), server.getPort());
+        }
+
+        client.run(connections, commands, System.out);
+        if(server != null) {
+            server.stop();
+        }
+    }
+}
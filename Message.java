@@ -0,0 +1,101 @@
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * Everything the game says to the player, other than what the world
+ * itself describes, along with its text in English. Like CommandWord,
+ * each value pairs a name the code uses with a string in a particular
+ * language; a Messages catalog gives the text for another locale.
+ *
+ * Text may contain {0} and {1}, which stand for what is filled in when
+ * the message is printed, and \n for a line break.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public enum Message
+{
+    WELCOME("\n    ~~ Welcome to <The World Beside Us!> ~~\n" +
+            "Be curious, be cautious, be wise, and be brave.\n" +
+            "Type '{0}' if you need help.\n"),
+    GOODBYE("Thank you for playing.  Good bye."),
+    HELP("There's this dark alleyway you pass by on a\n" +
+         "regular basis. For some reason you've always\n" +
+         "felt drawn to it. Perhaps today is the day you\n" +
+         "finally explore it. Perhaps it will change you.\n"),
+    COMMAND_WORDS("Your command words are:"),
+    NOT_A_COMMAND("Sorry, that's not a command."),
+    LINE_TOO_LONG("That line is too long to be a command."),
+    DID_YOU_MEAN("Did you mean {0}?"),
+    SUGGESTION("\"{0}\""),
+    LIST_SEPARATOR(", "),
+    LIST_LAST_SEPARATOR(" or "),
+    NOT_RECORDED("(Your progress could not be recorded.)"),
+
+    GO_WHERE("Go where?"),
+    NO_EXIT("There is nothing that way."),
+    BLOCKED("Your way is blocked."),
+    GOTO_WHERE("Go to where?"),
+    NO_SUCH_PLACE("You don't know of any such place."),
+    NO_ROUTE("You can't find a way there."),
+    ALREADY_THERE("You are already there."),
+    NO_MAP("This place is too vast to find your way through; you will have to walk."),
+    ROUTE("You make your way there ({0})."),
+    ROUTE_SEPARATOR(", "),
+    BACK_AT_START("You are where you started."),
+
+    ONE_ITEM_HERE("There's something here: {0}"),
+    ITEMS_HERE("There are some things here:"),
+    LIST_ITEM("   > {0}"),
+    ITEM_DESCRIPTION("{0} It looks {1}."),
+    HEAVY("heavy"),
+    LIGHT("light"),
+    TAKE_WHAT("Take what?"),
+    TOOK("You took the {0}."),
+    ITEM_NOT_HERE("That item isn't here."),
+    NOTHING_TO_TAKE("There is nothing here to take."),
+    EXAMINE_WHAT("Examine what?"),
+    INVENTORY_WORD("inventory"),
+    INVENTORY("You currently have:"),
+    INVENTORY_EMPTY("Your inventory is empty."),
+    IT_IS("It is {0}"),
+    NOT_HERE("That doesn't seem to be here."),
+    DROP_WHAT("Drop what?"),
+    DROPPED("You drop the {0}."),
+    DONT_HAVE("You don't have any {0}."),
+    USE_WHAT("Use what?"),
+
+    BAD_SAVE_NAME("Saved games can only be named with letters and digits."),
+    SAVED("Game saved."),
+    SAVE_FAILED("The game could not be saved."),
+    NO_SAVE("There is no saved game by that name."),
+    LOAD_FAILED("That saved game could not be loaded."),
+    LOADED("Game loaded."),
+    NO_SAVING("Games cannot be saved or loaded here."),
+
+    TOKEN_PROMPT("Reconnect token, or nothing for a new game: "),
+    NO_SUCH_TOKEN("No game is waiting under that token, so a new one begins."),
+    RESUMED("Your game carries on where it left off."),
+    TOKEN("Your reconnect token is {0}. If the server goes down,\n" +
+          "give it when you connect again to carry on."),
+    QUIT_WHAT("Quit what?");
+
+    // The text in English.
+    private String text;
+
+    /**
+     * Initialise with the text in English.
+     * @param text The text.
+     */
+    Message(String text)
+    {
+        this.text = text;
+    }
+
+    /**
+     * @return The message's text in English, before anything is filled in.
+     */
+    public String getText()
+    {
+        return text;
+    }
+}
@@ -0,0 +1,323 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A Messages catalog holds what the game says, and the command words it
+ * understands, in one language. English is built in (see Message and
+ * CommandWord). Another locale's catalog is read from a file named like
+ * messages_fr.properties or messages_fr_CA.properties, found on the
+ * class path, with lines such as
+ *
+ *     GO_WHERE=Aller où ?
+ *     TOOK=Vous prenez {0}.
+ *     command.GO=aller
+ *
+ * keyed by the names of Message and CommandWord values. Anything a file
+ * leaves out comes from the catalog for the language alone, and then
+ * from English, so a file need only hold what it translates.
+ *
+ * A catalog is read the first time its locale is asked for, and kept from
+ * then on, so a game that only ever speaks English reads no files at all.
+ * Reading a catalog turns each message into a template once: line breaks
+ * are made the system's, and the text is split around the blanks to be
+ * filled in. A message with no blanks is then printed as a String that
+ * is already made, and one with blanks is printed piece by piece straight
+ * into the output, so printing a response builds no strings.
+ *
+ * Catalogs do not change once read, so any number of games may share one.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class Messages
+{
+    private static final String NEWLINE = System.lineSeparator();
+    private static final String COMMAND_PREFIX = "command.";
+
+    // English, and every other catalog read so far
+    private static final Messages ROOT = new Messages(Locale.ROOT, null, new Properties(), "English");
+    private static final ConcurrentHashMap<Locale, Messages> catalogs = new ConcurrentHashMap<>();
+
+    private Locale locale;
+    private Template[] templates;   // indexed by Message ordinal
+    private String[] words;         // indexed by CommandWord ordinal
+
+    /**
+     * Make a catalog.
+     * @param locale  The locale it is for.
+     * @param parent  Where entries it does not have come from, or null
+     *                for English.
+     * @param entries The entries read for it.
+     * @param source  Where the entries came from, for error messages.
+     */
+    private Messages(Locale locale, Messages parent, Properties entries, String source)
+    {
+        this.locale = locale;
+        Message[] messages = Message.values();
+        templates = new Template[messages.length];
+        for(Message message : messages) {
+            int i = message.ordinal();
+            String text = entries.getProperty(message.name());
+            if(text != null) {
+                templates[i] = new Template(text);
+                if(templates[i].blanks() > ROOT.templates[i].blanks()) {
+                    throw new IllegalArgumentException(source + ": " + message.name() +
+                        " has more blanks than " + message.getText());
+                }
+            }
+            else if(parent != null) {
+                templates[i] = parent.templates[i];
+            }
+            else {
+                templates[i] = new Template(message.getText());
+            }
+        }
+
+        CommandWord[] commandWords = CommandWord.values();
+        words = new String[commandWords.length];
+        Set<String> seen = new HashSet<>();
+        for(CommandWord command : commandWords) {
+            String word = entries.getProperty(COMMAND_PREFIX + command.name());
+            if(word == null) {
+                word = parent != null ? parent.words[command.ordinal()] : command.toString();
+            }
+            word = word.strip().toLowerCase(locale);
+            if(word.isEmpty() || word.chars().anyMatch(Character::isWhitespace)) {
+                throw new IllegalArgumentException(source + ": " + COMMAND_PREFIX +
+                    command.name() + " must be a single word");
+            }
+            if(command != CommandWord.UNKNOWN && !seen.add(word)) {
+                throw new IllegalArgumentException(source + ": two commands are both \"" +
+                    word + "\"");
+            }
+            words[command.ordinal()] = word;
+        }
+    }
+
+    /**
+     * @return The English catalog, which needs no files.
+     */
+    public static Messages getRoot()
+    {
+        return ROOT;
+    }
+
+    /**
+     * @return The catalog for the locale named with -Dgame.locale (such
+     * as "fr" or "fr-CA"), or else for the system's locale.
+     */
+    public static Messages getDefault()
+    {
+        String tag = System.getProperty("game.locale");
+        if(tag == null) {
+            return forLocale(Locale.getDefault());
+        }
+        return forLocale(Locale.forLanguageTag(tag.replace('_', '-')));
+    }
+
+    /**
+     * Get the catalog for a locale, reading it if this is the first time
+     * it has been asked for. A locale with no catalog file gets that of
+     * its language, or English.
+     * @param locale The locale.
+     * @return Its catalog.
+     * @throws IllegalArgumentException If its file has a mistake in it.
+     * @throws UncheckedIOException If its file cannot be read.
+     */
+    public static Messages forLocale(Locale locale)
+    {
+        if(locale.getLanguage().isEmpty()) {
+            return ROOT;
+        }
+        Messages messages = catalogs.get(locale);
+        if(messages == null) {
+            // not computeIfAbsent: reading one catalog asks for its parent
+            messages = read(locale);
+            Messages raced = catalogs.putIfAbsent(locale, messages);
+            if(raced != null) {
+                messages = raced;
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Read the catalog for a locale.
+     * @return The catalog, or its parent's if it has no file.
+     */
+    private static Messages read(Locale locale)
+    {
+        Messages parent = ROOT;
+        Locale language = Locale.forLanguageTag(locale.getLanguage());
+        if(!locale.equals(language)) {
+            parent = forLocale(language);
+        }
+        String name = "messages_" + locale + ".properties";
+        try(InputStream in = Messages.class.getResourceAsStream("/" + name)) {
+            if(in == null) {
+                return parent;
+            }
+            Properties entries = new Properties();
+            entries.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return new Messages(locale, parent, entries, name);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Could not read " + name, e);
+        }
+    }
+
+    /**
+     * @return The locale this catalog is for; ROOT for English.
+     */
+    public Locale getLocale()
+    {
+        return locale;
+    }
+
+    /**
+     * @param command A command word.
+     * @return What the player types for it in this catalog's language.
+     */
+    public String getWord(CommandWord command)
+    {
+        return words[command.ordinal()];
+    }
+
+    /**
+     * @param message A message with nothing to fill in.
+     * @return Its text, ready made.
+     */
+    public String get(Message message)
+    {
+        return templates[message.ordinal()].parts[0];
+    }
+
+    /**
+     * Print a message with nothing to fill in, as a line.
+     * @param out     Where to print it.
+     * @param message The message.
+     */
+    public void println(GameOutput out, Message message)
+    {
+        out.println(get(message));
+    }
+
+    /**
+     * Print a message with one blank, as a line.
+     * @param out     Where to print it.
+     * @param message The message.
+     * @param first   What goes in {0}.
+     */
+    public void println(GameOutput out, Message message, String first)
+    {
+        templates[message.ordinal()].print(out, first, null);
+        out.println();
+    }
+
+    /**
+     * Print a message with two blanks, as a line.
+     * @param out     Where to print it.
+     * @param message The message.
+     * @param first   What goes in {0}.
+     * @param second  What goes in {1}.
+     */
+    public void println(GameOutput out, Message message, String first, String second)
+    {
+        templates[message.ordinal()].print(out, first, second);
+        out.println();
+    }
+
+    /**
+     * Fill in a message, for when it is needed as a String rather than
+     * printed.
+     * @param message The message.
+     * @param first   What goes in {0}, if it has blanks.
+     * @param second  What goes in {1}, if it has two.
+     * @return The message's text with the blanks filled in.
+     */
+    public String format(Message message, String first, String second)
+    {
+        Template template = templates[message.ordinal()];
+        StringBuilder text = new StringBuilder(template.parts[0]);
+        for(int i = 0; i < template.blanks.length; i++) {
+            text.append(template.blanks[i] == 0 ? first : second);
+            text.append(template.parts[i + 1]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * A message split around its blanks: parts[0], then what goes in
+     * blanks[0], then parts[1], and so on.
+     */
+    private static class Template
+    {
+        private String[] parts;
+        private int[] blanks;       // 0 for {0}, 1 for {1}
+
+        Template(String text)
+        {
+            text = text.replace("\n", NEWLINE);
+            int count = 0;
+            for(int i = indexOfBlank(text, 0); i >= 0; i = indexOfBlank(text, i + 3)) {
+                count++;
+            }
+            parts = new String[count + 1];
+            blanks = new int[count];
+            int start = 0;
+            int n = 0;
+            for(int i = indexOfBlank(text, 0); i >= 0; i = indexOfBlank(text, i + 3)) {
+                parts[n] = text.substring(start, i);
+                blanks[n] = text.charAt(i + 1) - '0';
+                n++;
+                start = i + 3;
+            }
+            parts[n] = text.substring(start);
+        }
+
+        /**
+         * @return Where the next {0} or {1} is, from a position on, or -1.
+         */
+        private static int indexOfBlank(String text, int from)
+        {
+            for(int i = text.indexOf('{', from); i >= 0; i = text.indexOf('{', i + 1)) {
+                if(i + 2 < text.length() && (text.charAt(i + 1) == '0' || text.charAt(i + 1) == '1')
+                        && text.charAt(i + 2) == '}') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return How many different things are filled in.
+         */
+        int blanks()
+        {
+            int most = 0;
+            for(int blank : blanks) {
+                most = Math.max(most, blank + 1);
+            }
+            return most;
+        }
+
+        void print(GameOutput out, String first, String second)
+        {
+            out.print(parts[0]);
+            for(int i = 0; i < blanks.length; i++) {
+                out.print(blanks[i] == 0 ? first : second);
+                out.print(parts[i + 1]);
+            }
+        }
+    }
+}
@@ -1,4 +1,9 @@
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * This class is part of the "The World Beside Us" application.  
@@ -8,6 +13,15 @@ import java.util.Scanner;
  * tries to interpret the line as a two-word command. It returns the command
  * as an object of class Command.
  *
+ * Lines are read by hand, through a buffer of chars, straight into a
+ * line buffer; both are kept between lines. The line is split into words
+ * and folded to lower case where it lies, and the parser hands back the
+ * same Command object every time, so reading a command makes no garbage
+ * at all. A line may end with a line feed, a carriage return, or both.
+ * A line longer than MAX_LINE_LENGTH is thrown away, up to its end, and
+ * answered with an error, so a player cannot fill the memory of a server
+ * by sending one endless line.
+ *
  * The parser has a set of known command words. It checks user input against
  * the known commands, and if the input is not one of the known commands, it
  * returns a command object that is marked as an unknown command.
@@ -19,42 +33,270 @@ import java.util.Scanner;
  */
 public class Parser 
 {
+    // the longest line read as a command
+    public static final int MAX_LINE_LENGTH = 1024;
+
     private CommandWords commands;  // holds all valid command words
-    private Scanner reader;         // source of command input
+    private Reader reader;          // source of command input
+    private char[] input;           // chars read but not yet used
+    private int inputPosition;
+    private int inputLimit;
+    private boolean afterReturn;    // the last line ended with '\r'
+    private boolean lineTooLong;    // the last line was thrown away
+    private GameOutput out;         // where prompts and command lists go
+    private Messages messages;      // the language commands are typed in
+
+    // the line being parsed (lower case) and where its words are
+    private char[] buffer;
+    private int[] wordStarts;
+    private int[] wordEnds;
+    private Command command;        // reused for every line
 
     /**
      * Create a parser to read from the terminal window.
      */
     public Parser() 
     {
-        commands = new CommandWords();
-        reader = new Scanner(System.in);
+        this(new InputStreamReader(System.in), GameOutput.console());
+    }
+
+    /**
+     * Create a parser that reads commands from any source, for example
+     * a script file or a network connection, and prints its prompt to
+     * the given stream.
+     * @param input The source of command lines.
+     * @param out   The stream the prompt and command list are printed to.
+     */
+    public Parser(Reader input, OutputStream out)
+    {
+        this(input, new GameOutput(out));
+    }
+
+    /**
+     * Create a parser that reads commands from any source and prints its
+     * prompt to the given output. A Game made with this parser says
+     * everything through the same output, so each response goes out
+     * together with the prompt that follows it.
+     * @param input The source of command lines.
+     * @param out   The output the prompt and command list are printed to.
+     */
+    public Parser(Reader input, GameOutput out)
+    {
+        this(input, out, Messages.getDefault());
+    }
+
+    /**
+     * Create a parser that reads commands typed in the language of a
+     * catalog. A Game made with this parser speaks the same language.
+     * @param input    The source of command lines.
+     * @param out      The output the prompt and command list are printed to.
+     * @param messages The catalog.
+     */
+    public Parser(Reader input, GameOutput out, Messages messages)
+    {
+        this.messages = messages;
+        commands = new CommandWords(messages);
+        reader = input;
+        this.input = new char[8192];
+        this.out = out;
+        buffer = new char[80];
+        wordStarts = new int[4];
+        wordEnds = new int[4];
+        command = new Command();
+    }
+
+    /**
+     * @return The output this parser prints to.
+     */
+    public GameOutput getOutput()
+    {
+        return out;
+    }
+
+    /**
+     * @return The catalog of the language commands are typed in.
+     */
+    public Messages getMessages()
+    {
+        return messages;
     }
 
     /**
-     * @return The next command from the user.
+     * @return The next command from the user. If the input has run out,
+     * a "quit" command is returned. The command is only valid until
+     * the next line is read.
      */
     public Command getCommand() 
     {
-        String inputLine;   // will hold the full input line
-        String word1 = null;
-        String word2 = null;
+        while(true) {
+            out.print("> ");     // print prompt
+            out.flush();         // send it, with the last response, before we wait
 
-        System.out.print("> ");     // print prompt
+            int length = readLine();
+            if(length < 0) {
+                // end of input, nobody is left to type anything
+                return new Command(CommandWord.QUIT, null);
+            }
+            if(!lineTooLong) {
+                return parse(length);
+            }
+            messages.println(out, Message.LINE_TOO_LONG);
+        }
+    }
 
-        inputLine = reader.nextLine();
+    /**
+     * Read the next line as it was typed, without a prompt and without
+     * taking it as a command, for example to ask a player something
+     * before their game starts. The prompt, if any, should already have
+     * been printed; it is sent before the line is waited for.
+     * @return The line, or null if the input has run out. A line too long
+     * to read as a command is returned empty.
+     */
+    public String nextLine()
+    {
+        out.flush();
+        int length = readLine();
+        if(length < 0) {
+            return null;
+        }
+        return lineTooLong ? "" : new String(buffer, 0, length);
+    }
 
-        // Find up to two words on the line.
-        Scanner tokenizer = new Scanner(inputLine);
-        if(tokenizer.hasNext()) {
-            word1 = tokenizer.next();      // get first word
-            if(tokenizer.hasNext()) {
-                word2 = tokenizer.next();      // get second word
-                // note: we just ignore the rest of the input line.
+    /**
+     * Read the next line into the line buffer, without its line ending.
+     * Only as much is read from the input as there is to hand, so on a
+     * terminal or connection this waits for no more than one line. A
+     * line longer than MAX_LINE_LENGTH is read to its end but not kept,
+     * and lineTooLong is set.
+     * @return The length of the line, or -1 if the input has run out.
+     */
+    private int readLine()
+    {
+        int length = 0;
+        boolean any = false;
+        lineTooLong = false;
+        while(true) {
+            if(inputPosition == inputLimit && !fill()) {
+                return any ? length : -1;
+            }
+            char c = input[inputPosition++];
+            if(afterReturn) {
+                afterReturn = false;
+                if(c == '\n') {
+                    continue;       // the rest of a "\r\n"
+                }
+            }
+            any = true;
+            if(c == '\n' || c == '\r') {
+                afterReturn = c == '\r';
+                return length;
+            }
+            if(length == MAX_LINE_LENGTH) {
+                lineTooLong = true;
+                continue;           // throw the rest of the line away
             }
+            if(length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.min(2 * length, MAX_LINE_LENGTH));
+            }
+            buffer[length++] = c;
         }
+    }
 
-        return new Command(commands.getCommandWord(word1), word2);
+    /**
+     * Read more of the input, once all that was read has been used. As
+     * with a Scanner, input that cannot be read has run out.
+     * @return false if the input has run out.
+     */
+    private boolean fill()
+    {
+        try {
+            int count;
+            do {
+                count = reader.read(input, 0, input.length);
+            } while(count == 0);
+            if(count < 0) {
+                return false;
+            }
+            inputPosition = 0;
+            inputLimit = count;
+            return true;
+        }
+        catch(IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Interpret a single line of input as a command, without reading
+     * anything or printing a prompt. Words are separated by whitespace
+     * and folded to lower case.
+     * @param inputLine The line to interpret.
+     * @return The command found on the line. It is only valid until the
+     * next line is parsed.
+     */
+    public Command parseCommand(String inputLine)
+    {
+        int length = inputLine.length();
+        if(length > buffer.length) {
+            buffer = new char[Math.max(length, 2 * buffer.length)];
+        }
+        inputLine.getChars(0, length, buffer, 0);
+        return parse(length);
+    }
+
+    /**
+     * Interpret the line in the line buffer as a command, folding its
+     * words to lower case where they lie.
+     * @param length The length of the line.
+     * @return The command found on the line.
+     */
+    private Command parse(int length)
+    {
+        int wordCount = 0;
+        int position = 0;
+        while(position < length) {
+            // skip the gap before the next word
+            while(position < length && Character.isWhitespace(buffer[position])) {
+                position++;
+            }
+            if(position == length) {
+                break;
+            }
+            if(wordCount == wordStarts.length) {
+                wordStarts = Arrays.copyOf(wordStarts, 2 * wordCount);
+                wordEnds = Arrays.copyOf(wordEnds, 2 * wordCount);
+            }
+            wordStarts[wordCount] = position;
+            // fold the word to lower case
+            while(position < length && !Character.isWhitespace(buffer[position])) {
+                buffer[position] = Character.toLowerCase(buffer[position]);
+                position++;
+            }
+            wordEnds[wordCount] = position;
+            wordCount++;
+        }
+
+        CommandWord commandWord = CommandWord.UNKNOWN;
+        if(wordCount > 0) {
+            commandWord = commands.getCommandWord(buffer, wordStarts[0],
+                                                  wordEnds[0] - wordStarts[0]);
+        }
+        command.set(commandWord, buffer, wordStarts, wordEnds, wordCount);
+        return command;
+    }
+
+    /**
+     * Suggest what a command that was not understood might have meant.
+     * @param command The command.
+     * @return The command words its first word may have been meant as,
+     * which may be none.
+     */
+    public List<CommandWord> getSuggestions(Command command)
+    {
+        if(command.getWordCount() == 0) {
+            return List.of();
+        }
+        return commands.getSuggestions(command.getWord(0));
     }
 
     /**
@@ -62,6 +304,6 @@ public class Parser
      */
     public void showCommands()
     {
-        commands.showAll();
+        commands.showAll(out);
     }
 }
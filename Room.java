@@ -1,6 +1,8 @@
-import java.util.Set;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
 
 /**
  * Class Room - a room in an adventure game.
@@ -11,6 +13,34 @@ import java.util.Iterator;
  * connected to other rooms via exits.  For each existing exit, the room 
  * stores a reference to the neighboring room.
  * 
+ * Exits are listed in the order they were defined. The long description
+ * is built the first time it is asked for and kept until the room's exits
+ * or keys change.
+ *
+ * A room can also be a thin view of one room in a RoomGraph, for worlds
+ * too large to give every room its own maps. Such a room holds only the
+ * graph, its id and its cached long description, and reads everything
+ * else from the graph. Two views of the same room are equal. Exits cannot
+ * be added to them.
+ *
+ * A room's description can begin with a prefix it shares with other
+ * rooms (see TextPool), in which case the room keeps the prefix and the
+ * rest of its description apart. getShortDescription and
+ * getLongDescription join them each time; appendShortDescription and
+ * printLongDescription do not need to. As with a stored description,
+ * the long description is not kept, only the list of exits, so rooms
+ * do not each end up holding a copy of the prefix they share.
+ *
+ * A room's description can be moved to a TextStore (see
+ * TextStore.moveText), as can those of a RoomGraph. It is then read from
+ * the store each time it is needed, the long description is not kept,
+ * and printLongDescription prints it straight from the store, followed
+ * by the list of exits, which is kept.
+ *
+ * In the same way, a room can be a view of one room in a RoomCache, for
+ * worlds kept on disk. It reads the room from the cache each time it is
+ * asked about it, which reads it from disk if it is not in memory.
+ * 
  *  base code written by Michael Kölling and David J. Barnes 2016.02.29
  *  
  *  @author Artemis MacDuffie
@@ -19,14 +49,23 @@ import java.util.Iterator;
 
 public class Room 
 {
-    private String description;
-    private HashMap<String, Room> exits;    // stores exits of this room.
+    private String name;        // name and id given by the world, if any
+    private int id;
+    private String description;     // null once moved to a text store
+    private String descriptionPrefix;   // shared with other rooms, or null
+    private TextStore texts;            // the store it was moved to, or null
+    private int descriptionText;        // its number in the store
+    private LinkedHashMap<String, Room> exits;  // stores exits of this room.
     
     // stores keys for moving between rooms as <direction, lock state>
     // lock state: false is unlocked, true is locked
     private HashMap<String, Boolean> keys;      
     
     private boolean finalExit;  // whether or not this is the last room
+    private String longDescription;     // cached, null until first needed
+    private String exitLine;    // its end, kept when the description is stored or split
+    private RoomGraph graph;    // the graph this room is a view of, or null
+    private RoomCache cache;    // or the cache it is a view of, or null
                                                 
     /**
      * Create a room described "description". Initially, it has
@@ -40,7 +79,8 @@ public class Room
     public Room(String description) 
     {
         this.description = description;
-        exits = new HashMap<String, Room>();
+        id = -1;
+        exits = new LinkedHashMap<String, Room>();
         keys = new HashMap<String, Boolean>();
         finalExit = false;
     }
@@ -52,11 +92,100 @@ public class Room
     public Room(String description, boolean exit) 
     {
         this.description = description;
-        exits = new HashMap<String, Room>();
+        id = -1;
+        exits = new LinkedHashMap<String, Room>();
         keys = new HashMap<String, Boolean>();
         finalExit = exit;
     }
 
+    /**
+     * Create a view of a room stored in a room graph. Only RoomGraph
+     * calls this.
+     * @param graph The graph the room is stored in.
+     * @param id    The room's id in the graph.
+     */
+    Room(RoomGraph graph, int id)
+    {
+        this.graph = graph;
+        this.id = id;
+    }
+
+    /**
+     * Create a view of a room stored in a room file. Only RoomCache calls
+     * this.
+     * @param cache The cache the room is read through.
+     * @param id    The room's id in the file.
+     */
+    Room(RoomCache cache, int id)
+    {
+        this.cache = cache;
+        this.id = id;
+    }
+
+    /**
+     * Give this room the name and id it is known by in its world.
+     * Only World calls this, when the room is added to it.
+     * @param name The room's name.
+     * @param id   The room's id.
+     */
+    void setIdentity(String name, int id)
+    {
+        this.name = name;
+        this.id = id;
+    }
+
+    /**
+     * Replace this room's description with a text in a store. Only
+     * TextStore calls this.
+     * @param texts The store.
+     * @param id    The number of the description in the store.
+     */
+    void storeDescription(TextStore texts, int id)
+    {
+        descriptionText = id;
+        this.texts = texts;
+        description = null;
+        descriptionPrefix = null;
+        longDescription = null;
+    }
+
+    /**
+     * Split this room's description into a prefix shared with other rooms
+     * and the rest of it. Only TextPool calls this.
+     * @param prefix The prefix, shared.
+     * @param tail   The rest of the description.
+     */
+    void shareDescriptionPrefix(String prefix, String tail)
+    {
+        descriptionPrefix = prefix;
+        description = tail;
+        longDescription = null;
+    }
+
+    /**
+     * @return The name of this room in its world, or null if it has not
+     * been added to a world.
+     */
+    public String getName()
+    {
+        if(graph != null) {
+            return graph.getName(id);
+        }
+        if(cache != null) {
+            return cache.get(id).name;
+        }
+        return name;
+    }
+
+    /**
+     * @return The id of this room in its world, or -1 if it has not been
+     * added to a world.
+     */
+    public int getId()
+    {
+        return id;
+    }
+
     /**
      * Define an exit from this room.
      * @param direction The direction of the exit.
@@ -64,27 +193,93 @@ public class Room
      */
     public void setExit(String direction, Room neighbor) 
     {
+        if(graph != null || cache != null) {
+            throw new UnsupportedOperationException(
+                "Exits of a room graph or file are fixed once it is built");
+        }
         exits.put(direction, neighbor);
+        longDescription = null;
+        exitLine = null;
     }
 
     /**
      * Define a direction as needing a key.
      * @param direction The direction of the exit.
-     * @param key       The key for that exit.
      */
     public void setKey(String direction){
+        if(graph != null) {
+            graph.lock(id, direction);
+            return;
+        }
+        if(cache != null) {
+            if(!cache.setLocked(id, direction, true)) {
+                throw new IllegalArgumentException("No exit " + direction +
+                                                   " from " + getName());
+            }
+            return;
+        }
         keys.put(direction, true);
+        longDescription = null;
+    }
+
+    /**
+     * Take the key off a direction, so the exit is no longer locked.
+     * @param direction The direction of the exit.
+     */
+    public void removeKey(String direction){
+        if(graph != null) {
+            int exit = findGraphExit(direction);
+            if(exit >= 0) {
+                graph.setLocked(exit, false);
+            }
+            return;
+        }
+        if(cache != null) {
+            cache.setLocked(id, direction, false);
+            return;
+        }
+        keys.remove(direction);
+        longDescription = null;
     }
     
     /**
      * @return The short description of the room
-     * (the one that was defined in the constructor).
+     * (the one that was defined in the constructor). If it shares a
+     * prefix, it is joined into a new String on every call; to add it to
+     * other text, use appendShortDescription instead.
      */
     public String getShortDescription()
     {
+        if(graph != null) {
+            return graph.getDescription(id);
+        }
+        if(cache != null) {
+            return cache.get(id).description;
+        }
+        if(texts != null) {
+            return texts.get(descriptionText);
+        }
+        if(descriptionPrefix != null) {
+            return descriptionPrefix.concat(description);
+        }
         return description;
     }
 
+    /**
+     * Add the short description of the room to the end of some text. A
+     * description that shares a prefix is added in its two parts, rather
+     * than joined into a new String first as getShortDescription must.
+     * @param text The text to add the description to.
+     */
+    public void appendShortDescription(StringBuilder text)
+    {
+        if(descriptionPrefix != null) {
+            text.append(descriptionPrefix).append(description);
+            return;
+        }
+        text.append(getShortDescription());
+    }
+
     /**
      * Return a description of the room in the form:
      *     You are in the kitchen.
@@ -93,22 +288,91 @@ public class Room
      */
     public String getLongDescription()
     {
-        return "You are " + description + ".\n" + getExitString();
+        if(longDescription == null) {
+            if(isStored() || descriptionPrefix != null) {
+                return "You are " + getShortDescription() + getExitLine();
+            }
+            StringBuilder text = new StringBuilder("You are ");
+            appendShortDescription(text);
+            text.append(".\n");
+            appendExitString(text);
+            longDescription = text.toString();
+        }
+        return longDescription;
+    }
+
+    /**
+     * Print the long description of the room as a line of output. A
+     * description in a text store is printed straight from it, and one
+     * that shares a prefix is printed in its two parts.
+     * @param out Where it is printed.
+     */
+    public void printLongDescription(GameOutput out)
+    {
+        if(!isStored() && descriptionPrefix == null) {
+            out.println(getLongDescription());
+            return;
+        }
+        out.print("You are ");
+        if(descriptionPrefix != null) {
+            out.print(descriptionPrefix);
+            out.print(description);
+        }
+        else if(graph != null) {
+            graph.printDescription(id, out);
+        }
+        else {
+            texts.print(descriptionText, out);
+        }
+        out.println(getExitLine());
+    }
+
+    /**
+     * @return Whether the room's description is in a text store.
+     */
+    private boolean isStored()
+    {
+        return texts != null || (graph != null && graph.hasTextStore());
     }
 
     /**
-     * Return a string describing the room's exits, for example
-     * "Exits: north west".
-     * @return Details of the room's exits.
+     * @return The end of the long description, from the end of the
+     * room's description on, for example ".\nExits: north west". It is
+     * kept until the room's exits change.
      */
-    private String getExitString()
+    private String getExitLine()
     {
-        String returnString = "Exits:";
-        Set<String> localExits = exits.keySet();
-        for(String exit : localExits) {
-            returnString += " " + exit;
+        if(exitLine == null) {
+            StringBuilder text = new StringBuilder(".\n");
+            appendExitString(text);
+            exitLine = text.toString();
+        }
+        return exitLine;
+    }
+
+    /**
+     * Add a string describing the room's exits, for example
+     * "Exits: north west", to the end of some text.
+     * @param text The text to add the details of the room's exits to.
+     */
+    private void appendExitString(StringBuilder text)
+    {
+        text.append("Exits:");
+        if(graph != null) {
+            for(int exit = graph.getExitStart(id); exit < graph.getExitEnd(id); exit++) {
+                text.append(' ').append(graph.getDirectionName(graph.getExitDirection(exit)));
+            }
+            return;
+        }
+        if(cache != null) {
+            for(int direction : cache.get(id).directions) {
+                text.append(' ').append(cache.getDirectionName(direction));
+            }
+            return;
+        }
+        for(String exit : exits.keySet()) {
+            text.append(' ').append(exit);
         }
-        return returnString;
     }
 
     /**
@@ -119,14 +383,62 @@ public class Room
      */
     public Room getExit(String direction) 
     {
+        if(graph != null) {
+            int exit = findGraphExit(direction);
+            return exit < 0 ? null : graph.room(graph.getExitTarget(exit));
+        }
+        if(cache != null) {
+            RoomFile.Record room = cache.get(id);
+            int exit = room.findExit(cache.getDirectionId(direction));
+            return exit < 0 ? null : cache.room(room.targets[exit]);
+        }
         return exits.get(direction);
     }
+
+    /**
+     * @return The index in the graph of this room's exit in a direction,
+     * or -1 if there is none.
+     */
+    private int findGraphExit(String direction)
+    {
+        int directionId = graph.getDirectionId(direction);
+        return directionId < 0 ? -1 : graph.findExit(id, directionId);
+    }
+    
+    /**
+     * @return The directions of this room's exits, in the order they were
+     * defined. The set cannot be changed.
+     */
+    public Set<String> getExitDirections()
+    {
+        if(graph != null) {
+            Set<String> directions = new LinkedHashSet<String>();
+            for(int exit = graph.getExitStart(id); exit < graph.getExitEnd(id); exit++) {
+                directions.add(graph.getDirectionName(graph.getExitDirection(exit)));
+            }
+            return Collections.unmodifiableSet(directions);
+        }
+        if(cache != null) {
+            Set<String> directions = new LinkedHashSet<String>();
+            for(int direction : cache.get(id).directions) {
+                directions.add(cache.getDirectionName(direction));
+            }
+            return Collections.unmodifiableSet(directions);
+        }
+        return Collections.unmodifiableSet(exits.keySet());
+    }
     
     /**
      * Return whether or not this room is flagged as the final room.
      * @return True if it's flagged, otherwise return false.
      */
     public boolean isFinalRoom() {
+        if (graph != null) {
+            return graph.isFinal(id);
+        }
+        if (cache != null) {
+            return cache.get(id).isFinal;
+        }
         if (finalExit) {
             return true;
         }
@@ -134,13 +446,46 @@ public class Room
     }
     
     /**
-     * 
+     * Return whether the exit in a direction needs a key.
+     * @param direction The exit's direction.
+     * @return True if it's locked, otherwise return false.
      */
     public boolean isLocked(String direction) {
+        if (graph != null) {
+            int exit = findGraphExit(direction);
+            return exit >= 0 && graph.isLocked(exit);
+        }
+        if (cache != null) {
+            RoomFile.Record room = cache.get(id);
+            int exit = room.findExit(cache.getDirectionId(direction));
+            return exit >= 0 && room.locked[exit];
+        }
         if (keys.get(direction) == null) {
             return false;
         }
         return keys.get(direction);
     }
-}
 
+    /**
+     * Views of the same room in the same graph or cache are equal. Any
+     * other room is only equal to itself.
+     */
+    @Override
+    public boolean equals(Object other)
+    {
+        if((graph == null && cache == null) || !(other instanceof Room)) {
+            return this == other;
+        }
+        Room room = (Room) other;
+        return room.graph == graph && room.cache == cache && room.id == id;
+    }
+
+    /**
+     * @return A hash code consistent with equals.
+     */
+    @Override
+    public int hashCode()
+    {
+        return graph == null && cache == null ? super.hashCode() : id;
+    }
+}
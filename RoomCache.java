@@ -0,0 +1,393 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A RoomCache keeps some of the rooms of a RoomFile in memory, for a
+ * world too large to hold all of them. The world hands out Rooms that
+ * are views of the cache, holding only their id, and a room is read from
+ * the file (faulted in) the first time one of them is asked about it, so
+ * moving and looking work just as they do for any other world.
+ *
+ * Rooms are kept in least recently used order. Once more than the most
+ * rooms allowed are kept, or they take more than the most bytes allowed
+ * (as estimated), the least recently used are dropped. Rooms players
+ * are in are pinned (see World.enterRoom) and never dropped, so the
+ * commands players send about where they are never wait for the disk.
+ *
+ * Locks are the only thing about a room that can change. A room whose
+ * locks have been changed keeps them in a small table, which is used
+ * instead of the file's whenever the room is read again.
+ *
+ * The cache counts hits and faults, how long faults take and how much
+ * it holds, and makes them available through JMX (see RoomCacheMXBean)
+ * once RoomFile.open has registered it, under its file's name and a
+ * number of its own, so a file opened twice is shown twice.
+ * Rooms are looked up while holding the cache's lock, but read from the
+ * file without it, so players waiting for one room to be read do not
+ * hold up the others.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class RoomCache implements RoomCacheMXBean
+{
+    private static final int VIEW_CACHE_SIZE = 4096;
+    private static final AtomicInteger registered = new AtomicInteger();
+
+    private RoomFile file;
+    private int maxRooms;
+    private long maxBytes;
+    private ObjectName objectName;      // null if not registered with JMX
+
+    // guarded by this
+    private LinkedHashMap<Integer, RoomFile.Record> unpinned;  // least recently used first
+    private HashMap<Integer, RoomFile.Record> pinned;
+    private HashMap<Integer, boolean[]> changedLocks;
+    private long residentBytes;
+    private long hits;
+    private long faults;
+    private long evictions;
+
+    private GameMetrics.Histogram faultLatency;
+    private AtomicReferenceArray<Room> views;
+
+    /**
+     * Create a cache of a room file's rooms.
+     * @param file     The file.
+     * @param maxRooms The most rooms to keep, apart from pinned ones.
+     * @param maxBytes Roughly the most heap the rooms kept may take,
+     *                 apart from pinned ones.
+     */
+    public RoomCache(RoomFile file, int maxRooms, long maxBytes)
+    {
+        this.file = file;
+        this.maxRooms = Math.max(1, maxRooms);
+        this.maxBytes = maxBytes;
+        unpinned = new LinkedHashMap<>(16, 0.75f, true);
+        pinned = new HashMap<>();
+        changedLocks = new HashMap<>();
+        faultLatency = new GameMetrics.Histogram();
+        views = new AtomicReferenceArray<>(VIEW_CACHE_SIZE);
+    }
+
+    /**
+     * Show the cache through JMX until it is closed. Only RoomFile calls
+     * this, once the cache is built.
+     */
+    void register()
+    {
+        try {
+            ObjectName name = new ObjectName("WorldBesideUs:type=RoomCache,name=" +
+                                             ObjectName.quote(file.getFileName()) +
+                                             ",id=" + registered.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            objectName = name;
+        }
+        catch(JMException e) {
+            // still works, even if nobody can see it over JMX
+        }
+    }
+
+    /**
+     * @return The number of rooms in the file.
+     */
+    public int getRoomCount()
+    {
+        return file.getRoomCount();
+    }
+
+    /**
+     * @return The rooms' part of the world's fingerprint.
+     */
+    long getRoomHash()
+    {
+        return file.getRoomHash();
+    }
+
+    /**
+     * Make a Room view of one of the rooms.
+     * @param id The id of the room.
+     * @return A Room that reads from this cache.
+     */
+    public Room room(int id)
+    {
+        if(id < 0 || id >= getRoomCount()) {
+            throw new IndexOutOfBoundsException("No room " + id);
+        }
+        int slot = id & (VIEW_CACHE_SIZE - 1);
+        Room view = views.get(slot);
+        if(view == null || view.getId() != id) {
+            view = new Room(this, id);
+            views.set(slot, view);
+        }
+        return view;
+    }
+
+    /**
+     * Look a room up by name, optionally ignoring case.
+     * @param name       The name of a room.
+     * @param ignoreCase Whether a name differing only in case will do.
+     * @return The id of the room, or -1 if there is none.
+     * @throws UncheckedIOException If the file cannot be read.
+     */
+    public int findRoom(String name, boolean ignoreCase)
+    {
+        try {
+            return file.findRoom(name, ignoreCase);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Could not read " + file.getFileName(), e);
+        }
+    }
+
+    /**
+     * @return The number of a direction, or -1 if no exit goes that way.
+     */
+    int getDirectionId(String direction)
+    {
+        return file.getDirectionId(direction);
+    }
+
+    /**
+     * @return The name of a direction number.
+     */
+    String getDirectionName(int directionId)
+    {
+        return file.getDirectionName(directionId);
+    }
+
+    /**
+     * Get a room, reading it from the file if it is not in memory.
+     * @param id The id of the room.
+     * @return The room. Its fields must not be changed.
+     * @throws UncheckedIOException If the file cannot be read.
+     */
+    RoomFile.Record get(int id)
+    {
+        synchronized(this) {
+            RoomFile.Record room = lookUp(id);
+            if(room != null) {
+                hits++;
+                return room;
+            }
+        }
+        long start = System.nanoTime();
+        RoomFile.Record read;
+        try {
+            read = file.readRoom(id);
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException("Could not read room " + id + " from " +
+                                           file.getFileName(), e);
+        }
+        faultLatency.record(System.nanoTime() - start);
+        synchronized(this) {
+            faults++;
+            RoomFile.Record room = lookUp(id);
+            if(room != null) {
+                return room;    // another thread read it meanwhile
+            }
+            boolean[] locks = changedLocks.get(id);
+            if(locks != null) {
+                read.locked = locks;
+            }
+            unpinned.put(id, read);
+            residentBytes += read.bytes;
+            evict();
+            return read;
+        }
+    }
+
+    /**
+     * @return The room if it is in memory, or null.
+     */
+    private RoomFile.Record lookUp(int id)
+    {
+        RoomFile.Record room = pinned.get(id);
+        return room != null ? room : unpinned.get(id);
+    }
+
+    /**
+     * Drop the least recently used rooms that are not pinned, until the
+     * rest fit.
+     */
+    private void evict()
+    {
+        Iterator<RoomFile.Record> oldest = unpinned.values().iterator();
+        while(oldest.hasNext() && (unpinned.size() > maxRooms || residentBytes > maxBytes)) {
+            residentBytes -= oldest.next().bytes;
+            oldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Keep a room in memory until it is unpinned as many times as it is
+     * pinned.
+     * @param id The id of the room.
+     */
+    void pin(int id)
+    {
+        RoomFile.Record read = get(id);
+        synchronized(this) {
+            RoomFile.Record room = pinned.get(id);
+            if(room == null) {
+                room = unpinned.remove(id);
+                if(room == null) {
+                    // dropped again since it was read
+                    room = read;
+                    residentBytes += room.bytes;
+                }
+                pinned.put(id, room);
+            }
+            room.pins++;
+        }
+    }
+
+    /**
+     * Let a pinned room be dropped again, once nobody else has it pinned.
+     * @param id The id of the room.
+     */
+    synchronized void unpin(int id)
+    {
+        RoomFile.Record room = pinned.get(id);
+        if(room != null && --room.pins == 0) {
+            pinned.remove(id);
+            unpinned.put(id, room);
+            evict();
+        }
+    }
+
+    /**
+     * Lock or unlock a room's exit.
+     * @param id        The id of the room.
+     * @param direction The direction of the exit.
+     * @param locked    true to lock it, false to unlock it.
+     * @return false if the room has no exit in that direction.
+     */
+    boolean setLocked(int id, String direction, boolean locked)
+    {
+        RoomFile.Record room = get(id);
+        int exit = room.findExit(getDirectionId(direction));
+        if(exit < 0) {
+            return false;
+        }
+        synchronized(this) {
+            boolean[] locks = changedLocks.get(id);
+            if(locks == null) {
+                locks = room.locked;
+                changedLocks.put(id, locks);
+            }
+            locks[exit] = locked;
+            RoomFile.Record kept = lookUp(id);
+            if(kept != null) {
+                kept.locked = locks;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Close the file and stop showing the cache through JMX.
+     * @throws IOException If the file cannot be closed.
+     */
+    public void close() throws IOException
+    {
+        if(objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            }
+            catch(JMException e) {
+                // already gone
+            }
+            objectName = null;
+        }
+        file.close();
+    }
+
+    @Override
+    public synchronized long getHitCount()
+    {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getFaultCount()
+    {
+        return faults;
+    }
+
+    @Override
+    public synchronized double getHitRate()
+    {
+        long total = hits + faults;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public synchronized long getEvictionCount()
+    {
+        return evictions;
+    }
+
+    @Override
+    public synchronized int getResidentRooms()
+    {
+        return unpinned.size() + pinned.size();
+    }
+
+    @Override
+    public synchronized int getPinnedRooms()
+    {
+        return pinned.size();
+    }
+
+    @Override
+    public synchronized long getResidentBytes()
+    {
+        return residentBytes;
+    }
+
+    @Override
+    public long getMeanFaultNanos()
+    {
+        return faultLatency.mean();
+    }
+
+    @Override
+    public long getP50FaultNanos()
+    {
+        return faultLatency.percentile(50);
+    }
+
+    @Override
+    public long getP99FaultNanos()
+    {
+        return faultLatency.percentile(99);
+    }
+
+    @Override
+    public long getP999FaultNanos()
+    {
+        return faultLatency.percentile(99.9);
+    }
+
+    @Override
+    public synchronized void reset()
+    {
+        hits = 0;
+        faults = 0;
+        evictions = 0;
+        faultLatency.reset();
+    }
+}
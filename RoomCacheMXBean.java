@@ -0,0 +1,73 @@
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * The management interface of RoomCache, as seen through JMX (under
+ * WorldBesideUs:type=RoomCache). Latencies are in nanoseconds, and the
+ * percentiles are accurate to within a quarter.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public interface RoomCacheMXBean
+{
+    /**
+     * @return How many times a room was asked for and already in memory.
+     */
+    long getHitCount();
+
+    /**
+     * @return How many times a room had to be read from disk.
+     */
+    long getFaultCount();
+
+    /**
+     * @return The share of rooms asked for that were already in memory,
+     * between 0 and 1.
+     */
+    double getHitRate();
+
+    /**
+     * @return How many rooms have been dropped to make space.
+     */
+    long getEvictionCount();
+
+    /**
+     * @return How many rooms are in memory.
+     */
+    int getResidentRooms();
+
+    /**
+     * @return How many rooms are kept in memory because players are in them.
+     */
+    int getPinnedRooms();
+
+    /**
+     * @return Roughly how much heap the rooms in memory take, in bytes.
+     */
+    long getResidentBytes();
+
+    /**
+     * @return The mean time taken to read a room from disk.
+     */
+    long getMeanFaultNanos();
+
+    /**
+     * @return The median time taken to read a room from disk.
+     */
+    long getP50FaultNanos();
+
+    /**
+     * @return The 99th percentile of the time taken to read a room.
+     */
+    long getP99FaultNanos();
+
+    /**
+     * @return The 99.9th percentile of the time taken to read a room.
+     */
+    long getP999FaultNanos();
+
+    /**
+     * Set the counts and latencies back to zero.
+     */
+    void reset();
+}
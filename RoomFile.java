@@ -0,0 +1,467 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A RoomFile holds a world's rooms on disk, for worlds too large for the
+ * heap. Each room is a record that can be read on its own: its name,
+ * description, whether it is final, and its exits with their locks. A
+ * world opened from a room file (see open) reads a room the first time
+ * it is needed and keeps it in a RoomCache, so only the rooms players
+ * are in or near take up memory, however large the world is.
+ *
+ * The rest of the world (the items, triggers, start room and expected
+ * one-way exits) is kept at the end of the file as world file text (see
+ * WorldFile), and is all read when the file is opened: saved games and
+ * triggers refer to items by identity, so there must only ever be one
+ * copy of each.
+ *
+ * The file is laid out as:
+ *
+ *     header      magic, version, room count, the rooms' part of the
+ *                 world's fingerprint, and where the directions and
+ *                 names start
+ *     index       where each room's record starts, and where the last ends
+ *     records     name, description, final, exit count, then for each
+ *                 exit: direction number, target room id, locked
+ *     directions  count, then the name of each direction number
+ *     names       count, then the ids of the named rooms, sorted by name
+ *                 ignoring case, then by name
+ *     contents    the rest of the world, as world file text in UTF-8
+ *
+ * Rooms without a name (as in generated worlds) are stored with an empty
+ * one, and called "#" followed by their id.
+ *
+ * Reading a room takes two reads at known positions: its place in the
+ * index, then its record. Any number of threads may read at once.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class RoomFile implements Closeable
+{
+    private static final int MAGIC = 0x57425246;    // "WBRF"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 36;
+
+    private FileChannel file;
+    private String fileName;
+    private int roomCount;
+    private long roomHash;
+    private long namesOffset;
+    private long contentsOffset;
+    private String[] directionNames;
+    private HashMap<String, Integer> directionIds;
+
+    /**
+     * Open a room file for reading.
+     * @param fileName The name of the file.
+     * @throws IOException If the file cannot be read, or is not a room file.
+     */
+    public RoomFile(String fileName) throws IOException
+    {
+        this.fileName = fileName;
+        file = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        try {
+            DataInputStream header = read(0, HEADER_SIZE);
+            if(header.readInt() != MAGIC || header.readInt() != VERSION) {
+                throw new IOException(fileName + " is not a room file");
+            }
+            roomCount = header.readInt();
+            roomHash = header.readLong();
+            long directionsOffset = header.readLong();
+            namesOffset = header.readLong();
+            contentsOffset = namesOffset + 4 + 4L * readInt(namesOffset);
+
+            DataInputStream directions = read(directionsOffset,
+                                              (int) (namesOffset - directionsOffset));
+            directionNames = new String[directions.readInt()];
+            directionIds = new HashMap<>();
+            for(int i = 0; i < directionNames.length; i++) {
+                directionNames[i] = directions.readUTF();
+                directionIds.put(directionNames[i], i);
+            }
+        }
+        catch(IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a world whose rooms are in a room file, reading them as they
+     * are needed.
+     * @param fileName The name of the file.
+     * @param maxRooms The most rooms to keep in memory, apart from those
+     *                 players are in.
+     * @param maxBytes Roughly the most heap those rooms may take.
+     * @return The world.
+     * @throws IOException If the file cannot be read, or is not a room file.
+     */
+    public static World open(String fileName, int maxRooms, long maxBytes) throws IOException
+    {
+        RoomFile rooms = new RoomFile(fileName);
+        RoomCache cache = new RoomCache(rooms, maxRooms, maxBytes);
+        cache.register();
+        try {
+            World world = new World(cache);
+            long end = rooms.file.size();
+            InputStream contents = rooms.read(rooms.contentsOffset,
+                                              (int) (end - rooms.contentsOffset));
+            WorldFile.loadInto(world, new InputStreamReader(contents, StandardCharsets.UTF_8),
+                               new TextPool());
+            return world;
+        }
+        catch(IOException | RuntimeException e) {
+            cache.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return The name of the file.
+     */
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    /**
+     * @return How many rooms the file holds.
+     */
+    public int getRoomCount()
+    {
+        return roomCount;
+    }
+
+    /**
+     * @return The rooms' part of the fingerprint of the world the file
+     * was written from (see World.getFingerprint).
+     */
+    long getRoomHash()
+    {
+        return roomHash;
+    }
+
+    /**
+     * @return The number of a direction, or -1 if no exit goes that way.
+     */
+    int getDirectionId(String direction)
+    {
+        Integer id = directionIds.get(direction);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return The name of a direction number.
+     */
+    String getDirectionName(int directionId)
+    {
+        return directionNames[directionId];
+    }
+
+    /**
+     * Read a room's record.
+     * @param id The id of the room.
+     * @return The room.
+     * @throws IOException If the file cannot be read.
+     */
+    Record readRoom(int id) throws IOException
+    {
+        if(id < 0 || id >= roomCount) {
+            throw new IndexOutOfBoundsException("No room " + id);
+        }
+        DataInputStream index = read(HEADER_SIZE + 8L * id, 16);
+        long start = index.readLong();
+        long end = index.readLong();
+        DataInputStream in = read(start, (int) (end - start));
+        Record room = new Record();
+        String name = in.readUTF();
+        room.name = name.isEmpty() ? "#" + id : name;
+        room.description = in.readUTF();
+        room.isFinal = in.readBoolean();
+        int exits = in.readUnsignedShort();
+        room.directions = new int[exits];
+        room.targets = new int[exits];
+        room.locked = new boolean[exits];
+        for(int i = 0; i < exits; i++) {
+            room.directions[i] = in.readUnsignedShort();
+            room.targets[i] = in.readInt();
+            room.locked[i] = in.readBoolean();
+        }
+        // object headers and fields, the strings' characters, the arrays
+        room.bytes = 120 + 2L * (room.name.length() + room.description.length()) + 9L * exits;
+        return room;
+    }
+
+    /**
+     * Look a room up by name, with a binary search of the names. The
+     * names are sorted ignoring case, so those differing only in case
+     * are next to each other; one that matches exactly is found first.
+     * @param name       The name of a room.
+     * @param ignoreCase Whether a name differing only in case will do.
+     * @return The id of the room, or -1 if there is none.
+     * @throws IOException If the file cannot be read.
+     */
+    int findRoom(String name, boolean ignoreCase) throws IOException
+    {
+        if(name.startsWith("#")) {
+            try {
+                int id = Integer.parseInt(name.substring(1));
+                if(id >= 0 && id < roomCount && readRoom(id).name.equals(name)) {
+                    return id;
+                }
+            }
+            catch(NumberFormatException e) {
+                // not one of the made-up names, so it may be a real one
+            }
+        }
+        // the first name that is not before it, ignoring case
+        String folded = fold(name);
+        int count = readInt(namesOffset);
+        int low = 0;
+        int high = count;
+        while(low < high) {
+            int middle = (low + high) >>> 1;
+            if(fold(readRoom(readInt(namesOffset + 4 + 4L * middle)).name).compareTo(folded) < 0) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        int found = -1;
+        for(int i = low; i < count; i++) {
+            int id = readInt(namesOffset + 4 + 4L * i);
+            String candidate = readRoom(id).name;
+            if(!fold(candidate).equals(folded)) {
+                break;
+            }
+            if(candidate.equals(name)) {
+                return id;
+            }
+            if(found < 0 && ignoreCase) {
+                found = id;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return A name in lower case, as the names are sorted.
+     */
+    private static String fold(String name)
+    {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private int readInt(long position) throws IOException
+    {
+        return read(position, 4).readInt();
+    }
+
+    /**
+     * Read part of the file.
+     * @return A stream over the bytes read.
+     * @throws EOFException If the file ends first.
+     */
+    private DataInputStream read(long position, int length) throws IOException
+    {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        while(bytes.hasRemaining()) {
+            if(file.read(bytes, position + bytes.position()) < 0) {
+                throw new EOFException(fileName + " is cut short");
+            }
+        }
+        return new DataInputStream(new ByteArrayInputStream(bytes.array()));
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        file.close();
+    }
+
+    /**
+     * Write a world out as a room file.
+     * @param world    The world, stored in any way.
+     * @param fileName The name of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(World world, String fileName) throws IOException
+    {
+        int roomCount = world.getRoomCount();
+        long[] index = new long[roomCount + 1];
+        List<String> directionNames = new ArrayList<>();
+        HashMap<String, Integer> directionIds = new HashMap<>();
+        List<Integer> named = new ArrayList<>();
+        long position = HEADER_SIZE + 8L * (roomCount + 1);
+        long directionsOffset;
+        long namesOffset;
+
+        try(FileOutputStream stream = new FileOutputStream(fileName)) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(stream, 1 << 16));
+            // room for the header and index, which are filled in last
+            byte[] zeros = new byte[1 << 16];
+            for(long left = position; left > 0; left -= zeros.length) {
+                out.write(zeros, 0, (int) Math.min(left, zeros.length));
+            }
+
+            ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+            DataOutputStream recordOut = new DataOutputStream(record);
+            for(int id = 0; id < roomCount; id++) {
+                Room room = world.getRoom(id);
+                record.reset();
+                String name = room.getName();
+                boolean isNamed = name != null && !name.equals("#" + id);
+                recordOut.writeUTF(isNamed ? name : "");
+                recordOut.writeUTF(room.getShortDescription());
+                recordOut.writeBoolean(room.isFinalRoom());
+                List<String> directions = new ArrayList<>(room.getExitDirections());
+                recordOut.writeShort(directions.size());
+                for(String direction : directions) {
+                    Integer directionId = directionIds.get(direction);
+                    if(directionId == null) {
+                        directionId = directionNames.size();
+                        directionIds.put(direction, directionId);
+                        directionNames.add(direction);
+                    }
+                    recordOut.writeShort(directionId);
+                    recordOut.writeInt(room.getExit(direction).getId());
+                    recordOut.writeBoolean(room.isLocked(direction));
+                }
+                index[id] = position;
+                record.writeTo(out);
+                position += record.size();
+                if(isNamed) {
+                    named.add(id);
+                }
+            }
+            index[roomCount] = position;
+
+            directionsOffset = position;
+            record.reset();
+            recordOut.writeInt(directionNames.size());
+            for(String direction : directionNames) {
+                recordOut.writeUTF(direction);
+            }
+            record.writeTo(out);
+            namesOffset = position + record.size();
+
+            Integer[] byName = named.toArray(new Integer[0]);
+            Arrays.sort(byName, (a, b) -> {
+                String first = world.getRoom(a).getName();
+                String second = world.getRoom(b).getName();
+                int order = fold(first).compareTo(fold(second));
+                return order != 0 ? order : first.compareTo(second);
+            });
+            out.writeInt(byName.length);
+            for(int id : byName) {
+                out.writeInt(id);
+            }
+
+            Writer contents = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            WorldFile.saveContents(world, contents);
+            contents.flush();
+        }
+
+        // now the header and index can be filled in
+        try(FileChannel channel = FileChannel.open(Paths.get(fileName),
+                                                   StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(roomCount)
+                  .putLong(world.fingerprintRooms())
+                  .putLong(directionsOffset).putLong(namesOffset).flip();
+            writeFully(channel, header, 0);
+            ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+            long at = HEADER_SIZE;
+            for(long offset : index) {
+                if(!chunk.hasRemaining()) {
+                    chunk.flip();
+                    at += writeFully(channel, chunk, at);
+                    chunk.clear();
+                }
+                chunk.putLong(offset);
+            }
+            chunk.flip();
+            writeFully(channel, chunk, at);
+        }
+    }
+
+    /**
+     * @return How many bytes were written (all of them).
+     */
+    private static int writeFully(FileChannel channel, ByteBuffer bytes, long position)
+        throws IOException
+    {
+        int length = bytes.remaining();
+        while(bytes.hasRemaining()) {
+            channel.write(bytes, position + length - bytes.remaining());
+        }
+        return length;
+    }
+
+    /**
+     * One room as read from the file. Only its locks ever change.
+     */
+    static class Record
+    {
+        String name;
+        String description;
+        boolean isFinal;
+        int[] directions;           // direction numbers, in the order defined
+        int[] targets;              // the ids of the rooms the exits lead to
+        boolean[] locked;
+        long bytes;                 // roughly how much heap it takes
+        int pins;                   // players in it; changed only by RoomCache
+
+        /**
+         * @return The index of the exit in a direction, or -1 if there is none.
+         */
+        int findExit(int directionId)
+        {
+            for(int i = 0; i < directions.length; i++) {
+                if(directions[i] == directionId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Write a world file out as a room file, loading it compactly first.
+     * Usage: java RoomFile worldFile roomFile
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 2) {
+            System.out.println("Usage: java RoomFile worldFile roomFile");
+            return;
+        }
+        write(WorldFile.loadCompact(args[0]), args[1]);
+    }
+}
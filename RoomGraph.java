@@ -0,0 +1,568 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A RoomGraph stores a whole world's rooms in a handful of arrays instead
+ * of one Room object (with its own maps) per room, for worlds too big to
+ * hold the usual way. Rooms are numbered from 0, directions are numbered
+ * as they are first seen, and the exits of all rooms are kept together
+ * in one list sorted by the room they leave from: the exits of room r are
+ * the entries from exitStart[r] up to exitStart[r + 1]. Locked exits are
+ * marked in a bit set with one bit per exit.
+ *
+ * The graph is built by adding rooms, exits and locks, then calling
+ * build(). After that rooms and exits cannot be added, but locks can
+ * still be changed. Room objects for the graph are made on demand by
+ * room(id) as thin views that read straight from the arrays. The most
+ * recently used views are kept in a small fixed-size cache, so that
+ * moving about does not make garbage and views can keep their long
+ * description.
+ *
+ * A graph can also hold just part of a world, for a world split into
+ * shards: the rooms with ids from getFirstRoom() on, up to
+ * getHeldRoomCount() of them. Ids are still those of the whole world, so
+ * exits lead straight to rooms held by other shards, and room(id) gives a
+ * view of any room in the world. A room held elsewhere has no
+ * description and no exits here; only its shard knows what it is like.
+ *
+ * The descriptions can be moved to a TextStore once the graph is built
+ * (see TextStore.moveText), leaving only a text number for each room.
+ * Views then print their descriptions straight from the store, and keep
+ * only the list of exits rather than the whole long description.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class RoomGraph
+{
+    // directions, numbered as they are first seen
+    private HashMap<String, Integer> directionIds;
+    private ArrayList<String> directionNames;
+
+    // one entry per room held
+    private int firstRoom;          // the id of the first room held
+    private int worldRoomCount;     // -1 if the graph holds the whole world
+    private int roomCount;
+    private String[] names;
+    private String[] descriptions;  // null once moved to a text store
+    private TextStore texts;
+    private int[] descriptionTexts;
+    private long[] finalRooms;      // bit set
+    private int[] exitStart;        // roomCount + 1 entries once built
+
+    // one entry per exit, sorted by room once built
+    private int exitCount;
+    private int[] exitFrom;         // only used while building
+    private int[] exitDirection;
+    private int[] exitTarget;
+    private long[] lockedExits;     // bit set
+
+    private HashMap<String, Integer> roomIds;   // by name, null until needed
+    private HashMap<String, Integer> foldedIds; // by lower case name, for names
+                                                // that are not, once built
+    private boolean built;
+
+    // Recently used room views, one slot per (id mod size), so moving
+    // about the same rooms does not keep making new views.
+    private static final int VIEW_CACHE_SIZE = 4096;
+    private AtomicReferenceArray<Room> views;
+
+    /**
+     * Create an empty graph.
+     * @param expectedRooms Roughly how many rooms will be added. The arrays
+     *                      grow if more are added, but a good guess saves
+     *                      copying.
+     */
+    public RoomGraph(int expectedRooms)
+    {
+        this(expectedRooms, 0, -1);
+    }
+
+    /**
+     * Create an empty graph for part of a world. The rooms added are
+     * given ids from firstRoom on.
+     * @param expectedRooms  Roughly how many rooms will be added.
+     * @param firstRoom      The id of the first room added.
+     * @param worldRoomCount How many rooms the whole world has.
+     */
+    public RoomGraph(int expectedRooms, int firstRoom, int worldRoomCount)
+    {
+        if(worldRoomCount >= 0 && (firstRoom < 0 || firstRoom > worldRoomCount)) {
+            throw new IllegalArgumentException("Room " + firstRoom + " is not in the world");
+        }
+        this.firstRoom = firstRoom;
+        this.worldRoomCount = worldRoomCount;
+        int capacity = Math.max(16, expectedRooms);
+        directionIds = new HashMap<>();
+        directionNames = new ArrayList<>();
+        names = new String[capacity];
+        descriptions = new String[capacity];
+        finalRooms = new long[(capacity >> 6) + 1];
+        exitFrom = new int[capacity * 2];
+        exitDirection = new int[capacity * 2];
+        exitTarget = new int[capacity * 2];
+        lockedExits = new long[(capacity * 2 >> 6) + 1];
+        roomIds = new HashMap<>();
+        views = new AtomicReferenceArray<>(VIEW_CACHE_SIZE);
+    }
+
+    /**
+     * Add a room.
+     * @param name        The room's name, or null to call it "#" followed
+     *                    by its id without storing a name at all.
+     * @param description The room's description. Rooms with the same
+     *                    description can share one String.
+     * @param isFinal     Whether this is the final room.
+     * @return The id of the new room.
+     */
+    public int addRoom(String name, String description, boolean isFinal)
+    {
+        checkNotBuilt();
+        if(worldRoomCount >= 0 && firstRoom + roomCount == worldRoomCount) {
+            throw new IllegalArgumentException("The world only has " + worldRoomCount + " rooms");
+        }
+        if(name != null && roomIds.putIfAbsent(name, firstRoom + roomCount) != null) {
+            throw new IllegalArgumentException("There is already a room called " + name);
+        }
+        if(roomCount == names.length) {
+            int capacity = roomCount * 2;
+            names = Arrays.copyOf(names, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+            finalRooms = Arrays.copyOf(finalRooms, (capacity >> 6) + 1);
+        }
+        names[roomCount] = name;
+        descriptions[roomCount] = description;
+        if(isFinal) {
+            finalRooms[roomCount >> 6] |= 1L << roomCount;
+        }
+        return firstRoom + roomCount++;
+    }
+
+    /**
+     * Add an exit from one room to another.
+     * @param from      The id of the room the exit leaves. The graph
+     *                  must hold it.
+     * @param direction The direction of the exit.
+     * @param to        The id of the room the exit leads to, which may be
+     *                  held elsewhere.
+     */
+    public void addExit(int from, String direction, int to)
+    {
+        checkNotBuilt();
+        int slot = slot(from);
+        if(slot < 0) {
+            throw new IllegalArgumentException("Room " + from + " is not held here");
+        }
+        if(exitCount == exitFrom.length) {
+            int capacity = exitCount * 2;
+            exitFrom = Arrays.copyOf(exitFrom, capacity);
+            exitDirection = Arrays.copyOf(exitDirection, capacity);
+            exitTarget = Arrays.copyOf(exitTarget, capacity);
+            lockedExits = Arrays.copyOf(lockedExits, (capacity >> 6) + 1);
+        }
+        exitFrom[exitCount] = slot;
+        exitDirection[exitCount] = internDirection(direction);
+        exitTarget[exitCount] = to;
+        exitCount++;
+    }
+
+    /**
+     * Finish building: sort the exits by the room they leave from, trim
+     * the arrays, forget the name index and index the names that are not
+     * in lower case by their lower case. Locks can be set afterwards.
+     */
+    public void build()
+    {
+        checkNotBuilt();
+        names = Arrays.copyOf(names, roomCount);
+        descriptions = Arrays.copyOf(descriptions, roomCount);
+        finalRooms = Arrays.copyOf(finalRooms, (roomCount >> 6) + 1);
+
+        // counting sort of the exits by room, keeping the order they were
+        // added in for each room
+        exitStart = new int[roomCount + 1];
+        for(int i = 0; i < exitCount; i++) {
+            exitStart[exitFrom[i] + 1]++;
+        }
+        for(int room = 0; room < roomCount; room++) {
+            exitStart[room + 1] += exitStart[room];
+        }
+        int[] next = Arrays.copyOf(exitStart, roomCount);
+        int[] directions = new int[exitCount];
+        int[] targets = new int[exitCount];
+        long[] locks = new long[(exitCount >> 6) + 1];
+        for(int i = 0; i < exitCount; i++) {
+            int slot = next[exitFrom[i]]++;
+            directions[slot] = exitDirection[i];
+            targets[slot] = exitTarget[i];
+            if(isLocked(i)) {
+                locks[slot >> 6] |= 1L << slot;
+            }
+        }
+        exitDirection = directions;
+        exitTarget = targets;
+        lockedExits = locks;
+        exitFrom = null;
+        roomIds = null;
+        foldedIds = new HashMap<>();
+        for(int slot = 0; slot < roomCount; slot++) {
+            if(names[slot] != null) {
+                String folded = names[slot].toLowerCase(Locale.ROOT);
+                if(!folded.equals(names[slot])) {
+                    foldedIds.putIfAbsent(folded, firstRoom + slot);
+                }
+            }
+        }
+        built = true;
+    }
+
+    /**
+     * Lock the exit leaving a room in a direction. This can be done while
+     * building or afterwards. While building, the exits added most
+     * recently are searched first, so locking an exit just after adding
+     * it is quick.
+     * @param room      The id of the room.
+     * @param direction The direction of the exit.
+     * @throws IllegalArgumentException If there is no such exit.
+     */
+    public void lock(int room, String direction)
+    {
+        int directionId = getDirectionId(direction);
+        int exit = -1;
+        if(built) {
+            exit = directionId < 0 ? -1 : findExit(room, directionId);
+        }
+        else {
+            int slot = slot(room);
+            for(int i = exitCount - 1; i >= 0 && exit < 0; i--) {
+                if(exitFrom[i] == slot && exitDirection[i] == directionId) {
+                    exit = i;
+                }
+            }
+        }
+        if(exit < 0) {
+            throw new IllegalArgumentException("There is no exit " + direction +
+                                               " from " + getName(room));
+        }
+        setLocked(exit, true);
+    }
+
+    /**
+     * @return Where a room's entries are kept, or -1 if the graph does
+     * not hold it.
+     */
+    private int slot(int room)
+    {
+        int slot = room - firstRoom;
+        return slot >= 0 && slot < roomCount ? slot : -1;
+    }
+
+    /**
+     * @throws IllegalStateException If build() has already been called.
+     */
+    private void checkNotBuilt()
+    {
+        if(built) {
+            throw new IllegalStateException("The room graph has already been built");
+        }
+    }
+
+    /**
+     * @return The number for a direction, giving it the next free number if
+     * it has not been seen before.
+     */
+    private int internDirection(String direction)
+    {
+        Integer id = directionIds.get(direction);
+        if(id == null) {
+            id = directionNames.size();
+            directionIds.put(direction, id);
+            directionNames.add(direction);
+        }
+        return id;
+    }
+
+    /**
+     * @param direction The name of a direction.
+     * @return The number of the direction, or -1 if no exit goes that way.
+     */
+    public int getDirectionId(String direction)
+    {
+        Integer id = directionIds.get(direction);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param directionId The number of a direction.
+     * @return The name of the direction.
+     */
+    public String getDirectionName(int directionId)
+    {
+        return directionNames.get(directionId);
+    }
+
+    /**
+     * @return The number of rooms in the world, which for a graph holding
+     * part of a world is more than it holds.
+     */
+    public int getRoomCount()
+    {
+        return worldRoomCount < 0 ? roomCount : worldRoomCount;
+    }
+
+    /**
+     * @return The id of the first room the graph holds.
+     */
+    public int getFirstRoom()
+    {
+        return firstRoom;
+    }
+
+    /**
+     * @return The number of rooms the graph holds.
+     */
+    public int getHeldRoomCount()
+    {
+        return roomCount;
+    }
+
+    /**
+     * @param room The id of a room.
+     * @return Whether the graph holds it, rather than another shard.
+     */
+    public boolean holds(int room)
+    {
+        return slot(room) >= 0;
+    }
+
+    /**
+     * Make a Room view of one of the graph's rooms.
+     * @param id The id of the room.
+     * @return A Room that reads from this graph.
+     */
+    public Room room(int id)
+    {
+        if(id < 0 || id >= getRoomCount()) {
+            throw new IndexOutOfBoundsException("No room " + id);
+        }
+        int slot = id & (VIEW_CACHE_SIZE - 1);
+        Room view = views.get(slot);
+        if(view == null || view.getId() != id) {
+            view = new Room(this, id);
+            views.set(slot, view);
+        }
+        return view;
+    }
+
+    /**
+     * Look a room up by name. The first time this is called after build()
+     * an index of all the names is made, so avoid it for huge worlds.
+     * @param name The name of a room.
+     * @return The id of the room, or -1 if there is none.
+     */
+    public int findRoom(String name)
+    {
+        return findRoom(name, false);
+    }
+
+    /**
+     * Look a room up by name, optionally ignoring case. A room whose name
+     * matches exactly is found first.
+     * @param name       The name of a room.
+     * @param ignoreCase Whether a name differing only in case will do.
+     * @return The id of the room, or -1 if there is none.
+     */
+    public synchronized int findRoom(String name, boolean ignoreCase)
+    {
+        if(name.startsWith("#")) {
+            try {
+                int id = Integer.parseInt(name.substring(1));
+                if(id >= 0 && id < getRoomCount() && (slot(id) < 0 || names[slot(id)] == null)) {
+                    return id;
+                }
+            }
+            catch(NumberFormatException e) {
+                // not one of the made-up names, so it may be a real one
+            }
+        }
+        if(roomIds == null) {
+            roomIds = new HashMap<>(roomCount * 2);
+            for(int slot = 0; slot < roomCount; slot++) {
+                if(names[slot] != null) {
+                    roomIds.put(names[slot], firstRoom + slot);
+                }
+            }
+        }
+        Integer id = roomIds.get(name);
+        if(id == null && ignoreCase && foldedIds != null) {
+            String folded = name.toLowerCase(Locale.ROOT);
+            id = roomIds.get(folded);
+            if(id == null) {
+                id = foldedIds.get(folded);
+            }
+        }
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return The name of a room.
+     */
+    public String getName(int room)
+    {
+        int slot = slot(room);
+        return slot >= 0 && names[slot] != null ? names[slot] : "#" + room;
+    }
+
+    /**
+     * @return The description of a room, or null if it is held elsewhere.
+     */
+    public String getDescription(int room)
+    {
+        int slot = slot(room);
+        if(slot < 0) {
+            return null;
+        }
+        return texts != null ? texts.get(descriptionTexts[slot]) : descriptions[slot];
+    }
+
+    /**
+     * Print the description of a room, straight from the text store if
+     * it has been moved to one.
+     * @param room The room.
+     * @param out  Where it is printed.
+     */
+    public void printDescription(int room, GameOutput out)
+    {
+        int slot = slot(room);
+        if(slot >= 0 && texts != null) {
+            texts.print(descriptionTexts[slot], out);
+        }
+        else {
+            out.print(String.valueOf(getDescription(room)));
+        }
+    }
+
+    /**
+     * @return Whether the descriptions have been moved to a text store.
+     */
+    public boolean hasTextStore()
+    {
+        return texts != null;
+    }
+
+    /**
+     * Replace the descriptions of the rooms held with texts in a store.
+     * Only TextStore calls this.
+     * @param texts The store.
+     * @param ids   The number of each room's description in the store,
+     *              from the first room held on.
+     */
+    void storeDescriptions(TextStore texts, int[] ids)
+    {
+        if(!built) {
+            throw new IllegalStateException("The room graph has not been built yet");
+        }
+        descriptionTexts = ids;
+        this.texts = texts;
+        descriptions = null;
+    }
+
+    /**
+     * @return Whether a room is the final room.
+     */
+    public boolean isFinal(int room)
+    {
+        int slot = slot(room);
+        return slot >= 0 && (finalRooms[slot >> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * @return The index of a room's first exit. Its exits run up to (but
+     * not including) getExitEnd(room). A room held elsewhere has none.
+     */
+    public int getExitStart(int room)
+    {
+        int slot = slot(room);
+        return slot >= 0 ? exitStart[slot] : 0;
+    }
+
+    /**
+     * @return The index just past a room's last exit.
+     */
+    public int getExitEnd(int room)
+    {
+        int slot = slot(room);
+        return slot >= 0 ? exitStart[slot + 1] : 0;
+    }
+
+    /**
+     * @return The direction number of an exit.
+     */
+    public int getExitDirection(int exit)
+    {
+        return exitDirection[exit];
+    }
+
+    /**
+     * @return The id of the room an exit leads to.
+     */
+    public int getExitTarget(int exit)
+    {
+        return exitTarget[exit];
+    }
+
+    /**
+     * Find the exit leaving a room in a direction.
+     * @param room        The id of the room.
+     * @param directionId The number of the direction.
+     * @return The index of the exit, or -1 if there is none.
+     */
+    public int findExit(int room, int directionId)
+    {
+        int end = getExitEnd(room);
+        for(int exit = getExitStart(room); exit < end; exit++) {
+            if(exitDirection[exit] == directionId) {
+                return exit;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param exit The index of an exit (before build(), the order in which
+     *             it was added).
+     * @return Whether the exit is locked.
+     */
+    public boolean isLocked(int exit)
+    {
+        return (lockedExits[exit >> 6] & (1L << exit)) != 0;
+    }
+
+    /**
+     * Lock or unlock an exit.
+     * @param exit   The index of the exit.
+     * @param locked true to lock it, false to unlock it.
+     */
+    public void setLocked(int exit, boolean locked)
+    {
+        if(locked) {
+            lockedExits[exit >> 6] |= 1L << exit;
+        }
+        else {
+            lockedExits[exit >> 6] &= ~(1L << exit);
+        }
+    }
+
+    /**
+     * @return The total number of exits in the graph.
+     */
+    public int getExitCount()
+    {
+        return exitCount;
+    }
+}
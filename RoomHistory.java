@@ -0,0 +1,173 @@
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A RoomHistory holds the rooms a player can go back through, as room
+ * ids in a ring buffer. It has a fixed depth: once full, each new room
+ * pushes out the oldest one, so a player who walks for hours uses no more
+ * memory than one who has just started. The buffer starts small and grows
+ * to the full depth only if it is needed.
+ *
+ * It can also collapse immediate loops: going straight back to the room
+ * just left, by any means, removes that room from the history instead of
+ * adding the room left, so walking to and fro between two rooms does not
+ * fill the history.
+ *
+ * A RoomHistory is not synchronized, since each belongs to one session.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class RoomHistory
+{
+    /** The depth used if none is given, unless -Dgame.history.depth=N. */
+    public static final int DEFAULT_DEPTH = Integer.getInteger("game.history.depth", 256);
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private int[] rooms;        // room ids; the newest is before head
+    private int head;           // where the next room goes
+    private int size;
+    private int depth;
+    private boolean collapseLoops;
+
+    /**
+     * Create an empty history of the default depth that keeps loops.
+     */
+    public RoomHistory()
+    {
+        this(DEFAULT_DEPTH, false);
+    }
+
+    /**
+     * Create an empty history.
+     * @param depth         The most rooms it holds.
+     * @param collapseLoops Whether going straight back to the room just
+     *                      left takes that room off the history.
+     */
+    public RoomHistory(int depth, boolean collapseLoops)
+    {
+        if(depth < 1) {
+            throw new IllegalArgumentException("history depth must be at least 1");
+        }
+        this.depth = depth;
+        this.collapseLoops = collapseLoops;
+        rooms = new int[Math.min(depth, INITIAL_CAPACITY)];
+    }
+
+    /**
+     * Note that the player has left one room for another.
+     * @param from The id of the room left.
+     * @param to   The id of the room entered.
+     */
+    public void moved(int from, int to)
+    {
+        if(collapseLoops && size > 0 && peek() == to) {
+            pop();
+        }
+        else {
+            push(from);
+        }
+    }
+
+    /**
+     * Add a room to the history, pushing out the oldest if it is full.
+     * @param room The room's id.
+     */
+    public void push(int room)
+    {
+        if(size == rooms.length && size < depth) {
+            grow();
+        }
+        rooms[head] = room;
+        head = (head + 1) % rooms.length;
+        if(size < rooms.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Make the buffer bigger, up to the depth, keeping the rooms in order.
+     */
+    private void grow()
+    {
+        int[] bigger = new int[Math.min(depth, rooms.length * 2)];
+        // when full, the oldest room is at head
+        int tail = rooms.length - head;
+        System.arraycopy(rooms, head, bigger, 0, tail);
+        System.arraycopy(rooms, 0, bigger, tail, head);
+        head = size;
+        rooms = bigger;
+    }
+
+    /**
+     * @return The id of the room most recently added, or -1 if the
+     * history is empty.
+     */
+    public int peek()
+    {
+        if(size == 0) {
+            return -1;
+        }
+        return rooms[(head - 1 + rooms.length) % rooms.length];
+    }
+
+    /**
+     * Take the room most recently added off the history.
+     * @return Its id, or -1 if the history is empty.
+     */
+    public int pop()
+    {
+        if(size == 0) {
+            return -1;
+        }
+        head = (head - 1 + rooms.length) % rooms.length;
+        size--;
+        return rooms[head];
+    }
+
+    /**
+     * @return The number of rooms in the history.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return The most rooms the history holds.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * @return Whether going straight back to the room just left collapses
+     * the loop.
+     */
+    public boolean isCollapsingLoops()
+    {
+        return collapseLoops;
+    }
+
+    /**
+     * @param index How far from the oldest room, 0 being the oldest.
+     * @return The id of that room.
+     */
+    public int get(int index)
+    {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("No room " + index + " in the history");
+        }
+        return rooms[(head - size + index + rooms.length) % rooms.length];
+    }
+
+    /**
+     * Empty the history, keeping its buffer.
+     */
+    public void clear()
+    {
+        head = 0;
+        size = 0;
+    }
+}
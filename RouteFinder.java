@@ -0,0 +1,1057 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A RouteFinder answers "how do I get from here to there" in a world. It
+ * only uses exits that are not locked, and respects one-way exits.
+ *
+ * When it is made, the finder copies the world's exits into arrays and
+ * picks a few "landmark" rooms spread across the world. For each
+ * landmark it works out how far every room is from it and to it. Those
+ * distances give a lower bound on how far apart any two rooms are, which
+ * steers an A* search (run from both ends at once) towards the
+ * destination, so routes in huge worlds are found after looking at a
+ * tiny fraction of the rooms.
+ *
+ * When an exit is locked or unlocked, only the landmark distances that
+ * change are updated. Unlocking lets distances shrink, so the new
+ * distances are spread out from the exit. Locking can make distances
+ * grow, but only for rooms whose every shortest way from (or to) a
+ * landmark went through that exit; just those rooms are worked out again.
+ *
+ * The finder must be told about lock changes (World.setLocked does this).
+ * Searches are synchronized, so one finder can serve every player.
+ *
+ * A player who has locked or unlocked exits for themselves (see
+ * Session.setLocked) sees different exits from the landmarks', so their
+ * bounds no longer hold for them. Their routes are found with a plain
+ * breadth-first search instead, which looks at more rooms but needs no
+ * bounds; few players ever change a lock.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class RouteFinder
+{
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private int roomCount;
+    // exits in CSR form: the exits of room r are edgeStart[r] .. edgeStart[r+1]
+    private int[] edgeStart;
+    private int[] edgeTarget;
+    private String[] edgeDirection;
+    private long[] lockedEdges;         // bit set
+    // the same exits arriving at each room, as indexes into the above
+    private int[] reverseStart;
+    private int[] reverseEdge;
+    private int[] edgeSource;
+
+    // Distances between every room and every landmark, kept together by
+    // room so that one room's are in one place: for landmark i, slot 2i
+    // is the distance from the landmark to the room and slot 2i + 1 the
+    // distance from the room to the landmark.
+    private int[] landmarks;
+    private int stride;                 // slots per room
+    private int[] distances;
+    private int lastUpdateSize;         // rooms redone by the last lock change
+
+    // search state, reused between searches; a room's entries only count
+    // if its stamp is the current search's
+    private int search;
+    private Frontier forward;           // searching out from the start
+    private Frontier backward;          // searching back from the goal
+    private int lastSearchSize;         // rooms looked at by the last search
+    private int[] work;                 // queue for updating distances
+
+    /**
+     * Create a route finder for a world.
+     * @param world         The world.
+     * @param landmarkCount How many landmarks to use. More landmarks make
+     *                      searches look at fewer rooms, but cost memory.
+     * @throws UnsupportedOperationException If the world's rooms are read
+     * from disk: the finder would read every one, and hold arrays the size
+     * of the world, which is what keeping them on disk avoids; or if the
+     * world is one shard of a larger one, whose routes mostly leave it.
+     */
+    public RouteFinder(World world, int landmarkCount)
+    {
+        if(world.getRoomCache() != null) {
+            throw new UnsupportedOperationException(
+                "Routes cannot be found in a world whose rooms are on disk");
+        }
+        RoomGraph graph = world.getGraph();
+        if(graph != null && graph.getHeldRoomCount() != graph.getRoomCount()) {
+            throw new UnsupportedOperationException(
+                "Routes cannot be found in one shard of a world");
+        }
+        roomCount = world.getRoomCount();
+        copyExits(world);
+
+        forward = new Frontier(roomCount);
+        backward = new Frontier(roomCount);
+        work = new int[roomCount];
+
+        chooseLandmarks(world, Math.max(1, Math.min(landmarkCount, roomCount)));
+    }
+
+    /**
+     * Copy the world's exits into arrays, in both directions.
+     */
+    private void copyExits(World world)
+    {
+        RoomGraph graph = world.getGraph();
+        edgeStart = new int[roomCount + 1];
+        if(graph != null) {
+            // the graph is already in this form
+            int exits = graph.getExitCount();
+            edgeTarget = new int[exits];
+            edgeDirection = new String[exits];
+            lockedEdges = new long[(exits >> 6) + 1];
+            for(int room = 0; room < roomCount; room++) {
+                edgeStart[room] = graph.getExitStart(room);
+            }
+            edgeStart[roomCount] = exits;
+            for(int exit = 0; exit < exits; exit++) {
+                edgeTarget[exit] = graph.getExitTarget(exit);
+                edgeDirection[exit] = graph.getDirectionName(graph.getExitDirection(exit));
+                setBit(lockedEdges, exit, graph.isLocked(exit));
+            }
+        }
+        else {
+            // counted first, so the arrays are made the right size
+            int exits = 0;
+            for(int id = 0; id < roomCount; id++) {
+                exits += world.getRoom(id).getExitDirections().size();
+            }
+            edgeTarget = new int[exits];
+            edgeDirection = new String[exits];
+            lockedEdges = new long[(exits >> 6) + 1];
+            int exit = 0;
+            for(int id = 0; id < roomCount; id++) {
+                Room room = world.getRoom(id);
+                edgeStart[id] = exit;
+                for(String direction : room.getExitDirections()) {
+                    edgeDirection[exit] = direction;
+                    edgeTarget[exit] = room.getExit(direction).getId();
+                    setBit(lockedEdges, exit, room.isLocked(direction));
+                    exit++;
+                }
+            }
+            edgeStart[roomCount] = exit;
+        }
+
+        // turn the exits round, sorted by the room they arrive at
+        int exits = edgeTarget.length;
+        edgeSource = new int[exits];
+        reverseStart = new int[roomCount + 1];
+        for(int room = 0; room < roomCount; room++) {
+            for(int exit = edgeStart[room]; exit < edgeStart[room + 1]; exit++) {
+                edgeSource[exit] = room;
+                reverseStart[edgeTarget[exit] + 1]++;
+            }
+        }
+        for(int room = 0; room < roomCount; room++) {
+            reverseStart[room + 1] += reverseStart[room];
+        }
+        int[] next = Arrays.copyOf(reverseStart, roomCount);
+        reverseEdge = new int[exits];
+        for(int exit = 0; exit < exits; exit++) {
+            reverseEdge[next[edgeTarget[exit]]++] = exit;
+        }
+    }
+
+    /**
+     * Choose landmarks far apart: the first is the start room, and each
+     * one after is the room furthest from all the landmarks so far.
+     */
+    private void chooseLandmarks(World world, int count)
+    {
+        landmarks = new int[count];
+        stride = 2 * count;
+        distances = new int[roomCount * stride];
+        Arrays.fill(distances, UNREACHABLE);
+        int[] nearest = new int[roomCount];
+        Arrays.fill(nearest, UNREACHABLE);
+        int next = world.getStartRoom() != null ? world.getStartRoom().getId() : 0;
+        for(int i = 0; i < count; i++) {
+            landmarks[i] = next;
+            computeLandmark(i);
+
+            int furthest = -1;
+            for(int room = 0; room < roomCount; room++) {
+                int distance = distance(room, 2 * i);
+                if(distance < nearest[room]) {
+                    nearest[room] = distance;
+                }
+                if(nearest[room] != UNREACHABLE &&
+                   (furthest < 0 || nearest[room] > nearest[furthest])) {
+                    furthest = room;
+                }
+            }
+            next = furthest;
+        }
+    }
+
+    /**
+     * Work out one landmark's distances from scratch with two
+     * breadth-first searches, one along the exits and one against them.
+     */
+    private void computeLandmark(int i)
+    {
+        setDistance(landmarks[i], 2 * i, 0);
+        setDistance(landmarks[i], 2 * i + 1, 0);
+        spread(2 * i, true, landmarks[i]);
+        spread(2 * i + 1, false, landmarks[i]);
+    }
+
+    private int distance(int room, int slot)
+    {
+        return distances[room * stride + slot];
+    }
+
+    private void setDistance(int room, int slot, int distance)
+    {
+        distances[room * stride + slot] = distance;
+    }
+
+    // Distances from a landmark grow along the exits and distances to it
+    // grow against them, so the code that keeps them up to date is shared,
+    // with "along" saying which way round the exits are walked. These four
+    // give the exits leading on from a room that way, and where each goes.
+
+    private int firstOut(int room, boolean along)
+    {
+        return along ? edgeStart[room] : reverseStart[room];
+    }
+
+    private int endOut(int room, boolean along)
+    {
+        return along ? edgeStart[room + 1] : reverseStart[room + 1];
+    }
+
+    private int exitAt(int index, boolean along)
+    {
+        return along ? index : reverseEdge[index];
+    }
+
+    private int across(int exit, boolean along)
+    {
+        return along ? edgeTarget[exit] : edgeSource[exit];
+    }
+
+    /**
+     * Breadth-first search along unlocked exits from a room whose distance
+     * is already right, lowering distances wherever a shorter way is found.
+     * @param slot     The distances being updated.
+     * @param along    Whether distances grow along the exits or against them.
+     * @param root     The room to start from.
+     * @return How many rooms' distances were lowered.
+     */
+    private int spread(int slot, boolean along, int root)
+    {
+        int[] queue = work;
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = root;
+        while(head < tail) {
+            int room = queue[head++];
+            for(int i = firstOut(room, along); i < endOut(room, along); i++) {
+                int exit = exitAt(i, along);
+                int next = across(exit, along);
+                if(!getBit(lockedEdges, exit) &&
+                   distance(room, slot) + 1 < distance(next, slot)) {
+                    setDistance(next, slot, distance(room, slot) + 1);
+                    queue[tail++] = next;   // each room is queued at most once
+                }
+            }
+        }
+        return tail - 1;
+    }
+
+    /**
+     * Repair distances after an exit into a room has been locked. Only
+     * the rooms whose every shortest way in ran through the room are
+     * affected; everything else keeps its distance.
+     *
+     * First the affected rooms are found. Since the breadth-first queue
+     * holds rooms in order of distance, by the time a room is reached all
+     * the affected rooms one step closer are already known, so a room is
+     * affected exactly when none of its unaffected neighbours one step
+     * closer lead to it. Then each affected room starts with the best way
+     * in from an unaffected room, and the best of those spread through
+     * the affected rooms in order, as in Dijkstra's algorithm.
+     *
+     * @param slot     The distances being repaired.
+     * @param along    Whether distances grow along the exits or against them.
+     * @param root     The room at the far end of the locked exit.
+     * @return How many rooms' distances had to be worked out again.
+     */
+    private int repair(int slot, boolean along, int root)
+    {
+        // the forward frontier's closed marks the affected rooms, and its
+        // visited says a room has already been decided
+        newStamp();
+        if(distance(root, slot) == UNREACHABLE || distance(root, slot) == 0 ||
+           hasSupport(slot, along, root)) {
+            return 0;
+        }
+
+        int[] affected = work;
+        int count = 0;
+        affected[count++] = root;
+        forward.visit(root, search, 0, -1, 0);
+        forward.close(root);
+        for(int head = 0; head < count; head++) {
+            int room = affected[head];
+            for(int i = firstOut(room, along); i < endOut(room, along); i++) {
+                int exit = exitAt(i, along);
+                int next = across(exit, along);
+                if(!forward.reached(next, search) && !getBit(lockedEdges, exit) &&
+                   distance(next, slot) == distance(room, slot) + 1) {
+                    forward.visit(next, search, 0, -1, 0);
+                    if(!hasSupport(slot, along, next)) {
+                        forward.close(next);
+                        affected[count++] = next;
+                    }
+                }
+            }
+        }
+
+        // give each affected room its best way in from outside
+        forward.heapSize = 0;
+        for(int k = 0; k < count; k++) {
+            int room = affected[k];
+            int best = UNREACHABLE;
+            for(int i = firstOut(room, !along); i < endOut(room, !along); i++) {
+                int exit = exitAt(i, !along);
+                int previous = across(exit, !along);
+                if(!getBit(lockedEdges, exit) && !isAffected(previous) &&
+                   distance(previous, slot) != UNREACHABLE) {
+                    best = Math.min(best, distance(previous, slot) + 1);
+                }
+            }
+            setDistance(room, slot, best);
+            if(best != UNREACHABLE) {
+                forward.push(room, best, 0);
+            }
+        }
+
+        // and spread the best of them through the affected rooms
+        while(forward.heapSize > 0) {
+            int key = forward.topKey();
+            int room = forward.pop();
+            if(key != distance(room, slot)) {
+                continue;       // a better way was found since this was pushed
+            }
+            for(int i = firstOut(room, along); i < endOut(room, along); i++) {
+                int exit = exitAt(i, along);
+                int next = across(exit, along);
+                if(!getBit(lockedEdges, exit) && isAffected(next) &&
+                   key + 1 < distance(next, slot)) {
+                    setDistance(next, slot, key + 1);
+                    forward.push(next, key + 1, 0);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Whether a room has an unlocked way in from a room one step
+     * closer that is not known to be affected.
+     */
+    private boolean hasSupport(int slot, boolean along, int room)
+    {
+        for(int i = firstOut(room, !along); i < endOut(room, !along); i++) {
+            int exit = exitAt(i, !along);
+            int previous = across(exit, !along);
+            if(!getBit(lockedEdges, exit) && !isAffected(previous) &&
+               distance(previous, slot) + 1 == distance(room, slot)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether a room has been found to be affected by the repair
+     * going on now.
+     */
+    private boolean isAffected(int room)
+    {
+        return forward.reached(room, search) && forward.isClosed(room);
+    }
+
+    /**
+     * Start a new search (or repair), so every room counts as unvisited.
+     */
+    private void newStamp()
+    {
+        search++;
+        if(search == Frontier.MAX_STAMP) {
+            // the stamps have run out; start them again
+            forward.clear();
+            backward.clear();
+            search = 1;
+        }
+    }
+
+    /**
+     * Find the shortest route between two rooms.
+     *
+     * Two searches run at once, one out from the start and one back from
+     * the goal, each taking the next room from whichever side has fewer
+     * waiting. Each side orders its rooms by cost so far plus potential(),
+     * which is the same landmark bound from both ends, so neither side is
+     * drawn off course. The route is known once the best keys of the two
+     * sides add up to at least the shortest route found where they meet.
+     *
+     * @param from The room to start in.
+     * @param to   The room to get to.
+     * @return The directions to go in, in order (empty if the rooms are the
+     * same), or null if there is no way there.
+     */
+    public synchronized List<String> findRoute(Room from, Room to)
+    {
+        int start = from.getId();
+        int goal = to.getId();
+        lastSearchSize = 0;
+        if(start == goal) {
+            return Collections.emptyList();
+        }
+        if(estimate(start, goal) == UNREACHABLE) {
+            return null;
+        }
+
+        newStamp();
+        forward.heapSize = 0;
+        backward.heapSize = 0;
+        int startPotential = potential(start, start, goal);
+        forward.visit(start, search, 0, -1, startPotential);
+        forward.push(start, startPotential, 0);
+        int goalPotential = potential(goal, start, goal);
+        backward.visit(goal, search, 0, -1, goalPotential);
+        backward.push(goal, -goalPotential, 0);
+
+        int best = UNREACHABLE;     // the shortest route found so far
+        int meeting = -1;           // the room where it was found
+        while(forward.clean() && backward.clean()) {
+            if((long) forward.topKey() + backward.topKey() >= 2L * best) {
+                break;
+            }
+            boolean outward = forward.heapSize <= backward.heapSize;
+            Frontier side = outward ? forward : backward;
+            Frontier other = outward ? backward : forward;
+            int room = side.pop();
+            side.close(room);
+            lastSearchSize++;
+
+            int newCost = side.cost(room) + 1;
+            for(int i = firstOut(room, outward); i < endOut(room, outward); i++) {
+                int exit = exitAt(i, outward);
+                if(getBit(lockedEdges, exit)) {
+                    continue;
+                }
+                int next = across(exit, outward);
+                int p;
+                if(!side.reached(next, search)) {
+                    p = potential(next, start, goal);
+                    side.visit(next, search, newCost, exit, p);
+                    if(p == UNREACHABLE) {
+                        side.close(next);   // not on any way from start to goal
+                        continue;
+                    }
+                }
+                else if(newCost < side.cost(next) && !side.isClosed(next)) {
+                    side.improve(next, newCost, exit);
+                    p = side.potential(next);
+                }
+                else {
+                    continue;
+                }
+                side.push(next, 2 * newCost + (outward ? p : -p), newCost);
+                if(other.reached(next, search) && newCost + other.cost(next) < best) {
+                    best = newCost + other.cost(next);
+                    meeting = next;
+                }
+            }
+        }
+        return meeting < 0 ? null : route(meeting);
+    }
+
+    /**
+     * Find the shortest route between two rooms as a player sees the
+     * locks, which may differ from the world's.
+     * @param from    The room to start in.
+     * @param to      The room to get to.
+     * @param session The player's session.
+     * @return The directions to go in, in order (empty if the rooms are the
+     * same), or null if there is no way there.
+     */
+    public synchronized List<String> findRoute(Room from, Room to, Session session)
+    {
+        if(!session.hasLockChanges()) {
+            return findRoute(from, to);
+        }
+        int start = from.getId();
+        int goal = to.getId();
+        lastSearchSize = 0;
+        if(start == goal) {
+            return Collections.emptyList();
+        }
+
+        // the exits the player sees differently, and how
+        int changes = 0;
+        for(Map<String, Boolean> locks : session.getLockChanges().values()) {
+            changes += locks.size();
+        }
+        int[] changedExits = new int[changes];
+        boolean[] changedLocks = new boolean[changes];
+        changes = 0;
+        for(Map.Entry<Room, ? extends Map<String, Boolean>> room :
+                session.getLockChanges().entrySet()) {
+            int id = room.getKey().getId();
+            for(Map.Entry<String, Boolean> lock : room.getValue().entrySet()) {
+                for(int exit = edgeStart[id]; exit < edgeStart[id + 1]; exit++) {
+                    if(edgeDirection[exit].equals(lock.getKey())) {
+                        changedExits[changes] = exit;
+                        changedLocks[changes++] = lock.getValue();
+                    }
+                }
+            }
+        }
+
+        newStamp();
+        int[] queue = work;
+        int head = 0;
+        int tail = 0;
+        forward.visit(start, search, 0, -1, 0);
+        queue[tail++] = start;
+        while(head < tail) {
+            int room = queue[head++];
+            lastSearchSize++;
+            for(int exit = edgeStart[room]; exit < edgeStart[room + 1]; exit++) {
+                int next = edgeTarget[exit];
+                if(forward.reached(next, search) ||
+                   isLocked(exit, changedExits, changedLocks, changes)) {
+                    continue;
+                }
+                forward.visit(next, search, forward.cost(room) + 1, exit, 0);
+                if(next == goal) {
+                    String[] steps = new String[forward.cost(goal)];
+                    for(int i = steps.length - 1; i >= 0; i--) {
+                        int cameBy = forward.cameBy(next);
+                        steps[i] = edgeDirection[cameBy];
+                        next = edgeSource[cameBy];
+                    }
+                    return Arrays.asList(steps);
+                }
+                queue[tail++] = next;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Whether an exit is locked, as changed by a player.
+     */
+    private boolean isLocked(int exit, int[] changedExits, boolean[] changedLocks, int changes)
+    {
+        for(int i = 0; i < changes; i++) {
+            if(changedExits[i] == exit) {
+                return changedLocks[i];
+            }
+        }
+        return getBit(lockedEdges, exit);
+    }
+
+    /**
+     * The potential of a room for a search from start to goal: the bound
+     * on how far the room is from the goal, less the bound on how far it
+     * is from the start. Half of it is a consistent A* estimate for the
+     * search out from the start, and half of its negative for the search
+     * back from the goal; keys are doubled so that halves are not needed.
+     * @return The potential, or UNREACHABLE if the room cannot be on any
+     * way from start to goal.
+     */
+    private int potential(int room, int start, int goal)
+    {
+        int toGoal = estimate(room, goal);
+        int fromStart = estimate(start, room);
+        if(toGoal == UNREACHABLE || fromStart == UNREACHABLE) {
+            return UNREACHABLE;
+        }
+        return toGoal - fromStart;
+    }
+
+    /**
+     * @return The directions of the route that runs out from start to the
+     * meeting room along the forward search, then on to the goal along the
+     * backward search.
+     */
+    private List<String> route(int meeting)
+    {
+        int outward = forward.cost(meeting);
+        String[] steps = new String[outward + backward.cost(meeting)];
+        int room = meeting;
+        for(int i = outward - 1; i >= 0; i--) {
+            int exit = forward.cameBy(room);
+            steps[i] = edgeDirection[exit];
+            room = edgeSource[exit];
+        }
+        room = meeting;
+        for(int i = outward; i < steps.length; i++) {
+            int exit = backward.cameBy(room);
+            steps[i] = edgeDirection[exit];
+            room = edgeTarget[exit];
+        }
+        return Arrays.asList(steps);
+    }
+
+    /**
+     * A lower bound on the number of moves from one room to another, from
+     * the triangle inequality over each landmark L:
+     *     d(room, goal) >= d(L, goal) - d(L, room)
+     *     d(room, goal) >= d(room, L) - d(goal, L)
+     * @return The bound, or UNREACHABLE if a landmark proves there is no way.
+     */
+    private int estimate(int room, int goal)
+    {
+        int best = 0;
+        int roomBase = room * stride;
+        int goalBase = goal * stride;
+        for(int slot = 0; slot < stride; slot += 2) {
+            int fromRoom = distances[roomBase + slot];
+            int fromGoal = distances[goalBase + slot];
+            if(fromRoom != UNREACHABLE) {
+                if(fromGoal == UNREACHABLE) {
+                    return UNREACHABLE;    // L reaches room but not goal
+                }
+                best = Math.max(best, fromGoal - fromRoom);
+            }
+            int roomTo = distances[roomBase + slot + 1];
+            int goalTo = distances[goalBase + slot + 1];
+            if(goalTo != UNREACHABLE) {
+                if(roomTo == UNREACHABLE) {
+                    return UNREACHABLE;    // goal reaches L but room does not
+                }
+                best = Math.max(best, roomTo - goalTo);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Tell the finder an exit has been locked or unlocked, and update the
+     * landmark distances that are affected.
+     * @param room      The room the exit leaves.
+     * @param direction The direction of the exit.
+     * @param locked    Whether the exit is now locked.
+     */
+    public synchronized void lockChanged(Room room, String direction, boolean locked)
+    {
+        int from = room.getId();
+        int exit = -1;
+        for(int e = edgeStart[from]; e < edgeStart[from + 1]; e++) {
+            if(edgeDirection[e].equals(direction)) {
+                exit = e;
+            }
+        }
+        if(exit < 0 || getBit(lockedEdges, exit) == locked) {
+            return;
+        }
+        setBit(lockedEdges, exit, locked);
+        int to = edgeTarget[exit];
+
+        lastUpdateSize = 0;
+        for(int slot = 0; slot < stride; slot += 2) {
+            int fromSlot = slot;        // landmark -> room
+            int toSlot = slot + 1;      // room -> landmark
+            if(locked) {
+                // distances can only grow, and only beyond the exit
+                lastUpdateSize += repair(fromSlot, true, to);
+                lastUpdateSize += repair(toSlot, false, from);
+            }
+            else {
+                // the exit can only make distances shorter
+                int fromLandmark = distance(from, fromSlot);
+                if(fromLandmark != UNREACHABLE &&
+                   fromLandmark + 1 < distance(to, fromSlot)) {
+                    setDistance(to, fromSlot, fromLandmark + 1);
+                    lastUpdateSize += 1 + spread(fromSlot, true, to);
+                }
+                int toLandmark = distance(to, toSlot);
+                if(toLandmark != UNREACHABLE &&
+                   toLandmark + 1 < distance(from, toSlot)) {
+                    setDistance(from, toSlot, toLandmark + 1);
+                    lastUpdateSize += 1 + spread(toSlot, false, from);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return How many rooms the last search looked at.
+     */
+    public synchronized int getLastSearchSize()
+    {
+        return lastSearchSize;
+    }
+
+    /**
+     * @return How many room distances (counting each landmark separately)
+     * had to be worked out again after the last lock change.
+     */
+    public synchronized int getLastUpdateSize()
+    {
+        return lastUpdateSize;
+    }
+
+    private static boolean getBit(long[] bits, int index)
+    {
+        return (bits[index >> 6] & (1L << index)) != 0;
+    }
+
+    private static void setBit(long[] bits, int index, boolean value)
+    {
+        if(value) {
+            bits[index >> 6] |= 1L << index;
+        }
+        else {
+            bits[index >> 6] &= ~(1L << index);
+        }
+    }
+
+    /**
+     * One side of a search: which rooms it has reached, how far away they
+     * are, the exit each was reached by, and a binary min-heap of the
+     * rooms waiting to be looked at. What it knows about each room is kept
+     * together in one record, so looking at a room touches one place.
+     */
+    private static class Frontier
+    {
+        // the fields of each room's record
+        private static final int STAMP = 0;     // search << 1, plus 1 once closed
+        private static final int COST = 1;
+        private static final int CAME_BY = 2;   // the exit the room was reached by
+        private static final int POTENTIAL = 3;
+        private static final int FIELDS = 4;
+        private static final int MAX_STAMP = 1 << 30;
+
+        private int[] rooms;
+        // the heap's keys hold the key proper in the top half and the
+        // tie-break in the bottom half
+        private int[] heap;
+        private long[] heapKey;
+        private int heapSize;
+
+        private Frontier(int roomCount)
+        {
+            rooms = new int[roomCount * FIELDS];
+            heap = new int[16];
+            heapKey = new long[16];
+        }
+
+        /**
+         * Forget every search, when the stamps run out.
+         */
+        private void clear()
+        {
+            for(int i = STAMP; i < rooms.length; i += FIELDS) {
+                rooms[i] = 0;
+            }
+        }
+
+        /**
+         * @return Whether a room has been reached in the given search.
+         */
+        private boolean reached(int room, int search)
+        {
+            return rooms[room * FIELDS + STAMP] >>> 1 == search;
+        }
+
+        /**
+         * Mark a room as reached for the first time in a search.
+         */
+        private void visit(int room, int search, int cost, int exit, int potential)
+        {
+            int base = room * FIELDS;
+            rooms[base + STAMP] = search << 1;
+            rooms[base + COST] = cost;
+            rooms[base + CAME_BY] = exit;
+            rooms[base + POTENTIAL] = potential;
+        }
+
+        /**
+         * Record a shorter way to a room.
+         */
+        private void improve(int room, int cost, int exit)
+        {
+            rooms[room * FIELDS + COST] = cost;
+            rooms[room * FIELDS + CAME_BY] = exit;
+        }
+
+        private void close(int room)
+        {
+            rooms[room * FIELDS + STAMP] |= 1;
+        }
+
+        private boolean isClosed(int room)
+        {
+            return (rooms[room * FIELDS + STAMP] & 1) != 0;
+        }
+
+        private int cost(int room)
+        {
+            return rooms[room * FIELDS + COST];
+        }
+
+        private int cameBy(int room)
+        {
+            return rooms[room * FIELDS + CAME_BY];
+        }
+
+        private int potential(int room)
+        {
+            return rooms[room * FIELDS + POTENTIAL];
+        }
+
+        /**
+         * Drop rooms already looked at from the top of the heap.
+         * @return Whether any rooms are left waiting.
+         */
+        private boolean clean()
+        {
+            while(heapSize > 0 && isClosed(heap[0])) {
+                pop();
+            }
+            return heapSize > 0;
+        }
+
+        /**
+         * Add a room to the heap.
+         * @param room  The room.
+         * @param key   Its key; rooms with lower keys come out first.
+         * @param depth How far the room is from where this side began.
+         *              Of rooms with the same key, the furthest comes out
+         *              first, so that a search through many equally good
+         *              ways (as in a grid) heads on instead of spreading.
+         */
+        private void push(int room, int key, int depth)
+        {
+            long fullKey = ((long) key << 32) | (~depth & 0xFFFFFFFFL);
+            if(heapSize == heap.length) {
+                heap = Arrays.copyOf(heap, heapSize * 2);
+                heapKey = Arrays.copyOf(heapKey, heapSize * 2);
+            }
+            int i = heapSize++;
+            while(i > 0) {
+                int parent = (i - 1) >> 1;
+                if(heapKey[parent] <= fullKey) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                heapKey[i] = heapKey[parent];
+                i = parent;
+            }
+            heap[i] = room;
+            heapKey[i] = fullKey;
+        }
+
+        /**
+         * @return The key of the room at the top of the heap.
+         */
+        private int topKey()
+        {
+            return (int) (heapKey[0] >> 32);
+        }
+
+        private int pop()
+        {
+            int top = heap[0];
+            int room = heap[--heapSize];
+            long key = heapKey[heapSize];
+            int i = 0;
+            while(true) {
+                int child = 2 * i + 1;
+                if(child >= heapSize) {
+                    break;
+                }
+                if(child + 1 < heapSize && heapKey[child + 1] < heapKey[child]) {
+                    child++;
+                }
+                if(heapKey[child] >= key) {
+                    break;
+                }
+                heap[i] = heap[child];
+                heapKey[i] = heapKey[child];
+                i = child;
+            }
+            heap[i] = room;
+            heapKey[i] = key;
+            return top;
+        }
+    }
+
+    /**
+     * Check the finder against a plain breadth-first search on generated
+     * worlds, locking and unlocking random exits between routes so that
+     * the landmark distances are repaired many times over. Every other
+     * world is loaded as Room objects rather than kept as a RoomGraph, so
+     * both ways of copying the exits are checked. After every lock change
+     * the landmark distances are also checked against ones worked out
+     * from scratch, since routes can come out right even when the bounds
+     * steering them are a little off. Last, each shard of a split world
+     * is checked to have no finder, and "goto" on the first shard to say
+     * so rather than fail. Stops at the first mistake.
+     * Usage: java RouteFinder [rooms] [worlds] [seed]
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int worlds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int routes = 0;
+        int flips = 0;
+        for(int w = 0; w < worlds; w++) {
+            World world = new WorldGenerator(rooms, 3.0, 0.1, 0.1, 1,
+                                             random.nextLong()).generate();
+            if(w % 2 == 1) {
+                StringWriter text = new StringWriter();
+                WorldFile.save(world, text);
+                world = WorldFile.load(new StringReader(text.toString()));
+            }
+            RouteFinder finder = world.getRouteFinder();
+            for(int i = 0; i < 1000; i++) {
+                Room room = world.getRoom(random.nextInt(rooms));
+                List<String> directions = new ArrayList<>(room.getExitDirections());
+                if(!directions.isEmpty()) {
+                    String direction = directions.get(random.nextInt(directions.size()));
+                    world.setLocked(room, direction, !room.isLocked(direction));
+                    flips++;
+                }
+                String problem = finder.checkLandmarks();
+                Room from = world.getRoom(random.nextInt(rooms));
+                Room to = world.getRoom(random.nextInt(rooms));
+                if(problem == null) {
+                    problem = checkRoute(world, from, to, finder.findRoute(from, to));
+                }
+                if(problem != null) {
+                    System.out.println("World " + w + ", step " + i + " (from " +
+                                       from.getName() + " to " + to.getName() + "): " + problem);
+                    System.exit(1);
+                }
+                routes++;
+            }
+        }
+        System.out.println(routes + " routes in " + worlds + " worlds of " + rooms +
+                           " rooms, with " + flips + " lock changes, all shortest");
+
+        // a shard has no map, so "goto" must say so rather than fail
+        ShardMap shards = new ShardMap(rooms, 2);
+        for(int shard = 0; shard < 2; shard++) {
+            World part = new WorldGenerator(rooms, seed).generate(shards, shard);
+            if(part.getRouteFinder() != null) {
+                System.out.println("Shard " + shard + " of 2 has a route finder");
+                System.exit(1);
+            }
+            if(shard == 0) {
+                // where every player starts
+                ByteArrayOutputStream said = new ByteArrayOutputStream();
+                Parser parser = new Parser(new StringReader(""), said);
+                Game game = new Game(parser, part);
+                int to = shards.firstRoom(0) + random.nextInt(shards.roomCount(0));
+                game.processCommand(new Command(CommandWord.GOTO, "#" + to));
+                parser.getOutput().flush();
+                String response = said.toString(StandardCharsets.UTF_8);
+                if(!response.contains(Messages.getDefault().get(Message.NO_MAP))) {
+                    System.out.println("goto #" + to + " on shard 0 of 2 said: " + response);
+                    System.exit(1);
+                }
+            }
+        }
+        System.out.println("Neither shard of a world has a route finder");
+    }
+
+    /**
+     * @return What is wrong with the landmark distances as they have been
+     * kept up to date, compared with working them out again, or null if
+     * nothing is.
+     */
+    private synchronized String checkLandmarks()
+    {
+        int[] kept = distances;
+        distances = new int[kept.length];
+        Arrays.fill(distances, UNREACHABLE);
+        for(int i = 0; i < landmarks.length; i++) {
+            computeLandmark(i);
+        }
+        int[] fresh = distances;
+        distances = kept;
+        for(int k = 0; k < kept.length; k++) {
+            if(kept[k] != fresh[k]) {
+                int slot = k % stride;
+                return "room #" + k / stride + " is kept as " + kept[k] +
+                       (slot % 2 == 0 ? " from" : " to") + " landmark #" +
+                       landmarks[slot / 2] + ", but it is " + fresh[k];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return What is wrong with a route the finder found, or null if it
+     * is a shortest route (or rightly null) by breadth-first search.
+     */
+    private static String checkRoute(World world, Room from, Room to, List<String> route)
+    {
+        int[] distance = new int[world.getRoomCount()];
+        Arrays.fill(distance, UNREACHABLE);
+        int[] queue = new int[world.getRoomCount()];
+        int head = 0;
+        int tail = 0;
+        distance[from.getId()] = 0;
+        queue[tail++] = from.getId();
+        while(head < tail) {
+            Room room = world.getRoom(queue[head++]);
+            for(String direction : room.getExitDirections()) {
+                int next = room.getExit(direction).getId();
+                if(!room.isLocked(direction) && distance[next] == UNREACHABLE) {
+                    distance[next] = distance[room.getId()] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        int shortest = distance[to.getId()];
+        if(route == null) {
+            return shortest == UNREACHABLE ? null : "no route found, but one of " +
+                                                    shortest + " moves exists";
+        }
+        if(route.size() != shortest) {
+            return "a route of " + route.size() + " moves, but the shortest is " +
+                   (shortest == UNREACHABLE ? "none" : shortest + " moves");
+        }
+        Room room = from;
+        for(String direction : route) {
+            if(room.getExit(direction) == null || room.isLocked(direction)) {
+                return "the route goes " + direction + " from " + room.getName() +
+                       ", which it cannot";
+            }
+            room = room.getExit(direction);
+        }
+        return room == to ? null : "the route ends in " + room.getName();
+    }
+}
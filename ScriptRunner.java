@@ -0,0 +1,262 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A ScriptRunner plays the game without a terminal. Commands are fed in
+ * from a Reader, a list of strings or a replay file (one command per
+ * line), and everything the game says goes to whatever stream the runner
+ * was given. This is used for regression and load testing.
+ *
+ * While it runs, the runner times every command it processes, and it can
+ * print a report of commands per second and per-command latency at the
+ * end of a run.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class ScriptRunner
+{
+    private Game game;
+    private Parser parser;
+    private boolean finished;       // whether the game has ended
+
+    // timing of the commands processed so far
+    private long commandCount;
+    private long totalNanos;
+    private long minNanos;
+    private long maxNanos;
+    // latency histogram, bucket i counts commands taking < 2^(i+1) ns
+    private long[] latencyBuckets;
+
+    /**
+     * Create a runner for a new game whose output is thrown away.
+     */
+    public ScriptRunner()
+    {
+        this(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    /**
+     * Create a runner for a new game that prints to the given stream.
+     * @param out The stream the game's output is printed to.
+     */
+    public ScriptRunner(PrintStream out)
+    {
+        parser = new Parser(new StringReader(""), out);
+        game = new Game(parser);
+        finished = false;
+        latencyBuckets = new long[64];
+        minNanos = Long.MAX_VALUE;
+    }
+
+    /**
+     * @return The game this runner is playing.
+     */
+    public Game getGame()
+    {
+        return game;
+    }
+
+    /**
+     * @return true if the game has ended (by quitting or winning).
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+
+    /**
+     * Process a single command line.
+     * @param line The command to process, for example "go east".
+     * @return true if the command ended the game, false otherwise.
+     */
+    public boolean run(String line)
+    {
+        if(finished) {
+            return true;
+        }
+        long start = System.nanoTime();
+        finished = game.processCommand(parser.parseCommand(line));
+        record(System.nanoTime() - start);
+        return finished;
+    }
+
+    /**
+     * Process commands from a list, stopping early if the game ends.
+     * @param lines The commands to process.
+     * @return true if the game has ended, false otherwise.
+     */
+    public boolean run(List<String> lines)
+    {
+        for(String line : lines) {
+            if(run(line)) {
+                break;
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * Process every line read from the given source, stopping early if
+     * the game ends.
+     * @param script The source of command lines.
+     * @return true if the game has ended, false otherwise.
+     * @throws IOException If the source could not be read.
+     */
+    public boolean run(Reader script) throws IOException
+    {
+        BufferedReader lines = new BufferedReader(script);
+        String line = lines.readLine();
+        while(line != null && !run(line)) {
+            line = lines.readLine();
+        }
+        return finished;
+    }
+
+    /**
+     * Process every line of a replay file, stopping early if the game ends.
+     * @param fileName The name of the replay file.
+     * @return true if the game has ended, false otherwise.
+     * @throws IOException If the file could not be read.
+     */
+    public boolean runFile(String fileName) throws IOException
+    {
+        try(Reader script = Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            return run(script);
+        }
+    }
+
+    /**
+     * Add the time one command took to the statistics.
+     * @param nanos The time taken in nanoseconds.
+     */
+    private void record(long nanos)
+    {
+        commandCount++;
+        totalNanos += nanos;
+        if(nanos < minNanos) {
+            minNanos = nanos;
+        }
+        if(nanos > maxNanos) {
+            maxNanos = nanos;
+        }
+        latencyBuckets[63 - Long.numberOfLeadingZeros(Math.max(nanos, 1))]++;
+    }
+
+    /**
+     * @return The number of commands processed so far.
+     */
+    public long getCommandCount()
+    {
+        return commandCount;
+    }
+
+    /**
+     * @return The number of commands processed per second of time spent
+     * processing them.
+     */
+    public double getCommandsPerSecond()
+    {
+        if(totalNanos == 0) {
+            return 0;
+        }
+        return commandCount * 1e9 / totalNanos;
+    }
+
+    /**
+     * Estimate a latency percentile from the histogram. The result is the
+     * upper bound of the bucket the percentile falls in, so it is accurate
+     * to within a factor of two.
+     * @param percentile The percentile wanted, between 0 and 100.
+     * @return The estimated latency in nanoseconds.
+     */
+    public long getLatencyPercentile(double percentile)
+    {
+        long wanted = (long) Math.ceil(commandCount * percentile / 100);
+        long seen = 0;
+        for(int i = 0; i < latencyBuckets.length; i++) {
+            seen += latencyBuckets[i];
+            if(seen >= wanted && seen > 0) {
+                return Math.min(maxNanos, (2L << i) - 1);
+            }
+        }
+        return maxNanos;
+    }
+
+    /**
+     * Print the throughput and latency of the commands run so far.
+     * @param report The stream to print the report to.
+     */
+    public void printReport(PrintStream report)
+    {
+        report.println("Commands processed: " + commandCount);
+        if(commandCount == 0) {
+            return;
+        }
+        report.printf("Commands/sec:       %.0f%n", getCommandsPerSecond());
+        report.printf("Latency (ns):       min %d  mean %d  p50 %d  p99 %d  " +
+            "p99.9 %d  max %d%n", minNanos, totalNanos / commandCount,
+            getLatencyPercentile(50), getLatencyPercentile(99),
+            getLatencyPercentile(99.9), maxNanos);
+    }
+
+    /**
+     * Replay a file of commands headlessly and print a report.
+     * Usage: java ScriptRunner replayFile [repetitions] [-echo]
+     * With -echo the game's output is printed, otherwise it is discarded.
+     * Each repetition is played in a fresh game.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1) {
+            System.out.println("Usage: java ScriptRunner replayFile " +
+                "[repetitions] [-echo]");
+            return;
+        }
+        int repetitions = 1;
+        boolean echo = false;
+        for(int i = 1; i < args.length; i++) {
+            if(args[i].equals("-echo")) {
+                echo = true;
+            }
+            else {
+                repetitions = Integer.parseInt(args[i]);
+            }
+        }
+        List<String> lines = Files.readAllLines(Paths.get(args[0]));
+
+        ScriptRunner total = new ScriptRunner();
+        for(int i = 0; i < repetitions; i++) {
+            ScriptRunner runner = echo ? new ScriptRunner(System.out)
+                                       : new ScriptRunner();
+            runner.run(lines);
+            total.add(runner);
+        }
+        total.printReport(System.out);
+    }
+
+    /**
+     * Add another runner's statistics to this one's.
+     * @param other The runner whose statistics are added.
+     */
+    private void add(ScriptRunner other)
+    {
+        commandCount += other.commandCount;
+        totalNanos += other.totalNanos;
+        minNanos = Math.min(minNanos, other.minNanos);
+        maxNanos = Math.max(maxNanos, other.maxNanos);
+        for(int i = 0; i < latencyBuckets.length; i++) {
+            latencyBuckets[i] += other.latencyBuckets[i];
+        }
+    }
+}
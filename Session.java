@@ -0,0 +1,419 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A Session holds everything about one player's game that is not shared
+ * with other players: the room they are in, what they carry, the rooms
+ * they came through, which items they have moved, and which exits they
+ * have locked or unlocked. The rooms and items themselves belong to the
+ * World, which is only read.
+ *
+ * Items start out where the world puts them. The first time a player
+ * takes or drops something in a room, the session makes its own copy of
+ * that room's items and changes only the copy, so other players sharing
+ * the same world still find things where they were. Locks work the same
+ * way: when using an item locks or unlocks an exit (see Trigger), only
+ * this session sees the change, so one player cannot lock everyone else
+ * out, and players on different threads never write to the world.
+ *
+ * A new session only holds a few references. Its inventory, history and
+ * item changes are created the first time they are needed, so sessions
+ * that have not done much stay small. The history is a RoomHistory of
+ * bounded depth, so sessions that walk for hours do not keep growing.
+ *
+ * A session tells the world which room it is in (see World.enterRoom),
+ * so worlds kept on disk hold that room in memory, and tells it when the
+ * player leaves the game (see leave).
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class Session
+{
+    private World world;
+    private Room currentRoom;
+    private ItemContainer inventory;                // null while empty
+    private RoomHistory priorRooms;                 // null until needed
+    private int historyDepth;
+    private boolean collapseLoops;
+    // this session's copies of the item containers of rooms it has changed
+    private HashMap<Room, ItemContainer> itemOverrides;    // null until needed
+    // the exits this session has locked (true) or unlocked (false), by room
+    private HashMap<Room, HashMap<String, Boolean>> lockOverrides;  // null until needed
+
+    /**
+     * Create a session that starts in the world's start room.
+     * @param world The world the session is played in.
+     */
+    public Session(World world)
+    {
+        this.world = world;
+        currentRoom = world.getStartRoom();
+        if(currentRoom != null) {
+            world.enterRoom(currentRoom);
+        }
+        historyDepth = RoomHistory.DEFAULT_DEPTH;
+    }
+
+    /**
+     * Set how many rooms the player can go back through, and whether
+     * going straight back to the room just left takes it off the
+     * history rather than adding to it. If the history already holds
+     * more rooms than the new depth, the oldest are forgotten.
+     * @param depth         The most rooms kept (at least 1).
+     * @param collapseLoops Whether to collapse immediate loops.
+     */
+    public void setHistoryLimit(int depth, boolean collapseLoops)
+    {
+        RoomHistory old = priorRooms;
+        priorRooms = new RoomHistory(depth, collapseLoops);
+        historyDepth = depth;
+        this.collapseLoops = collapseLoops;
+        if(old != null) {
+            for(int i = 0; i < old.size(); i++) {
+                priorRooms.push(old.get(i));
+            }
+        }
+    }
+
+    /**
+     * @return The world this session is played in.
+     */
+    public World getWorld()
+    {
+        return world;
+    }
+
+    /**
+     * @return The room the player is in.
+     */
+    public Room getCurrentRoom()
+    {
+        return currentRoom;
+    }
+
+    /**
+     * Move the player to another room, remembering the room they left so
+     * they can go back to it.
+     * @param room The room to move to.
+     */
+    public void enter(Room room)
+    {
+        history().moved(currentRoom.getId(), room.getId());
+        moveTo(room);
+    }
+
+    /**
+     * Move the player back to the room they were in before.
+     * @return The room moved back to, or null if there is no previous room.
+     */
+    public Room back()
+    {
+        if(priorRooms == null || priorRooms.size() == 0) {
+            return null;
+        }
+        moveTo(world.getRoom(priorRooms.pop()));
+        return currentRoom;
+    }
+
+    /**
+     * Make a room the current one, telling the world the player has
+     * left the old one.
+     */
+    private void moveTo(Room room)
+    {
+        world.enterRoom(room);
+        if(currentRoom != null) {
+            world.leaveRoom(currentRoom);
+        }
+        currentRoom = room;
+    }
+
+    /**
+     * Tell the world the player has left the game, so the room they
+     * were in need not be kept in memory for them. The session should
+     * not be used afterwards.
+     */
+    public void leave()
+    {
+        if(currentRoom != null) {
+            world.leaveRoom(currentRoom);
+            currentRoom = null;
+        }
+    }
+
+    /**
+     * @return The history, made the first time it is needed.
+     */
+    private RoomHistory history()
+    {
+        if(priorRooms == null) {
+            priorRooms = new RoomHistory(historyDepth, collapseLoops);
+        }
+        return priorRooms;
+    }
+
+    /**
+     * @return The number of rooms the player can go back through.
+     */
+    public int getHistoryDepth()
+    {
+        return priorRooms == null ? 0 : priorRooms.size();
+    }
+
+    /**
+     * @return The rooms the player can go back through, the one they
+     * would reach last first, and the one "back" leads to last. The list
+     * is a copy.
+     */
+    public List<Room> getHistory()
+    {
+        if(priorRooms == null) {
+            return List.of();
+        }
+        List<Room> rooms = new ArrayList<Room>(priorRooms.size());
+        for(int i = 0; i < priorRooms.size(); i++) {
+            rooms.add(world.getRoom(priorRooms.get(i)));
+        }
+        return rooms;
+    }
+
+    /**
+     * Put the player in a room with the given rooms to go back through,
+     * as when a saved game is restored. If there are more rooms than
+     * the history holds, the oldest are left out.
+     * @param room    The room the player is in.
+     * @param history The rooms to go back through, in the order
+     *                getHistory gives them.
+     */
+    void restorePosition(Room room, List<Room> history)
+    {
+        moveTo(room);
+        if(priorRooms != null) {
+            priorRooms.clear();
+        }
+        for(Room prior : history) {
+            history().push(prior.getId());
+        }
+    }
+
+    /**
+     * Return the items in a room as this player sees them.
+     * @param room The room.
+     * @return The items in the room, or null if there are none. The
+     * container must not be changed.
+     */
+    public ItemContainer getItems(Room room)
+    {
+        if(itemOverrides != null) {
+            ItemContainer items = itemOverrides.get(room);
+            if(items != null) {
+                return items;
+            }
+        }
+        return world.getItems(room);
+    }
+
+    /**
+     * Take an item out of a room, for this player only.
+     * @param room The room the item is taken from.
+     * @param name The name of the item.
+     * @return The item taken, or null if there is no such item there.
+     */
+    public GameItem takeItem(Room room, String name)
+    {
+        ItemContainer items = getItems(room);
+        if(items == null || items.get(name) == null) {
+            return null;
+        }
+        return ownItems(room).remove(name);
+    }
+
+    /**
+     * Put an item down in a room, for this player only.
+     * @param room The room.
+     * @param item The item.
+     */
+    public void putItem(Room room, GameItem item)
+    {
+        ownItems(room).add(item);
+    }
+
+    /**
+     * @return The rooms whose items this player has changed. The set must
+     * not be changed.
+     */
+    public Set<Room> getChangedRooms()
+    {
+        if(itemOverrides == null) {
+            return Set.of();
+        }
+        return Collections.unmodifiableSet(itemOverrides.keySet());
+    }
+
+    /**
+     * Set the items in a room as this player sees them, replacing the
+     * world's, as when a saved game is restored.
+     * @param room  The room.
+     * @param items The items now in it.
+     */
+    void restoreItems(Room room, List<GameItem> items)
+    {
+        if(itemOverrides == null) {
+            itemOverrides = new HashMap<Room, ItemContainer>();
+        }
+        ItemContainer container = new ItemContainer();
+        for(GameItem item : items) {
+            container.add(item);
+        }
+        itemOverrides.put(room, container);
+    }
+
+    /**
+     * @return This session's own copy of a room's items, made from the
+     * world's the first time it is needed.
+     */
+    private ItemContainer ownItems(Room room)
+    {
+        if(itemOverrides == null) {
+            itemOverrides = new HashMap<Room, ItemContainer>();
+        }
+        ItemContainer items = itemOverrides.get(room);
+        if(items == null) {
+            ItemContainer original = world.getItems(room);
+            items = original == null ? new ItemContainer() : new ItemContainer(original);
+            itemOverrides.put(room, items);
+        }
+        return items;
+    }
+
+    /**
+     * Return whether an exit is locked as this player sees it.
+     * @param room      The room the exit leaves.
+     * @param direction The direction of the exit.
+     * @return true if it is locked.
+     */
+    public boolean isLocked(Room room, String direction)
+    {
+        if(lockOverrides != null) {
+            HashMap<String, Boolean> locks = lockOverrides.get(room);
+            if(locks != null) {
+                Boolean locked = locks.get(direction);
+                if(locked != null) {
+                    return locked;
+                }
+            }
+        }
+        return room.isLocked(direction);
+    }
+
+    /**
+     * Lock or unlock an exit, for this player only. The change is kept
+     * even if it matches the world, since in a world split into shards
+     * this shard may not know how the world has the exit.
+     * @param room      The room the exit leaves.
+     * @param direction The direction of the exit.
+     * @param locked    true to lock it, false to unlock it.
+     */
+    public void setLocked(Room room, String direction, boolean locked)
+    {
+        if(lockOverrides == null) {
+            lockOverrides = new HashMap<Room, HashMap<String, Boolean>>();
+        }
+        lockOverrides.computeIfAbsent(room, r -> new HashMap<String, Boolean>())
+                     .put(direction, locked);
+    }
+
+    /**
+     * @return Whether this player has locked or unlocked any exit.
+     */
+    public boolean hasLockChanges()
+    {
+        return lockOverrides != null;
+    }
+
+    /**
+     * @return The exits this player has locked (true) or unlocked (false),
+     * by the room they leave and their direction. The map must not be
+     * changed.
+     */
+    public Map<Room, ? extends Map<String, Boolean>> getLockChanges()
+    {
+        if(lockOverrides == null) {
+            return Map.of();
+        }
+        return Collections.unmodifiableMap(lockOverrides);
+    }
+
+    /**
+     * @return The items the player is carrying, in the order they were
+     * picked up. The list is a copy.
+     */
+    public List<GameItem> getInventory()
+    {
+        if(inventory == null) {
+            return List.of();
+        }
+        return inventory.getItems();
+    }
+
+    /**
+     * @return The number of items the player is carrying.
+     */
+    public int getInventorySize()
+    {
+        return inventory == null ? 0 : inventory.size();
+    }
+
+    /**
+     * @param name The name of an item.
+     * @return The item with that name the player is carrying, or null if
+     * they have none.
+     */
+    public GameItem getInventoryItem(String name)
+    {
+        return inventory == null ? null : inventory.get(name);
+    }
+
+    /**
+     * @param index The place of an item in the order getInventory lists
+     *              them, from 0.
+     * @return The item, found without copying the inventory.
+     * @throws IndexOutOfBoundsException If there is no such place.
+     */
+    public GameItem getInventoryItem(int index)
+    {
+        if(inventory == null) {
+            throw new IndexOutOfBoundsException("No item " + index);
+        }
+        return inventory.get(index);
+    }
+
+    /**
+     * Add an item to the player's inventory.
+     * @param item The item.
+     */
+    public void addToInventory(GameItem item)
+    {
+        if(inventory == null) {
+            inventory = new ItemContainer();
+        }
+        inventory.add(item);
+    }
+
+    /**
+     * Remove an item from the player's inventory.
+     * @param name The name of the item.
+     * @return The item removed, or null if the player has none.
+     */
+    public GameItem removeFromInventory(String name)
+    {
+        return inventory == null ? null : inventory.remove(name);
+    }
+}
@@ -0,0 +1,173 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * SessionHandoff packs up a player's session so that another shard of
+ * the same world can carry it on (see ShardServer): the room they are
+ * in, the rooms they can go back through, what they carry, the items
+ * they have moved, and the exits they have locked or unlocked. Rooms
+ * are written by id, which is the same in every shard. Items are written
+ * in full (name, description, effect and weight), because the shard
+ * taking the session over may never have had them; it gets its own
+ * copies, which the player sees just the same.
+ *
+ * Unlike a SessionSnapshot, a handoff is not meant to be kept: both ends
+ * run the same version of the game, so there is no fingerprint, no
+ * version and no matching up of names.
+ *
+ * A handoff is laid out as:
+ *
+ *     current room
+ *     history     (count, then room ids, the oldest first)
+ *     inventory   (count, then items)
+ *     changes     (count, then for each room: room id, count, items)
+ *     locks       (count, then for each exit: room id, direction, locked)
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class SessionHandoff
+{
+    /**
+     * Pack up a session.
+     * @param session The session.
+     * @return The handoff.
+     */
+    public static byte[] encode(Session session)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(session.getCurrentRoom().getId());
+            List<Room> history = session.getHistory();
+            out.writeInt(history.size());
+            for(Room room : history) {
+                out.writeInt(room.getId());
+            }
+            writeItems(out, session.getInventory());
+            out.writeInt(session.getChangedRooms().size());
+            for(Room room : session.getChangedRooms()) {
+                out.writeInt(room.getId());
+                writeItems(out, session.getItems(room).getItems());
+            }
+            int lockCount = 0;
+            for(Map<String, Boolean> locks : session.getLockChanges().values()) {
+                lockCount += locks.size();
+            }
+            out.writeInt(lockCount);
+            for(Map.Entry<Room, ? extends Map<String, Boolean>> room :
+                    session.getLockChanges().entrySet()) {
+                for(Map.Entry<String, Boolean> lock : room.getValue().entrySet()) {
+                    out.writeInt(room.getKey().getId());
+                    out.writeUTF(lock.getKey());
+                    out.writeBoolean(lock.getValue());
+                }
+            }
+        }
+        catch(IOException e) {
+            // a ByteArrayOutputStream does not fail
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Unpack a session in this shard of its world.
+     * @param world   The world, or this shard of it.
+     * @param handoff The handoff.
+     * @return The session, carrying on where it was packed up.
+     * @throws IOException If the handoff is cut short, has a count that
+     * cannot be right, or refers to rooms the world does not have.
+     */
+    public static Session decode(World world, byte[] handoff) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(handoff));
+        Room current = room(world, in.readInt());
+        int count = readCount(in);
+        List<Room> history = new ArrayList<Room>(count);
+        for(int i = 0; i < count; i++) {
+            history.add(room(world, in.readInt()));
+        }
+        Session session = new Session(world);
+        try {
+            session.restorePosition(current, history);
+            for(GameItem item : readItems(in)) {
+                session.addToInventory(item);
+            }
+            count = readCount(in);
+            for(int i = 0; i < count; i++) {
+                Room room = room(world, in.readInt());
+                session.restoreItems(room, readItems(in));
+            }
+            count = readCount(in);
+            for(int i = 0; i < count; i++) {
+                Room room = room(world, in.readInt());
+                session.setLocked(room, in.readUTF(), in.readBoolean());
+            }
+        }
+        catch(IOException | RuntimeException e) {
+            // let go of the room it was put in
+            session.leave();
+            throw e;
+        }
+        return session;
+    }
+
+    /**
+     * @return The room with an id.
+     * @throws IOException If the world has no such room.
+     */
+    private static Room room(World world, int id) throws IOException
+    {
+        if(id < 0 || id >= world.getRoomCount()) {
+            throw new IOException("handoff refers to room " + id +
+                                  ", which the world does not have");
+        }
+        return world.getRoom(id);
+    }
+
+    /**
+     * @return A count of things that follow.
+     * @throws IOException If it is negative, or more than the bytes left
+     * (everything counted takes at least one byte).
+     */
+    private static int readCount(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+        if(count < 0 || count > in.available()) {
+            throw new IOException("handoff damaged: a count of " + count);
+        }
+        return count;
+    }
+
+    private static void writeItems(DataOutputStream out, List<GameItem> items)
+        throws IOException
+    {
+        out.writeInt(items.size());
+        for(GameItem item : items) {
+            out.writeUTF(item.getName());
+            out.writeUTF(item.getRawDescription());
+            out.writeUTF(item.getEffect());
+            out.writeBoolean(item.isHeavy());
+        }
+    }
+
+    private static List<GameItem> readItems(DataInputStream in) throws IOException
+    {
+        int count = readCount(in);
+        List<GameItem> items = new ArrayList<GameItem>(count);
+        for(int i = 0; i < count; i++) {
+            items.add(new GameItem(in.readUTF(), in.readUTF(), in.readUTF(),
+                                   in.readBoolean()));
+        }
+        return items;
+    }
+}
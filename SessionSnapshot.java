@@ -0,0 +1,602 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * SessionSnapshot saves a player's session in a compact binary form and
+ * restores it again: the room they are in, the rooms they can go back
+ * through, what they carry, the items they have moved, and the exits
+ * they have locked or unlocked. Rooms and
+ * items are written as their ids in the world, as variable-length
+ * numbers (small numbers take one byte), and the rooms to go back
+ * through as the difference from the room before, which for neighbouring
+ * rooms is usually small too. A typical save takes a few dozen bytes.
+ *
+ * A snapshot is laid out as:
+ *
+ *     magic  version  world fingerprint
+ *     names  (length, then the name of every room and item referred to)
+ *     current room
+ *     history     (count, then each room as a difference)
+ *     inventory   (count, then item ids)
+ *     changes     (count, then for each room: room id, count, item ids)
+ *     locks       (count, then for each exit: room id, direction, 1 if
+ *                 locked or 0 if unlocked); since version 2
+ *
+ * The version number says how the rest is laid out; readers of later
+ * versions keep reading the older ones. The fingerprint says which rooms
+ * and items the ids refer to. When a save is restored into the same
+ * world the names are skipped. When the world has changed since, the ids
+ * are matched up again by name, and anything that no longer exists is
+ * left out, so old saves still load.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class SessionSnapshot
+{
+    private static final int MAGIC = 0x57425553;    // "WBUS"
+    private static final int VERSION = 2;
+
+    /**
+     * Save a session to a file.
+     * @param session  The session.
+     * @param fileName The name of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(Session session, String fileName) throws IOException
+    {
+        Files.write(Paths.get(fileName), encode(session));
+    }
+
+    /**
+     * Restore a session from a file.
+     * @param world    The world the session is played in.
+     * @param fileName The name of the file.
+     * @return The session.
+     * @throws IOException If the file cannot be read or is not a saved game.
+     */
+    public static Session load(World world, String fileName) throws IOException
+    {
+        return decode(world, Files.readAllBytes(Paths.get(fileName)));
+    }
+
+    /**
+     * Write a session to a stream, preceded by its length, so that many
+     * sessions can be written one after another to the same stream.
+     * @param session The session.
+     * @param out     The stream.
+     * @throws IOException If the stream cannot be written.
+     */
+    public static void write(Session session, OutputStream out) throws IOException
+    {
+        byte[] snapshot = encode(session);
+        int length = snapshot.length;
+        while((length & ~0x7F) != 0) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+        out.write(snapshot);
+    }
+
+    /**
+     * Read the next session written with write from a stream.
+     * @param world The world the session is played in.
+     * @param in    The stream.
+     * @return The session, or null if the stream has ended.
+     * @throws IOException If the stream cannot be read or does not hold
+     * a saved game.
+     */
+    public static Session read(World world, InputStream in) throws IOException
+    {
+        int length = 0;
+        for(int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if(b < 0) {
+                if(shift == 0) {
+                    return null;
+                }
+                throw new EOFException("saved game cut short");
+            }
+            if(shift > 28) {
+                throw new IOException("not a saved game");
+            }
+            length |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return decode(world, in.readNBytes(length));
+    }
+
+    /**
+     * Turn a session into a snapshot.
+     * @param session The session.
+     * @return The snapshot.
+     * @throws IllegalArgumentException If the session holds an item that
+     * does not belong to its world.
+     */
+    public static byte[] encode(Session session)
+    {
+        World world = session.getWorld();
+        Room current = session.getCurrentRoom();
+        List<Room> history = session.getHistory();
+        List<GameItem> inventory = session.getInventory();
+        Set<Room> changedRooms = session.getChangedRooms();
+        Map<Room, ? extends Map<String, Boolean>> lockChanges = session.getLockChanges();
+
+        // the names of everything referred to, in case the world changes
+        LinkedHashMap<Integer, String> roomNames = new LinkedHashMap<>();
+        LinkedHashMap<Integer, String> itemNames = new LinkedHashMap<>();
+        roomNames.put(current.getId(), current.getName());
+        for(Room room : history) {
+            roomNames.putIfAbsent(room.getId(), room.getName());
+        }
+        for(GameItem item : inventory) {
+            itemNames.put(itemId(world, item), item.getName());
+        }
+        for(Room room : changedRooms) {
+            roomNames.putIfAbsent(room.getId(), room.getName());
+            for(GameItem item : session.getItems(room).getItems()) {
+                itemNames.put(itemId(world, item), item.getName());
+            }
+        }
+        for(Room room : lockChanges.keySet()) {
+            roomNames.putIfAbsent(room.getId(), room.getName());
+        }
+        Encoder names = new Encoder(16 * (roomNames.size() + itemNames.size()));
+        writeNames(names, roomNames);
+        writeNames(names, itemNames);
+
+        Encoder out = new Encoder(names.length + 32 + 2 * history.size());
+        out.writeInt(MAGIC);
+        out.writeVarint(VERSION);
+        out.writeLong(world.getFingerprint());
+        out.writeVarint(names.length);
+        out.write(names);
+
+        out.writeVarint(current.getId());
+        out.writeVarint(history.size());
+        int previous = current.getId();
+        for(Room room : history) {
+            out.writeSignedVarint(room.getId() - previous);
+            previous = room.getId();
+        }
+        writeItems(out, inventory);
+        out.writeVarint(changedRooms.size());
+        for(Room room : changedRooms) {
+            out.writeVarint(room.getId());
+            writeItems(out, session.getItems(room).getItems());
+        }
+        int lockCount = 0;
+        for(Map<String, Boolean> locks : lockChanges.values()) {
+            lockCount += locks.size();
+        }
+        out.writeVarint(lockCount);
+        for(Map.Entry<Room, ? extends Map<String, Boolean>> room : lockChanges.entrySet()) {
+            for(Map.Entry<String, Boolean> lock : room.getValue().entrySet()) {
+                out.writeVarint(room.getKey().getId());
+                out.writeString(lock.getKey());
+                out.writeVarint(lock.getValue() ? 1 : 0);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Turn a snapshot back into a session.
+     * @param world    The world the session is played in.
+     * @param snapshot The snapshot.
+     * @return The session.
+     * @throws IOException If the snapshot is not a saved game, or was
+     * saved by a later version of the game.
+     */
+    public static Session decode(World world, byte[] snapshot) throws IOException
+    {
+        try {
+            Decoder in = new Decoder(snapshot);
+            if(snapshot.length < 4 || in.readInt() != MAGIC) {
+                throw new IOException("not a saved game");
+            }
+            int version = in.readVarint();
+            if(version < 1 || version > VERSION) {
+                throw new IOException("saved by an unknown version (" + version + ")");
+            }
+            Mapping mapping;
+            long fingerprint = in.readLong();
+            int namesLength = in.readCount();
+            if(fingerprint == world.getFingerprint()) {
+                in.skip(namesLength);
+                mapping = new Mapping(world);
+            }
+            else {
+                mapping = new Mapping(world, in);
+            }
+            return readSession(world, in, mapping, version);
+        }
+        catch(IndexOutOfBoundsException e) {
+            throw new IOException("saved game cut short or damaged");
+        }
+    }
+
+    /**
+     * Read the session itself, once the header has been read.
+     */
+    private static Session readSession(World world, Decoder in, Mapping mapping,
+                                       int version)
+        throws IOException
+    {
+        int previous = in.readVarint();
+        Room current = mapping.room(previous);
+        int historySize = in.readCount();
+        List<Room> history = new ArrayList<Room>(Math.min(historySize, 1 << 16));
+        for(int i = 0; i < historySize; i++) {
+            previous += in.readSignedVarint();
+            Room room = mapping.room(previous);
+            if(room != null) {
+                history.add(room);
+            }
+        }
+        if(current == null) {
+            // the room they were in is gone: start again at the start
+            current = world.getStartRoom();
+            history.clear();
+        }
+        List<GameItem> inventory = readItems(in, mapping);
+        int changedCount = in.readCount();
+        List<Room> changedRooms = new ArrayList<Room>(Math.min(changedCount, 1 << 16));
+        List<List<GameItem>> changedItems = new ArrayList<List<GameItem>>(Math.min(changedCount, 1 << 16));
+        for(int i = 0; i < changedCount; i++) {
+            Room room = mapping.room(in.readVarint());
+            List<GameItem> items = readItems(in, mapping);
+            if(room != null) {
+                changedRooms.add(room);
+                changedItems.add(items);
+            }
+        }
+        int lockCount = version >= 2 ? in.readCount() : 0;
+        List<Room> lockRooms = new ArrayList<Room>(Math.min(lockCount, 1 << 16));
+        List<String> lockDirections = new ArrayList<String>(Math.min(lockCount, 1 << 16));
+        List<Boolean> locks = new ArrayList<Boolean>(Math.min(lockCount, 1 << 16));
+        for(int i = 0; i < lockCount; i++) {
+            Room room = mapping.room(in.readVarint());
+            String direction = in.readString();
+            boolean locked = in.readVarint() != 0;
+            if(room != null) {
+                lockRooms.add(room);
+                lockDirections.add(direction);
+                locks.add(locked);
+            }
+        }
+
+        // only made once everything has been read, so a damaged snapshot
+        // leaves no session behind holding a room in memory
+        Session session = new Session(world);
+        session.restorePosition(current, history);
+        for(GameItem item : inventory) {
+            session.addToInventory(item);
+        }
+        for(int i = 0; i < changedRooms.size(); i++) {
+            session.restoreItems(changedRooms.get(i), changedItems.get(i));
+        }
+        for(int i = 0; i < lockRooms.size(); i++) {
+            session.setLocked(lockRooms.get(i), lockDirections.get(i), locks.get(i));
+        }
+        return session;
+    }
+
+    /**
+     * @return The id of an item, checking that it belongs to the world.
+     */
+    private static int itemId(World world, GameItem item)
+    {
+        int id = item.getId();
+        if(id < 0 || id >= world.getItemCount() || world.getItem(id) != item) {
+            throw new IllegalArgumentException("the item " + item.getName() +
+                                               " is not part of this world");
+        }
+        return id;
+    }
+
+    /**
+     * Write a list of items as a count and their ids.
+     */
+    private static void writeItems(Encoder out, List<GameItem> items)
+    {
+        out.writeVarint(items.size());
+        for(GameItem item : items) {
+            out.writeVarint(item.getId());
+        }
+    }
+
+    /**
+     * Read a list of items written by writeItems, leaving out any that no
+     * longer exist.
+     */
+    private static List<GameItem> readItems(Decoder in, Mapping mapping)
+        throws IOException
+    {
+        int count = in.readCount();
+        List<GameItem> items = new ArrayList<GameItem>(Math.min(count, 1 << 16));
+        for(int i = 0; i < count; i++) {
+            GameItem item = mapping.item(in.readVarint());
+            if(item != null) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Write a table of ids and names.
+     */
+    private static void writeNames(Encoder out, LinkedHashMap<Integer, String> names)
+    {
+        out.writeVarint(names.size());
+        for(Integer id : names.keySet()) {
+            out.writeVarint(id);
+            out.writeString(names.get(id));
+        }
+    }
+
+    /**
+     * Says which room and item of the world each id in a snapshot stands
+     * for. For a snapshot of the same world that is simply the room or
+     * item with that id; otherwise the ids are matched up by name.
+     */
+    private static class Mapping
+    {
+        private World world;
+        private HashMap<Integer, Room> rooms;       // null if ids are unchanged
+        private HashMap<Integer, GameItem> items;
+
+        /**
+         * A mapping for a snapshot of the same world.
+         */
+        Mapping(World world)
+        {
+            this.world = world;
+        }
+
+        /**
+         * A mapping for a snapshot of an earlier version of the world,
+         * made from the names it holds.
+         */
+        Mapping(World world, Decoder in) throws IOException
+        {
+            this.world = world;
+            rooms = new HashMap<Integer, Room>();
+            int roomCount = in.readCount();
+            for(int i = 0; i < roomCount; i++) {
+                int id = in.readVarint();
+                Room room = world.getRoom(in.readString());
+                if(room != null) {
+                    rooms.put(id, room);
+                }
+            }
+
+            // Items can share a name, so each name's items in the
+            // snapshot are matched in turn with the world's.
+            HashMap<String, ArrayDeque<GameItem>> byName = new HashMap<>();
+            for(GameItem item : world.getAllItems()) {
+                byName.computeIfAbsent(item.getName(), n -> new ArrayDeque<GameItem>())
+                      .add(item);
+            }
+            items = new HashMap<Integer, GameItem>();
+            int itemCount = in.readCount();
+            for(int i = 0; i < itemCount; i++) {
+                int id = in.readVarint();
+                ArrayDeque<GameItem> candidates = byName.get(in.readString());
+                if(candidates != null && !candidates.isEmpty()) {
+                    items.put(id, candidates.poll());
+                }
+            }
+        }
+
+        /**
+         * @return The room an id in the snapshot stands for, or null if
+         * it no longer exists.
+         */
+        Room room(int id) throws IOException
+        {
+            if(rooms != null) {
+                return rooms.get(id);
+            }
+            if(id < 0 || id >= world.getRoomCount()) {
+                throw new IOException("saved game refers to a room that does not exist");
+            }
+            return world.getRoom(id);
+        }
+
+        /**
+         * @return The item an id in the snapshot stands for, or null if
+         * it no longer exists.
+         */
+        GameItem item(int id) throws IOException
+        {
+            if(items != null) {
+                return items.get(id);
+            }
+            if(id < 0 || id >= world.getItemCount()) {
+                throw new IOException("saved game refers to an item that does not exist");
+            }
+            return world.getItem(id);
+        }
+    }
+
+    /**
+     * A growing array of bytes that snapshots are written into.
+     */
+    private static class Encoder
+    {
+        private byte[] bytes;
+        private int length;
+
+        Encoder(int capacity)
+        {
+            bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        private void ensureCapacity(int extra)
+        {
+            if(length + extra > bytes.length) {
+                byte[] bigger = new byte[Math.max(length + extra, bytes.length * 2)];
+                System.arraycopy(bytes, 0, bigger, 0, length);
+                bytes = bigger;
+            }
+        }
+
+        void writeInt(int value)
+        {
+            ensureCapacity(4);
+            for(int shift = 24; shift >= 0; shift -= 8) {
+                bytes[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeLong(long value)
+        {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        /**
+         * Write a number that is not negative in 7-bit groups, lowest
+         * first, with the top bit of each byte set if more follow.
+         */
+        void writeVarint(int value)
+        {
+            ensureCapacity(5);
+            while((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        /**
+         * Write a number that may be negative, folded so that numbers
+         * near zero either side take one byte.
+         */
+        void writeSignedVarint(int value)
+        {
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        void writeString(String s)
+        {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length);
+            ensureCapacity(utf8.length);
+            System.arraycopy(utf8, 0, bytes, length, utf8.length);
+            length += utf8.length;
+        }
+
+        void write(Encoder other)
+        {
+            ensureCapacity(other.length);
+            System.arraycopy(other.bytes, 0, bytes, length, other.length);
+            length += other.length;
+        }
+
+        byte[] toByteArray()
+        {
+            byte[] result = new byte[length];
+            System.arraycopy(bytes, 0, result, 0, length);
+            return result;
+        }
+    }
+
+    /**
+     * Reads back what an Encoder wrote. Reading past the end throws
+     * IndexOutOfBoundsException.
+     */
+    private static class Decoder
+    {
+        private byte[] bytes;
+        private int position;
+
+        Decoder(byte[] bytes)
+        {
+            this.bytes = bytes;
+        }
+
+        int readInt()
+        {
+            int value = 0;
+            for(int i = 0; i < 4; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readLong()
+        {
+            long high = readInt();
+            return (high << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        int readVarint() throws IOException
+        {
+            int value = 0;
+            for(int shift = 0; shift < 35; shift += 7) {
+                byte b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if(b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("saved game damaged");
+        }
+
+        /**
+         * Read how many of something follow. Each takes at least a byte,
+         * so a damaged count (negative, or more than the bytes left)
+         * is caught here rather than sizing a list with it.
+         */
+        int readCount() throws IOException
+        {
+            int count = readVarint();
+            if(count < 0 || count > bytes.length - position) {
+                throw new IOException("saved game damaged");
+            }
+            return count;
+        }
+
+        int readSignedVarint() throws IOException
+        {
+            int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() throws IOException
+        {
+            int length = readCount();
+            String s = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return s;
+        }
+
+        void skip(int count)
+        {
+            if(count < 0 || count > bytes.length - position) {
+                throw new IndexOutOfBoundsException();
+            }
+            position += count;
+        }
+    }
+}
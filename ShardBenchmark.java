@@ -0,0 +1,264 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A ShardBenchmark compares a generated world split between several
+ * ShardServer processes with the same world in a single process. For
+ * each, it starts the processes on this machine, talking over loopback,
+ * and has many players wander about at once, each taking a random one of
+ * the exits its last room listed. It reports the moves made per second
+ * and how long they took (most moves between shards include a handoff),
+ * then each shard's own report: rooms held, handoffs made and how long
+ * they took, and heap used, both once the shard has started (which is
+ * what its part of the world costs) and after the players have gone.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class ShardBenchmark
+{
+    private int roomCount;
+    private long seed;
+    private int players;
+    private int moves;
+    private AtomicInteger failures;
+
+    /**
+     * Create a benchmark.
+     * @param roomCount How many rooms the generated world has.
+     * @param seed      The seed it is generated from.
+     * @param players   How many players wander about at once.
+     * @param moves     How many moves each player makes.
+     */
+    public ShardBenchmark(int roomCount, long seed, int players, int moves)
+    {
+        this.roomCount = roomCount;
+        this.seed = seed;
+        this.players = players;
+        this.moves = moves;
+        failures = new AtomicInteger();
+    }
+
+    /**
+     * Run the world as some number of shard processes, measure it and
+     * print a report.
+     * @param shardCount How many shards to split the world between.
+     * @param basePort   The first of the 2 * shardCount ports to use.
+     * @param report     Where the report is printed.
+     */
+    public void run(int shardCount, int basePort, PrintStream report)
+        throws IOException, InterruptedException
+    {
+        List<Process> processes = new ArrayList<>();
+        List<String> started = new ArrayList<>();
+        try {
+            for(int shard = 0; shard < shardCount; shard++) {
+                processes.add(startShard(shard, shardCount, basePort, started));
+            }
+            long[][] latencies = new long[players][];
+            CountDownLatch done = new CountDownLatch(players);
+            ExecutorService threads = GameServer.newThreadPerTaskExecutor();
+            long start = System.nanoTime();
+            for(int i = 0; i < players; i++) {
+                int player = i;
+                // players join at every shard in turn
+                int port = basePort + player % shardCount;
+                threads.execute(() -> {
+                    latencies[player] = wander(port, seed + player);
+                    done.countDown();
+                });
+            }
+            done.await();
+            long elapsed = System.nanoTime() - start;
+            threads.shutdown();
+
+            printReport(shardCount, latencies, elapsed, report);
+            for(String line : started) {
+                report.println("  " + line);
+            }
+            for(InetSocketAddress peer : ShardServer.loopbackPeers(shardCount, basePort)) {
+                report.println("  " + ShardServer.requestStats(peer));
+            }
+        }
+        finally {
+            for(Process process : processes) {
+                process.destroy();
+            }
+            for(Process process : processes) {
+                process.waitFor();
+            }
+        }
+    }
+
+    /**
+     * Start a shard in a new JVM and wait until it is ready.
+     * @param started Where the line it prints when ready is added.
+     * @return The process.
+     */
+    private Process startShard(int shard, int shardCount, int basePort, List<String> started)
+        throws IOException
+    {
+        String java = System.getProperty("java.home") + File.separator + "bin" +
+                      File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp",
+            System.getProperty("java.class.path"), "ShardServer",
+            String.valueOf(shard), String.valueOf(shardCount), String.valueOf(roomCount),
+            String.valueOf(seed), String.valueOf(basePort))
+            .redirectErrorStream(true).start();
+        BufferedReader out = new BufferedReader(new InputStreamReader(
+            process.getInputStream(), StandardCharsets.UTF_8));
+        String line;
+        while((line = out.readLine()) != null) {
+            if(line.contains("ready")) {
+                started.add(line);
+                return process;
+            }
+        }
+        throw new IOException("Shard " + shard + " stopped before it was ready");
+    }
+
+    /**
+     * Connect as one player and wander about, timing each move.
+     * @param port The player port of the shard to join at.
+     * @param seed The seed the player's choices are made from.
+     * @return The latency of every move in nanoseconds, or an empty array
+     * if the connection failed.
+     */
+    private long[] wander(int port, long seed)
+    {
+        long[] latencies = new long[moves];
+        SplittableRandom random = new SplittableRandom(seed);
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = socket.getOutputStream();
+
+            String[] exits = exits(readResponse(in), new String[0]);
+            for(int i = 0; i < moves; i++) {
+                String command = exits.length == 0 ? "back"
+                    : "go " + exits[random.nextInt(exits.length)];
+                long sent = System.nanoTime();
+                out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+                String response = readResponse(in);
+                latencies[i] = System.nanoTime() - sent;
+                exits = exits(response, exits);
+            }
+            out.write("quit\n".getBytes(StandardCharsets.UTF_8));
+            return latencies;
+        }
+        catch(IOException e) {
+            failures.incrementAndGet();
+            return new long[0];
+        }
+    }
+
+    /**
+     * @return The exits listed in a response, or the ones known before if
+     * it lists none (the way was blocked).
+     */
+    private static String[] exits(String response, String[] before)
+    {
+        int start = response.lastIndexOf("Exits:");
+        if(start < 0) {
+            return before;
+        }
+        int end = response.indexOf('\n', start);
+        String list = response.substring(start + "Exits:".length(),
+                                         end < 0 ? response.length() : end).trim();
+        return list.isEmpty() ? new String[0] : list.split(" ");
+    }
+
+    /**
+     * Read a response up to the prompt that ends it.
+     * @return The response, without the prompt.
+     * @throws IOException If the connection closes before the prompt.
+     */
+    private static String readResponse(BufferedReader in) throws IOException
+    {
+        StringBuilder text = new StringBuilder();
+        boolean lineStart = true;
+        while(true) {
+            int c = in.read();
+            if(c < 0) {
+                throw new IOException("Connection closed mid-response");
+            }
+            if(lineStart && c == '>') {
+                in.read();      // the space after it
+                return text.toString();
+            }
+            text.append((char) c);
+            lineStart = c == '\n';
+        }
+    }
+
+    /**
+     * Print throughput and latency percentiles for all players.
+     */
+    private void printReport(int shardCount, long[][] latencies, long elapsedNanos,
+                             PrintStream report)
+    {
+        int total = 0;
+        for(long[] player : latencies) {
+            total += player.length;
+        }
+        long[] all = new long[total];
+        int next = 0;
+        for(long[] player : latencies) {
+            System.arraycopy(player, 0, all, next, player.length);
+            next += player.length;
+        }
+        Arrays.sort(all);
+
+        report.printf("%d shard%s, %d rooms, %d players (%d failed): %.0f moves/sec%n",
+            shardCount, shardCount == 1 ? "" : "s", roomCount, players, failures.get(),
+            total * 1e9 / elapsedNanos);
+        if(total > 0) {
+            report.printf("  move latency (us): p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f%n",
+                percentile(all, 50) / 1e3, percentile(all, 99) / 1e3,
+                percentile(all, 99.9) / 1e3, all[total - 1] / 1e3);
+        }
+    }
+
+    /**
+     * @return The given percentile of a sorted array of values.
+     */
+    private static long percentile(long[] sorted, double percentile)
+    {
+        int index = (int) Math.ceil(sorted.length * percentile / 100) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    /**
+     * Compare one process with several shards.
+     * Usage: java ShardBenchmark [shards] [rooms] [players] [moves] [basePort]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int shards = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rooms = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int players = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int moves = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+        int basePort = args.length > 4 ? Integer.parseInt(args[4]) : 4300;
+
+        new ShardBenchmark(rooms, 42, players, moves).run(1, basePort, System.out);
+        new ShardBenchmark(rooms, 42, players, moves).run(shards, basePort + 2, System.out);
+    }
+}
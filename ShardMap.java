@@ -0,0 +1,76 @@
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A ShardMap says how a world's rooms are split between shards, for
+ * worlds too big for one process. Each shard holds a run of rooms with
+ * consecutive ids, and the runs are as near the same length as they can
+ * be, so any process can work out which shard holds a room from its id
+ * alone.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class ShardMap
+{
+    private int roomCount;
+    private int shardCount;
+
+    /**
+     * Create a map splitting a world between shards.
+     * @param roomCount  How many rooms the world has.
+     * @param shardCount How many shards it is split between.
+     */
+    public ShardMap(int roomCount, int shardCount)
+    {
+        if(shardCount < 1 || shardCount > Math.max(roomCount, 1)) {
+            throw new IllegalArgumentException("Cannot split " + roomCount +
+                                               " rooms into " + shardCount + " shards");
+        }
+        this.roomCount = roomCount;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * @return How many rooms the world has.
+     */
+    public int getRoomCount()
+    {
+        return roomCount;
+    }
+
+    /**
+     * @return How many shards the world is split between.
+     */
+    public int getShardCount()
+    {
+        return shardCount;
+    }
+
+    /**
+     * @param room The id of a room.
+     * @return The shard that holds it.
+     */
+    public int shardOf(int room)
+    {
+        return (int) ((long) room * shardCount / roomCount);
+    }
+
+    /**
+     * @param shard A shard.
+     * @return The id of the first room it holds.
+     */
+    public int firstRoom(int shard)
+    {
+        // the smallest id whose shard is this one
+        return (int) (((long) shard * roomCount + shardCount - 1) / shardCount);
+    }
+
+    /**
+     * @param shard A shard.
+     * @return How many rooms it holds.
+     */
+    public int roomCount(int shard)
+    {
+        return firstRoom(shard + 1) - firstRoom(shard);
+    }
+}
@@ -0,0 +1,720 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A ShardServer serves one shard of a world too big for one process. The
+ * world is split by a ShardMap, and each shard is run by its own
+ * ShardServer, usually in its own JVM, holding only its own rooms. The
+ * shards of a generated world each generate their own part, so nothing
+ * has to be copied between them to start.
+ *
+ * Players connect to any shard, using the same line protocol as a
+ * GameServer. That shard stays their front: it reads their commands and
+ * sends them their responses. Their session, though, lives with the shard
+ * holding the room they are in. The front passes each command to that
+ * shard and the response back. When a command takes the player into a
+ * room held by another shard (by "go", "back" or anything else), the
+ * shard packs up the session with SessionHandoff, inventory and history
+ * and all, and hands it to the front, which gives it to the new shard;
+ * that shard describes the room the player has arrived in. The player
+ * sees one world.
+ *
+ * Shards talk to each other over a small binary protocol on a second
+ * port, each request answered in turn on the same connection. Idle
+ * connections are kept for the next request, so once a front has talked
+ * to a shard it does not connect again. A shard serving its own players
+ * calls itself directly.
+ *
+ * Each shard counts the handoffs it makes as a front, and times them from
+ * sending the session to the new shard to getting its response back. The
+ * times go in a histogram of fixed size (see GameMetrics), so a shard
+ * that makes millions of handoffs takes no more heap for them than one
+ * that makes none.
+ *
+ * A player's lines are held to Parser.MAX_LINE_LENGTH, as they are by a
+ * GameServer: a longer line is answered with an error and never sent on
+ * to another shard. A player who sends nothing for GameServer.IDLE_TIMEOUT
+ * is disconnected.
+ *
+ * A shard keeps no map of the world (see World.getRouteFinder), so
+ * "goto" tells players to walk, and triggers are not shared between
+ * shards. Nor does a shard keep a command journal, as a GameServer can:
+ * a session moves from shard to shard, so no one shard's journal could
+ * rebuild it.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class ShardServer
+{
+    // requests from one shard to another
+    private static final byte START = 1;        // a new player
+    private static final byte COMMAND = 2;      // a line the player typed
+    private static final byte ARRIVE = 3;       // a session handed over
+    private static final byte LEAVE = 4;        // the player has gone
+    private static final byte STATS = 5;        // report how the shard is doing
+
+    // what a request leaves the player's session doing
+    private static final byte CARRY_ON = 0;     // still held here
+    private static final byte ENDED = 1;        // the game is over
+    private static final byte HANDED_OFF = 2;   // another shard holds it now
+
+    private static final byte[] PROMPT = "> ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LINE_TOO_LONG = (Messages.getDefault().get(Message.LINE_TOO_LONG) +
+                                                 System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+
+    private ShardMap shards;
+    private int shard;
+    private World world;
+    private InetSocketAddress[] peerAddresses;  // every shard's peer port
+
+    private ConcurrentHashMap<Long, Hosted> hosted;     // sessions held here
+    private ConcurrentLinkedQueue<PeerLink>[] idleLinks;
+    private AtomicLong nextKey;
+
+    private ServerSocket playerSocket;
+    private ServerSocket peerSocket;
+    private ExecutorService connections;
+    private AtomicInteger activePlayers;
+    private Set<Socket> clients;        // players and shards connected now
+
+    // handoffs made by this shard as a front
+    private GameMetrics.Histogram handoffNanos;
+    private AtomicInteger handoffCount;
+
+    /**
+     * Create a server for one shard. It does not listen until start is
+     * called.
+     * @param world         This shard's part of the world.
+     * @param shards        How the world is split.
+     * @param shard         Which shard this is.
+     * @param peerAddresses Where every shard (this one too) listens for
+     *                      other shards, in shard order.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ShardServer(World world, ShardMap shards, int shard,
+                       InetSocketAddress[] peerAddresses)
+    {
+        if(peerAddresses.length != shards.getShardCount()) {
+            throw new IllegalArgumentException("Need an address for each of the " +
+                                               shards.getShardCount() + " shards");
+        }
+        this.world = world;
+        this.shards = shards;
+        this.shard = shard;
+        this.peerAddresses = peerAddresses;
+        hosted = new ConcurrentHashMap<>();
+        idleLinks = new ConcurrentLinkedQueue[shards.getShardCount()];
+        for(int i = 0; i < idleLinks.length; i++) {
+            idleLinks[i] = new ConcurrentLinkedQueue<>();
+        }
+        nextKey = new AtomicLong();
+        activePlayers = new AtomicInteger();
+        clients = ConcurrentHashMap.newKeySet();
+        handoffNanos = new GameMetrics.Histogram();
+        handoffCount = new AtomicInteger();
+    }
+
+    /**
+     * Start listening for players and for other shards, on the loopback
+     * interface.
+     * @param playerPort The port players connect to, or 0 for any.
+     * @throws IOException If a port could not be opened.
+     */
+    public void start(int playerPort) throws IOException
+    {
+        InetSocketAddress peerAddress = peerAddresses[shard];
+        peerSocket = new ServerSocket();
+        peerSocket.setReuseAddress(true);
+        peerSocket.bind(peerAddress, 4096);
+        playerSocket = new ServerSocket();
+        playerSocket.setReuseAddress(true);
+        playerSocket.bind(new InetSocketAddress(peerAddress.getAddress(), playerPort), 4096);
+        connections = GameServer.newThreadPerTaskExecutor();
+        new Thread(() -> accept(peerSocket, this::servePeer), "ShardServer peers").start();
+        new Thread(() -> accept(playerSocket, this::servePlayer), "ShardServer players").start();
+    }
+
+    /**
+     * @return The port players connect to.
+     */
+    public int getPlayerPort()
+    {
+        return playerSocket.getLocalPort();
+    }
+
+    /**
+     * Stop listening and end the games being played here, by closing
+     * every connection from players and other shards.
+     * @throws IOException If a server socket could not be closed.
+     */
+    public void stop() throws IOException
+    {
+        playerSocket.close();
+        peerSocket.close();
+        GameServer.closeAll(clients);
+        connections.shutdownNow();
+        for(ConcurrentLinkedQueue<PeerLink> links : idleLinks) {
+            for(PeerLink link; (link = links.poll()) != null; ) {
+                link.close();
+            }
+        }
+    }
+
+    /**
+     * A connection handler.
+     */
+    private interface Handler
+    {
+        void serve(Socket socket) throws IOException;
+    }
+
+    /**
+     * Accept connections until the server socket is closed, serving each
+     * on its own thread.
+     */
+    private void accept(ServerSocket server, Handler handler)
+    {
+        long pause = 0;
+        while(!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                pause = 0;
+                connections.execute(() -> {
+                    clients.add(socket);
+                    try(socket) {
+                        if(server.isClosed()) {
+                            return;     // stop() may have missed this one
+                        }
+                        socket.setTcpNoDelay(true);
+                        handler.serve(socket);
+                    }
+                    catch(IOException e) {
+                        // the other end went away; there is nobody left to tell
+                    }
+                    finally {
+                        clients.remove(socket);
+                    }
+                });
+            }
+            catch(IOException e) {
+                // unless closed by stop(), wait before trying again
+                if(!server.isClosed()) {
+                    pause = GameServer.pauseAfterFailedAccept("ShardServer " + shard, e, pause);
+                }
+            }
+        }
+    }
+
+    // the front: one player's connection
+
+    /**
+     * Be the front for one player until they quit, win or disconnect.
+     * @param socket The player's connection.
+     */
+    private void servePlayer(Socket socket) throws IOException
+    {
+        activePlayers.incrementAndGet();
+        long key = ((long) shard << 40) | nextKey.incrementAndGet();
+        int holder = -1;
+        try {
+            socket.setSoTimeout(GameServer.IDLE_TIMEOUT);
+            PlayerLines in = new PlayerLines(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = socket.getOutputStream();
+            ByteArrayOutputStream response = new ByteArrayOutputStream(1024);
+
+            holder = follow(call(shard, START, key, null, null), shard, key, response);
+            while(holder >= 0) {
+                response.write(PROMPT);
+                response.writeTo(out);
+                response.reset();
+                String line = in.readLine();
+                if(line == null) {
+                    break;
+                }
+                if(in.wasTooLong()) {
+                    response.write(LINE_TOO_LONG);
+                    continue;
+                }
+                holder = follow(call(holder, COMMAND, key, line, null), holder, key, response);
+            }
+            response.writeTo(out);
+        }
+        finally {
+            if(holder >= 0) {
+                call(holder, LEAVE, key, null, null);
+            }
+            activePlayers.decrementAndGet();
+        }
+    }
+
+    /**
+     * Add a reply's text to the player's response, and if the session has
+     * been handed off, hand it to the shard that holds it now.
+     * @param reply  The reply.
+     * @param holder The shard that made it.
+     * @return The shard now holding the session, or -1 if the game is over.
+     */
+    private int follow(Reply reply, int holder, long key, ByteArrayOutputStream response)
+        throws IOException
+    {
+        response.write(reply.text);
+        while(reply.status == HANDED_OFF) {
+            long start = System.nanoTime();
+            holder = reply.nextShard;
+            reply = call(holder, ARRIVE, key, null, reply.session);
+            recordHandoff(System.nanoTime() - start);
+            response.write(reply.text);
+        }
+        return reply.status == ENDED ? -1 : holder;
+    }
+
+    private void recordHandoff(long nanos)
+    {
+        handoffCount.incrementAndGet();
+        handoffNanos.record(nanos);
+    }
+
+    /**
+     * Make a request of a shard, this one included.
+     * @return Its reply.
+     * @throws IOException If the shard could not be reached.
+     */
+    private Reply call(int target, byte request, long key, String line, byte[] session)
+        throws IOException
+    {
+        if(target == shard) {
+            return handle(request, key, line, session);
+        }
+        PeerLink link = idleLinks[target].poll();
+        if(link == null) {
+            link = new PeerLink(peerAddresses[target]);
+        }
+        try {
+            Reply reply = link.call(request, key, line, session);
+            idleLinks[target].add(link);
+            return reply;
+        }
+        catch(IOException e) {
+            link.close();
+            throw e;
+        }
+    }
+
+    // the shard: sessions held here
+
+    /**
+     * Serve requests from another shard, one at a time, until it hangs up.
+     * @param socket The connection from the other shard.
+     */
+    private void servePeer(Socket socket) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        while(true) {
+            int request = in.read();
+            if(request < 0) {
+                return;
+            }
+            long key = in.readLong();
+            String line = null;
+            byte[] session = null;
+            if(request == COMMAND) {
+                line = new String(readBytes(in), StandardCharsets.UTF_8);
+            }
+            else if(request == ARRIVE) {
+                session = readBytes(in);
+            }
+            handle((byte) request, key, line, session).write(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * Carry out a request for a session held here.
+     * @return The reply.
+     * @throws IOException If a handed-over session cannot be unpacked.
+     */
+    private Reply handle(byte request, long key, String line, byte[] session)
+        throws IOException
+    {
+        switch(request) {
+            case START:
+                return settle(key, host(key, new Session(world), false));
+
+            case COMMAND:
+                Hosted player = hosted.get(key);
+                if(player == null) {
+                    return new Reply(ENDED, new byte[0]);
+                }
+                synchronized(player) {
+                    if(player.game.processCommand(player.parser.parseCommand(line))) {
+                        hosted.remove(key);
+                        player.game.getSession().leave();
+                        Messages messages = player.parser.getMessages();
+                        messages.println(player.parser.getOutput(), Message.GOODBYE);
+                        player.parser.getOutput().flush();
+                        return new Reply(ENDED, player.take());
+                    }
+                    return settle(key, player);
+                }
+
+            case ARRIVE:
+                return settle(key, host(key, SessionHandoff.decode(world, session), true));
+
+            case LEAVE:
+                Hosted left = hosted.remove(key);
+                if(left != null) {
+                    left.game.getSession().leave();
+                }
+                return new Reply(ENDED, new byte[0]);
+
+            case STATS:
+                return new Reply(CARRY_ON, getStats().getBytes(StandardCharsets.UTF_8));
+
+            default:
+                throw new IOException("Unknown request " + request);
+        }
+    }
+
+    /**
+     * Start holding a session here, and greet the player: with the welcome
+     * if they are new, or by describing where they are if it has been
+     * handed over.
+     * @return The session as held.
+     */
+    private Hosted host(long key, Session session, boolean handedOver)
+    {
+        Hosted player = new Hosted(session);
+        synchronized(player) {
+            if(handedOver) {
+                player.game.processCommand(new Command(CommandWord.LOOK, null));
+            }
+            else {
+                player.game.printWelcome();
+                player.parser.getOutput().flush();
+            }
+        }
+        hosted.put(key, player);
+        return player;
+    }
+
+    /**
+     * After a request, hand the session off if the player has gone into
+     * a room another shard holds.
+     * @return The reply to the request.
+     */
+    private Reply settle(long key, Hosted player)
+    {
+        synchronized(player) {
+            byte[] text = player.take();
+            Room room = player.game.getCurrentRoom();
+            if(world.holds(room)) {
+                return new Reply(CARRY_ON, text);
+            }
+            hosted.remove(key);
+            Reply reply = new Reply(HANDED_OFF, text);
+            reply.nextShard = shards.shardOf(room.getId());
+            reply.session = SessionHandoff.encode(player.game.getSession());
+            player.game.getSession().leave();
+            return reply;
+        }
+    }
+
+    /**
+     * @return A line saying how many rooms and players this shard has,
+     * how many handoffs it has made as a front and how long they took,
+     * and how much heap it is using.
+     */
+    public String getStats()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        long heap = runtime.totalMemory() - runtime.freeMemory();
+        return String.format("shard %d: %d rooms, %d players here, %d sessions held, " +
+            "%d handoffs p50 %.1f us p99 %.1f us p99.9 %.1f us, heap %d MB",
+            shard, world.getGraph() == null ? world.getRoomCount()
+                                            : world.getGraph().getHeldRoomCount(),
+            activePlayers.get(), hosted.size(), handoffCount.get(),
+            handoffNanos.percentile(50) / 1e3, handoffNanos.percentile(99) / 1e3,
+            handoffNanos.percentile(99.9) / 1e3, heap >> 20);
+    }
+
+    /**
+     * Write a length, then that many bytes.
+     */
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException
+    {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @return The bytes written by writeBytes.
+     * @throws IOException If the length is negative or the bytes are cut
+     * short.
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException
+    {
+        int length = in.readInt();
+        if(length < 0) {
+            throw new IOException("A shard sent a length of " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Ask a shard how it is doing.
+     * @param peerAddress Where the shard listens for other shards.
+     * @return Its stats line.
+     * @throws IOException If the shard cannot be reached.
+     */
+    public static String requestStats(InetSocketAddress peerAddress) throws IOException
+    {
+        PeerLink link = new PeerLink(peerAddress);
+        try {
+            return new String(link.call(STATS, 0, null, null).text, StandardCharsets.UTF_8);
+        }
+        finally {
+            link.close();
+        }
+    }
+
+    /**
+     * The lines a player types, read with the same limit on their length
+     * as a Parser puts on them. A line may end with a line feed, a
+     * carriage return, or both.
+     */
+    private static class PlayerLines
+    {
+        private Reader in;
+        private StringBuilder line;
+        private boolean afterReturn;    // the last line ended with '\r'
+        private boolean tooLong;        // the last line was thrown away
+
+        PlayerLines(Reader in)
+        {
+            this.in = in;
+            line = new StringBuilder(80);
+        }
+
+        /**
+         * Read the next line. One longer than Parser.MAX_LINE_LENGTH is
+         * read to its end but not kept, and is returned empty.
+         * @return The line, without its line ending, or null if the
+         * player has hung up.
+         * @throws IOException If the connection fails.
+         */
+        String readLine() throws IOException
+        {
+            line.setLength(0);
+            tooLong = false;
+            int c = in.read();
+            if(afterReturn) {
+                afterReturn = false;
+                if(c == '\n') {
+                    c = in.read();      // the rest of a "\r\n"
+                }
+            }
+            if(c < 0) {
+                return null;
+            }
+            while(c >= 0 && c != '\n' && c != '\r') {
+                if(line.length() < Parser.MAX_LINE_LENGTH) {
+                    line.append((char) c);
+                }
+                else {
+                    tooLong = true;
+                }
+                c = in.read();
+            }
+            afterReturn = c == '\r';
+            return tooLong ? "" : line.toString();
+        }
+
+        /**
+         * @return true if the last line read was too long to keep.
+         */
+        boolean wasTooLong()
+        {
+            return tooLong;
+        }
+    }
+
+    /**
+     * A session held by this shard, with the game playing it.
+     */
+    private static class Hosted
+    {
+        private ByteArrayOutputStream text;     // the game's responses
+        private Parser parser;
+        private Game game;
+
+        Hosted(Session session)
+        {
+            text = new ByteArrayOutputStream(1024);
+            parser = new Parser(new StringReader(""), text);
+            game = new Game(parser, session);
+            // players here are remote, and a saved game could not say
+            // which shard to load it in
+            game.setSaveDirectory(null);
+        }
+
+        /**
+         * @return What the game has said since last asked.
+         */
+        byte[] take()
+        {
+            byte[] bytes = text.toByteArray();
+            text.reset();
+            return bytes;
+        }
+    }
+
+    /**
+     * The answer to a request: the text for the player, what has become
+     * of their session, and if it has been handed off, the handoff.
+     */
+    private static class Reply
+    {
+        private byte status;
+        private byte[] text;
+        private int nextShard;
+        private byte[] session;
+
+        Reply(byte status, byte[] text)
+        {
+            this.status = status;
+            this.text = text;
+        }
+
+        void write(DataOutputStream out) throws IOException
+        {
+            out.writeByte(status);
+            writeBytes(out, text);
+            if(status == HANDED_OFF) {
+                out.writeInt(nextShard);
+                writeBytes(out, session);
+            }
+        }
+
+        static Reply read(DataInputStream in) throws IOException
+        {
+            byte status = in.readByte();
+            Reply reply = new Reply(status, readBytes(in));
+            if(status == HANDED_OFF) {
+                reply.nextShard = in.readInt();
+                reply.session = readBytes(in);
+            }
+            return reply;
+        }
+    }
+
+    /**
+     * A connection to another shard, used for one request at a time.
+     */
+    private static class PeerLink
+    {
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+
+        PeerLink(InetSocketAddress address) throws IOException
+        {
+            socket = new Socket(address.getAddress(), address.getPort());
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        Reply call(byte request, long key, String line, byte[] session) throws IOException
+        {
+            out.writeByte(request);
+            out.writeLong(key);
+            if(request == COMMAND) {
+                writeBytes(out, line.getBytes(StandardCharsets.UTF_8));
+            }
+            else if(request == ARRIVE) {
+                writeBytes(out, session);
+            }
+            out.flush();
+            return Reply.read(in);
+        }
+
+        void close()
+        {
+            try {
+                socket.close();
+            }
+            catch(IOException e) {
+                // nothing more to do with it either way
+            }
+        }
+    }
+
+    /**
+     * @return The addresses shards listen on for each other when run on
+     * one machine: the ports after the players' ports, on loopback.
+     */
+    public static InetSocketAddress[] loopbackPeers(int shardCount, int basePort)
+    {
+        InetSocketAddress[] addresses = new InetSocketAddress[shardCount];
+        for(int i = 0; i < shardCount; i++) {
+            addresses[i] = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                                 basePort + shardCount + i);
+        }
+        return addresses;
+    }
+
+    /**
+     * Run one shard of a generated world until the process is stopped.
+     * Shard i takes players on port basePort + i and talks to other
+     * shards on port basePort + shards + i, on loopback. Start one process
+     * for each shard, with the same settings.
+     * Usage: java ShardServer shard shards [rooms] [seed] [basePort]
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 2) {
+            System.out.println("Usage: java ShardServer shard shards [rooms] [seed] [basePort]");
+            return;
+        }
+        int shard = Integer.parseInt(args[0]);
+        int shardCount = Integer.parseInt(args[1]);
+        int rooms = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+        int basePort = args.length > 4 ? Integer.parseInt(args[4]) : 4300;
+
+        ShardMap shards = new ShardMap(rooms, shardCount);
+        World world = new WorldGenerator(rooms, seed).generate(shards, shard);
+        ShardServer server = new ShardServer(world, shards, shard,
+                                             loopbackPeers(shardCount, basePort));
+        server.start(basePort + shard);
+        System.gc();
+        System.out.println("Shard " + shard + " of " + shardCount + " ready: " +
+                           server.getStats());
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A TextPool removes repeated text from a world as it is loaded. Every
+ * room description, exit direction, and item description and effect
+ * read from a world file goes through intern, which hands back the one
+ * copy of each text seen before, so that rooms sharing a description, or
+ * the thousands of exits that go "east", share one String.
+ *
+ * Descriptions that are not the same but begin the same way, like those
+ * of the three market rooms of the shipped map, can then share that
+ * beginning (see sharePrefixes). The descriptions are sorted, so those
+ * sharing a beginning end up next to each other, and each is cut after
+ * the last word it has in common with a neighbour. A room whose
+ * description is cut keeps the shared prefix and its own tail, and only
+ * joins them when asked for its description; its long description is
+ * kept whole once built, as before. A prefix is only shared when that
+ * saves more than the extra tail Strings cost.
+ *
+ * The pool counts how much heap the texts would have taken as separate
+ * Strings and how much they take pooled, using the sizes of a String and
+ * its array on a 64-bit JVM with compressed pointers. Once the world is
+ * loaded the pool is finished, which lets go of its table and keeps only
+ * the counts; the world keeps it for reporting (see World.getTextPool).
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class TextPool
+{
+    // the shortest prefix worth sharing, in chars
+    private static final int MIN_PREFIX = 8;
+
+    private HashMap<String, String> pool;   // null once finished
+    private int textCount;
+    private int pooledCount;
+    private int prefixCount;
+    private int splitCount;
+    private long bytesBefore;
+    private long bytesAfter;
+
+    /**
+     * Create an empty pool.
+     */
+    public TextPool()
+    {
+        pool = new HashMap<>();
+    }
+
+    /**
+     * Get the pooled copy of a text, adding it to the pool if it is new.
+     * @param text The text, or null.
+     * @return The pooled copy, or null if the text is null.
+     * @throws IllegalStateException If the pool has been finished.
+     */
+    public String intern(String text)
+    {
+        if(text == null) {
+            return null;
+        }
+        if(pool == null) {
+            throw new IllegalStateException("The text pool has been finished");
+        }
+        textCount++;
+        bytesBefore += size(text);
+        String pooled = pool.putIfAbsent(text, text);
+        if(pooled != null) {
+            return pooled;
+        }
+        pooledCount++;
+        bytesAfter += size(text);
+        return text;
+    }
+
+    /**
+     * Let the rooms of a world whose descriptions begin the same way
+     * share that beginning. Only worlds of Room objects are changed; the
+     * descriptions must already have gone through intern.
+     * @param world The world.
+     */
+    public void sharePrefixes(World world)
+    {
+        if(world.getGraph() != null || world.getRoomCache() != null) {
+            return;
+        }
+        // the distinct descriptions, and the rooms that have each
+        IdentityHashMap<String, List<Room>> rooms = new IdentityHashMap<>();
+        for(int id = 0; id < world.getRoomCount(); id++) {
+            Room room = world.getRoom(id);
+            rooms.computeIfAbsent(room.getShortDescription(), d -> new ArrayList<Room>()).add(room);
+        }
+        List<String> sorted = new ArrayList<>(rooms.keySet());
+        Collections.sort(sorted);
+
+        // each description's longest prefix shared with a neighbour, and
+        // for each prefix, how much cutting it off every description
+        // that has it would save
+        String[] prefixes = new String[sorted.size()];
+        HashMap<String, Long> savings = new HashMap<>();
+        for(int i = 0; i < sorted.size(); i++) {
+            String text = sorted.get(i);
+            int before = i > 0 ? sharedPrefix(sorted.get(i - 1), text) : 0;
+            int after = i + 1 < sorted.size() ? sharedPrefix(text, sorted.get(i + 1)) : 0;
+            int length = Math.max(before, after);
+            if(length >= MIN_PREFIX) {
+                prefixes[i] = text.substring(0, length);
+                savings.merge(prefixes[i], size(text) - size(text.substring(length)), Long::sum);
+            }
+        }
+
+        HashMap<String, String> shared = new HashMap<>();
+        for(int i = 0; i < sorted.size(); i++) {
+            String prefix = prefixes[i];
+            if(prefix == null || savings.get(prefix) <= size(prefix)) {
+                continue;
+            }
+            String pooledPrefix = shared.get(prefix);
+            if(pooledPrefix == null) {
+                pooledPrefix = prefix;
+                shared.put(prefix, prefix);
+                prefixCount++;
+                bytesAfter += size(prefix);
+            }
+            String text = sorted.get(i);
+            String tail = text.substring(prefix.length());
+            bytesAfter += size(tail) - size(text);
+            splitCount++;
+            for(Room room : rooms.get(text)) {
+                room.shareDescriptionPrefix(pooledPrefix, tail);
+            }
+        }
+    }
+
+    /**
+     * @return How many chars two texts have in common at the start, cut
+     * back to the end of the last whole word (after a space or line
+     * break) they have in common.
+     */
+    private static int sharedPrefix(String a, String b)
+    {
+        int limit = Math.min(a.length(), b.length());
+        int common = 0;
+        while(common < limit && a.charAt(common) == b.charAt(common)) {
+            common++;
+        }
+        if(common > 0 && (common == a.length() || common == b.length())) {
+            common--;       // one is all prefix; leave the other a tail
+        }
+        while(common > 0 && a.charAt(common - 1) != ' ' && a.charAt(common - 1) != '\n') {
+            common--;
+        }
+        return common;
+    }
+
+    /**
+     * Let go of the table of texts, keeping only the counts. Nothing can
+     * be added to the pool afterwards.
+     */
+    public void finish()
+    {
+        pool = null;
+    }
+
+    /**
+     * @return How many texts have gone through intern.
+     */
+    public int getTextCount()
+    {
+        return textCount;
+    }
+
+    /**
+     * @return How many of them were different.
+     */
+    public int getPooledCount()
+    {
+        return pooledCount;
+    }
+
+    /**
+     * @return How many prefixes are shared between descriptions.
+     */
+    public int getPrefixCount()
+    {
+        return prefixCount;
+    }
+
+    /**
+     * @return How many different descriptions were cut to share a prefix.
+     */
+    public int getSplitCount()
+    {
+        return splitCount;
+    }
+
+    /**
+     * @return Roughly how many bytes of heap the texts would take as
+     * separate Strings.
+     */
+    public long getBytesBefore()
+    {
+        return bytesBefore;
+    }
+
+    /**
+     * @return Roughly how many bytes of heap they take pooled.
+     */
+    public long getBytesAfter()
+    {
+        return bytesAfter;
+    }
+
+    /**
+     * @return Roughly how many bytes of heap pooling saved.
+     */
+    public long getBytesSaved()
+    {
+        return bytesBefore - bytesAfter;
+    }
+
+    /**
+     * Print how much the pool saved.
+     * @param out Where the report is printed.
+     */
+    public void printReport(PrintStream out)
+    {
+        out.printf("%d texts, %d different; %d descriptions share %d prefixes%n",
+            textCount, pooledCount, splitCount, prefixCount);
+        out.printf("%d bytes as separate Strings, %d pooled: %d saved (%.1f%%)%n",
+            bytesBefore, bytesAfter, getBytesSaved(),
+            bytesBefore == 0 ? 0.0 : 100.0 * getBytesSaved() / bytesBefore);
+    }
+
+    /**
+     * @return Roughly how many bytes of heap a String takes: the String
+     * itself, and its array of one byte per char (or two, if any char is
+     * not Latin-1), rounded up to 8 bytes.
+     */
+    static long size(String text)
+    {
+        int bytesPerChar = 1;
+        for(int i = 0; i < text.length() && bytesPerChar == 1; i++) {
+            if(text.charAt(i) > 0xFF) {
+                bytesPerChar = 2;
+            }
+        }
+        return 24 + ((16L + (long) bytesPerChar * text.length() + 7) & ~7L);
+    }
+
+    /**
+     * Load a world file and report how much pooling its text saved.
+     * Usage: java TextPool worldFile
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1) {
+            System.out.println("Usage: java TextPool worldFile");
+            return;
+        }
+        WorldFile.load(args[0]).getTextPool().printReport(System.out);
+    }
+}
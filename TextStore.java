@@ -0,0 +1,326 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A TextStore holds a world's text (room descriptions, and item
+ * descriptions and effects) in a read-only file mapped into memory,
+ * rather than as Strings on the heap. In a world with much to say, the
+ * text is most of what the world takes, and most of it is never read by
+ * any one player. Rooms and items whose text has been moved to a store
+ * keep only a number for each text (see moveText), and it is read from
+ * the mapping when needed: printed straight into a GameOutput, or made
+ * into a String for anything else.
+ *
+ * The file is laid out as:
+ *
+ *     header   magic, version, text count, and a hash of the texts
+ *     starts   where each text starts
+ *     lengths  how many bytes long each text is
+ *     texts    each text in UTF-8
+ *
+ * It is mapped in pieces of at most a gigabyte, and no text is split
+ * between two pieces.
+ *
+ * Because the file is only read, the operating system keeps one copy of
+ * it however many processes map it. moveText leaves a file alone if it
+ * already holds the same texts, so game processes started on the same
+ * world share it, and otherwise writes a new file and renames it into
+ * place, so processes that have the old one mapped are not disturbed.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class TextStore
+{
+    private static final int MAGIC = 0x57425458;    // "WBTX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int PIECE_SHIFT = 30;
+    private static final long PIECE_SIZE = 1L << PIECE_SHIFT;
+
+    private String fileName;
+    private int textCount;
+    private long hash;
+    private MappedByteBuffer[] pieces;
+
+    /**
+     * Map a text file.
+     * @param fileName The name of the file.
+     * @throws IOException If the file cannot be read, or is not a text file.
+     */
+    public TextStore(String fileName) throws IOException
+    {
+        this.fileName = fileName;
+        // the mapping stays valid once the channel is closed
+        try(FileChannel file = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long size = file.size();
+            pieces = new MappedByteBuffer[(int) ((size + PIECE_SIZE - 1) >>> PIECE_SHIFT)];
+            for(int i = 0; i < pieces.length; i++) {
+                long start = (long) i << PIECE_SHIFT;
+                pieces[i] = file.map(FileChannel.MapMode.READ_ONLY, start,
+                                     Math.min(PIECE_SIZE, size - start));
+            }
+        }
+        if(pieces.length == 0 || pieces[0].limit() < HEADER_SIZE ||
+           pieces[0].getInt(0) != MAGIC || pieces[0].getInt(4) != VERSION) {
+            throw new IOException(fileName + " is not a text file");
+        }
+        textCount = pieces[0].getInt(8);
+        hash = pieces[0].getLong(16);
+    }
+
+    /**
+     * @return The name of the file.
+     */
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+    /**
+     * @return How many texts the store holds.
+     */
+    public int getTextCount()
+    {
+        return textCount;
+    }
+
+    /**
+     * @param id The number of a text.
+     * @return The text.
+     */
+    public String get(int id)
+    {
+        long start = start(id);
+        return StandardCharsets.UTF_8.decode(piece(start).slice(offset(start), length(id)))
+            .toString();
+    }
+
+    /**
+     * Print a text, decoding it straight from the mapping into the
+     * output's buffer.
+     * @param id  The number of a text.
+     * @param out Where it is printed.
+     */
+    public void print(int id, GameOutput out)
+    {
+        long start = start(id);
+        out.print(piece(start), offset(start), length(id));
+    }
+
+    /**
+     * @return Where in the file a text starts.
+     */
+    private long start(int id)
+    {
+        if(id < 0 || id >= textCount) {
+            throw new IndexOutOfBoundsException("No text " + id);
+        }
+        return getLong(HEADER_SIZE + 8L * id);
+    }
+
+    /**
+     * @return How many bytes long a text is.
+     */
+    private int length(int id)
+    {
+        return getInt(HEADER_SIZE + 8L * textCount + 4L * id);
+    }
+
+    /**
+     * @return The piece of the mapping a position in the file is in.
+     */
+    private MappedByteBuffer piece(long position)
+    {
+        return pieces[(int) (position >>> PIECE_SHIFT)];
+    }
+
+    /**
+     * @return Where a position in the file is in its piece.
+     */
+    private static int offset(long position)
+    {
+        return (int) (position & (PIECE_SIZE - 1));
+    }
+
+    private long getLong(long position)
+    {
+        return piece(position).getLong(offset(position));
+    }
+
+    private int getInt(long position)
+    {
+        return piece(position).getInt(offset(position));
+    }
+
+    /**
+     * Write texts to a file and map it. If the file already holds the
+     * same texts it is mapped as it is.
+     * @param texts    The texts, numbered in the order given.
+     * @param fileName The name of the file.
+     * @return The store.
+     * @throws IOException If the file cannot be written.
+     */
+    public static TextStore write(List<String> texts, String fileName) throws IOException
+    {
+        List<byte[]> encoded = new ArrayList<>(texts.size());
+        long hash = 0xcbf29ce484222325L;    // 64-bit FNV-1a over the texts
+        for(String text : texts) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            if(bytes.length > PIECE_SIZE) {
+                throw new IllegalArgumentException("A text is longer than a gigabyte");
+            }
+            encoded.add(bytes);
+            for(byte b : bytes) {
+                hash = (hash ^ (b & 0xFF)) * 0x100000001b3L;
+            }
+            hash = (hash ^ 0xFFFF) * 0x100000001b3L;
+        }
+
+        if(new File(fileName).isFile()) {
+            try {
+                TextStore existing = new TextStore(fileName);
+                if(existing.textCount == texts.size() && existing.hash == hash) {
+                    return existing;
+                }
+            }
+            catch(IOException e) {
+                // not a text file, so it is replaced
+            }
+        }
+
+        Path target = Paths.get(fileName).toAbsolutePath();
+        Path temporary = Files.createTempFile(target.getParent(), "text", ".tmp");
+        try {
+            int count = encoded.size();
+            long position = HEADER_SIZE + 12L * count;
+            long[] starts = new long[count];
+            for(int i = 0; i < count; i++) {
+                long length = encoded.get(i).length;
+                long pieceEnd = (position | (PIECE_SIZE - 1)) + 1;
+                if(position + length > pieceEnd) {
+                    position = pieceEnd;    // it starts the next piece instead
+                }
+                starts[i] = position;
+                position += length;
+            }
+
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(temporary.toFile()), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                out.writeInt(0);
+                out.writeLong(hash);
+                for(long start : starts) {
+                    out.writeLong(start);
+                }
+                for(byte[] bytes : encoded) {
+                    out.writeInt(bytes.length);
+                }
+                long written = HEADER_SIZE + 12L * count;
+                for(int i = 0; i < count; i++) {
+                    for(; written < starts[i]; written++) {
+                        out.write(0);
+                    }
+                    out.write(encoded.get(i));
+                    written += encoded.get(i).length;
+                }
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+        return new TextStore(fileName);
+    }
+
+    /**
+     * Move a world's text into a text file: the descriptions of its rooms
+     * and the descriptions and effects of its items (including those
+     * triggers turn items into). Texts used more than once are stored
+     * once. The world's rooms and items keep only the numbers of their
+     * texts afterwards, so the Strings can be collected. Rooms read from
+     * a room file are already on disk and are left as they are.
+     *
+     * This should be done before anyone plays in the world.
+     * @param world    The world.
+     * @param fileName The name of the file.
+     * @return The store the text was moved to.
+     * @throws IOException If the file cannot be written.
+     */
+    public static TextStore moveText(World world, String fileName) throws IOException
+    {
+        List<String> texts = new ArrayList<>();
+        HashMap<String, Integer> ids = new HashMap<>();
+
+        RoomGraph graph = world.getGraph();
+        int firstRoom = 0;
+        int roomCount = 0;
+        if(graph != null) {
+            firstRoom = graph.getFirstRoom();
+            roomCount = graph.getHeldRoomCount();
+        }
+        else if(world.getRoomCache() == null) {
+            roomCount = world.getRoomCount();
+        }
+        int[] roomTexts = new int[roomCount];
+        for(int i = 0; i < roomCount; i++) {
+            roomTexts[i] = textId(world.getRoom(firstRoom + i).getShortDescription(), texts, ids);
+        }
+
+        List<GameItem> items = world.getAllItems();
+        int[] itemTexts = new int[2 * items.size()];
+        for(int i = 0; i < items.size(); i++) {
+            itemTexts[2 * i] = textId(items.get(i).getRawDescription(), texts, ids);
+            itemTexts[2 * i + 1] = textId(items.get(i).getEffect(), texts, ids);
+        }
+        ids = null;
+
+        TextStore store = write(texts, fileName);
+        if(graph != null) {
+            graph.storeDescriptions(store, roomTexts);
+        }
+        else {
+            for(int i = 0; i < roomCount; i++) {
+                world.getRoom(i).storeDescription(store, roomTexts[i]);
+            }
+        }
+        for(int i = 0; i < items.size(); i++) {
+            items.get(i).storeText(store, itemTexts[2 * i], itemTexts[2 * i + 1]);
+        }
+        return store;
+    }
+
+    /**
+     * @return The number of a text, adding it to the texts to be written
+     * if it has not been seen before.
+     */
+    private static int textId(String text, List<String> texts, HashMap<String, Integer> ids)
+    {
+        Integer id = ids.get(text);
+        if(id == null) {
+            id = texts.size();
+            texts.add(text);
+            ids.put(text, id);
+        }
+        return id;
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A Trigger is a rule saying what happens when a player uses an item in
+ * a room: a message is printed, and then its effects take place in
+ * order. An effect can unlock or lock an exit (for that player only),
+ * use the item up, turn it into another item, or end the game. A
+ * trigger can apply in one room or, with ANY_ROOM, wherever the item is
+ * used; a rule for the room itself comes first.
+ *
+ * Rooms are referred to by id and items by name, so that triggers can be
+ * read from a world file before its rooms are built. The world keeps its
+ * triggers in a table keyed by item and room, so finding the trigger for
+ * a use takes the same time however many triggers there are.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class Trigger
+{
+    /** The room id of a trigger that applies wherever the item is used. */
+    public static final int ANY_ROOM = -1;
+
+    /**
+     * The kinds of thing a trigger can do.
+     */
+    public enum Kind
+    {
+        UNLOCK, LOCK, CONSUME, TRANSFORM, END
+    }
+
+    private String itemName;
+    private int roomId;
+    private String message;
+    private ArrayList<Effect> effects;
+
+    /**
+     * Create a trigger with no effects yet.
+     * @param itemName The name of the item being used.
+     * @param roomId   The id of the room it is used in, or ANY_ROOM.
+     * @param message  What the player is told, after the item's own
+     *                 effect text. May be empty.
+     */
+    public Trigger(String itemName, int roomId, String message)
+    {
+        this.itemName = itemName;
+        this.roomId = roomId;
+        this.message = message;
+        effects = new ArrayList<Effect>(2);
+    }
+
+    /**
+     * Unlock an exit when this trigger fires.
+     * @param room      The id of the room the exit leaves.
+     * @param direction The direction of the exit.
+     */
+    public void unlock(int room, String direction)
+    {
+        effects.add(new Effect(Kind.UNLOCK, room, direction, null));
+    }
+
+    /**
+     * Lock an exit when this trigger fires.
+     * @param room      The id of the room the exit leaves.
+     * @param direction The direction of the exit.
+     */
+    public void lock(int room, String direction)
+    {
+        effects.add(new Effect(Kind.LOCK, room, direction, null));
+    }
+
+    /**
+     * Use the item up when this trigger fires.
+     */
+    public void consume()
+    {
+        effects.add(new Effect(Kind.CONSUME, ANY_ROOM, null, null));
+    }
+
+    /**
+     * Turn the item into another when this trigger fires.
+     * @param item The item it becomes. It must belong to the world.
+     */
+    public void transform(GameItem item)
+    {
+        effects.add(new Effect(Kind.TRANSFORM, ANY_ROOM, null, item));
+    }
+
+    /**
+     * End the game when this trigger fires.
+     */
+    public void endGame()
+    {
+        effects.add(new Effect(Kind.END, ANY_ROOM, null, null));
+    }
+
+    /**
+     * @return The name of the item this trigger is for.
+     */
+    public String getItemName()
+    {
+        return itemName;
+    }
+
+    /**
+     * @return The id of the room this trigger is for, or ANY_ROOM.
+     */
+    public int getRoomId()
+    {
+        return roomId;
+    }
+
+    /**
+     * @return What the player is told when this trigger fires.
+     */
+    public String getMessage()
+    {
+        return message;
+    }
+
+    /**
+     * @return The effects, in the order they take place.
+     */
+    public List<Effect> getEffects()
+    {
+        return Collections.unmodifiableList(effects);
+    }
+
+    /**
+     * One thing a trigger does.
+     */
+    public static class Effect
+    {
+        private Kind kind;
+        private int roomId;
+        private String direction;
+        private GameItem item;
+
+        private Effect(Kind kind, int roomId, String direction, GameItem item)
+        {
+            this.kind = kind;
+            this.roomId = roomId;
+            this.direction = direction;
+            this.item = item;
+        }
+
+        /**
+         * @return What the effect does.
+         */
+        public Kind getKind()
+        {
+            return kind;
+        }
+
+        /**
+         * @return For UNLOCK and LOCK, the id of the room the exit leaves.
+         */
+        public int getRoomId()
+        {
+            return roomId;
+        }
+
+        /**
+         * @return For UNLOCK and LOCK, the direction of the exit.
+         */
+        public String getDirection()
+        {
+            return direction;
+        }
+
+        /**
+         * @return For TRANSFORM, the item the used item becomes.
+         */
+        public GameItem getItem()
+        {
+            return item;
+        }
+    }
+}
@@ -0,0 +1,583 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A World holds everything about the game that is the same for every
+ * player: the rooms, their exits and keys, where each item starts out and
+ * the room players start in. Once built, a world is only read, so any
+ * number of players (each with their own Session) can share one. Using
+ * an item may lock or unlock exits, but only for the player using it
+ * (see Session.setLocked); the world's own locks change only with
+ * setLocked, which is for setting a world up, not for while it is played.
+ *
+ * Rooms are registered with a name, and are given a number (id) in the
+ * order they are added, so they can be looked up either way. Items are
+ * likewise numbered in the order they are placed. The ids let saved games
+ * refer to rooms and items compactly, and the world's fingerprint tells
+ * whether a save was made against the same rooms and items.
+ *
+ * What happens when an item is used is decided by the world's triggers
+ * (see Trigger), kept in a table keyed by item name and room, so the
+ * trigger for a use is found in constant time however many there are.
+ *
+ * Very large worlds can instead keep their rooms in a RoomGraph, which
+ * stores them in compact arrays. Rooms are then handed out as views of
+ * the graph, and no more rooms can be added. Worlds too large even for
+ * that can keep their rooms on disk, in a RoomFile, and only the rooms
+ * players are in or near in memory, in a RoomCache. Sessions tell the
+ * world which rooms they are in (enterRoom and leaveRoom) so those are
+ * kept in memory.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class World
+{
+    private static final String SHIPPED_MAP = "shipped.world";
+    private static World shipped;       // the shipped map, read when first needed
+
+    private ArrayList<Room> rooms;      // indexed by room id
+    private HashMap<String, Room> roomsByName;
+    private HashMap<String, Room> roomsByFoldedName;    // lower case, for names that are not
+    private LinkedHashMap<Room, ItemContainer> itemLocations;   // where items start out
+    private ArrayList<GameItem> items;  // indexed by item id
+    private ArrayList<Trigger> triggers;            // in the order added
+    private HashMap<String, Integer> triggerItems;  // item name -> number in the table
+    private HashMap<Long, Trigger> triggerTable;    // (item number, room id) -> trigger
+    private LinkedHashMap<Room, List<String>> oneWayExits;  // meant to have no way back
+    private Room startRoom;
+    private RoomGraph graph;            // holds the rooms instead, if not null
+    private RoomCache roomCache;        // or reads them from disk, if not null
+    private RouteFinder routeFinder;    // made when first needed
+    private long fingerprint;           // 0 until worked out
+    private TextPool textPool;          // what pooling its text saved, or null
+
+    private static final int LANDMARKS = 8;     // for the route finder
+
+    /**
+     * Create an empty world. Rooms and items are added to it with
+     * addRoom and placeItem.
+     */
+    public World()
+    {
+        rooms = new ArrayList<Room>();
+        roomsByName = new HashMap<String, Room>();
+        roomsByFoldedName = new HashMap<String, Room>();
+        itemLocations = new LinkedHashMap<Room, ItemContainer>();
+        items = new ArrayList<GameItem>();
+        triggers = new ArrayList<Trigger>();
+        triggerItems = new HashMap<String, Integer>();
+        triggerTable = new HashMap<Long, Trigger>();
+        oneWayExits = new LinkedHashMap<Room, List<String>>();
+    }
+
+    /**
+     * Create a world whose rooms are stored in a room graph. The world
+     * starts in the graph's first room unless told otherwise.
+     * @param graph The rooms, already built.
+     */
+    public World(RoomGraph graph)
+    {
+        this.graph = graph;
+        itemLocations = new LinkedHashMap<Room, ItemContainer>();
+        items = new ArrayList<GameItem>();
+        triggers = new ArrayList<Trigger>();
+        triggerItems = new HashMap<String, Integer>();
+        triggerTable = new HashMap<Long, Trigger>();
+        oneWayExits = new LinkedHashMap<Room, List<String>>();
+        if(graph.getRoomCount() > 0) {
+            startRoom = graph.room(0);
+        }
+    }
+
+    /**
+     * Create a world whose rooms are read from disk when needed. The
+     * world starts in the first room unless told otherwise.
+     * @param roomCache The cache the rooms are read through.
+     */
+    public World(RoomCache roomCache)
+    {
+        this.roomCache = roomCache;
+        itemLocations = new LinkedHashMap<Room, ItemContainer>();
+        items = new ArrayList<GameItem>();
+        triggers = new ArrayList<Trigger>();
+        triggerItems = new HashMap<String, Integer>();
+        triggerTable = new HashMap<Long, Trigger>();
+        oneWayExits = new LinkedHashMap<Room, List<String>>();
+        if(roomCache.getRoomCount() > 0) {
+            startRoom = roomCache.room(0);
+        }
+    }
+
+    /**
+     * @return The room cache this world's rooms are read through, or null
+     * if they are all in memory.
+     */
+    public RoomCache getRoomCache()
+    {
+        return roomCache;
+    }
+
+    /**
+     * Say that a player has come into a room, so that it is kept in
+     * memory while they are there. Does nothing unless the rooms are
+     * read from disk.
+     * @param room The room.
+     */
+    public void enterRoom(Room room)
+    {
+        if(roomCache != null) {
+            roomCache.pin(room.getId());
+        }
+    }
+
+    /**
+     * Say that a player has left a room they entered with enterRoom.
+     * @param room The room.
+     */
+    public void leaveRoom(Room room)
+    {
+        if(roomCache != null) {
+            roomCache.unpin(room.getId());
+        }
+    }
+
+    /**
+     * @return The pool this world's text was deduplicated with when it
+     * was loaded, which says how much that saved, or null if it was not.
+     */
+    public TextPool getTextPool()
+    {
+        return textPool;
+    }
+
+    /**
+     * @param textPool The pool this world's text was deduplicated with.
+     */
+    void setTextPool(TextPool textPool)
+    {
+        this.textPool = textPool;
+    }
+
+    /**
+     * @return The room graph holding this world's rooms, or null if the
+     * rooms are ordinary Room objects.
+     */
+    public RoomGraph getGraph()
+    {
+        return graph;
+    }
+
+    /**
+     * Return the shipped map, read from shipped.world on the class path
+     * the first time it is asked for. Every caller gets the same world.
+     * @return The shipped world.
+     * @throws UncheckedIOException If the map cannot be read.
+     */
+    public static synchronized World getShipped()
+    {
+        if(shipped == null) {
+            try(InputStream in = World.class.getResourceAsStream("/" + SHIPPED_MAP)) {
+                if(in == null) {
+                    throw new FileNotFoundException(SHIPPED_MAP + " is not on the class path");
+                }
+                shipped = WorldFile.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+            }
+            catch(IOException e) {
+                throw new UncheckedIOException("Could not read " + SHIPPED_MAP, e);
+            }
+        }
+        return shipped;
+    }
+
+    /**
+     * Add a room to the world. The room is given the next free id.
+     * @param name The name the room can be looked up by.
+     * @param room The room to add.
+     * @return The room that was added.
+     */
+    public Room addRoom(String name, Room room)
+    {
+        if(graph != null || roomCache != null) {
+            throw new UnsupportedOperationException(
+                "Rooms cannot be added to a world stored in a room graph or file");
+        }
+        if(roomsByName.containsKey(name)) {
+            throw new IllegalArgumentException("There is already a room called "
+                                               + name);
+        }
+        room.setIdentity(name, rooms.size());
+        rooms.add(room);
+        roomsByName.put(name, room);
+        String folded = name.toLowerCase(Locale.ROOT);
+        if(!folded.equals(name)) {
+            roomsByFoldedName.putIfAbsent(folded, room);
+        }
+        fingerprint = 0;
+        return room;
+    }
+
+    /**
+     * @param name The name of a room.
+     * @return The room with that name, or null if there is none.
+     */
+    public Room getRoom(String name)
+    {
+        if(graph != null) {
+            int id = graph.findRoom(name);
+            return id < 0 ? null : graph.room(id);
+        }
+        if(roomCache != null) {
+            int id = roomCache.findRoom(name, false);
+            return id < 0 ? null : roomCache.room(id);
+        }
+        return roomsByName.get(name);
+    }
+
+    /**
+     * @param id The id of a room.
+     * @return The room with that id.
+     */
+    public Room getRoom(int id)
+    {
+        if(graph != null) {
+            return graph.room(id);
+        }
+        if(roomCache != null) {
+            return roomCache.room(id);
+        }
+        return rooms.get(id);
+    }
+
+    /**
+     * @param room A room of this world.
+     * @return Whether this world holds the room, rather than another
+     * shard of the world (see RoomGraph and ShardMap).
+     */
+    public boolean holds(Room room)
+    {
+        return graph == null || graph.holds(room.getId());
+    }
+
+    /**
+     * @return The number of rooms in the world.
+     */
+    public int getRoomCount()
+    {
+        if(graph != null) {
+            return graph.getRoomCount();
+        }
+        if(roomCache != null) {
+            return roomCache.getRoomCount();
+        }
+        return rooms.size();
+    }
+
+    /**
+     * Put an item in a room at the start of the game. A room can hold
+     * any number of items. The item is given the next free id.
+     * @param room The room the item starts in.
+     * @param item The item.
+     */
+    public void placeItem(Room room, GameItem item)
+    {
+        item.setId(items.size());
+        items.add(item);
+        itemLocations.computeIfAbsent(room, r -> new ItemContainer()).add(item);
+        fingerprint = 0;
+    }
+
+    /**
+     * Give an item an id in this world without putting it in a room, for
+     * items that only come into being through a trigger.
+     * @param item The item.
+     */
+    public void addItem(GameItem item)
+    {
+        item.setId(items.size());
+        items.add(item);
+        fingerprint = 0;
+    }
+
+    /**
+     * Add a trigger to the world.
+     * @param trigger The trigger.
+     * @throws IllegalArgumentException If there is already a trigger for
+     * the same item in the same room.
+     */
+    public void addTrigger(Trigger trigger)
+    {
+        String name = ItemContainer.normalize(trigger.getItemName());
+        Integer item = triggerItems.get(name);
+        if(item == null) {
+            item = triggerItems.size();
+            triggerItems.put(name, item);
+        }
+        long key = triggerKey(item, trigger.getRoomId());
+        if(triggerTable.putIfAbsent(key, trigger) != null) {
+            throw new IllegalArgumentException("there is already a trigger for " +
+                trigger.getItemName() + (trigger.getRoomId() == Trigger.ANY_ROOM ?
+                " anywhere" : " in room " + getRoom(trigger.getRoomId()).getName()));
+        }
+        triggers.add(trigger);
+    }
+
+    /**
+     * Find what happens when an item is used in a room.
+     * @param itemName The name of the item.
+     * @param room     The room it is used in.
+     * @return The trigger for that item in that room, or else the one for
+     * that item anywhere, or null if there is neither.
+     */
+    public Trigger findTrigger(String itemName, Room room)
+    {
+        Integer item = triggerItems.get(ItemContainer.normalize(itemName));
+        if(item == null) {
+            return null;
+        }
+        Trigger trigger = triggerTable.get(triggerKey(item, room.getId()));
+        if(trigger == null) {
+            trigger = triggerTable.get(triggerKey(item, Trigger.ANY_ROOM));
+        }
+        return trigger;
+    }
+
+    /**
+     * @return The key of an item and room in the trigger table.
+     */
+    private static long triggerKey(int item, int roomId)
+    {
+        return ((long) item << 32) | (roomId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return Every trigger, in the order they were added. The list must
+     * not be changed.
+     */
+    public List<Trigger> getTriggers()
+    {
+        return Collections.unmodifiableList(triggers);
+    }
+
+    /**
+     * @param id The id of an item.
+     * @return The item with that id.
+     */
+    public GameItem getItem(int id)
+    {
+        return items.get(id);
+    }
+
+    /**
+     * @return The number of items in the world.
+     */
+    public int getItemCount()
+    {
+        return items.size();
+    }
+
+    /**
+     * @return Every item in the world, in id order. The list must not be
+     * changed.
+     */
+    public List<GameItem> getAllItems()
+    {
+        return Collections.unmodifiableList(items);
+    }
+
+    /**
+     * Return a number that identifies this world's rooms and items: two
+     * worlds with the same room names and item names, in the same order,
+     * have the same fingerprint, so ids mean the same thing in both. It
+     * is worked out the first time it is asked for.
+     * @return The fingerprint (never 0).
+     */
+    public synchronized long getFingerprint()
+    {
+        if(fingerprint == 0) {
+            // a room file keeps its rooms' part, so they need not all be read
+            long hash = roomCache != null ? roomCache.getRoomHash() : fingerprintRooms();
+            hash = (hash ^ 0xFFFF) * 0x100000001b3L;
+            for(GameItem item : items) {
+                hash = fingerprint(hash, item.getName());
+            }
+            fingerprint = hash == 0 ? 1 : hash;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @return The rooms' part of the fingerprint: a 64-bit FNV-1a hash of
+     * the room names, each followed by a separator.
+     */
+    long fingerprintRooms()
+    {
+        long hash = 0xcbf29ce484222325L;
+        int roomCount = getRoomCount();
+        for(int id = 0; id < roomCount; id++) {
+            hash = fingerprint(hash, getRoom(id).getName());
+        }
+        return hash;
+    }
+
+    /**
+     * Add one name to a fingerprint being worked out.
+     */
+    private static long fingerprint(long hash, String name)
+    {
+        for(int i = 0; i < name.length(); i++) {
+            hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+        }
+        return (hash ^ 0xFFFE) * 0x100000001b3L;
+    }
+
+    /**
+     * Say that an exit is meant to have no matching way back: it is one
+     * way, or locked for good while the way back is open, or the other
+     * way round. WorldValidator does not report it, or the exits that
+     * lead back through it, as mistakes.
+     * @param room      The room the exit leaves.
+     * @param direction The direction of the exit.
+     * @throws IllegalArgumentException If there is no such exit.
+     */
+    public void expectOneWay(Room room, String direction)
+    {
+        if(room.getExit(direction) == null) {
+            throw new IllegalArgumentException("There is no exit " + direction +
+                                               " from " + room.getName());
+        }
+        oneWayExits.computeIfAbsent(room, r -> new ArrayList<String>()).add(direction);
+    }
+
+    /**
+     * @return The exits meant to have no matching way back, as the
+     * directions leaving each room. The map cannot be changed.
+     */
+    public Map<Room, List<String>> getExpectedOneWays()
+    {
+        return Collections.unmodifiableMap(oneWayExits);
+    }
+
+    /**
+     * @param room A room.
+     * @return The items in that room at the start of the game, or null
+     * if there are none. The container must not be changed.
+     */
+    public ItemContainer getItems(Room room)
+    {
+        return itemLocations.get(room);
+    }
+
+    /**
+     * @return The rooms that have an item in them at the start of the game.
+     */
+    public Set<Room> getRoomsWithItems()
+    {
+        return Collections.unmodifiableSet(itemLocations.keySet());
+    }
+
+    /**
+     * Lock or unlock an exit for everyone, and tell the route finder (if
+     * there is one) so that its routes stay right. Nothing guards the
+     * world's locks against players reading them at the same time, so
+     * this must not be called while the world is being played.
+     * @param room      The room the exit leaves.
+     * @param direction The direction of the exit.
+     * @param locked    true to lock it, false to unlock it.
+     */
+    public void setLocked(Room room, String direction, boolean locked)
+    {
+        if(locked) {
+            room.setKey(direction);
+        }
+        else {
+            room.removeKey(direction);
+        }
+        RouteFinder finder;
+        synchronized(this) {
+            finder = routeFinder;
+        }
+        if(finder != null) {
+            finder.lockChanged(room, direction, locked);
+        }
+    }
+
+    /**
+     * Return the route finder for this world. It is made the first time
+     * it is asked for, which takes a moment for very large worlds.
+     * Worlds whose rooms are read from disk have none, since it would
+     * read them all and keep arrays as large as the world. Nor does one
+     * shard of a larger world, since most routes leave the shard.
+     * @return The world's route finder, or null if it has none.
+     */
+    public synchronized RouteFinder getRouteFinder()
+    {
+        if(roomCache != null ||
+           (graph != null && graph.getHeldRoomCount() != graph.getRoomCount())) {
+            return null;
+        }
+        if(routeFinder == null) {
+            routeFinder = new RouteFinder(this, LANDMARKS);
+        }
+        return routeFinder;
+    }
+
+    /**
+     * Find a room by the name a player typed, which may not match the
+     * case of its real name (players' commands are read in lower case).
+     * Every kind of world indexes the names by their lower case as it is
+     * loaded, so this is a lookup or two, not a search.
+     * @param name The name as typed.
+     * @return The room, or null if there is none.
+     */
+    public Room findRoom(String name)
+    {
+        if(graph != null) {
+            int id = graph.findRoom(name, true);
+            return id < 0 ? null : graph.room(id);
+        }
+        if(roomCache != null) {
+            int id = roomCache.findRoom(name, true);
+            return id < 0 ? null : roomCache.room(id);
+        }
+        Room room = roomsByName.get(name);
+        if(room == null) {
+            String folded = name.toLowerCase(Locale.ROOT);
+            room = roomsByName.get(folded);
+            if(room == null) {
+                room = roomsByFoldedName.get(folded);
+            }
+        }
+        return room;
+    }
+
+    /**
+     * @param room The room players start the game in.
+     */
+    public void setStartRoom(Room room)
+    {
+        startRoom = room;
+    }
+
+    /**
+     * @return The room players start the game in.
+     */
+    public Room getStartRoom()
+    {
+        return startRoom;
+    }
+}
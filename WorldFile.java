@@ -0,0 +1,594 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * WorldFile reads and writes worlds in a plain text format, so that new
+ * content does not need a recompile. Each line is one instruction, with
+ * its fields separated by tabs:
+ *
+ *     room   name  description  [final]
+ *     exit   from  direction  to
+ *     lock   room  direction
+ *     oneway   room  direction
+ *     item     room  name  light|heavy  description  effect
+ *     start    room
+ *     trigger  item  room|*  message
+ *     effect   unlock|lock  room  direction
+ *     effect   consume|end
+ *     effect   transform  name  light|heavy  description  effect
+ *
+ * World files are read and written as UTF-8. Blank lines and lines
+ * starting with # are ignored. In descriptions, effects and messages, \n
+ * stands for a line break, \t for a tab and \\ for a backslash. A room
+ * must be defined before any line that refers to it, and may have any
+ * number of items.
+ *
+ * A oneway line marks an exit that is meant to have no matching way back
+ * (see WorldValidator); it must come after the exit.
+ *
+ * A trigger line says what happens when an item is used in a room (or,
+ * with *, anywhere), and the effect lines after it say what it does, in
+ * order: unlock or lock an exit, use the item up, turn it into a new
+ * item, or end the game. See Trigger.
+ *
+ * The file is read in a single pass, one line at a time, with nothing
+ * kept from a line once it has been added to the world, so only the
+ * world itself grows with the size of the file.
+ *
+ * Very large worlds can be loaded into a compact RoomGraph instead of
+ * ordinary rooms with loadCompact.
+ *
+ * Descriptions, directions and item texts are pooled as they are read
+ * (see TextPool), so repeated text is only kept once. The world keeps
+ * the pool's report of what that saved.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class WorldFile
+{
+    private static final int MAX_FIELDS = 6;
+
+    /**
+     * Load a world from a file.
+     * @param fileName The name of the file.
+     * @return The world described by the file.
+     * @throws IOException If the file cannot be read or is not a valid world.
+     */
+    public static World load(String fileName) throws IOException
+    {
+        try(Reader reader = Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * Load a world from a source of world text.
+     * @param source The text to read.
+     * @return The world described by the text.
+     * @throws IOException If the text cannot be read or is not a valid world.
+     */
+    public static World load(Reader source) throws IOException
+    {
+        World world = new World();
+        TextPool pool = new TextPool();
+        loadInto(world, source, pool);
+        if(world.getStartRoom() == null && world.getRoomCount() > 0) {
+            world.setStartRoom(world.getRoom(0));
+        }
+        pool.sharePrefixes(world);
+        pool.finish();
+        world.setTextPool(pool);
+        return world;
+    }
+
+    /**
+     * Add what a source of world text describes to a world.
+     * @param world  The world.
+     * @param source The text to read.
+     * @param pool   The pool descriptions, directions and effects read
+     *               are interned in.
+     * @throws IOException If the text cannot be read or is not valid.
+     */
+    static void loadInto(World world, Reader source, TextPool pool) throws IOException
+    {
+        BufferedReader lines = new BufferedReader(source, 1 << 16);
+        String[] fields = new String[MAX_FIELDS];
+        Trigger trigger = null;     // the trigger effect lines add to
+        int lineNumber = 0;
+        String line;
+        while((line = lines.readLine()) != null) {
+            lineNumber++;
+            if(line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            int fieldCount = split(line, fields);
+            try {
+                trigger = addLine(world, fields, fieldCount, trigger, pool);
+            }
+            catch(IllegalArgumentException e) {
+                throw new IOException("line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Load a world from a file into a compact room graph.
+     * @param fileName The name of the file.
+     * @return The world described by the file, stored in a RoomGraph.
+     * @throws IOException If the file cannot be read or is not a valid world.
+     */
+    public static World loadCompact(String fileName) throws IOException
+    {
+        try(Reader reader = Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            return loadCompact(reader, 1024);
+        }
+    }
+
+    /**
+     * Load a world from a source of world text into a compact room graph.
+     * Items and the start room are held back until the graph is built,
+     * by room id, since rooms cannot be handed out before then.
+     * @param source        The text to read.
+     * @param expectedRooms Roughly how many rooms the world has.
+     * @return The world described by the text, stored in a RoomGraph.
+     * @throws IOException If the text cannot be read or is not a valid world.
+     */
+    public static World loadCompact(Reader source, int expectedRooms) throws IOException
+    {
+        RoomGraph graph = new RoomGraph(expectedRooms);
+        TextPool pool = new TextPool();     // the graph pools directions itself
+        ArrayList<Integer> itemRooms = new ArrayList<>();
+        ArrayList<GameItem> items = new ArrayList<>();
+        ArrayList<Trigger> triggers = new ArrayList<>();
+        ArrayList<GameItem> madeItems = new ArrayList<>();     // by transform effects
+        ArrayList<Integer> oneWayRooms = new ArrayList<>();
+        ArrayList<String> oneWayDirections = new ArrayList<>();
+        ToIntFunction<String> roomIds = name -> roomId(graph, name);
+        Trigger trigger = null;
+        int startRoom = 0;
+
+        BufferedReader lines = new BufferedReader(source, 1 << 16);
+        String[] fields = new String[MAX_FIELDS];
+        int lineNumber = 0;
+        String line;
+        while((line = lines.readLine()) != null) {
+            lineNumber++;
+            if(line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            int fieldCount = split(line, fields);
+            try {
+                switch(fields[0]) {
+                    case "room":
+                        expect(fieldCount, 3, fields);
+                        graph.addRoom(fields[1], pool.intern(unescape(fields[2])),
+                                      fieldCount > 3 && fields[3].equals("final"));
+                        break;
+
+                    case "exit":
+                        expect(fieldCount, 4, fields);
+                        graph.addExit(roomId(graph, fields[1]), fields[2],
+                                      roomId(graph, fields[3]));
+                        break;
+
+                    case "lock":
+                        expect(fieldCount, 3, fields);
+                        graph.lock(roomId(graph, fields[1]), fields[2]);
+                        break;
+
+                    case "oneway":
+                        expect(fieldCount, 3, fields);
+                        oneWayRooms.add(roomId(graph, fields[1]));
+                        oneWayDirections.add(fields[2]);
+                        break;
+
+                    case "item":
+                        expect(fieldCount, 6, fields);
+                        itemRooms.add(roomId(graph, fields[1]));
+                        items.add(new GameItem(fields[2], pool.intern(unescape(fields[4])),
+                            pool.intern(unescape(fields[5])), fields[3].equals("heavy")));
+                        break;
+
+                    case "start":
+                        expect(fieldCount, 2, fields);
+                        startRoom = roomId(graph, fields[1]);
+                        break;
+
+                    case "trigger":
+                        trigger = readTrigger(fields, fieldCount, roomIds);
+                        triggers.add(trigger);
+                        break;
+
+                    case "effect":
+                        GameItem made = readEffect(trigger, fields, fieldCount, roomIds);
+                        if(made != null) {
+                            madeItems.add(made);
+                        }
+                        break;
+
+                    default:
+                        throw new IllegalArgumentException("unknown instruction " +
+                                                           fields[0]);
+                }
+            }
+            catch(IllegalArgumentException e) {
+                throw new IOException("line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+
+        graph.build();
+        World world = new World(graph);
+        for(int i = 0; i < items.size(); i++) {
+            world.placeItem(graph.room(itemRooms.get(i)), items.get(i));
+        }
+        for(GameItem item : madeItems) {
+            world.addItem(item);
+        }
+        try {
+            for(Trigger each : triggers) {
+                world.addTrigger(each);
+            }
+            for(int i = 0; i < oneWayRooms.size(); i++) {
+                world.expectOneWay(graph.room(oneWayRooms.get(i)), oneWayDirections.get(i));
+            }
+        }
+        catch(IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        if(graph.getRoomCount() > 0) {
+            world.setStartRoom(graph.room(startRoom));
+        }
+        pool.finish();
+        world.setTextPool(pool);
+        return world;
+    }
+
+    /**
+     * @return The id of the room in a graph being built with the given name.
+     * @throws IllegalArgumentException If there is no such room yet.
+     */
+    private static int roomId(RoomGraph graph, String name)
+    {
+        int id = graph.findRoom(name);
+        if(id < 0) {
+            throw new IllegalArgumentException("no room called " + name +
+                                               " has been defined");
+        }
+        return id;
+    }
+
+    /**
+     * Add whatever one line of the file describes to the world.
+     * @param world      The world being loaded.
+     * @param fields     The line's fields.
+     * @param fieldCount How many fields the line has.
+     * @param trigger    The trigger effect lines add to, or null.
+     * @param pool       The pool text is interned in.
+     * @return The trigger effect lines add to from now on.
+     */
+    private static Trigger addLine(World world, String[] fields, int fieldCount,
+                                   Trigger trigger, TextPool pool)
+    {
+        ToIntFunction<String> roomIds = name -> room(world, name).getId();
+        switch(fields[0]) {
+            case "room":
+                expect(fieldCount, 3, fields);
+                boolean isFinal = fieldCount > 3 && fields[3].equals("final");
+                world.addRoom(fields[1], new Room(pool.intern(unescape(fields[2])), isFinal));
+                break;
+
+            case "exit":
+                expect(fieldCount, 4, fields);
+                room(world, fields[1]).setExit(pool.intern(fields[2]), room(world, fields[3]));
+                break;
+
+            case "lock":
+                expect(fieldCount, 3, fields);
+                room(world, fields[1]).setKey(pool.intern(fields[2]));
+                break;
+
+            case "oneway":
+                expect(fieldCount, 3, fields);
+                world.expectOneWay(room(world, fields[1]), pool.intern(fields[2]));
+                break;
+
+            case "item":
+                expect(fieldCount, 6, fields);
+                GameItem item = new GameItem(fields[2], pool.intern(unescape(fields[4])),
+                    pool.intern(unescape(fields[5])), fields[3].equals("heavy"));
+                world.placeItem(room(world, fields[1]), item);
+                break;
+
+            case "start":
+                expect(fieldCount, 2, fields);
+                world.setStartRoom(room(world, fields[1]));
+                break;
+
+            case "trigger":
+                trigger = readTrigger(fields, fieldCount, roomIds);
+                world.addTrigger(trigger);
+                break;
+
+            case "effect":
+                GameItem made = readEffect(trigger, fields, fieldCount, roomIds);
+                if(made != null) {
+                    world.addItem(made);
+                }
+                break;
+
+            default:
+                throw new IllegalArgumentException("unknown instruction " + fields[0]);
+        }
+        return trigger;
+    }
+
+    /**
+     * Read a trigger line.
+     * @param roomIds Gives the id of a room from its name.
+     * @return The trigger, with no effects yet.
+     */
+    private static Trigger readTrigger(String[] fields, int fieldCount,
+                                       ToIntFunction<String> roomIds)
+    {
+        expect(fieldCount, 3, fields);
+        int room = fields[2].equals("*") ? Trigger.ANY_ROOM
+                                         : roomIds.applyAsInt(fields[2]);
+        return new Trigger(fields[1], room, fieldCount > 3 ? unescape(fields[3]) : "");
+    }
+
+    /**
+     * Read an effect line, adding the effect to a trigger.
+     * @param trigger The trigger.
+     * @param roomIds Gives the id of a room from its name.
+     * @return The item the effect turns the used item into, which still
+     * has to be added to the world, or null.
+     */
+    private static GameItem readEffect(Trigger trigger, String[] fields, int fieldCount,
+                                       ToIntFunction<String> roomIds)
+    {
+        if(trigger == null) {
+            throw new IllegalArgumentException("effect comes before any trigger");
+        }
+        expect(fieldCount, 2, fields);
+        switch(fields[1]) {
+            case "unlock":
+                expect(fieldCount, 4, fields);
+                trigger.unlock(roomIds.applyAsInt(fields[2]), fields[3]);
+                return null;
+
+            case "lock":
+                expect(fieldCount, 4, fields);
+                trigger.lock(roomIds.applyAsInt(fields[2]), fields[3]);
+                return null;
+
+            case "consume":
+                trigger.consume();
+                return null;
+
+            case "end":
+                trigger.endGame();
+                return null;
+
+            case "transform":
+                expect(fieldCount, 6, fields);
+                GameItem item = new GameItem(fields[2], unescape(fields[4]),
+                    unescape(fields[5]), fields[3].equals("heavy"));
+                trigger.transform(item);
+                return item;
+
+            default:
+                throw new IllegalArgumentException("unknown effect " + fields[1]);
+        }
+    }
+
+    /**
+     * Check a line has enough fields for its instruction.
+     */
+    private static void expect(int fieldCount, int wanted, String[] fields)
+    {
+        if(fieldCount < wanted) {
+            throw new IllegalArgumentException(fields[0] + " needs " + (wanted - 1) +
+                                               " fields");
+        }
+    }
+
+    /**
+     * @return The room with the given name.
+     * @throws IllegalArgumentException If there is no such room yet.
+     */
+    private static Room room(World world, String name)
+    {
+        Room room = world.getRoom(name);
+        if(room == null) {
+            throw new IllegalArgumentException("no room called " + name +
+                                               " has been defined");
+        }
+        return room;
+    }
+
+    /**
+     * Split a line at its tabs.
+     * @param line   The line.
+     * @param fields Where the fields are put.
+     * @return The number of fields found (at most fields.length; anything
+     * after that is left in the last field).
+     */
+    private static int split(String line, String[] fields)
+    {
+        int count = 0;
+        int start = 0;
+        while(count < fields.length - 1) {
+            int tab = line.indexOf('\t', start);
+            if(tab < 0) {
+                break;
+            }
+            fields[count++] = line.substring(start, tab);
+            start = tab + 1;
+        }
+        fields[count++] = line.substring(start);
+        return count;
+    }
+
+    /**
+     * Turn the escapes in a field back into the characters they stand for.
+     */
+    private static String unescape(String field)
+    {
+        if(field.indexOf('\\') < 0) {
+            return field;
+        }
+        StringBuilder text = new StringBuilder(field.length());
+        for(int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if(c == '\\' && i + 1 < field.length()) {
+                char next = field.charAt(++i);
+                switch(next) {
+                    case 'n': text.append('\n'); break;
+                    case 't': text.append('\t'); break;
+                    default:  text.append(next); break;
+                }
+            }
+            else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Replace the characters that cannot appear in a field with escapes.
+     */
+    private static String escape(String text)
+    {
+        return text.replace("\\", "\\\\").replace("\n", "\\n").replace("\t", "\\t");
+    }
+
+    /**
+     * Save a world to a file.
+     * @param world    The world.
+     * @param fileName The name of the file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void save(World world, String fileName) throws IOException
+    {
+        try(Writer writer = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            save(world, writer);
+        }
+    }
+
+    /**
+     * Write a world out in the world file format.
+     * @param world The world.
+     * @param out   Where the text is written.
+     * @throws IOException If the text cannot be written.
+     */
+    public static void save(World world, Writer out) throws IOException
+    {
+        int roomCount = world.getRoomCount();
+        for(int id = 0; id < roomCount; id++) {
+            Room room = world.getRoom(id);
+            out.write("room\t" + room.getName() + "\t" +
+                      escape(room.getShortDescription()));
+            out.write(room.isFinalRoom() ? "\tfinal\n" : "\n");
+        }
+        for(int id = 0; id < roomCount; id++) {
+            Room room = world.getRoom(id);
+            for(String direction : room.getExitDirections()) {
+                out.write("exit\t" + room.getName() + "\t" + direction + "\t" +
+                          room.getExit(direction).getName() + "\n");
+                if(room.isLocked(direction)) {
+                    out.write("lock\t" + room.getName() + "\t" + direction + "\n");
+                }
+            }
+        }
+        saveContents(world, out);
+    }
+
+    /**
+     * Write out everything about a world but its rooms, exits and locks:
+     * the one-way exits, the items, the start room and the triggers.
+     * @param world The world.
+     * @param out   Where the text is written.
+     * @throws IOException If the text cannot be written.
+     */
+    static void saveContents(World world, Writer out) throws IOException
+    {
+        for(Map.Entry<Room, List<String>> entry : world.getExpectedOneWays().entrySet()) {
+            for(String direction : entry.getValue()) {
+                out.write("oneway\t" + entry.getKey().getName() + "\t" + direction + "\n");
+            }
+        }
+        for(Room room : world.getRoomsWithItems()) {
+            for(GameItem item : world.getItems(room).getItems()) {
+                out.write("item\t" + room.getName() + "\t" + item.getName() + "\t" +
+                          (item.isHeavy() ? "heavy" : "light") + "\t" +
+                          escape(item.getRawDescription()) + "\t" +
+                          escape(item.getEffect()) + "\n");
+            }
+        }
+        if(world.getStartRoom() != null) {
+            out.write("start\t" + world.getStartRoom().getName() + "\n");
+        }
+        for(Trigger trigger : world.getTriggers()) {
+            String room = trigger.getRoomId() == Trigger.ANY_ROOM ? "*" :
+                world.getRoom(trigger.getRoomId()).getName();
+            out.write("trigger\t" + trigger.getItemName() + "\t" + room + "\t" +
+                      escape(trigger.getMessage()) + "\n");
+            for(Trigger.Effect effect : trigger.getEffects()) {
+                out.write(effectLine(world, effect));
+            }
+        }
+    }
+
+    /**
+     * @return The line of the world file that describes an effect.
+     */
+    private static String effectLine(World world, Trigger.Effect effect)
+    {
+        switch(effect.getKind()) {
+            case UNLOCK:
+            case LOCK:
+                return "effect\t" + (effect.getKind() == Trigger.Kind.UNLOCK ? "unlock" : "lock") +
+                    "\t" + world.getRoom(effect.getRoomId()).getName() + "\t" +
+                    effect.getDirection() + "\n";
+
+            case TRANSFORM:
+                GameItem item = effect.getItem();
+                return "effect\ttransform\t" + item.getName() + "\t" +
+                    (item.isHeavy() ? "heavy" : "light") + "\t" +
+                    escape(item.getRawDescription()) + "\t" + escape(item.getEffect()) + "\n";
+
+            case CONSUME:
+                return "effect\tconsume\n";
+
+            default:
+                return "effect\tend\n";
+        }
+    }
+
+    /**
+     * Write the shipped map out as a world file, as a starting point for
+     * new worlds.
+     * Usage: java WorldFile fileName
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length < 1) {
+            System.out.println("Usage: java WorldFile fileName");
+            return;
+        }
+        save(World.getShipped(), args[0]);
+    }
+}
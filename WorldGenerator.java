@@ -0,0 +1,346 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A WorldGenerator makes synthetic worlds of any size for scale testing.
+ * The same seed and settings always give the same world.
+ *
+ * Every room is reachable from the start room (room 0): each new room is
+ * joined to an earlier one by a pair of opposite exits (north and south,
+ * up and down, ...), so the rooms form a tree, and the last room made is
+ * the final room. On top of that, extra exits are added until rooms have
+ * about the number of exits asked for. Some of the extra exits are one
+ * way "portals", like the ring in the woods that leads to the basement,
+ * and some are locked, like the inn's door down to the basement. Locks
+ * are only put on extra exits, so the final room can always be reached.
+ * Like those of the shipped map, portals and locked exits are marked as
+ * meant to have no way back (see World.expectOneWay), so a generated
+ * world passes WorldValidator.
+ *
+ * Rooms go straight into a RoomGraph as they are made. The only other
+ * thing kept per room is which directions it has used.
+ *
+ * A generator can also make just one shard of a world (see ShardMap):
+ * the whole world is worked out in the same order from the same seed, but
+ * only the rooms, exits and items the shard holds are kept. Every shard of
+ * a world can be made in its own process, and together they are the same
+ * world generate() makes.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class WorldGenerator
+{
+    // Directions in opposite pairs: direction i is the way back from
+    // direction i ^ 1.
+    private static final String[] DIRECTIONS = {
+        "north", "south", "east", "west", "up", "down",
+        "in", "out", "northeast", "southwest", "northwest", "southeast"
+    };
+    private static final String PORTAL = "portal";  // one-way exits
+    private static final int PORTAL_BIT = 1 << DIRECTIONS.length;
+
+    private static final String[] PLACES = {
+        "corridor", "storeroom", "courtyard", "bridge", "market", "cellar",
+        "garden", "crossroads", "chapel", "workshop", "library", "cave"
+    };
+    private static final String[] MOODS = {
+        "in a winding", "in a dusty", "in a quiet", "on the edge of a",
+        "in a crowded", "in a damp", "in a sunlit", "in an abandoned"
+    };
+    // every combination of mood and place, shared by all generated rooms
+    private static final String[] DESCRIPTION_POOL = new String[MOODS.length * PLACES.length];
+    static {
+        for(int i = 0; i < DESCRIPTION_POOL.length; i++) {
+            DESCRIPTION_POOL[i] = MOODS[i / PLACES.length] + " " + PLACES[i % PLACES.length];
+        }
+    }
+
+    private static final String[] ITEMS = {
+        "lantern", "coin", "feather", "rope", "map", "key", "apple", "shell"
+    };
+
+    private int roomCount;
+    private double exitsPerRoom;
+    private double oneWayChance;
+    private double lockChance;
+    private int itemCount;
+    private long seed;
+
+    /**
+     * Create a generator with the usual settings: three exits per room on
+     * average, 5% of extra exits one way, 5% of extra exits locked, and
+     * one item per thousand rooms.
+     * @param roomCount How many rooms to make.
+     * @param seed      The seed the world is made from.
+     */
+    public WorldGenerator(int roomCount, long seed)
+    {
+        this(roomCount, 3.0, 0.05, 0.05, Math.max(1, roomCount / 1000), seed);
+    }
+
+    /**
+     * Create a generator.
+     * @param roomCount    How many rooms to make.
+     * @param exitsPerRoom The average number of exits a room should have
+     *                     (at least 2, at most 12).
+     * @param oneWayChance The chance that an extra exit is a one-way portal.
+     * @param lockChance   The chance that an extra exit is locked.
+     * @param itemCount    How many items to scatter about.
+     * @param seed         The seed the world is made from.
+     */
+    public WorldGenerator(int roomCount, double exitsPerRoom, double oneWayChance,
+                          double lockChance, int itemCount, long seed)
+    {
+        if(roomCount < 1) {
+            throw new IllegalArgumentException("A world needs at least one room");
+        }
+        this.roomCount = roomCount;
+        this.exitsPerRoom = Math.max(2, Math.min(exitsPerRoom, DIRECTIONS.length));
+        this.oneWayChance = oneWayChance;
+        this.lockChance = lockChance;
+        this.itemCount = itemCount;
+        this.seed = seed;
+    }
+
+    /**
+     * Make the world.
+     * @return The generated world, stored in a RoomGraph.
+     */
+    public World generate()
+    {
+        return generate(new ShardMap(roomCount, 1), 0);
+    }
+
+    /**
+     * Make one shard of the world.
+     * @param shards How the world is split.
+     * @param shard  The shard to make.
+     * @return The shard's part of the world, stored in a RoomGraph
+     * holding just its rooms. The world starts in room 0 wherever that is.
+     */
+    public World generate(ShardMap shards, int shard)
+    {
+        if(shards.getRoomCount() != roomCount) {
+            throw new IllegalArgumentException("The shard map is for a world of " +
+                                               shards.getRoomCount() + " rooms");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        int first = shards.firstRoom(shard);
+        int end = first + shards.roomCount(shard);
+        RoomGraph graph = shards.getShardCount() == 1 ? new RoomGraph(roomCount)
+            : new RoomGraph(end - first, first, roomCount);
+        int[] usedDirections = new int[roomCount];  // bit per direction
+
+        // each extra pair of exits adds two exits, the tree adds about two
+        // per room already
+        double extraPerRoom = (exitsPerRoom - 2) / 2;
+
+        for(int room = 0; room < roomCount; room++) {
+            String description = description(random);
+            if(room >= first && room < end) {
+                graph.addRoom(null, description, room == roomCount - 1);
+            }
+            if(room == 0) {
+                continue;
+            }
+            joinToTree(graph, usedDirections, room, random);
+
+            int extras = (int) extraPerRoom;
+            if(random.nextDouble() < extraPerRoom - extras) {
+                extras++;
+            }
+            for(int i = 0; i < extras; i++) {
+                addExtraExit(graph, usedDirections, room, random);
+            }
+        }
+        graph.build();
+
+        World world = new World(graph);
+        world.setStartRoom(graph.room(0));
+        // portals are meant to have no way back, and locked exits to stay
+        // locked while the way back is open
+        for(int room = first; room < end; room++) {
+            for(int exit = graph.getExitStart(room); exit < graph.getExitEnd(room); exit++) {
+                String direction = graph.getDirectionName(graph.getExitDirection(exit));
+                if(direction.equals(PORTAL) || graph.isLocked(exit)) {
+                    world.expectOneWay(graph.room(room), direction);
+                }
+            }
+        }
+        for(int i = 0; i < itemCount; i++) {
+            String name = ITEMS[i % ITEMS.length];
+            int room = random.nextInt(roomCount);
+            if(graph.holds(room)) {
+                world.placeItem(graph.room(room),
+                    new GameItem(name, "a perfectly ordinary " + name + ".",
+                                 "Nothing much happens.", false));
+            }
+        }
+        return world;
+    }
+
+    /**
+     * @return A description for a room, shared with other rooms that
+     * happen to get the same one.
+     */
+    private static String description(SplittableRandom random)
+    {
+        return DESCRIPTION_POOL[random.nextInt(DESCRIPTION_POOL.length)];
+    }
+
+    /**
+     * Join a new room to an earlier one with a pair of opposite exits.
+     * A few random earlier rooms are tried; if none has a free direction,
+     * the rooms just before the new one are tried in turn.
+     */
+    private static void joinToTree(RoomGraph graph, int[] used, int room,
+                                   SplittableRandom random)
+    {
+        for(int attempt = 0; attempt < 8; attempt++) {
+            if(tryJoin(graph, used, random.nextInt(room), room, random, false)) {
+                return;
+            }
+        }
+        for(int parent = room - 1; parent >= 0; parent--) {
+            if(tryJoin(graph, used, parent, room, random, false)) {
+                return;
+            }
+        }
+        throw new IllegalStateException("No room has a free direction left");
+    }
+
+    /**
+     * Add an extra exit from a new room to a random earlier room. It may
+     * turn out one way or locked.
+     */
+    private void addExtraExit(RoomGraph graph, int[] used, int room,
+                              SplittableRandom random)
+    {
+        int other = random.nextInt(room);
+        if(random.nextDouble() < oneWayChance) {
+            if((used[room] & PORTAL_BIT) == 0) {
+                used[room] |= PORTAL_BIT;
+                addExit(graph, room, PORTAL, other);
+            }
+            return;
+        }
+        tryJoin(graph, used, other, room, random, random.nextDouble() < lockChance);
+    }
+
+    /**
+     * Try to join two rooms with a pair of opposite exits, starting from a
+     * random pair of directions.
+     * @param locked Whether the exit from room back to other is locked.
+     * @return true if a pair of directions free in both rooms was found.
+     */
+    private static boolean tryJoin(RoomGraph graph, int[] used, int other, int room,
+                                   SplittableRandom random, boolean locked)
+    {
+        int pairs = DIRECTIONS.length / 2;
+        int first = random.nextInt(pairs);
+        for(int i = 0; i < pairs; i++) {
+            int pair = (first + i) % pairs;
+            // either way round: other -> room by d, room -> other by d ^ 1
+            int d = 2 * pair + random.nextInt(2);
+            int back = d ^ 1;
+            if((used[other] & (1 << d)) == 0 && (used[room] & (1 << back)) == 0) {
+                used[other] |= 1 << d;
+                used[room] |= 1 << back;
+                addExit(graph, other, DIRECTIONS[d], room);
+                addExit(graph, room, DIRECTIONS[back], other);
+                if(locked && graph.holds(room)) {
+                    graph.lock(room, DIRECTIONS[back]);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add an exit to the graph if it holds the room the exit leaves.
+     */
+    private static void addExit(RoomGraph graph, int from, String direction, int to)
+    {
+        if(graph.holds(from)) {
+            graph.addExit(from, direction, to);
+        }
+    }
+
+    /**
+     * Generate a world, report how long it took and how much heap it
+     * uses, then time a random walk through it.
+     * Usage: java WorldGenerator [rooms] [exitsPerRoom] [seed] [moves]
+     */
+    public static void main(String[] args)
+    {
+        int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        double exits = args.length > 1 ? Double.parseDouble(args[1]) : 3.0;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        int moves = args.length > 3 ? Integer.parseInt(args[3]) : 1_000_000;
+
+        System.gc();
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        World world = new WorldGenerator(rooms, exits, 0.05, 0.05,
+                                         Math.max(1, rooms / 1000), seed).generate();
+        long nanos = System.nanoTime() - start;
+        System.gc();
+        long bytes = usedHeap() - heapBefore;
+        RoomGraph graph = world.getGraph();
+        System.out.printf("Generated %d rooms, %d exits in %.1f ms, %d B/room%n",
+            graph.getRoomCount(), graph.getExitCount(), nanos / 1e6,
+            bytes / graph.getRoomCount());
+
+        // random walk: pick one of the current room's exits each move
+        PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream());
+        Parser parser = new Parser(new StringReader(""), nowhere);
+        Game game = new Game(parser, world);
+        SplittableRandom random = new SplittableRandom(seed);
+        String[] lines = new String[DIRECTIONS.length + 1];
+        for(int i = 0; i < DIRECTIONS.length; i++) {
+            lines[i] = "go " + DIRECTIONS[i];
+        }
+        lines[DIRECTIONS.length] = "go " + PORTAL;
+        start = System.nanoTime();
+        for(int i = 0; i < moves && graph.getExitCount() > 0; i++) {
+            int room = game.getCurrentRoom().getId();
+            int exit = graph.getExitStart(room) + random.nextInt(
+                graph.getExitEnd(room) - graph.getExitStart(room));
+            String direction = graph.getDirectionName(graph.getExitDirection(exit));
+            String line = direction.equals(PORTAL) ? lines[DIRECTIONS.length]
+                                                   : lines[indexOf(direction)];
+            game.processCommand(parser.parseCommand(line));
+        }
+        nanos = System.nanoTime() - start;
+        System.out.printf("Random walk: %d moves, %.0f moves/sec%n",
+                          moves, moves * 1e9 / nanos);
+    }
+
+    /**
+     * @return The index of a paired direction.
+     */
+    private static int indexOf(String direction)
+    {
+        for(int i = 0; i < DIRECTIONS.length; i++) {
+            if(DIRECTIONS[i].equals(direction)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The number of bytes of heap in use.
+     */
+    private static long usedHeap()
+    {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
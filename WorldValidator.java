@@ -0,0 +1,719 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * A WorldValidator looks for mistakes in a world before anyone plays it:
+ *
+ *     rooms that cannot be reached from the start room;
+ *     rooms that can be reached, but have no way back to the start
+ *         (final rooms are allowed to be like this);
+ *     exits that are locked, with no trigger that ever unlocks them;
+ *     exits with no matching way back: the room they lead to has no exit
+ *         back, or only one that is locked for good while this one is
+ *         not (or the other way round);
+ *     worlds with no final room, or none that can be reached.
+ *
+ * Exits that are meant to be one way (see World.expectOneWay) are not
+ * reported, and neither are the exits back through them. Players are
+ * taken to be able to go through any exit that some trigger unlocks,
+ * since the validator cannot tell whether they will find the item.
+ *
+ * The work is done with fork/join tasks, so that a world of millions of
+ * rooms is checked by every core at once. Which rooms can be reached is
+ * found by a breadth-first search done a level at a time, with each
+ * level's rooms split between tasks, and rooms claimed by setting their
+ * bit in a shared bit set. Which rooms can get back to the start is found
+ * the same way, over the exits turned round. Everything else is checked
+ * room by room, with the rooms split into ranges.
+ *
+ * So that a huge world with many mistakes does not fill the heap, only
+ * the first few problems of each kind are kept (in order of room id),
+ * though all of them are counted.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class WorldValidator
+{
+    /**
+     * The kinds of problem a world can have.
+     */
+    public enum Kind
+    {
+        UNREACHABLE, DEAD_END, LOCKED_FOREVER, ONE_WAY, NO_FINAL_ROOM
+    }
+
+    private static final int GRAIN = 2048;      // rooms a task checks without splitting
+
+    private World world;
+    private RoomGraph graph;            // the world's, or a copy of its rooms
+    private ForkJoinPool pool;
+    private int problemsKept;           // of each kind
+
+    private long[] unlockable;          // bit set of exits a trigger unlocks
+    private long[] expected;            // bit set of exits meant to be one way
+    private AtomicLongArray reached;    // rooms that can be reached from the start
+    private AtomicLongArray returning;  // rooms the start can be reached from
+    private int[] reverseStart;         // the exits into each room, which
+    private int[] reverseSource;        // run from reverseStart[room] up to reverseStart[room + 1]
+
+    /**
+     * Create a validator that uses every core and keeps up to a hundred
+     * problems of each kind.
+     * @param world The world to check.
+     */
+    public WorldValidator(World world)
+    {
+        this(world, ForkJoinPool.commonPool(), 100);
+    }
+
+    /**
+     * Create a validator.
+     * @param world        The world to check.
+     * @param pool         The pool the checking is done in.
+     * @param problemsKept How many problems of each kind to keep.
+     * @throws IllegalArgumentException If the world is one shard of a
+     * larger world, which cannot be checked on its own.
+     */
+    public WorldValidator(World world, ForkJoinPool pool, int problemsKept)
+    {
+        this.world = world;
+        this.pool = pool;
+        this.problemsKept = problemsKept;
+        graph = world.getGraph();
+        if(graph == null) {
+            graph = copyRooms(world);
+        }
+        else if(graph.getHeldRoomCount() != graph.getRoomCount()) {
+            throw new IllegalArgumentException("Only a whole world can be checked, not a shard");
+        }
+    }
+
+    /**
+     * Copy the rooms and exits of a world made of Room objects into a
+     * graph, which is quicker to work through.
+     */
+    private static RoomGraph copyRooms(World world)
+    {
+        int roomCount = world.getRoomCount();
+        RoomGraph graph = new RoomGraph(roomCount);
+        for(int id = 0; id < roomCount; id++) {
+            Room room = world.getRoom(id);
+            graph.addRoom(room.getName(), "", room.isFinalRoom());
+        }
+        for(int id = 0; id < roomCount; id++) {
+            Room room = world.getRoom(id);
+            for(String direction : room.getExitDirections()) {
+                graph.addExit(id, direction, room.getExit(direction).getId());
+            }
+        }
+        graph.build();
+        for(int id = 0; id < roomCount; id++) {
+            Room room = world.getRoom(id);
+            for(String direction : room.getExitDirections()) {
+                if(room.isLocked(direction)) {
+                    graph.lock(id, direction);
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Check the world.
+     * @return What was found.
+     */
+    public Report validate()
+    {
+        int roomCount = graph.getRoomCount();
+        unlockable = new long[(graph.getExitCount() >> 6) + 1];
+        for(Trigger trigger : world.getTriggers()) {
+            for(Trigger.Effect effect : trigger.getEffects()) {
+                if(effect.getKind() == Trigger.Kind.UNLOCK) {
+                    setBit(unlockable, findExit(effect.getRoomId(), effect.getDirection()));
+                }
+            }
+        }
+        expected = new long[(graph.getExitCount() >> 6) + 1];
+        for(Map.Entry<Room, List<String>> entry : world.getExpectedOneWays().entrySet()) {
+            for(String direction : entry.getValue()) {
+                setBit(expected, findExit(entry.getKey().getId(), direction));
+            }
+        }
+
+        Room start = world.getStartRoom();
+        if(start == null) {
+            Report report = new Report(problemsKept);
+            report.add(new Problem(Kind.NO_FINAL_ROOM, null, null, "The world has no rooms"));
+            return report;
+        }
+        reached = spread(start.getId(), true);
+        turnExitsRound();
+        returning = spread(start.getId(), false);
+        Report report = pool.invoke(new Check(0, roomCount));
+        reverseStart = null;
+        reverseSource = null;
+
+        if(report.finalRooms == 0) {
+            report.add(new Problem(Kind.NO_FINAL_ROOM, null, null,
+                                   "The world has no final room"));
+        }
+        else if(report.finalRoomsReached == 0) {
+            report.add(new Problem(Kind.NO_FINAL_ROOM, null, null,
+                                   "None of the " + report.finalRooms +
+                                   " final rooms can be reached"));
+        }
+        return report;
+    }
+
+    /**
+     * @return The exit leaving a room in a direction, or -1 if there is none.
+     */
+    private int findExit(int room, String direction)
+    {
+        int directionId = graph.getDirectionId(direction);
+        return directionId < 0 ? -1 : graph.findExit(room, directionId);
+    }
+
+    /**
+     * @return Whether an exit is locked with nothing to unlock it.
+     */
+    private boolean isClosed(int exit)
+    {
+        return graph.isLocked(exit) && !getBit(unlockable, exit);
+    }
+
+    /**
+     * Find every room that can be reached from one room, going through
+     * exits that are not closed for good, either along them or (using
+     * the exits turned round) against them.
+     * @param start The room to start from.
+     * @param along true to follow exits, false to go back along them.
+     * @return A bit set of the rooms reached.
+     */
+    private AtomicLongArray spread(int start, boolean along)
+    {
+        AtomicLongArray seen = new AtomicLongArray((graph.getRoomCount() >> 6) + 1);
+        claim(seen, start);
+        int[] level = { start };
+        while(level.length > 0) {
+            level = pool.invoke(new Expand(level, 0, level.length, seen, along));
+        }
+        return seen;
+    }
+
+    /**
+     * Make reverseStart and reverseSource: for each room, the rooms with
+     * an exit into it that is not closed for good.
+     */
+    private void turnExitsRound()
+    {
+        int roomCount = graph.getRoomCount();
+        AtomicIntegerArray counts = new AtomicIntegerArray(roomCount + 1);
+        pool.invoke(new ForRooms(0, roomCount, room -> {
+            for(int exit = graph.getExitStart(room); exit < graph.getExitEnd(room); exit++) {
+                if(!isClosed(exit)) {
+                    counts.incrementAndGet(graph.getExitTarget(exit) + 1);
+                }
+            }
+        }));
+        reverseStart = new int[roomCount + 1];
+        for(int room = 0; room < roomCount; room++) {
+            reverseStart[room + 1] = reverseStart[room] + counts.get(room + 1);
+        }
+        AtomicIntegerArray next = new AtomicIntegerArray(reverseStart);
+        int[] sources = new int[reverseStart[roomCount]];
+        pool.invoke(new ForRooms(0, roomCount, room -> {
+            for(int exit = graph.getExitStart(room); exit < graph.getExitEnd(room); exit++) {
+                if(!isClosed(exit)) {
+                    sources[next.getAndIncrement(graph.getExitTarget(exit))] = room;
+                }
+            }
+        }));
+        reverseSource = sources;
+    }
+
+    /**
+     * Mark a room in a bit set.
+     * @return true if this call marked it, false if it already was.
+     */
+    private static boolean claim(AtomicLongArray bits, int index)
+    {
+        int word = index >> 6;
+        long bit = 1L << index;
+        long old = bits.get(word);
+        while((old & bit) == 0) {
+            long witness = bits.compareAndExchange(word, old, old | bit);
+            if(witness == old) {
+                return true;
+            }
+            old = witness;
+        }
+        return false;
+    }
+
+    private static boolean isMarked(AtomicLongArray bits, int index)
+    {
+        return (bits.get(index >> 6) & (1L << index)) != 0;
+    }
+
+    private static boolean getBit(long[] bits, int index)
+    {
+        return (bits[index >> 6] & (1L << index)) != 0;
+    }
+
+    private static void setBit(long[] bits, int index)
+    {
+        if(index >= 0) {
+            bits[index >> 6] |= 1L << index;
+        }
+    }
+
+    /**
+     * Takes one level of a breadth-first search to the next: the rooms
+     * next to part of this level that no task has claimed yet.
+     */
+    @SuppressWarnings("serial")
+    private class Expand extends RecursiveTask<int[]>
+    {
+        private int[] level;
+        private int from;
+        private int to;
+        private AtomicLongArray seen;
+        private boolean along;
+
+        Expand(int[] level, int from, int to, AtomicLongArray seen, boolean along)
+        {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+            this.seen = seen;
+            this.along = along;
+        }
+
+        @Override
+        protected int[] compute()
+        {
+            if(to - from > GRAIN) {
+                int middle = (from + to) >>> 1;
+                Expand first = new Expand(level, from, middle, seen, along);
+                first.fork();
+                int[] second = new Expand(level, middle, to, seen, along).compute();
+                int[] firstRooms = first.join();
+                int[] both = new int[firstRooms.length + second.length];
+                System.arraycopy(firstRooms, 0, both, 0, firstRooms.length);
+                System.arraycopy(second, 0, both, firstRooms.length, second.length);
+                return both;
+            }
+            int[] next = new int[Math.max(16, (to - from) * 2)];
+            int count = 0;
+            for(int i = from; i < to; i++) {
+                int room = level[i];
+                int start = along ? graph.getExitStart(room) : reverseStart[room];
+                int end = along ? graph.getExitEnd(room) : reverseStart[room + 1];
+                for(int index = start; index < end; index++) {
+                    int neighbour;
+                    if(along) {
+                        if(isClosed(index)) {
+                            continue;
+                        }
+                        neighbour = graph.getExitTarget(index);
+                    }
+                    else {
+                        neighbour = reverseSource[index];
+                    }
+                    if(claim(seen, neighbour)) {
+                        if(count == next.length) {
+                            next = Arrays.copyOf(next, count * 2);
+                        }
+                        next[count++] = neighbour;
+                    }
+                }
+            }
+            return Arrays.copyOf(next, count);
+        }
+    }
+
+    /**
+     * Does something for each room in a range, splitting the range
+     * between tasks.
+     */
+    @SuppressWarnings("serial")
+    private static class ForRooms extends RecursiveAction
+    {
+        private int from;
+        private int to;
+        private IntConsumer action;
+
+        ForRooms(int from, int to, IntConsumer action)
+        {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if(to - from > GRAIN) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ForRooms(from, middle, action), new ForRooms(middle, to, action));
+                return;
+            }
+            for(int room = from; room < to; room++) {
+                action.accept(room);
+            }
+        }
+    }
+
+    /**
+     * Checks a range of rooms and their exits, once it is known which
+     * rooms can be reached and which can get back.
+     */
+    @SuppressWarnings("serial")
+    private class Check extends RecursiveTask<Report>
+    {
+        private int from;
+        private int to;
+
+        Check(int from, int to)
+        {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Report compute()
+        {
+            if(to - from > GRAIN) {
+                int middle = (from + to) >>> 1;
+                Check first = new Check(from, middle);
+                first.fork();
+                Report second = new Check(middle, to).compute();
+                Report report = first.join();
+                report.addAll(second);
+                return report;
+            }
+            Report report = new Report(problemsKept);
+            for(int room = from; room < to; room++) {
+                checkRoom(room, report);
+            }
+            return report;
+        }
+
+        private void checkRoom(int room, Report report)
+        {
+            boolean isReached = isMarked(reached, room);
+            boolean isFinal = graph.isFinal(room);
+            if(isFinal) {
+                report.finalRooms++;
+                if(isReached) {
+                    report.finalRoomsReached++;
+                }
+            }
+            if(!isReached) {
+                found(report, Kind.UNREACHABLE, room, -1);
+            }
+            else if(!isFinal && !isMarked(returning, room)) {
+                found(report, Kind.DEAD_END, room, -1);
+            }
+
+            for(int exit = graph.getExitStart(room); exit < graph.getExitEnd(room); exit++) {
+                int target = graph.getExitTarget(exit);
+                if(isClosed(exit) && !isExpected(exit, room, target)) {
+                    found(report, Kind.LOCKED_FOREVER, room, exit);
+                }
+                if(!hasWayBack(exit, room, target) && !isExpected(exit, room, target)) {
+                    found(report, Kind.ONE_WAY, room, exit);
+                }
+            }
+        }
+
+        /**
+         * Add a problem with a room, or one of its exits, to a report.
+         * It is only described if the report will keep it.
+         * @param exit The exit with the problem, or -1.
+         */
+        private void found(Report report, Kind kind, int room, int exit)
+        {
+            if(!report.wants(kind)) {
+                report.count(kind);
+                return;
+            }
+            String name = graph.getName(room);
+            String direction = exit < 0 ? null
+                : graph.getDirectionName(graph.getExitDirection(exit));
+            String text;
+            switch(kind) {
+                case UNREACHABLE:
+                    text = "Room " + name + " cannot be reached from the start";
+                    break;
+                case DEAD_END:
+                    text = "Room " + name + " can be reached, but has no way back to the start";
+                    break;
+                case LOCKED_FOREVER:
+                    text = "The exit " + direction + " from " + name +
+                           " is locked, and nothing unlocks it";
+                    break;
+                default:
+                    text = "The exit " + direction + " from " + name + " leads to " +
+                           graph.getName(graph.getExitTarget(exit)) +
+                           ", with no matching way back";
+                    break;
+            }
+            report.add(new Problem(kind, name, direction, text));
+        }
+
+        /**
+         * @return Whether the room an exit leads to has an exit back that
+         * is closed for good if and only if this one is.
+         */
+        private boolean hasWayBack(int exit, int room, int target)
+        {
+            boolean closed = isClosed(exit);
+            for(int back = graph.getExitStart(target); back < graph.getExitEnd(target); back++) {
+                if(graph.getExitTarget(back) == room && isClosed(back) == closed) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return Whether an exit, or one leading back through it, is
+         * meant to be one way.
+         */
+        private boolean isExpected(int exit, int room, int target)
+        {
+            if(getBit(expected, exit)) {
+                return true;
+            }
+            for(int back = graph.getExitStart(target); back < graph.getExitEnd(target); back++) {
+                if(graph.getExitTarget(back) == room && getBit(expected, back)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * One problem found in a world.
+     */
+    public static class Problem
+    {
+        private Kind kind;
+        private String room;
+        private String direction;
+        private String text;
+
+        private Problem(Kind kind, String room, String direction, String text)
+        {
+            this.kind = kind;
+            this.room = room;
+            this.direction = direction;
+            this.text = text;
+        }
+
+        /**
+         * @return What kind of problem it is.
+         */
+        public Kind getKind()
+        {
+            return kind;
+        }
+
+        /**
+         * @return The name of the room with the problem, or null if it is
+         * with the whole world.
+         */
+        public String getRoom()
+        {
+            return room;
+        }
+
+        /**
+         * @return The direction of the exit with the problem, or null if
+         * it is not with an exit.
+         */
+        public String getDirection()
+        {
+            return direction;
+        }
+
+        /**
+         * @return The problem, described for the world's author.
+         */
+        @Override
+        public String toString()
+        {
+            return text;
+        }
+    }
+
+    /**
+     * What a validator found: how many problems of each kind, and the
+     * first few of each.
+     */
+    public static class Report
+    {
+        private int problemsKept;
+        private long[] counts;                  // indexed by Kind ordinal
+        private List<List<Problem>> problems;   // likewise
+        private int finalRooms;
+        private int finalRoomsReached;
+
+        private Report(int problemsKept)
+        {
+            this.problemsKept = problemsKept;
+            counts = new long[Kind.values().length];
+            problems = new ArrayList<List<Problem>>();
+            for(int i = 0; i < counts.length; i++) {
+                problems.add(new ArrayList<Problem>());
+            }
+        }
+
+        private boolean wants(Kind kind)
+        {
+            return problems.get(kind.ordinal()).size() < problemsKept;
+        }
+
+        private void count(Kind kind)
+        {
+            counts[kind.ordinal()]++;
+        }
+
+        private void add(Problem problem)
+        {
+            count(problem.kind);
+            if(wants(problem.kind)) {
+                problems.get(problem.kind.ordinal()).add(problem);
+            }
+        }
+
+        /**
+         * Add what was found in the rooms after this report's.
+         */
+        private void addAll(Report later)
+        {
+            for(int i = 0; i < counts.length; i++) {
+                counts[i] += later.counts[i];
+                List<Problem> kept = problems.get(i);
+                for(Problem problem : later.problems.get(i)) {
+                    if(kept.size() < problemsKept) {
+                        kept.add(problem);
+                    }
+                }
+            }
+            finalRooms += later.finalRooms;
+            finalRoomsReached += later.finalRoomsReached;
+        }
+
+        /**
+         * @return Whether no problems were found.
+         */
+        public boolean isClean()
+        {
+            return getProblemCount() == 0;
+        }
+
+        /**
+         * @return How many problems were found.
+         */
+        public long getProblemCount()
+        {
+            long total = 0;
+            for(long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * @param kind A kind of problem.
+         * @return How many problems of that kind were found.
+         */
+        public long getCount(Kind kind)
+        {
+            return counts[kind.ordinal()];
+        }
+
+        /**
+         * @return The problems kept, kind by kind, and in order of room id
+         * within each kind.
+         */
+        public List<Problem> getProblems()
+        {
+            List<Problem> all = new ArrayList<Problem>();
+            for(List<Problem> kind : problems) {
+                all.addAll(kind);
+            }
+            return all;
+        }
+
+        /**
+         * Print the problems kept, and how many more there are.
+         * @param out Where to print them.
+         */
+        public void print(PrintStream out)
+        {
+            for(Kind kind : Kind.values()) {
+                List<Problem> kept = problems.get(kind.ordinal());
+                for(Problem problem : kept) {
+                    out.println(problem);
+                }
+                long more = counts[kind.ordinal()] - kept.size();
+                if(more > 0) {
+                    out.println("... and " + more + " more " +
+                                kind.name().toLowerCase(Locale.ROOT).replace('_', ' ') + " problems");
+                }
+            }
+        }
+    }
+
+    /**
+     * Check a world and print what was found.
+     * Usage: java WorldValidator [worldFile | rooms] [threads]
+     * With a number of rooms, a world that size is generated and checked;
+     * with nothing, the shipped map is.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        World world;
+        if(args.length == 0) {
+            world = World.getShipped();
+        }
+        else if(args[0].chars().allMatch(Character::isDigit)) {
+            world = new WorldGenerator(Integer.parseInt(args[0]), 42).generate();
+        }
+        else {
+            world = WorldFile.load(args[0]);
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                                       : Runtime.getRuntime().availableProcessors();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        Report report = new WorldValidator(world, pool, 10).validate();
+        long nanos = System.nanoTime() - start;
+        pool.shutdown();
+
+        report.print(System.out);
+        System.out.printf("Checked %d rooms with %d thread%s in %.1f ms: %d problem%s%n",
+            world.getRoomCount(), threads, threads == 1 ? "" : "s", nanos / 1e6,
+            report.getProblemCount(), report.getProblemCount() == 1 ? "" : "s");
+    }
+}
@@ -0,0 +1,357 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.IntToLongFunction;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * The operations the JMH suite measures, each set up from scratch by
+ * name. They are the per-operation cases of Benchmark, on the same
+ * worlds and inputs, so the two can be read side by side.
+ *
+ * JMH will not run benchmarks in the unnamed package, and classes in a
+ * named package cannot refer to the game's, so CommandPathBenchmark
+ * finds this class by name and asks it for an operation; the operation
+ * is an IntToLongFunction, so nothing of the game's crosses over. Its
+ * argument counts up from 0 and its result is handed to JMH, so the work
+ * cannot be thrown away.
+ *
+ * Generated worlds have the number of rooms in the benchmark.rooms
+ * system property, 100,000 if it is not set.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+public class BenchmarkCases
+{
+    private static final int ROOMS = Integer.getInteger("benchmark.rooms", 100_000);
+
+    /**
+     * Set up an operation to measure.
+     * @param name The name of the operation, as Benchmark prints it.
+     * @return The operation.
+     * @throws IllegalArgumentException If there is no operation of that name.
+     */
+    public static IntToLongFunction create(String name)
+    {
+        switch(name) {
+            case "CommandWords.getCommandWord": {
+                CommandWords words = new CommandWords();
+                return i -> words.getCommandWord(cycle(Benchmark.LINES, i)).ordinal();
+            }
+            case "CommandWords.getCommandWord (abbreviated)": {
+                CommandWords words = new CommandWords();
+                return i -> words.getCommandWord(cycle(Benchmark.ABBREVIATIONS, i)).ordinal();
+            }
+            case "Parser.parseCommand": {
+                Parser parser = newParser();
+                return i -> parser.parseCommand(cycle(Benchmark.LINES, i))
+                                  .getCommandWord().ordinal();
+            }
+            case "Parser.parseCommand + getSecondWord": {
+                Parser parser = newParser();
+                return i -> Benchmark.secondWordLength(
+                    parser.parseCommand(cycle(Benchmark.LINES, i)));
+            }
+            case "Scanner tokenizer (old parser)": {
+                CommandWords words = new CommandWords();
+                return i -> Benchmark.secondWordLength(
+                    Benchmark.scannerParse(words, cycle(Benchmark.LINES, i)));
+            }
+            case "Parser.getCommand": {
+                Parser parser = new Parser(new EndlessLines(Benchmark.LINES),
+                                           OutputStream.nullOutputStream());
+                return i -> parser.getCommand().getCommandWord().ordinal();
+            }
+
+            case "Game.processCommand GO (shipped)":
+                return commands(newShippedGame(), "go east", "go west");
+            case "Game.processCommand BACK (shipped)":
+                return commands(newShippedGame(), "go east", "back");
+            case "Game.processCommand LOOK (shipped)":
+                return commands(newShippedGame(), "look");
+            case "Game.processCommand HELP (shipped)":
+                return commands(newShippedGame(), "help");
+            case "Game.processCommand UNKNOWN (shipped)":
+                return commands(newShippedGame(), "dance");
+            case "Game.processCommand EXAMINE (shipped)":
+                return commands(newShippedGame(), "examine inventory");
+            case "Game.processCommand GOTO (shipped)": {
+                Game game = newShippedGame();
+                Room here = game.getCurrentRoom();
+                return commands(game, "goto " + here.getExit("east").getName(),
+                                "goto " + here.getName());
+            }
+            case "Game.processCommand TAKE (shipped stall)":
+                return commands(newStallGame(), "take skewer", "drop skewer");
+            case "Game.processCommand DROP (shipped stall)": {
+                Game game = newStallGame();
+                game.processCommand(new Command(CommandWord.TAKE, "skewer"));
+                return commands(game, "drop skewer", "take skewer");
+            }
+            case "Game.processCommand EXAMINE (shipped stall)":
+                return commands(newStallGame(), "examine skewer");
+            case "Game.processCommand USE (shipped stall)":
+                return commands(newStallGame(), "use jewel");
+            case "Game.processCommand GO (generated)":
+                return commands(new Game(newParser(), Benchmark.buildGrid(ROOMS)),
+                                "go east", "go west");
+            case "Game.processCommand GO (compact)":
+                return commands(new Game(newParser(), Benchmark.buildCompactGrid(ROOMS)),
+                                "go east", "go west");
+            case "Game.processCommand GO (metrics on)":
+                GameMetrics.enable();
+                return commands(newShippedGame(), "go east", "go west");
+
+            case "Room.getLongDescription (shipped)": {
+                Room room = newShippedGame().getCurrentRoom();
+                return i -> room.getLongDescription().length();
+            }
+            case "Room.printLongDescription (shipped)": {
+                Room room = newShippedGame().getCurrentRoom();
+                GameOutput out = GameOutput.discard();
+                return i -> {
+                    room.printLongDescription(out);
+                    out.flush();
+                    return 1;
+                };
+            }
+            case "Room.getLongDescription (plain)":
+                return longDescriptions(Benchmark.buildWordyWorld(ROOMS));
+            case "Room.getLongDescription (pooled)":
+                return longDescriptions(pooled(Benchmark.buildWordyWorld(ROOMS)));
+            case "Room.printLongDescription (plain)":
+                return printedDescriptions(Benchmark.buildWordyWorld(ROOMS));
+            case "Room.printLongDescription (pooled)":
+                return printedDescriptions(pooled(Benchmark.buildWordyWorld(ROOMS)));
+            case "Room.getExit (Room objects)":
+                return exits(Benchmark.buildGrid(ROOMS).getStartRoom());
+            case "Room.getExit (RoomGraph)":
+                return exits(Benchmark.buildCompactGrid(ROOMS).getStartRoom());
+
+            case "RouteFinder.findRoute (generated)":
+                return routes(new WorldGenerator(ROOMS, 42).generate());
+            case "GameItem.getDescription": {
+                GameItem item = new GameItem("mask", "a beautiful mask, appropriate\n" +
+                    "for a masquerade ball.", "You put it on. It makes you feel regal.", false);
+                return i -> item.getDescription().length();
+            }
+            case "Session moving about": {
+                World world = World.getShipped();
+                Room alley = world.getRoom("alley");
+                Room marketWest = world.getRoom("marketWest");
+                return i -> {
+                    Session session = new Session(world);
+                    session.enter(alley);
+                    session.enter(marketWest);
+                    session.back();
+                    return session.getHistoryDepth();
+                };
+            }
+            case "SessionSnapshot.encode": {
+                Session session = newWalkedSession();
+                return i -> SessionSnapshot.encode(session).length;
+            }
+            case "SessionSnapshot.decode": {
+                Session session = newWalkedSession();
+                World world = session.getWorld();
+                byte[] snapshot = SessionSnapshot.encode(session);
+                return i -> {
+                    try {
+                        return SessionSnapshot.decode(world, snapshot).getHistoryDepth();
+                    }
+                    catch(IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                };
+            }
+
+            default:
+                throw new IllegalArgumentException("No benchmark called " + name);
+        }
+    }
+
+    /**
+     * @return The line of a set that the i'th call uses.
+     */
+    private static String cycle(String[] lines, int i)
+    {
+        return lines[Math.floorMod(i, lines.length)];
+    }
+
+    /**
+     * @return A parser with nothing to read, whose output goes nowhere.
+     */
+    private static Parser newParser()
+    {
+        return new Parser(new StringReader(""), OutputStream.nullOutputStream());
+    }
+
+    /**
+     * @return A game on the shipped map, standing in the alleyway so
+     * that "go east" and "go west" both lead somewhere.
+     */
+    private static Game newShippedGame()
+    {
+        Game game = new Game(newParser());
+        game.processCommand(new Command(CommandWord.GO, "east"));
+        return game;
+    }
+
+    /**
+     * @return A game on the shipped map, standing in the food stall,
+     * where there is a skewer to pick up, and carrying the jewel, which
+     * is not used up anywhere but the castle gates.
+     */
+    private static Game newStallGame()
+    {
+        Game game = newShippedGame();
+        game.processCommand(new Command(CommandWord.GO, "east"));
+        game.processCommand(new Command(CommandWord.GO, "south"));
+        for(GameItem item : game.getSession().getWorld().getAllItems()) {
+            if(item.getName().equals("jewel")) {
+                game.getSession().addToInventory(item);
+            }
+        }
+        return game;
+    }
+
+    /**
+     * @return A session on the shipped map that has walked a long way
+     * and moved an item, as Benchmark snapshots.
+     */
+    private static Session newWalkedSession()
+    {
+        World world = World.getShipped();
+        Session session = new Session(world);
+        Room stall = world.getRoom("stall");
+        session.addToInventory(session.takeItem(stall, "skewer"));
+        String[] walk = { "alley", "marketWest", "marketSquare", "marketEast",
+                          "dirtPath", "swamp", "circle", "basement", "inn" };
+        for(int i = 0; i < 32; i++) {
+            session.enter(world.getRoom(walk[i % walk.length]));
+        }
+        session.putItem(session.getCurrentRoom(), session.removeFromInventory("skewer"));
+        return session;
+    }
+
+    /**
+     * @return An operation processing a cycle of commands, parsed once
+     * up front so only processing is measured. The commands must leave
+     * the game where it started.
+     */
+    private static IntToLongFunction commands(Game game, String... lines)
+    {
+        Parser parser = newParser();
+        Command[] commands = new Command[lines.length];
+        for(int i = 0; i < lines.length; i++) {
+            commands[i] = parser.parseCommand(lines[i]).copy();
+        }
+        return i -> game.processCommand(commands[Math.floorMod(i, commands.length)]) ? 1 : 0;
+    }
+
+    /**
+     * @return The same world written out as a world file and read back,
+     * so that its text is pooled.
+     */
+    private static World pooled(World world)
+    {
+        try {
+            StringWriter text = new StringWriter();
+            WorldFile.save(world, text);
+            return WorldFile.load(new StringReader(text.toString()));
+        }
+        catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return An operation getting the long descriptions of the first
+     * rooms of a world in turn.
+     */
+    private static IntToLongFunction longDescriptions(World world)
+    {
+        int count = Math.min(world.getRoomCount(), 4096);
+        return i -> world.getRoom(Math.floorMod(i, count)).getLongDescription().length();
+    }
+
+    /**
+     * @return An operation printing the long descriptions of the first
+     * rooms of a world in turn.
+     */
+    private static IntToLongFunction printedDescriptions(World world)
+    {
+        int count = Math.min(world.getRoomCount(), 4096);
+        GameOutput out = GameOutput.discard();
+        return i -> {
+            world.getRoom(Math.floorMod(i, count)).printLongDescription(out);
+            out.flush();
+            return 1;
+        };
+    }
+
+    /**
+     * @return An operation following the exits east and north of a room.
+     */
+    private static IntToLongFunction exits(Room room)
+    {
+        return i -> room.getExit((i & 1) == 0 ? "east" : "north").hashCode();
+    }
+
+    /**
+     * @return An operation finding routes between random rooms of a world.
+     */
+    private static IntToLongFunction routes(World world)
+    {
+        RouteFinder finder = world.getRouteFinder();
+        int queries = 1024;
+        Room[] from = new Room[queries];
+        Room[] to = new Room[queries];
+        SplittableRandom random = new SplittableRandom(42);
+        for(int i = 0; i < queries; i++) {
+            from[i] = world.getRoom(random.nextInt(world.getRoomCount()));
+            to[i] = world.getRoom(random.nextInt(world.getRoomCount()));
+        }
+        return i -> {
+            List<String> route = finder.findRoute(from[i & (queries - 1)],
+                                                  to[i & (queries - 1)]);
+            return route == null ? 0 : route.size();
+        };
+    }
+
+    /**
+     * A source of command lines that never runs out, going round a set
+     * of lines for as long as it is read.
+     */
+    private static class EndlessLines extends Reader
+    {
+        private char[] text;
+        private int position;
+
+        EndlessLines(String[] lines)
+        {
+            text = (String.join("\n", lines) + "\n").toCharArray();
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length)
+        {
+            int count = Math.min(length, text.length - position);
+            System.arraycopy(text, position, buffer, offset, count);
+            position = (position + count) % text.length;
+            return count;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
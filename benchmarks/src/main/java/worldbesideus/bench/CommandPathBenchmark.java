@@ -0,0 +1,89 @@
+package worldbesideus.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntToLongFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class is part of the "The World Beside Us" application.
+ *
+ * The JMH suite: every operation BenchmarkCases knows, timed one call at
+ * a time. Run it with -prof gc to see the bytes allocated per call
+ * (gc.alloc.rate.norm) beside the time, and -p operation=... to run only
+ * some of them.
+ *
+ *  @author Artemis MacDuffie
+ *  @version 2026.10.18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CommandPathBenchmark
+{
+    @Param({
+        "CommandWords.getCommandWord",
+        "CommandWords.getCommandWord (abbreviated)",
+        "Parser.parseCommand",
+        "Parser.parseCommand + getSecondWord",
+        "Scanner tokenizer (old parser)",
+        "Parser.getCommand",
+        "Game.processCommand GO (shipped)",
+        "Game.processCommand BACK (shipped)",
+        "Game.processCommand LOOK (shipped)",
+        "Game.processCommand HELP (shipped)",
+        "Game.processCommand UNKNOWN (shipped)",
+        "Game.processCommand EXAMINE (shipped)",
+        "Game.processCommand GOTO (shipped)",
+        "Game.processCommand TAKE (shipped stall)",
+        "Game.processCommand DROP (shipped stall)",
+        "Game.processCommand EXAMINE (shipped stall)",
+        "Game.processCommand USE (shipped stall)",
+        "Game.processCommand GO (generated)",
+        "Game.processCommand GO (compact)",
+        "Game.processCommand GO (metrics on)",
+        "Room.getLongDescription (shipped)",
+        "Room.printLongDescription (shipped)",
+        "Room.getLongDescription (plain)",
+        "Room.getLongDescription (pooled)",
+        "Room.printLongDescription (plain)",
+        "Room.printLongDescription (pooled)",
+        "Room.getExit (Room objects)",
+        "Room.getExit (RoomGraph)",
+        "RouteFinder.findRoute (generated)",
+        "GameItem.getDescription",
+        "Session moving about",
+        "SessionSnapshot.encode",
+        "SessionSnapshot.decode",
+    })
+    public String operation;
+
+    private IntToLongFunction op;
+    private int i;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException
+    {
+        op = (IntToLongFunction) Class.forName("BenchmarkCases")
+            .getMethod("create", String.class).invoke(null, operation);
+    }
+
+    @Benchmark
+    public long run()
+    {
+        return op.applyAsLong(i++);
+    }
+}